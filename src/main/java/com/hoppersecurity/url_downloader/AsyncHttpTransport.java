@@ -0,0 +1,617 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.client5.http.EndpointInfo;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.async.AsyncExecRuntime;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStreamResetException;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.nio.AsyncClientExchangeHandler;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link DownloadTransport} backed by the Apache HttpClient 5 async client and its NIO I/O reactor.
+ *
+ * <p>Requests are multiplexed over a small, fixed set of reactor threads (one per available
+ * processor). Response bodies are streamed through an {@link AsyncResponseConsumer} that hands
+ * each received chunk straight to the {@link TransferHandler}, so no thread blocks on socket
+ * reads and no thread is held per open connection. The returned future completes on a reactor
+ * thread once the body has been fully written. The session buffer is sized to {@code ioBufferSize},
+ * which bounds the size of each chunk and therefore of each file write. A request with a deadline
+ * has its exchange cancelled from the timer thread when the deadline passes.
+ *
+ * <p>A request token from the {@link RateLimiter} is taken on the calling thread, which parks
+ * until it is due. Byte-rate limits cannot park a reactor thread, since that would stall every
+ * connection it serves; instead the consumer charges each chunk to the limiter and, once the
+ * connection's capacity window is used up, grants the next {@code ioBufferSize} bytes of window
+ * only when the tokens are due, from the timer thread. Until then the reactor stops reading from
+ * that socket. The window is not a hard bound: the HTTP/1.1 decoder keeps draining whatever the
+ * socket already holds before it checks it, so a fast server can deliver a burst of up to the
+ * kernel receive buffer. The tokens are still charged, and the transfer's future is completed
+ * only once they are due, so each transfer and the batch as a whole stay within budget.
+ *
+ * <p>With a {@link WriterStage} a chunk is only queued for the disk writers, and the window is
+ * paced the same way: once it is used up, the next increment is granted when the stage has room
+ * again, from the writer thread that made it. A transfer's completion (and a failure's cleanup)
+ * waits for the writers to store what is queued, so it runs on a virtual thread instead of the
+ * reactor thread. So does it with an {@code fsyncPolicy} other than {@code NONE}, whose fsyncs
+ * (and group-commit waits) would otherwise stall every connection the reactor serves.
+ *
+ * <p>In {@link TransportMode#HTTP2} the transport speaks HTTP/2 instead: over TLS as negotiated
+ * by ALPN, and in cleartext ({@code h2c}) with prior knowledge. Every transfer is a stream
+ * multiplexed onto one of {@code http2ConnectionsPerHost} connections to its host, each carrying
+ * at most {@code http2MaxConcurrentStreams} streams (see {@link StreamLanes}); every connection is
+ * owned by its own client, whose pool keeps exactly one session per host. The capacity window
+ * becomes the stream's HTTP/2 flow-control window, so throttling and writer backpressure pause
+ * one stream without stalling the others on its connection, and a failed or cancelled transfer
+ * resets its own stream only (see {@link StreamScopedFailures}). {@link #getConnectionsOpened()}
+ * counts the connections either protocol opened.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class AsyncHttpTransport implements DownloadTransport {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHttpTransport.class);
+
+    private final CloseableHttpAsyncClient[] httpClients; // one per connection to a host with HTTP/2, else one
+    private final StreamLanes streamLanes; // null unless HTTP/2
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final DownloadConfig config;
+    private final RequestConfig requestConfig;
+    private final RateLimiter rateLimiter;
+    private final WriterStage writerStage; // null = chunks are written on the reactor thread
+    private final ExecutorService completionExecutor; // null = complete on the reactor thread
+    private final TimerWheel deadlineTimer = new TimerWheel("async-deadlines", Duration.ofMillis(10), 512);
+
+    public AsyncHttpTransport(DownloadConfig config, RateLimiter rateLimiter) {
+        this(config, rateLimiter, null);
+    }
+
+    public AsyncHttpTransport(DownloadConfig config, RateLimiter rateLimiter, WriterStage writerStage) {
+        this.config = config;
+        this.rateLimiter = rateLimiter;
+        this.writerStage = writerStage;
+        // Completing waits for the writers to drain, or for an fsync, which must not stall the reactor
+        this.completionExecutor = writerStage == null && config.getFsyncPolicy() == FsyncPolicy.NONE
+                ? null
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("async-complete-", 0).factory());
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(config.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofSeconds(config.getReadTimeout()))
+                .build();
+        IOSessionListener connectionCounter = new ConnectionCounter(connectionsOpened);
+        int ioThreads;
+        if (config.getTransportMode() == TransportMode.HTTP2) {
+            int connections = config.getHttp2ConnectionsPerHost();
+            // The clients share the processors between their reactors
+            ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / connections);
+            this.streamLanes = new StreamLanes(connections, config.getHttp2MaxConcurrentStreams());
+            this.httpClients = new CloseableHttpAsyncClient[connections];
+            for (int i = 0; i < connections; i++) {
+                httpClients[i] = HttpAsyncClients.customHttp2()
+                        .setH2Config(H2Config.custom()
+                                .setPushEnabled(false)
+                                .setMaxConcurrentStreams(config.getHttp2MaxConcurrentStreams())
+                                .build())
+                        .setIOReactorConfig(IOReactorConfig.custom()
+                                .setIoThreadCount(ioThreads)
+                                .build())
+                        .setIOSessionListener(connectionCounter)
+                        .setDefaultConnectionConfig(connectionConfig)
+                        .addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "stream-scoped-failures",
+                                new StreamScopedFailures())
+                        .disableAutomaticRetries()
+                        .build();
+            }
+        } else {
+            PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(config.getMaxConcurrentDownloads() * 2 * SegmentPlanner.maxConnectionsPerDownload(config))
+                    .setMaxConnPerRoute(HostScheduler.maxConnectionsPerRoute(config))
+                    .setDefaultConnectionConfig(connectionConfig)
+                    .build();
+            ioThreads = Runtime.getRuntime().availableProcessors();
+            this.streamLanes = null;
+            this.httpClients = new CloseableHttpAsyncClient[] {HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setIOReactorConfig(IOReactorConfig.custom()
+                            .setIoThreadCount(ioThreads)
+                            .build())
+                    .setHttp1Config(Http1Config.custom().setBufferSize(config.getIoBufferSize()).build())
+                    .setIOSessionListener(connectionCounter)
+                    // Retries are scheduled by RetryPolicy, not by the client
+                    .disableAutomaticRetries()
+                    .build()};
+        }
+        this.requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(config.getConnectTimeout()))
+                // An inactivity timeout; the total time per URL is bounded by the request deadline
+                .setResponseTimeout(Timeout.ofSeconds(config.getReadTimeout()))
+                .build();
+        for (CloseableHttpAsyncClient httpClient : httpClients) {
+            httpClient.start();
+        }
+        logger.debug("Started {} async {} client(s) with {} I/O reactor threads each", httpClients.length,
+                streamLanes == null ? "HTTP/1.1" : "HTTP/2", ioThreads);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> execute(TransferRequest request, TransferHandler<T> transferHandler) {
+        TransferHandler<T> handler = ThroughputGuard.wrap(transferHandler, config);
+        BasicHttpRequest httpRequest = new BasicHttpRequest(request.method(), request.uri());
+        request.headers().forEach(httpRequest::setHeader);
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(requestConfig);
+        try {
+            DownloadTransport.awaitRequestToken(rateLimiter, request);
+        } catch (InterruptedIOException e) {
+            handler.onFailure(e);
+            return CompletableFuture.failedFuture(e);
+        }
+        StreamLanes.Lane lane;
+        try {
+            lane = streamLanes == null ? null : streamLanes.acquire(request.uri());
+        } catch (InterruptedIOException e) {
+            handler.onFailure(e);
+            return CompletableFuture.failedFuture(e);
+        }
+        CloseableHttpAsyncClient httpClient = httpClients[lane == null ? 0 : lane.index()];
+        StreamingResponseConsumer<T> consumer = rateLimiter.limitsBytes() || writerStage != null
+                ? new StreamingResponseConsumer<>(handler, request, rateLimiter.limitsBytes() ? rateLimiter : null,
+                        writerStage, completionExecutor, deadlineTimer, config.getIoBufferSize())
+                : new StreamingResponseConsumer<>(handler, completionExecutor);
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        handler.onSent();
+        // Set once the exchange exists; read by the callbacks to tell a deadline abort from other failures
+        AtomicReference<TimerWheel.Timeout> deadline = new AtomicReference<>();
+        Future<T> exchange = httpClient.execute(new BasicRequestProducer(httpRequest, null), consumer, null,
+                context, new FutureCallback<>() {
+                    @Override
+                    public void completed(T result) {
+                        long waitNanos = consumer.pendingThrottleNanos();
+                        if (waitNanos > 0) {
+                            deadlineTimer.schedule(() -> future.complete(result), Duration.ofNanos(waitNanos));
+                        } else {
+                            future.complete(result);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        // A handler failure arrives wrapped in the reset of its stream; see resetStream
+                        fail(ex instanceof HttpStreamResetException && ex.getCause() instanceof Exception cause ? cause : ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        fail(new IOException("Request cancelled"));
+                    }
+
+                    private void fail(Exception ex) {
+                        Exception failure = deadline.get() != null && deadline.get().isExpired()
+                                ? DownloadTransport.deadlineExceeded(request, ex)
+                                : ex;
+                        if (completionExecutor == null) {
+                            handler.onFailure(failure);
+                            future.completeExceptionally(failure);
+                            return;
+                        }
+                        completionExecutor.execute(() -> {
+                            handler.onFailure(failure);
+                            future.completeExceptionally(failure);
+                        });
+                    }
+                });
+        deadline.set(DownloadTransport.scheduleDeadline(deadlineTimer, request, () -> exchange.cancel(true)));
+        // Cancelling the returned future aborts the exchange and releases its connection
+        future.whenComplete((result, failure) -> {
+            if (lane != null) {
+                lane.release();
+            }
+            if (deadline.get() != null) {
+                deadline.get().cancel();
+            }
+            if (future.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deadlineTimer.close();
+        // A graceful HTTP/2 shutdown waits for the server to give up the streams it still serves,
+        // including those reset by a failed download; every transfer has settled by now anyway
+        CloseMode closeMode = streamLanes == null ? CloseMode.GRACEFUL : CloseMode.IMMEDIATE;
+        for (CloseableHttpAsyncClient httpClient : httpClients) {
+            httpClient.close(closeMode);
+        }
+        if (completionExecutor != null) {
+            completionExecutor.close();
+        }
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * Counts the connections the clients open; every other session event is ignored.
+     */
+    private record ConnectionCounter(AtomicLong connectionsOpened) implements IOSessionListener {
+        @Override
+        public void connected(IOSession session) {
+            connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void startTls(IOSession session) {
+        }
+
+        @Override
+        public void inputReady(IOSession session) {
+        }
+
+        @Override
+        public void outputReady(IOSession session) {
+        }
+
+        @Override
+        public void timeout(IOSession session) {
+        }
+
+        @Override
+        public void exception(IOSession session, Exception ex) {
+        }
+
+        @Override
+        public void disconnected(IOSession session) {
+        }
+    }
+
+    /**
+     * Keeps a failed HTTP/2 exchange from closing its connection. The client marks the connection
+     * of every failed or cancelled exchange as non-reusable and then discards it, which for HTTP/2
+     * closes it under every other stream multiplexed on it. A failed download resets its own stream,
+     * and a connection error shuts the connection down regardless, so the mark is ignored and the
+     * endpoint is released before the client gets to discard it.
+     */
+    private static final class StreamScopedFailures implements AsyncExecChainHandler {
+        @Override
+        public void execute(HttpRequest request, AsyncEntityProducer entityProducer, AsyncExecChain.Scope scope,
+                            AsyncExecChain chain, AsyncExecCallback callback) throws HttpException, IOException {
+            AsyncExecRuntime execRuntime = new StreamScopedExecRuntime(scope.execRuntime);
+            chain.proceed(request, entityProducer, new AsyncExecChain.Scope(scope.exchangeId, scope.route,
+                    scope.originalRequest, scope.cancellableDependency, scope.clientContext, execRuntime,
+                    scope.scheduler, scope.execCount), new AsyncExecCallback() {
+                @Override
+                public AsyncDataConsumer handleResponse(HttpResponse response, EntityDetails entityDetails)
+                        throws HttpException, IOException {
+                    return callback.handleResponse(response, entityDetails);
+                }
+
+                @Override
+                public void handleInformationResponse(HttpResponse response) throws HttpException, IOException {
+                    callback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed() {
+                    callback.completed();
+                }
+
+                @Override
+                public void failed(Exception cause) {
+                    execRuntime.releaseEndpoint();
+                    callback.failed(cause);
+                }
+            });
+        }
+    }
+
+    /**
+     * Delegates to the client's runtime, except that a connection is never marked non-reusable.
+     */
+    private record StreamScopedExecRuntime(AsyncExecRuntime delegate) implements AsyncExecRuntime {
+        @Override
+        public void markConnectionNonReusable() {
+        }
+
+        @Override
+        public boolean isEndpointAcquired() {
+            return delegate.isEndpointAcquired();
+        }
+
+        @Override
+        public Cancellable acquireEndpoint(String id, HttpRoute route, Object state, HttpClientContext context,
+                                           FutureCallback<AsyncExecRuntime> callback) {
+            return delegate.acquireEndpoint(id, route, state, context, callback);
+        }
+
+        @Override
+        public void releaseEndpoint() {
+            delegate.releaseEndpoint();
+        }
+
+        @Override
+        public void discardEndpoint() {
+            delegate.discardEndpoint();
+        }
+
+        @Override
+        public boolean isEndpointConnected() {
+            return delegate.isEndpointConnected();
+        }
+
+        @Override
+        public Cancellable connectEndpoint(HttpClientContext context, FutureCallback<AsyncExecRuntime> callback) {
+            return delegate.connectEndpoint(context, callback);
+        }
+
+        @Override
+        public void disconnectEndpoint() {
+            delegate.disconnectEndpoint();
+        }
+
+        @Override
+        public void upgradeTls(HttpClientContext context) {
+            delegate.upgradeTls(context);
+        }
+
+        @Override
+        public void upgradeTls(HttpClientContext context, FutureCallback<AsyncExecRuntime> callback) {
+            delegate.upgradeTls(context, callback);
+        }
+
+        @Override
+        public EndpointInfo getEndpointInfo() {
+            return delegate.getEndpointInfo();
+        }
+
+        @Override
+        public boolean validateConnection() {
+            return delegate.validateConnection();
+        }
+
+        @Override
+        public Cancellable execute(String id, AsyncClientExchangeHandler exchangeHandler, HttpClientContext context) {
+            return delegate.execute(id, exchangeHandler, context);
+        }
+
+        @Override
+        public void markConnectionReusable(Object state, TimeValue validDuration) {
+            delegate.markConnectionReusable(state, validDuration);
+        }
+
+        @Override
+        public AsyncExecRuntime fork() {
+            return new StreamScopedExecRuntime(delegate.fork());
+        }
+    }
+
+    /**
+     * Streams the response into a {@link TransferHandler} from the I/O reactor thread. Failures
+     * raised by the handler are reported through the result callback, which the client
+     * forwards to the request's {@link FutureCallback}. With a byte-rate limit or a writer stage
+     * the consumer also paces the connection through its capacity window.
+     */
+    private static final class StreamingResponseConsumer<T> implements AsyncResponseConsumer<T> {
+        private final TransferHandler<T> handler;
+        private final TransferRequest request;
+        private final RateLimiter rateLimiter; // null = reads are not throttled
+        private final WriterStage writerStage; // null = reads do not wait for the disk writers
+        private final ExecutorService completionExecutor; // null = complete on the reactor thread
+        private final TimerWheel timer;
+        private final int windowIncrement;
+        private FutureCallback<T> resultCallback;
+        private volatile long resumeAtNanos; // written on the reactor thread
+        private final AtomicLong pausedAtNanos = new AtomicLong(); // 0 = the window is not withheld
+
+        StreamingResponseConsumer(TransferHandler<T> handler, ExecutorService completionExecutor) {
+            this(handler, null, null, null, completionExecutor, null, Integer.MAX_VALUE);
+        }
+
+        StreamingResponseConsumer(TransferHandler<T> handler, TransferRequest request, RateLimiter rateLimiter,
+                                  WriterStage writerStage, ExecutorService completionExecutor, TimerWheel timer,
+                                  int windowIncrement) {
+            this.handler = handler;
+            this.request = request;
+            this.rateLimiter = rateLimiter;
+            this.writerStage = writerStage;
+            this.completionExecutor = completionExecutor;
+            this.timer = timer;
+            this.windowIncrement = windowIncrement;
+            this.resumeAtNanos = System.nanoTime();
+        }
+
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                    FutureCallback<T> resultCallback) throws HttpException, IOException {
+            this.resultCallback = resultCallback;
+            try {
+                handler.onResponse(response, entityDetails);
+            } catch (IOException e) {
+                throw resetStream(e);
+            }
+            if (entityDetails == null) {
+                complete();
+            }
+        }
+
+        /**
+         * Wraps a handler failure so that it fails this exchange alone. HTTP/2 resets only the
+         * stream for a stream-reset exception, but shuts down the connection, and every other
+         * transfer multiplexed on it, for any other exception. HTTP/1.1 drops the connection
+         * either way.
+         */
+        private static HttpStreamResetException resetStream(IOException cause) {
+            return new HttpStreamResetException(cause.getMessage(), cause);
+        }
+
+        @Override
+        public void informationResponse(HttpResponse response, HttpContext context) {
+            // 1xx responses carry no body for a download
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            // The window is granted once the byte tokens are due and the disk writers have room
+            long waitNanos = pendingThrottleNanos();
+            if (waitNanos > 0) {
+                pausedAtNanos.compareAndSet(0, System.nanoTime());
+                timer.schedule(() -> grant(capacityChannel), Duration.ofNanos(waitNanos));
+            } else {
+                if (writerStage != null && !writerStage.hasCapacity()) {
+                    // Before admit: a writer may grant the window from its own thread at once
+                    pausedAtNanos.compareAndSet(0, System.nanoTime());
+                }
+                if (writerStage == null || writerStage.admit(() -> grant(capacityChannel))) {
+                    reportPause(true);
+                    capacityChannel.update(windowIncrement);
+                }
+            }
+        }
+
+        /**
+         * Tells the handler how long the window has been withheld so far, so that time is not
+         * held against the transfer's throughput.
+         *
+         * @param ended whether the window is granted again; otherwise the pause goes on
+         */
+        private void reportPause(boolean ended) {
+            long start = pausedAtNanos.get();
+            if (start != 0) {
+                long now = System.nanoTime();
+                if (pausedAtNanos.compareAndSet(start, ended ? 0 : now)) {
+                    handler.onPaused(now - start);
+                }
+            }
+        }
+
+        private void grant(CapacityChannel capacityChannel) {
+            try {
+                updateCapacity(capacityChannel);
+            } catch (IOException e) {
+                logger.debug("Could not resume paused transfer of {}", request.uri(), e);
+            }
+        }
+
+        /**
+         * Returns how long the transfer must still wait for the byte tokens it has used.
+         *
+         * @return the remaining wait in nanoseconds, 0 or less if there is none
+         */
+        long pendingThrottleNanos() {
+            return rateLimiter == null ? 0 : resumeAtNanos - System.nanoTime();
+        }
+
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            int bytes = src.remaining();
+            // Bytes the socket already held may arrive while the window is withheld
+            reportPause(false);
+            try {
+                handler.onData(src);
+            } catch (IOException e) {
+                throw resetStream(e);
+            }
+            if (rateLimiter != null) {
+                long waitNanos = rateLimiter.reserveBytes(request.uri(), bytes);
+                if (waitNanos > 0) {
+                    resumeAtNanos = Math.max(resumeAtNanos, System.nanoTime() + waitNanos);
+                }
+            }
+        }
+
+        @Override
+        public void streamEnd(List<? extends Header> trailers) throws HttpException, IOException {
+            complete();
+        }
+
+        /**
+         * Completes the handler once the response has ended, off the reactor thread if there is a
+         * completion executor. The stream has ended by then, so a failure is reported directly
+         * instead of resetting it.
+         */
+        private void complete() {
+            if (completionExecutor == null) {
+                T result;
+                try {
+                    result = handler.onComplete();
+                } catch (IOException e) {
+                    resultCallback.failed(e);
+                    return;
+                }
+                resultCallback.completed(result);
+                return;
+            }
+            completionExecutor.execute(() -> {
+                T result;
+                try {
+                    result = handler.onComplete();
+                } catch (Exception e) {
+                    resultCallback.failed(e);
+                    return;
+                }
+                resultCallback.completed(result);
+            });
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            // Reported to the request callback by the client
+        }
+
+        @Override
+        public void releaseResources() {
+            // The handler owns the output and releases it in onComplete/onFailure
+        }
+    }
+}
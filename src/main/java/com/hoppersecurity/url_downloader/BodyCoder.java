@@ -0,0 +1,50 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Transforms a response body on its way to the sink: {@link ContentDecoder} decodes a content
+ * coding, {@link GzipEncoder} compresses an uncompressed body for storage. A coder writes what it
+ * produces to the {@link Target} it was created with.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+interface BodyCoder {
+
+    /**
+     * Receives the bytes a coder produces.
+     */
+    @FunctionalInterface
+    interface Target {
+        /**
+         * Writes a chunk of the transformed body.
+         *
+         * @param data the chunk; fully consumed on return
+         * @throws IOException if the chunk cannot be written
+         */
+        void write(ByteBuffer data) throws IOException;
+    }
+
+    /**
+     * Transforms a chunk of the body.
+     *
+     * @param data the chunk; fully consumed on return
+     * @throws IOException if the chunk cannot be transformed or written
+     */
+    void write(ByteBuffer data) throws IOException;
+
+    /**
+     * Writes what the coder still holds once the whole body was written, and checks that the
+     * body was complete.
+     *
+     * @throws IOException if the body ended early or its output cannot be written
+     */
+    void finish() throws IOException;
+
+    /**
+     * Releases the native memory of the coder; called once, whether or not it finished.
+     */
+    void end();
+}
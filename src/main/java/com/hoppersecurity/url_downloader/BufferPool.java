@@ -0,0 +1,101 @@
+package com.hoppersecurity.url_downloader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of equally sized I/O buffers shared by all transfers, so that the steady-state download
+ * loop allocates no buffers at all.
+ *
+ * <p>Each platform thread keeps the buffer it released last and gets it back on its next
+ * {@link #acquire()} without touching shared state; a fixed worker pool therefore settles on one
+ * buffer per worker. Virtual threads are short-lived and would only strand buffers in their
+ * thread-locals, so they go straight to a shared queue holding at most {@code maxPooled}
+ * buffers. Buffers released while the queue is full are left to the garbage collector, which
+ * bounds the memory the pool can hold to {@code (threads + maxPooled) * bufferSize}.
+ *
+ * <p>Thread Safety: all methods may be called concurrently. A buffer must not be used after it
+ * has been released.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> shared;
+    private final ThreadLocal<ByteBuffer> threadCache = new ThreadLocal<>();
+    private final LongAdder allocations = new LongAdder();
+
+    /**
+     * Creates an empty pool; buffers are allocated on demand.
+     *
+     * @param bufferSize capacity of every buffer, in bytes
+     * @param maxPooled  how many released buffers the shared queue keeps
+     * @param direct     whether to allocate direct buffers instead of heap buffers
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxPooled must be greater than 0");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.shared = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one only if none is free.
+     *
+     * @return a buffer with position 0 and limit equal to its capacity
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = null;
+        if (!Thread.currentThread().isVirtual()) {
+            buffer = threadCache.get();
+            if (buffer != null) {
+                threadCache.set(null);
+            }
+        }
+        if (buffer == null) {
+            buffer = shared.poll();
+        }
+        if (buffer == null) {
+            allocations.increment();
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire()} to the pool.
+     *
+     * @param buffer the buffer, which the caller must no longer use
+     * @throws IllegalArgumentException if the buffer was not allocated by a pool of this shape
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            throw new IllegalArgumentException("Buffer does not belong to this pool");
+        }
+        if (!Thread.currentThread().isVirtual() && threadCache.get() == null) {
+            threadCache.set(buffer);
+            return;
+        }
+        shared.offer(buffer); // dropped if the pool is full
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns how many buffers the pool has allocated since it was created; once the pool is
+     * warm this stays constant however many transfers run.
+     *
+     * @return the number of allocations
+     */
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+}
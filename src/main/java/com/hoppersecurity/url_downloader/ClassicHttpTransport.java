@@ -0,0 +1,161 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.ManagedHttpClientConnectionFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link DownloadTransport} backed by the Apache HttpClient 5 classic (blocking) client.
+ *
+ * <p>The exchange runs entirely on the calling thread: the worker blocks while the request is
+ * sent and while the response body is read from the entity {@code InputStream}, then receives
+ * an already-completed future. A request with a deadline is aborted from the timer thread
+ * when the deadline passes, which unblocks the worker even if the server keeps trickling bytes.
+ *
+ * <p>The body is read in {@code ioBufferSize} chunks. Reads of that size bypass the client's
+ * session buffer and go from the socket straight into the chunk, which the handler then writes
+ * to its {@code FileChannel}; the connection's own buffer is sized to match, so a 1 GB body
+ * costs a few thousand read and write system calls instead of a few hundred thousand. Chunks
+ * come from a {@link BufferPool} sized for every concurrent transfer, so once the pool is warm
+ * a download allocates no I/O buffer at all. The buffers are heap buffers because the entity
+ * stream can only read into a {@code byte[]}.
+ *
+ * <p>Rate limits are enforced on the worker too: it parks before sending until the
+ * {@link RateLimiter} grants a request token, and after every chunk until the chunk's byte
+ * tokens are due. While it is parked nothing reads from the socket, so TCP flow control slows
+ * the server down to the permitted rate. With a {@link WriterStage} the handler's writes only
+ * queue the chunk, and the worker parks the same way after a chunk while the disk writers are
+ * behind.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class ClassicHttpTransport implements DownloadTransport {
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig requestConfig;
+    private final DownloadConfig config;
+    private final BufferPool bufferPool;
+    private final RateLimiter rateLimiter;
+    private final WriterStage writerStage; // null = the handler writes on this thread
+    private final TimerWheel deadlineTimer = new TimerWheel("classic-deadlines", Duration.ofMillis(10), 512);
+
+    public ClassicHttpTransport(DownloadConfig config, RateLimiter rateLimiter) {
+        this(config, rateLimiter, null);
+    }
+
+    public ClassicHttpTransport(DownloadConfig config, RateLimiter rateLimiter, WriterStage writerStage) {
+        this.config = config;
+        this.rateLimiter = rateLimiter;
+        this.writerStage = writerStage;
+        int bufferSize = config.getIoBufferSize();
+        int maxTransfers = config.getMaxConcurrentDownloads() * SegmentPlanner.maxConnectionsPerDownload(config);
+        this.bufferPool = new BufferPool(bufferSize, maxTransfers, false);
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setConnectionFactory(ManagedHttpClientConnectionFactory.builder()
+                        .http1Config(Http1Config.custom().setBufferSize(bufferSize).build())
+                        .build())
+                .setMaxConnTotal(config.getMaxConcurrentDownloads() * 2 * SegmentPlanner.maxConnectionsPerDownload(config))
+                .setMaxConnPerRoute(HostScheduler.maxConnectionsPerRoute(config))
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofSeconds(config.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.ofSeconds(config.getReadTimeout()))
+                        .build())
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                // Retries are scheduled by RetryPolicy; the client's own strategy would sleep on the worker
+                .disableAutomaticRetries()
+                // Accept-Encoding and decoding follow DownloadConfig.compression, as in the async transport
+                .disableContentCompression()
+                .build();
+        this.requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(config.getConnectTimeout()))
+                // An inactivity timeout; the total time per URL is bounded by the request deadline
+                .setResponseTimeout(Timeout.ofSeconds(config.getReadTimeout()))
+                .build();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> execute(TransferRequest request, TransferHandler<T> transferHandler) {
+        TransferHandler<T> handler = ThroughputGuard.wrap(transferHandler, config);
+        HttpUriRequestBase httpRequest = new HttpUriRequestBase(request.method(), request.uri());
+        request.headers().forEach(httpRequest::setHeader);
+        httpRequest.setConfig(requestConfig);
+        try {
+            DownloadTransport.awaitRequestToken(rateLimiter, request);
+        } catch (InterruptedIOException e) {
+            handler.onFailure(e);
+            return CompletableFuture.failedFuture(e);
+        }
+        TimerWheel.Timeout deadline = DownloadTransport.scheduleDeadline(deadlineTimer, request, httpRequest::cancel);
+        boolean limitBytes = rateLimiter.limitsBytes();
+        handler.onSent();
+
+        try (ClassicHttpResponse response = httpClient.executeOpen(null, httpRequest, HttpClientContext.create())) {
+            HttpEntity entity = response.getEntity();
+            handler.onResponse(response, entity);
+            if (entity != null) {
+                ByteBuffer chunk = bufferPool.acquire();
+                try (InputStream inputStream = entity.getContent()) {
+                    try {
+                        int bytesRead;
+                        while ((bytesRead = inputStream.read(chunk.array(), 0, chunk.capacity())) != -1) {
+                            handler.onData(chunk.clear().limit(bytesRead));
+                            long throttleNanos = limitBytes ? rateLimiter.reserveBytes(request.uri(), bytesRead) : 0;
+                            if (throttleNanos > 0) {
+                                long pausedAt = System.nanoTime();
+                                RateLimiter.park(throttleNanos);
+                                handler.onPaused(System.nanoTime() - pausedAt);
+                            }
+                            if (writerStage != null) {
+                                long pausedNanos = writerStage.awaitCapacity();
+                                if (pausedNanos > 0) {
+                                    handler.onPaused(pausedNanos);
+                                }
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Closing the stream would first drain the rest of the body; drop the connection instead
+                        httpRequest.cancel();
+                        throw e;
+                    }
+                } finally {
+                    bufferPool.release(chunk);
+                }
+            }
+            return CompletableFuture.completedFuture(handler.onComplete());
+        } catch (Exception e) {
+            Exception failure = deadline != null && deadline.isExpired() ? DownloadTransport.deadlineExceeded(request, e) : e;
+            handler.onFailure(failure);
+            return CompletableFuture.failedFuture(failure);
+        } finally {
+            if (deadline != null) {
+                deadline.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        deadlineTimer.close();
+        httpClient.close();
+    }
+}
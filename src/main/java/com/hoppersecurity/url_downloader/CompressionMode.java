@@ -0,0 +1,27 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * Whether {@link ConcurrentUrlDownloader} asks servers to compress response bodies, and what it
+ * stores when they do.
+ *
+ * <ul>
+ *   <li>{@link #IDENTITY} - No {@code Accept-Encoding} is sent; bodies arrive and are stored as
+ *       they are. The only mode in which segmented downloads are used.</li>
+ *   <li>{@link #DECOMPRESS} - Sends {@code Accept-Encoding: gzip, deflate} and decodes a
+ *       compressed body while it streams, so the sink receives the original content.</li>
+ *   <li>{@link #STORE} - Sends {@code Accept-Encoding: gzip, deflate} and stores a compressed body
+ *       as received; the result records its {@link DownloadResult#contentEncoding()}.</li>
+ * </ul>
+ * A body stored compressed, by {@link #STORE} or by {@code gzipAtRest}, is what the digest,
+ * {@code expectedContent} and the file size describe. A body that is decoded or compressed on the
+ * way to the sink cannot be resumed after a failure; its retry starts over.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see DownloadConfig#getCompression()
+ */
+public enum CompressionMode {
+    IDENTITY,
+    DECOMPRESS,
+    STORE
+}
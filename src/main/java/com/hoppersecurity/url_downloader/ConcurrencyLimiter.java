@@ -0,0 +1,146 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+
+/**
+ * Adaptive limit on the number of in-flight downloads, driven by response latency and errors.
+ *
+ * <p>With {@code adaptiveConcurrency} enabled the limit starts at {@code minConcurrentDownloads}
+ * and moves between that floor and {@code maxConcurrentDownloads} using additive increase,
+ * multiplicative decrease (AIMD):
+ * <ul>
+ *   <li>every successful response adds {@code 1/limit}, so the limit grows by about one per
+ *       round of downloads; until the first sign of congestion it grows by one per response
+ *       instead ("slow start"), doubling every round;</li>
+ *   <li>a sign of congestion multiplies the limit by {@link #BACKOFF_RATIO}. Congestion is an
+ *       overload error (see {@link #isOverloadSignal(Throwable)}) or a latency gradient: the
+ *       short-term average of the time to first byte exceeding {@link #RTT_TOLERANCE} times the
+ *       long-term average, which means requests have started to queue at the server.</li>
+ * </ul>
+ * Decreases are applied at most once per short-term round trip, so a burst of failures from
+ * one overload episode cuts the limit by a quarter once instead of collapsing it to the floor.
+ * Successes observed while fewer than half the permitted downloads are running do not raise the
+ * limit, since they say nothing about whether more concurrency would be tolerated.
+ *
+ * <p>Without {@code adaptiveConcurrency} the limit is fixed at {@code maxConcurrentDownloads}
+ * and samples are ignored.
+ *
+ * <p>Thread Safety: all methods are thread-safe; samples are reported from the worker threads.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class ConcurrencyLimiter {
+    /** How far short-term latency may rise above the long-term baseline before it counts as congestion. */
+    static final double RTT_TOLERANCE = 2.0;
+
+    /** Factor applied to the limit on congestion. */
+    static final double BACKOFF_RATIO = 0.75;
+
+    private static final double SHORT_RTT_WEIGHT = 0.25;
+    private static final double LONG_RTT_WEIGHT = 0.02;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private boolean slowStart = true;
+    private double shortRttNanos; // 0 = no sample yet
+    private double longRttNanos;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+
+    public ConcurrencyLimiter(DownloadConfig config) {
+        this.adaptive = config.isAdaptiveConcurrency();
+        this.maxLimit = config.getMaxConcurrentDownloads();
+        this.minLimit = Math.max(1, Math.min(config.getMinConcurrentDownloads(), maxLimit));
+        this.limit = adaptive ? minLimit : maxLimit;
+    }
+
+    /**
+     * Returns whether a failure suggests the server or the network is overloaded: a timeout or
+     * other I/O error, or one of the HTTP statuses {@code 408}, {@code 429}, {@code 502},
+     * {@code 503} and {@code 504}. Other HTTP errors say nothing about load, and neither do local
+     * failures: a body that fails its integrity checks or a sink that is out of capacity.
+     *
+     * @param cause the failure of a download attempt
+     * @return {@code true} if the limit should be lowered
+     */
+    public static boolean isOverloadSignal(Throwable cause) {
+        if (cause instanceof HttpStatusException statusException) {
+            int status = statusException.getStatusCode();
+            return status == 408 || status == 429 || status == 502 || status == 503 || status == 504;
+        }
+        if (cause instanceof IntegrityException || cause instanceof SinkCapacityException) {
+            return false;
+        }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Returns the current limit; this is the value exposed as the concurrency-limit metric.
+     *
+     * @return the number of downloads allowed in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Feeds the latency of a successful response into the limit.
+     *
+     * @param responseNanos time from sending the request to receiving the response headers
+     * @param inFlight      downloads in flight when the response completed
+     * @return the new limit
+     */
+    public int onSuccess(long responseNanos, int inFlight) {
+        return onSuccess(responseNanos, inFlight, System.nanoTime());
+    }
+
+    /**
+     * Lowers the limit after an overload failure.
+     *
+     * @return the new limit
+     */
+    public int onOverload() {
+        return onOverload(System.nanoTime());
+    }
+
+    synchronized int onSuccess(long responseNanos, int inFlight, long nowNanos) {
+        if (!adaptive || responseNanos <= 0) {
+            return (int) limit;
+        }
+        if (shortRttNanos == 0) {
+            shortRttNanos = responseNanos;
+            longRttNanos = responseNanos;
+        } else {
+            shortRttNanos += (responseNanos - shortRttNanos) * SHORT_RTT_WEIGHT;
+            longRttNanos += (responseNanos - longRttNanos) * LONG_RTT_WEIGHT;
+        }
+
+        if (shortRttNanos > longRttNanos * RTT_TOLERANCE) {
+            decrease(nowNanos);
+        } else if (inFlight * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + (slowStart ? 1 : 1 / limit));
+        }
+        return (int) limit;
+    }
+
+    synchronized int onOverload(long nowNanos) {
+        if (adaptive) {
+            decrease(nowNanos);
+        }
+        return (int) limit;
+    }
+
+    private void decrease(long nowNanos) {
+        if (decreased && nowNanos - lastDecreaseNanos < shortRttNanos) {
+            return; // same congestion episode
+        }
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        slowStart = false;
+        decreased = true;
+        lastDecreaseNanos = nowNanos;
+    }
+}
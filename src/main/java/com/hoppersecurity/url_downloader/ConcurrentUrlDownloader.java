@@ -1,23 +1,11 @@
 package com.hoppersecurity.url_downloader;
 
-import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
-import org.apache.hc.client5.http.protocol.HttpClientContext;
-import org.apache.hc.core5.http.ClassicHttpResponse;
-import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,24 +13,100 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Concurrent URL downloader for efficient multi-threaded file downloads.
  * 
  * This class provides efficient concurrent downloading capabilities with the following features:
  * - Configurable thread pool size for concurrent downloads
+ * - Optional virtual-thread execution with concurrency capped by the host scheduler
+ * - Per-host concurrency limits with weighted round-robin dispatch across hosts
+ * - Optional adaptive global limit (AIMD on latency and overload errors) instead of a fixed one
+ * - Streaming mode with bounded memory: URLs are read lazily, results go to a sink
  * - HTTP connection pooling for optimal resource utilization
- * - Retry logic with exponential backoff for failed downloads
+ * - Classic (blocking) or fully asynchronous NIO transport behind one abstraction
+ * - Optional segmented mode fetching large files as parallel byte ranges
+ * - Non-blocking retries with jittered exponential backoff that honor Retry-After on 429/503
+ * - Retries resume partial files with Range/If-Range instead of starting over
+ * - A wall-clock deadline per URL across all attempts, enforced by one shared timer wheel
  * - Real-time progress logging with completion order tracking
  * - Proper resource cleanup and shutdown procedures
  * - Thread-safe result collection and reporting
+ * - Pluggable output through the {@link DownloadSink} SPI, metered to separate storage from network cost
  * 
- * The downloader uses Apache HttpClient 5 for HTTP operations and manages its own
- * ExecutorService for thread pool management. Each download operation is isolated,
+ * The downloader uses Apache HttpClient 5 for HTTP operations through a pluggable
+ * {@link DownloadTransport} (classic blocking client or async NIO client, see {@link TransportMode})
+ * and manages its own ExecutorService for thread pool management. Each download operation is isolated,
  * ensuring that failures in one download do not affect others.
  * 
+ * Concurrency is bounded by a {@link HostScheduler} rather than by the size of the executor: it
+ * holds one queue per host, enforces the global and per-host limits, and interleaves hosts in
+ * weighted round-robin order so a slow host cannot take every worker. With
+ * {@link ExecutionMode#VIRTUAL_THREADS} each download runs on its own virtual thread, so the
+ * number of in-flight transfers is no longer tied to the number of platform threads.
+ * 
+ * A failed attempt never sleeps on its worker. The {@link RetryPolicy} decides whether and after
+ * how long to retry, and the attempt goes back to the {@link HostScheduler}, which frees its slot
+ * and re-dispatches the URL when the backoff expires. A batch full of flaky URLs therefore no
+ * longer parks the workers while healthy URLs wait behind them.
+ * 
+ * With {@code adaptiveConcurrency} the global limit itself is not fixed: a {@link ConcurrencyLimiter}
+ * raises it while responses stay fast and lowers it when latency climbs or the server answers with
+ * timeouts, 429 or 503, and the scheduler applies each change to the next dispatch. The current
+ * value is available from {@link #getConcurrencyLimit()}.
+ *
+ * Independently of concurrency, a {@link RateLimiter} caps requests and response bytes per second,
+ * globally and per host. The transport draws from it on every request and every chunk it reads,
+ * and the total time transfers spent waiting for it is available from {@link #getThrottledTime()}.
+ *
+ * With a {@code metadataStore} configured, runs are incremental: the {@link MetadataStore} keeps the
+ * ETag and Last-Modified of every file downloaded, and the next run requests the URL with
+ * {@code If-None-Match}/{@code If-Modified-Since}. A {@code 304} keeps the existing file and yields a
+ * "not modified" result, so unchanged URLs cost a round trip instead of their full size.
+ *
+ * With {@link OutputLayout#HASHED} a URL is always written to the same path, derived from the
+ * hash of the URL and sharded into subdirectories, and the {@link OutputIndex} records every
+ * assignment; the default {@link OutputLayout#TIMESTAMPED} writes timestamped names into one
+ * directory. {@link OutputLayout#CONTENT_ADDRESSED} hashes each body while it streams to disk and
+ * keeps one copy of every distinct content in a {@link ContentStore}.
+ *
+ * URLs listed in {@code expectedContent} are verified while they stream: a size or SHA-256 that
+ * differs from the {@link ExpectedContent} fails the attempt with a retryable
+ * {@link IntegrityException}, so files never have to be read back to be checked. Such URLs are
+ * never split into segments, whose bytes arrive out of order. In the content-addressed layout a URL
+ * whose expected digest is already stored is not downloaded at all.
+ *
+ * With {@link DownloadConfig#getCompression()} other than {@link CompressionMode#IDENTITY}, every
+ * request carries {@code Accept-Encoding: gzip, deflate}, and a compressed body is decoded while it
+ * streams or stored as received; with {@code gzipAtRest}, uncompressed bodies are gzipped on their
+ * way to the sink. Bodies are then never split into segments. The bytes received and stored are
+ * available from {@link #getReceivedBodyBytes()} and {@link #getStoredBodyBytes()}.
+ *
+ * With a {@code journalFile} configured, every final result is appended to a {@link DownloadJournal}
+ * as it is recorded. If the process dies, a run with {@link DownloadConfig#isResume()} set replays
+ * the journal and schedules only the URLs it does not record as completed.
+ * 
+ * Content is streamed into a {@link DownloadSink}: files under the output directory by default, or
+ * the sink selected by {@link DownloadConfig#getSink()} or passed to
+ * {@link #ConcurrentUrlDownloader(DownloadConfig, DownloadSink)}. Resuming partial files, segmented
+ * downloads, the metadata store and every layout but {@link OutputLayout#TIMESTAMPED} work on files
+ * and need a {@link FileSink}. {@link #getSinkMetrics()} reports the bytes written and the time
+ * spent inside the sink. With {@code writerThreads} set, the sink is written by a
+ * {@link WriterStage} instead of the threads reading the network, which pause while the writers
+ * are more than {@code maxInFlightWriteBytes} behind ({@link #getWriterStage()}).
+ * 
+ * Memory use is bounded regardless of batch size: URLs are pulled lazily from a {@link UrlSource}
+ * into the scheduler only while their host has fewer than {@code maxQueuedUrls} waiting. Past
+ * that many waiting in total, reading goes on only while every host with waiting URLs is at its
+ * concurrency limit (see {@link HostScheduler#tryAdd(String)}), so a host-clustered list does
+ * not hold back the hosts further down it. {@link #downloadAll(Consumer)} hands every result to
+ * a caller-supplied sink instead of keeping it. {@link #downloadAll()} is the convenience form that collects the results into a list.
+ * 
  * Example usage:
  * <pre>{@code
  * DownloadConfig config = new DownloadConfig();
@@ -65,14 +129,38 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class ConcurrentUrlDownloader {
     private static final Logger logger = LoggerFactory.getLogger(ConcurrentUrlDownloader.class);
+    private static final int COMPLETION_QUEUE_CAPACITY = 10_000;
     
     private final DownloadConfig config;
-    private final CloseableHttpClient httpClient;
+    private final DownloadTransport transport;
+    private final MeteredSink sink;
+    private final WriterStage writerStage; // null unless writerThreads is set
+    private final DownloadSink outputSink; // where attempts write: the writer stage, or the sink itself
     private final ExecutorService executorService;
+    private final HostScheduler scheduler;
+    private final RetryPolicy retryPolicy;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final RateLimiter rateLimiter;
+    private final SegmentedDownloader segmentedDownloader; // null unless segmented downloads are enabled
+    private final MetadataStore metadataStore; // null unless incremental downloads are enabled
+    private final DownloadJournal journal; // null unless a journal file is configured
+    private final OutputIndex outputIndex; // null with the TIMESTAMPED output layout
+    private final ContentStore contentStore; // null unless the output layout is CONTENT_ADDRESSED
+    private final DownloadJournal.CompletedUrls completedUrls; // null unless resuming
+    private final Map<String, ExpectedContent> expectedContent;
+    private final Map<Path, String> resumeValidators = new ConcurrentHashMap<>(); // partial files awaiting a retry
     private final BlockingQueue<DownloadResult> completionQueue;
-    private final List<DownloadResult> allResults = new ArrayList<>();
+    private final Object resultSinkLock = new Object();
+    private Consumer<DownloadResult> resultSink = result -> { };
+    private String heldUrl; // read from the URL source but not yet admitted by the scheduler
     private final AtomicInteger completedCount = new AtomicInteger(0);
     private final AtomicInteger failedCount = new AtomicInteger(0);
+    private final AtomicInteger notModifiedCount = new AtomicInteger(0);
+    private final AtomicInteger resumedCount = new AtomicInteger(0);
+    private final AtomicInteger integrityFailureCount = new AtomicInteger(0);
+    private final AtomicInteger compressedResponseCount = new AtomicInteger(0);
+    private final LongAdder receivedBodyBytes = new LongAdder();
+    private final LongAdder storedBodyBytes = new LongAdder();
 
     /**
      * Creates a new ConcurrentUrlDownloader with the specified configuration.
@@ -80,30 +168,146 @@ public class ConcurrentUrlDownloader {
      * @param config the download configuration
      */
     public ConcurrentUrlDownloader(DownloadConfig config) {
+        this(config, DownloadSink.create(config));
+    }
+
+    /**
+     * Creates a downloader that streams content into the given sink instead of the one the
+     * configuration selects. The downloader closes the sink when the run ends.
+     * 
+     * @param config the download configuration
+     * @param sink   where downloaded content goes
+     * @throws IllegalArgumentException if the configuration uses a feature that needs a {@link FileSink}
+     */
+    public ConcurrentUrlDownloader(DownloadConfig config, DownloadSink sink) {
+        if (!(sink instanceof FileSink) && (config.getOutputLayout() != OutputLayout.TIMESTAMPED
+                || config.getMetadataStore() != null || SegmentPlanner.isEnabled(config))) {
+            throw new IllegalArgumentException("The " + config.getOutputLayout() + " layout, metadataStore and "
+                    + "segmented downloads need a FileSink, not " + sink);
+        }
         this.config = config;
-        this.completionQueue = new LinkedBlockingQueue<>();
-        
-        // Configure HTTP client
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-        connectionManager.setMaxTotal(config.getMaxConcurrentDownloads() * 2);
-        connectionManager.setDefaultMaxPerRoute(config.getMaxConcurrentDownloads());
+        this.sink = new MeteredSink(sink);
+        this.writerStage = config.getWriterThreads() > 0 ? WriterStage.create(this.sink, config) : null;
+        this.outputSink = writerStage != null ? writerStage : this.sink;
+        this.completionQueue = new LinkedBlockingQueue<>(COMPLETION_QUEUE_CAPACITY);
         
-        this.httpClient = HttpClients.custom()
-                .setConnectionManager(connectionManager)
-                .build();
+        // Configure HTTP transport (owns the HTTP client and its connection pool)
+        this.rateLimiter = new RateLimiter(config);
+        this.transport = DownloadTransport.create(config, rateLimiter, writerStage);
+        logger.debug("Created {} HTTP transport", config.getTransportMode());
         
-        // Create our own ExecutorService
-        this.executorService = Executors.newFixedThreadPool(config.getMaxConcurrentDownloads());
+        // Create our own ExecutorService; the host scheduler caps in-flight downloads in every mode
+        this.executorService = createExecutorService();
+        this.scheduler = new HostScheduler(config);
+        this.retryPolicy = new RetryPolicy(config);
+        this.concurrencyLimiter = new ConcurrencyLimiter(config);
+        scheduler.setGlobalLimit(concurrencyLimiter.getLimit());
+        this.metadataStore = openMetadataStore();
+        this.outputIndex = openOutputIndex();
+        this.contentStore = config.getOutputLayout() == OutputLayout.CONTENT_ADDRESSED
+                ? new ContentStore(Paths.get(config.getOutputDirectory()))
+                : null;
+        this.expectedContent = config.getExpectedContent() == null ? Map.of() : config.getExpectedContent();
+        this.completedUrls = config.isResume() ? replayJournal() : null;
+        this.journal = openJournal();
+        // A segment is a byte range of the body as sent, which a decoded or gzipped file does not have
+        boolean transformsBodies = config.getCompression() != CompressionMode.IDENTITY || config.isGzipAtRest();
+        this.segmentedDownloader = SegmentPlanner.isEnabled(config) && !transformsBodies
+                ? new SegmentedDownloader(transport, new SegmentPlanner(config), (FileSink) sink, metadataStore,
+                        this.sink.getMetrics())
+                : null;
+    }
+
+    private MetadataStore openMetadataStore() {
+        if (config.getMetadataStore() == null) {
+            return null;
+        }
+        try {
+            MetadataStore store = MetadataStore.open(Paths.get(config.getMetadataStore()));
+            logger.debug("Loaded {} entries from metadata store {}", store.size(), config.getMetadataStore());
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open metadata store: " + config.getMetadataStore(), e);
+        }
+    }
+
+    private OutputIndex openOutputIndex() {
+        if (config.getOutputLayout() == OutputLayout.TIMESTAMPED) {
+            return null;
+        }
+        try {
+            return OutputIndex.open(Paths.get(config.getOutputDirectory()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open URL index in " + config.getOutputDirectory(), e);
+        }
+    }
+
+    private DownloadJournal.CompletedUrls replayJournal() {
+        try {
+            long startNanos = System.nanoTime();
+            DownloadJournal.CompletedUrls completed = DownloadJournal.replay(Paths.get(config.getJournalFile()));
+            logger.info("Replayed journal {} in {}ms: {} URLs already completed", config.getJournalFile(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), completed.size());
+            return completed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay journal: " + config.getJournalFile(), e);
+        }
+    }
+
+    private DownloadJournal openJournal() {
+        if (config.getJournalFile() == null) {
+            return null;
+        }
+        try {
+            // A fresh run starts a new journal; a resumed one appends to the journal it replayed
+            return DownloadJournal.open(Paths.get(config.getJournalFile()), config.isResume(),
+                    Duration.ofMillis(config.getJournalSyncIntervalMillis()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open journal: " + config.getJournalFile(), e);
+        }
+    }
+
+    private ExecutorService createExecutorService() {
+        if (config.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS) {
+            logger.debug("Created own virtual-thread ExecutorService limited to {} concurrent downloads",
+                    config.getMaxConcurrentDownloads());
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("download-", 0).factory());
+        }
         logger.debug("Created own ExecutorService with {} threads", config.getMaxConcurrentDownloads());
+        return Executors.newFixedThreadPool(config.getMaxConcurrentDownloads());
     }
 
+    /**
+     * Downloads every configured URL and returns all results.
+     * 
+     * Results are kept in memory; for very large batches use {@link #downloadAll(Consumer)}.
+     * 
+     * @return the results in completion order
+     */
     public List<DownloadResult> downloadAll() {
-        logger.info("Starting concurrent download of {} URLs with max {} concurrent downloads",
-                config.getUrls().size(), config.getMaxConcurrentDownloads());
+        List<DownloadResult> results = new ArrayList<>();
+        downloadAll(results::add);
+        return results;
+    }
+
+    /**
+     * Downloads every configured URL, streaming each result to {@code resultSink} as it completes.
+     * 
+     * The sink is never called concurrently, but it is called from worker threads. Nothing is
+     * retained per URL, so memory use stays flat however many URLs the source yields.
+     * 
+     * @param resultSink receives each result in completion order
+     * @return success and failure counts for the run
+     */
+    public DownloadSummary downloadAll(Consumer<DownloadResult> resultSink) {
+        this.resultSink = resultSink;
         
         Instant totalStartTime = Instant.now();
         
-        try {
+        try (UrlSource urlSource = UrlSource.open(config)) {
+            logger.info("Starting concurrent download of {} with max {} concurrent downloads ({})",
+                    urlSource, config.getMaxConcurrentDownloads(), config.getExecutionMode());
+            
             // Create output directory
             createOutputDirectory();
             
@@ -111,23 +315,18 @@ public class ConcurrentUrlDownloader {
             Thread loggingThread = new Thread(this::logCompletionsInOrder, "DownloadLogger");
             loggingThread.start();
             
-            // Submit all download tasks
-            List<Future<?>> futures = new ArrayList<>();
-            for (String url : config.getUrls()) {
-                Future<?> future = executorService.submit(() -> downloadUrl(url));
-                futures.add(future);
-            }
-            
-            // Wait for all downloads to complete
-            for (Future<?> future : futures) {
-                try {
-                    future.get();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logger.error("Download interrupted", e);
-                } catch (ExecutionException e) {
-                    logger.error("Download task failed", e.getCause());
+            // Keep at most maxQueuedUrls URLs queued per host (see HostScheduler#tryAdd) and submit them
+            // in scheduling order, blocking while the global limit or every host with pending work is
+            // at capacity.
+            // The scheduler only runs dry once every download and retry has completed.
+            try {
+                HostScheduler.Dispatch dispatch;
+                while ((dispatch = nextDispatch(urlSource)) != null) {
+                    submitDownload(dispatch);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Download interrupted", e);
             }
             
             // Stop the logging thread
@@ -139,137 +338,369 @@ public class ConcurrentUrlDownloader {
             logger.info("All downloads completed in {}ms. Successful: {}, Failed: {}",
                     totalDuration.toMillis(), completedCount.get(), failedCount.get());
             
-            // Return all collected results
-            synchronized (allResults) {
-                return new ArrayList<>(allResults);
-            }
+            return new DownloadSummary(completedCount.get(), failedCount.get(), totalDuration);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close URL source", e);
         } finally {
             // Always ensure proper cleanup
             shutdown();
         }
     }
 
-    private void downloadUrl(String url) {
-        Instant startTime = Instant.now();
-        String filename = generateFilename(url);
+    /**
+     * Tops the scheduler up from the URL source as far as its look-ahead window allows
+     * (backpressure: see {@link HostScheduler#tryAdd(String)}) and returns the next URL to start.
+     * A URL the window has no room for yet is held until after the next dispatch.
+     */
+    private HostScheduler.Dispatch nextDispatch(UrlSource urlSource) throws InterruptedException {
+        while (heldUrl != null || urlSource.hasNext()) {
+            String url = heldUrl != null ? heldUrl : urlSource.next();
+            heldUrl = null;
+            if (completedUrls != null && completedUrls.contains(url)) {
+                resumedCount.incrementAndGet();
+            } else if (!scheduler.tryAdd(url)) {
+                heldUrl = url;
+                break;
+            }
+        }
+        if (heldUrl == null && !urlSource.hasNext()) {
+            scheduler.close();
+        }
+        return scheduler.next();
+    }
+
+    private void submitDownload(HostScheduler.Dispatch dispatch) {
+        try {
+            executorService.execute(() -> {
+                Duration retryDelay = null;
+                try {
+                    retryDelay = downloadUrl(dispatch);
+                } finally {
+                    if (retryDelay == null) {
+                        scheduler.release(dispatch);
+                    } else {
+                        scheduler.retry(dispatch, retryDelay);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduler.release(dispatch);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs one attempt of a download and records its result, unless it should be retried.
+     * 
+     * @return the backoff before the next attempt, or {@code null} once a result was recorded
+     */
+    private Duration downloadUrl(HostScheduler.Dispatch dispatch) {
+        String url = dispatch.url();
+        // Every attempt of a dispatch writes the same file, so a retry can resume it
+        String filename = generateFilename(url, dispatch.startTime());
+        Path filePath = Paths.get(config.getOutputDirectory(), filename);
+        Instant deadline = dispatch.startTime().plusSeconds(config.getMaxDownloadTimePerUrl());
+        DownloadResult result;
         
         try {
-            logger.debug("Starting download: {}", url);
-            
-            // Create HTTP request with timeout
-            HttpGet httpGet = new HttpGet(url);
-            httpGet.setHeader("User-Agent", config.getUserAgent());
+            logger.debug("Starting download attempt {}: {}", dispatch.attempt(), url);
             
-            RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(Timeout.ofSeconds(config.getConnectTimeout()))
-                .setResponseTimeout(Timeout.ofSeconds(config.getMaxDownloadTimePerUrl()))
-                .build();
-            httpGet.setConfig(requestConfig);
-            
-            // Execute download with retry logic
-            DownloadResult result = executeDownloadWithRetry(httpGet, url, filename, startTime);
-            
-            // Add to both completion queue for logging and results list for return
-            completionQueue.put(result);
-            synchronized (allResults) {
-                allResults.add(result);
+            // Socket timeouts are configured on the transport; the deadline bounds the URL as a whole
+            TransferRequest request = new TransferRequest(URI.create(url), requestHeaders()).withDeadline(deadline);
+            result = executeDownload(request, url, filename, filePath, dispatch.startTime());
+        } catch (Exception e) {
+            if (e instanceof IntegrityException) {
+                integrityFailureCount.incrementAndGet();
             }
-            
-            if (result.success()) {
-                completedCount.incrementAndGet();
-            } else {
-                failedCount.incrementAndGet();
+            if (ConcurrencyLimiter.isOverloadSignal(e) && !Thread.currentThread().isInterrupted()) {
+                applyConcurrencyLimit(concurrencyLimiter.onOverload());
             }
-        } catch (Exception e) {
-            Instant endTime = Instant.now();
-            DownloadResult result = DownloadResult.failure(url, e.getMessage(), startTime, endTime);
-            try {
-                completionQueue.put(result);
-                synchronized (allResults) {
-                    allResults.add(result);
-                }
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
+            Duration retryDelay = Thread.currentThread().isInterrupted() ? null : retryPolicy.retryDelay(dispatch.attempt(), e);
+            if (retryDelay != null && Instant.now().plus(retryDelay).isAfter(deadline)) {
+                logger.debug("Not retrying {}: the backoff would end after its deadline", url);
+                retryDelay = null;
             }
-            failedCount.incrementAndGet();
+            if (retryDelay != null) {
+                logger.warn("Download attempt {} failed for {}: {}. Retrying in {}ms",
+                        dispatch.attempt(), url, e.getMessage(), retryDelay.toMillis());
+                return retryDelay;
+            }
+            resumeValidators.remove(filePath);
+            if (contentStore != null) {
+                deleteStagingFile(filePath);
+            }
+            String errorMessage = retryPolicy.isRetryable(e)
+                    ? "All retry attempts failed. Last error: " + e.getMessage()
+                    : e.getMessage();
+            result = DownloadResult.failure(url, errorMessage, dispatch.startTime(), Instant.now());
             logger.error("Failed to download {}: {}", url, e.getMessage());
         }
+        
+        // Hand to both completion queue for logging and result sink for the caller
+        try {
+            recordResult(result, filePath);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
     }
 
-    private DownloadResult executeDownloadWithRetry(HttpGet httpGet, String url, String filename, Instant startTime) {
-        Exception lastException = null;
+    private Map<String, String> requestHeaders() {
+        return config.getCompression() == CompressionMode.IDENTITY
+                ? Map.of("User-Agent", config.getUserAgent())
+                : Map.of("User-Agent", config.getUserAgent(), "Accept-Encoding", "gzip, deflate");
+    }
+
+    private void recordResult(DownloadResult result, Path filePath) throws InterruptedException {
+        if (journal != null) {
+            // A kept file or a committed blob is not where this download was staged
+            journal.record(result, result.success() ? Paths.get(config.getOutputDirectory(), result.filename()) : filePath);
+        }
+        if (result.notModified()) {
+            notModifiedCount.incrementAndGet();
+        }
+        if (result.success()) {
+            completedCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+        synchronized (resultSinkLock) {
+            resultSink.accept(result);
+        }
+        completionQueue.put(result);
+    }
+
+    private DownloadResult executeDownload(TransferRequest request, String url, String filename, Path filePath, Instant startTime) throws IOException {
+        // A previous attempt left a partial file whose version we know: continue after its last byte
+        String validator = resumeValidators.remove(filePath);
+        Path partialFile = FileSink.partialPath(filePath);
+        long resumeFrom = validator != null && Files.isRegularFile(partialFile) ? Files.size(partialFile) : 0;
+        // A file kept from an earlier run is revalidated with one conditional GET instead of a probe
+        MetadataStore.Entry cached = resumeFrom == 0 ? cachedEntry(url) : null;
+        ExpectedContent expected = expectedContent.get(url);
         
-        for (int attempt = 1; attempt <= config.getRetryAttempts(); attempt++) {
-            try {
-                return executeDownload(httpGet, url, filename, startTime);
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < config.getRetryAttempts()) {
-                    logger.warn("Download attempt {} failed for {}: {}. Retrying...", attempt, url, e.getMessage());
-                    try {
-                        Thread.sleep(1000L * attempt); // Exponential backoff
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
+        if (expected != null && expected.sha256() != null && contentStore != null) {
+            // The content is known and already stored: nothing to download
+            DownloadResult stored = contentStore.reuse(url, expected, startTime);
+            if (stored != null) {
+                outputIndex.record(url, stored.filename());
+                return stored;
             }
         }
         
-        Instant endTime = Instant.now();
-        return DownloadResult.failure(url, "All retry attempts failed. Last error: " + lastException.getMessage(), startTime, endTime);
-    }
-
-    private DownloadResult executeDownload(HttpGet httpGet, String url, String filename, Instant startTime) throws IOException {
-        try (ClassicHttpResponse response = httpClient.executeOpen(null, httpGet, HttpClientContext.create())) {
-            int statusCode = response.getCode();
-            
-            if (statusCode >= 200 && statusCode < 300) {
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    return saveToFile(entity, url, filename, startTime);
-                } else {
-                    throw new IOException("Empty response body");
+        if (resumeFrom == 0 && cached == null && expected == null && segmentedDownloader != null && contentStore == null) {
+            DownloadResult result = segmentedDownloader.download(request, url, filename, filePath, startTime);
+            if (result != null) {
+                return result;
+            }
+        }
+        
+        DownloadAttempt attempt = new DownloadAttempt(url, filename, filePath, outputSink, startTime, resumeFrom, cached);
+        if (contentStore != null) {
+            attempt.withDigest();
+        }
+        attempt.withExpected(expected);
+        attempt.withCompression(config.getCompression(), config.isGzipAtRest(), config.getIoBufferSize());
+        if (resumeFrom > 0) {
+            logger.info("Resuming {} from byte {}", url, resumeFrom);
+            request = request.derive("GET", DownloadAttempt.resumeHeaders(resumeFrom, validator));
+        } else if (cached != null) {
+            request = request.derive("GET", cached.conditionalHeaders());
+        }
+        try {
+            DownloadResult result = DownloadTransport.await(transport.execute(request, attempt), url);
+            applyConcurrencyLimit(concurrencyLimiter.onSuccess(attempt.getResponseNanos(), scheduler.inFlightCount()));
+            if (!result.notModified()) {
+                if (attempt.getResponseEncoding() != null) {
+                    compressedResponseCount.incrementAndGet();
                 }
-            } else {
-                throw new IOException("HTTP " + statusCode + ": " + response.getReasonPhrase());
+                receivedBodyBytes.add(attempt.getReceivedBytes());
+                storedBodyBytes.add(result.fileSize());
+            }
+            Path storedFile = filePath;
+            if (contentStore != null && !result.notModified()) {
+                result = contentStore.commit(result, filePath);
+                outputIndex.record(url, result.filename());
+                storedFile = Paths.get(config.getOutputDirectory(), result.filename());
+            }
+            MetadataStore.Entry entry = metadataStore == null ? null : attempt.getMetadataEntry(storedFile);
+            if (entry != null) {
+                metadataStore.put(entry);
             }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // Bytes that failed verification are not worth resuming from
+            boolean corrupt = e instanceof IntegrityException integrity && !integrity.isResumable();
+            if (attempt.getValidator() != null && !corrupt && sink.supportsResume()) {
+                resumeValidators.put(filePath, attempt.getValidator());
+            }
+            throw e;
         }
     }
 
-    private DownloadResult saveToFile(HttpEntity entity, String url, String filename, Instant startTime) throws IOException {
-        Path filePath = Paths.get(config.getOutputDirectory(), filename);
-        
-        try (InputStream inputStream = entity.getContent();
-             FileOutputStream outputStream = new FileOutputStream(filePath.toFile())) {
-            
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytes = 0;
-            
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
-            }
-            
-            Instant endTime = Instant.now();
-            return DownloadResult.success(url, filename, startTime, endTime, totalBytes);
+    private void deleteStagingFile(Path stagingFile) {
+        try {
+            // The attempt failed either while writing the partial file or after it was renamed
+            Files.deleteIfExists(FileSink.partialPath(stagingFile));
+            Files.deleteIfExists(stagingFile);
+        } catch (IOException e) {
+            logger.warn("Failed to delete staging file {}: {}", stagingFile, e.getMessage());
+        }
+    }
+
+    private MetadataStore.Entry cachedEntry(String url) {
+        if (metadataStore == null) {
+            return null;
+        }
+        MetadataStore.Entry entry = metadataStore.get(url);
+        return entry != null && entry.fileMatches() ? entry : null;
+    }
+
+    private void applyConcurrencyLimit(int limit) {
+        if (config.isAdaptiveConcurrency()) {
+            scheduler.setGlobalLimit(limit);
         }
     }
 
+    /**
+     * Returns the number of downloads currently allowed in flight: {@code maxConcurrentDownloads},
+     * or the value chosen by the {@link ConcurrencyLimiter} in adaptive mode.
+     * 
+     * @return the current global concurrency limit
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimiter.getLimit();
+    }
+
+    /**
+     * Returns the total time transfers have waited for request or byte tokens; zero unless a
+     * rate limit is configured.
+     * 
+     * @return the accumulated rate-limiting delay
+     */
+    public Duration getThrottledTime() {
+        return Duration.ofNanos(rateLimiter.getThrottledNanos());
+    }
+
+    /**
+     * Returns how many URLs were answered with {@code 304 Not Modified} and kept from an earlier
+     * run; these are also counted as successful.
+     * 
+     * @return the number of not-modified results
+     */
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Returns how many downloads had the same content as a blob already stored and took no
+     * extra space; always 0 unless the output layout is {@link OutputLayout#CONTENT_ADDRESSED}.
+     * 
+     * @return the number of deduplicated downloads
+     */
+    public int getDeduplicatedCount() {
+        return contentStore == null ? 0 : contentStore.getDeduplicatedCount();
+    }
+
+    /**
+     * Returns the bytes deduplicated downloads would otherwise have taken on disk.
+     * 
+     * @return the bytes saved by deduplication
+     */
+    public long getDeduplicatedBytes() {
+        return contentStore == null ? 0 : contentStore.getDeduplicatedBytes();
+    }
+
+    /**
+     * Returns the bytes written to the sink and the time spent inside it, which is the storage
+     * share of the run; the rest of the transfer time went to the network.
+     * 
+     * @return the sink metrics, updated live during the run
+     */
+    public SinkMetrics getSinkMetrics() {
+        return sink.getMetrics();
+    }
+
+    /**
+     * Returns the disk-writer stage, whose queue depth, bytes in flight and pause time show
+     * whether storage held the network back.
+     * 
+     * @return the writer stage, or {@code null} unless {@code writerThreads} is set
+     */
+    public WriterStage getWriterStage() {
+        return writerStage;
+    }
+
+    /**
+     * Returns how many attempts failed verification: a body shorter than its
+     * {@code Content-Length}, or a size or digest other than the configured {@code expectedContent}.
+     * Each of them was retried or ended in a failed result.
+     * 
+     * @return the number of attempts rejected by an {@link IntegrityException}
+     */
+    public int getIntegrityFailureCount() {
+        return integrityFailureCount.get();
+    }
+
+    /**
+     * Returns how many connections the transport opened during the run; with
+     * {@link TransportMode#HTTP2} a few per host, however many downloads shared them.
+     * 
+     * @return the connections opened, or -1 with the {@link TransportMode#CLASSIC} transport,
+     *         which does not count them
+     */
+    public long getConnectionsOpened() {
+        return transport.getConnectionsOpened();
+    }
+
+    /**
+     * Returns how many successful downloads were answered with a compressed body.
+     * 
+     * @return the number of responses that carried a {@code Content-Encoding}
+     */
+    public int getCompressedResponseCount() {
+        return compressedResponseCount.get();
+    }
+
+    /**
+     * Returns the body bytes of successful downloads as received, before any decoding; compared
+     * with {@link #getStoredBodyBytes()} it shows what compression saved on the wire or on disk.
+     * Segmented downloads are not counted.
+     * 
+     * @return the bytes received
+     */
+    public long getReceivedBodyBytes() {
+        return receivedBodyBytes.sum();
+    }
+
+    /**
+     * Returns the bytes successful downloads stored in the sink, after any decoding or gzipping.
+     * Segmented downloads are not counted.
+     * 
+     * @return the bytes stored
+     */
+    public long getStoredBodyBytes() {
+        return storedBodyBytes.sum();
+    }
+
+    /**
+     * Returns how many URLs were skipped because the journal replayed by a resumed run
+     * ({@link DownloadConfig#isResume()}) records them as completed; these are not counted as
+     * successful or failed.
+     * 
+     * @return the number of URLs skipped on resume
+     */
+    public int getResumedCount() {
+        return resumedCount.get();
+    }
+
     private void logCompletionsInOrder() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
                 DownloadResult result = completionQueue.poll(100, TimeUnit.MILLISECONDS);
                 if (result != null) {
                     // Log completion as it happens for real-time feedback
-                    if (result.success()) {
-                        System.out.println(String.format("✓ Downloaded %s to %s (%d bytes) in %dms",
-                            result.url(), result.filename(), result.fileSize(), result.duration().toMillis()));
-                    } else {
-                        System.out.println(String.format("✗ Failed to download %s: %s (took %dms)",
-                            result.url(), result.errorMessage(), result.duration().toMillis()));
-                    }
+                    System.out.println(result);
                 }
             }
         } catch (InterruptedException ie) {
@@ -277,23 +708,16 @@ public class ConcurrentUrlDownloader {
         }
     }
 
-    private String generateFilename(String url) {
-        try {
-            URL urlObj = new URI(url).toURL();
-            String path = urlObj.getPath();
-            String filename = path.substring(path.lastIndexOf('/') + 1);
-            if (filename.isEmpty() || filename.equals("/")) {
-                filename = "index.html";
-            }
-            // Ensure filename is safe
-            filename = filename.replaceAll("[^a-zA-Z0-9._-]", "_");
-            // Add timestamp to avoid conflicts
-            return System.currentTimeMillis() + "_" + filename;
-        } catch (Exception e) {
-            // Log at debug to avoid noise; safe fallback below
-            logger.debug("Failed to derive filename from URL '{}', falling back to default name", url, e);
-            return System.currentTimeMillis() + "_download";
+    private String generateFilename(String url, Instant startTime) {
+        if (contentStore != null) {
+            // The final name depends on the content; download to a staging file first
+            return ContentStore.stagingPath(url, startTime);
+        }
+        if (outputIndex != null) {
+            return outputIndex.assign(url);
         }
+        // Add timestamp to avoid conflicts
+        return startTime.toEpochMilli() + "_" + OutputIndex.safeBasename(url);
     }
 
     private void createOutputDirectory() {
@@ -317,8 +741,22 @@ public class ConcurrentUrlDownloader {
                 executorService.shutdownNow();
             }
             
-            // Close the HTTP client
-            httpClient.close();
+            // Close the HTTP transport
+            if (segmentedDownloader != null) {
+                segmentedDownloader.close();
+            }
+            transport.close();
+            // Closing the writer stage drains its queues before it closes the sink
+            outputSink.close();
+            if (metadataStore != null) {
+                metadataStore.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (outputIndex != null) {
+                outputIndex.close();
+            }
         } catch (Exception e) {
             logger.error("Error during shutdown", e);
         }
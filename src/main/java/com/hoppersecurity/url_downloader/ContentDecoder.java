@@ -0,0 +1,255 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link BodyCoder} that decodes a {@code gzip} or {@code deflate} body as its chunks arrive,
+ * writing the decoded bytes to an output.
+ *
+ * <p>The decoder is pushed the chunks the transport delivers, rather than pulling from a stream
+ * the way {@link java.util.zip.GZIPInputStream} does, so it runs on the transport's own thread
+ * without a pipe in between. A gzip header or trailer split across chunks is collected until it
+ * is complete; every gzip member is checked against the CRC-32 and size in its trailer, and a body
+ * of several members decodes to their concatenation. A {@code deflate} body is a zlib stream as
+ * RFC 9110 specifies, or a raw deflate stream as some servers send instead; the first two bytes
+ * tell which.
+ *
+ * <p>A corrupt or truncated body fails with an {@link IntegrityException} that is not resumable,
+ * since decoded bytes cannot be continued from.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class ContentDecoder implements BodyCoder {
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int MAX_COLLECTED = 64 * 1024; // bounds a gzip header with long fields
+
+    private enum State { HEADER, BODY, TRAILER, DONE }
+
+    private final String encoding;
+    private final boolean gzip;
+    private final Target target;
+    private final ByteBuffer decoded;
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater; // created once the first header says which format follows
+    private State state = State.HEADER;
+    private byte[] collected = new byte[GZIP_HEADER_LENGTH]; // a header or trailer being collected
+    private int collectedLength;
+    private boolean empty = true; // no byte received yet
+
+    /**
+     * Creates a decoder.
+     *
+     * @param encoding   the {@code Content-Encoding} of the body; one {@link #supports(String)} accepts
+     * @param target     where the decoded bytes are written
+     * @param bufferSize the size of the buffer the bytes are decoded into
+     */
+    ContentDecoder(String encoding, Target target, int bufferSize) {
+        if (!supports(encoding)) {
+            throw new IllegalArgumentException("Unsupported content encoding: " + encoding);
+        }
+        this.encoding = encoding;
+        this.gzip = !encoding.equalsIgnoreCase("deflate");
+        this.target = target;
+        this.decoded = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns whether a content coding can be decoded.
+     *
+     * @param encoding a {@code Content-Encoding} value, may be {@code null}
+     * @return {@code true} for {@code gzip}, {@code x-gzip} and {@code deflate}
+     */
+    static boolean supports(String encoding) {
+        if (encoding == null) {
+            return false;
+        }
+        return switch (encoding.toLowerCase(Locale.ROOT)) {
+            case "gzip", "x-gzip", "deflate" -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (data.hasRemaining()) {
+            empty = false;
+        }
+        while (data.hasRemaining()) {
+            switch (state) {
+                case HEADER -> readHeader(data);
+                case BODY -> inflate(data);
+                case TRAILER -> readTrailer(data);
+                case DONE -> {
+                    if (!gzip) {
+                        throw new IntegrityException("Data after the end of the deflate body", false);
+                    }
+                    state = State.HEADER; // the next member of a multi-member gzip body
+                }
+            }
+        }
+    }
+
+    private void readHeader(ByteBuffer data) throws IOException {
+        collect(data, gzip ? Math.min(collectedLength + 512, MAX_COLLECTED) : 2);
+        int headerLength = gzip ? gzipHeaderLength() : deflateHeaderLength();
+        if (headerLength < 0) {
+            if (collectedLength == MAX_COLLECTED) {
+                throw new IntegrityException("gzip header longer than " + MAX_COLLECTED + " bytes", false);
+            }
+            return;
+        }
+        // Whatever was collected past the header belongs to the body
+        ByteBuffer rest = ByteBuffer.wrap(Arrays.copyOfRange(collected, headerLength, collectedLength));
+        collectedLength = 0;
+        state = State.BODY;
+        write(rest);
+    }
+
+    /**
+     * Returns the length of the gzip header collected so far, or -1 if it is not complete yet.
+     */
+    private int gzipHeaderLength() throws IOException {
+        if (collectedLength < GZIP_HEADER_LENGTH) {
+            return -1;
+        }
+        if ((collected[0] & 0xff) != 0x1f || (collected[1] & 0xff) != 0x8b) {
+            throw new IntegrityException("Not in gzip format", false);
+        }
+        if (collected[2] != 8) {
+            throw new IntegrityException("Unsupported gzip compression method " + collected[2], false);
+        }
+        int flags = collected[3] & 0xff;
+        int length = GZIP_HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            if (collectedLength < length + 2) {
+                return -1;
+            }
+            length += 2 + ((collected[length] & 0xff) | (collected[length + 1] & 0xff) << 8);
+        }
+        for (int field : new int[] {FNAME, FCOMMENT}) {
+            if ((flags & field) != 0) {
+                do {
+                    if (length >= collectedLength) {
+                        return -1;
+                    }
+                } while (collected[length++] != 0);
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            length += 2;
+        }
+        if (length > collectedLength) {
+            return -1;
+        }
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        crc.reset();
+        return length;
+    }
+
+    /**
+     * Picks zlib or raw deflate from the first two bytes; neither is consumed, the inflater reads
+     * a zlib header itself.
+     */
+    private int deflateHeaderLength() {
+        if (collectedLength < 2) {
+            return -1;
+        }
+        int cmf = collected[0] & 0xff;
+        int flg = collected[1] & 0xff;
+        boolean zlib = (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0;
+        inflater = new Inflater(!zlib);
+        return 0;
+    }
+
+    private void inflate(ByteBuffer input) throws IOException {
+        inflater.setInput(input);
+        try {
+            while (true) {
+                int n = inflater.inflate(decoded.clear());
+                if (n > 0) {
+                    decoded.flip();
+                    if (gzip) {
+                        crc.update(decoded.duplicate());
+                    }
+                    target.write(decoded);
+                }
+                if (inflater.finished()) {
+                    // Whatever follows the compressed data stays in the input: a trailer or another member
+                    state = gzip ? State.TRAILER : State.DONE;
+                    return;
+                }
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new IntegrityException(encoding + " body needs a preset dictionary", false);
+                    }
+                    if (inflater.needsInput()) {
+                        return;
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IntegrityException("Corrupt " + encoding + " body: " + e.getMessage(), false);
+        }
+    }
+
+    private void readTrailer(ByteBuffer data) throws IOException {
+        collect(data, GZIP_TRAILER_LENGTH);
+        if (collectedLength < GZIP_TRAILER_LENGTH) {
+            return;
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(collected, 0, GZIP_TRAILER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        long expectedCrc = trailer.getInt() & 0xffffffffL;
+        long expectedSize = trailer.getInt() & 0xffffffffL;
+        if (expectedCrc != crc.getValue()) {
+            throw new IntegrityException("gzip body fails its CRC-32 check", false);
+        }
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new IntegrityException("gzip body has the wrong size in its trailer", false);
+        }
+        collectedLength = 0;
+        state = State.DONE;
+    }
+
+    /**
+     * Moves bytes from {@code data} to the collected bytes until there are {@code wanted} of them.
+     */
+    private void collect(ByteBuffer data, int wanted) {
+        if (collected.length < wanted) {
+            collected = Arrays.copyOf(collected, wanted);
+        }
+        int n = Math.min(data.remaining(), wanted - collectedLength);
+        data.get(collected, collectedLength, n);
+        collectedLength += n;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (state != State.DONE && !empty) {
+            throw new IntegrityException(encoding + " body ended before its end", false);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-addressed blob store of an output directory using {@link OutputLayout#CONTENT_ADDRESSED}.
+ *
+ * <p>A download is first written to a staging file under {@code .incoming/} while
+ * {@link DownloadAttempt} hashes it chunk by chunk. Once the transfer completes, the staging file
+ * is moved to {@code blobs/<h0h1>/<h2h3>/<sha256>}, or simply deleted if a blob with that digest
+ * already exists, so identical content from any number of URLs occupies disk space once. Which
+ * URL resolved to which blob is recorded in the {@link OutputIndex}.
+ *
+ * <p>The duplicate still crosses the network and the staging write, because its digest is only
+ * known at the end of the body; the staging file is deleted seconds after it was written, usually
+ * before the page cache writes it back, and it never adds to disk usage. Only a URL configured
+ * with the {@link ExpectedContent} of a stored blob is resolved before any byte is fetched.
+ *
+ * <p>Thread Safety: all methods are thread-safe.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class ContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+    static final String BLOB_DIRECTORY = "blobs";
+    static final String STAGING_DIRECTORY = ".incoming";
+
+    private final Path root;
+    private final AtomicInteger deduplicatedCount = new AtomicInteger();
+    private final LongAdder deduplicatedBytes = new LongAdder();
+
+    ContentStore(Path root) {
+        this.root = root;
+        try {
+            Files.createDirectories(root.resolve(STAGING_DIRECTORY));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create staging directory in " + root, e);
+        }
+    }
+
+    /**
+     * Returns the staging file for one download of a URL. Every attempt of the same download
+     * gets the same name, so a retry can resume it.
+     *
+     * @param url       the URL
+     * @param startTime when the download was dispatched
+     * @return the path relative to the output directory
+     */
+    static String stagingPath(String url, Instant startTime) {
+        return STAGING_DIRECTORY + "/" + startTime.toEpochMilli() + "_" + OutputIndex.sha256Hex(url).substring(0, 16) + ".part";
+    }
+
+    /**
+     * Returns where the blob with a digest is stored.
+     *
+     * @param sha256 the lowercase hex SHA-256 of the content
+     * @return the path relative to the output directory
+     */
+    static String blobPath(String sha256) {
+        return BLOB_DIRECTORY + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+    }
+
+    /**
+     * Moves a completed staging file into the store, or discards it if the blob already exists.
+     *
+     * @param result the successful result of the download, carrying the digest of the staging file
+     * @param staged the staging file
+     * @return the result naming the blob instead of the staging file
+     * @throws IOException if the staging file cannot be moved or deleted
+     */
+    DownloadResult commit(DownloadResult result, Path staged) throws IOException {
+        String blobPath = blobPath(result.sha256());
+        Path blob = root.resolve(blobPath);
+        if (Files.exists(blob)) {
+            Files.delete(staged);
+            deduplicatedCount.incrementAndGet();
+            deduplicatedBytes.add(result.fileSize());
+            logger.debug("{} has the same content as blob {}, not stored again", result.url(), result.sha256());
+        } else {
+            Files.createDirectories(blob.getParent());
+            // Should a concurrent download commit the same digest first, the rename replaces
+            // its blob with identical bytes
+            Files.move(staged, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return result.withContent(blobPath, result.sha256());
+    }
+
+    /**
+     * Returns the result for a URL whose expected content is already stored, without downloading it.
+     *
+     * @param url       the URL
+     * @param expected  the expected content, with a digest
+     * @param startTime when the download was dispatched
+     * @return a successful result naming the blob, or {@code null} if no blob matches
+     * @throws IOException if the blob's size cannot be read
+     */
+    DownloadResult reuse(String url, ExpectedContent expected, Instant startTime) throws IOException {
+        String sha256 = expected.sha256().toLowerCase(Locale.ROOT);
+        String blobPath = blobPath(sha256);
+        Path blob = root.resolve(blobPath);
+        if (!Files.isRegularFile(blob)) {
+            return null;
+        }
+        long size = Files.size(blob);
+        if (expected.size() != null && expected.size() != size) {
+            return null; // the expectation contradicts itself; let the download report it
+        }
+        deduplicatedCount.incrementAndGet();
+        deduplicatedBytes.add(size);
+        logger.debug("{} is already stored as blob {}, not downloaded", url, sha256);
+        return DownloadResult.success(url, blobPath, startTime, Instant.now(), size).withContent(blobPath, sha256);
+    }
+
+    /**
+     * Returns how many downloads matched a blob already in the store and were not stored again.
+     *
+     * @return the number of deduplicated downloads
+     */
+    int getDeduplicatedCount() {
+        return deduplicatedCount.get();
+    }
+
+    /**
+     * Returns how many bytes deduplicated downloads would otherwise have added to the store.
+     *
+     * @return the bytes saved
+     */
+    long getDeduplicatedBytes() {
+        return deduplicatedBytes.sum();
+    }
+}
@@ -0,0 +1,20 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Signals that a download was aborted because it did not finish within its wall-clock deadline
+ * ({@code maxDownloadTimePerUrl}, counted from the first attempt).
+ *
+ * <p>Unlike a socket timeout, the deadline also catches servers that keep a connection alive by
+ * trickling bytes. The URL's time budget is spent, so {@link RetryPolicy} never retries it.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
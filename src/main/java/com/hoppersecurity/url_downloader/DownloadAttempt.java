@@ -0,0 +1,441 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link TransferHandler} for one attempt at downloading a URL into a {@link DownloadSink}.
+ *
+ * <p>Rejects non-2xx responses with an {@link HttpStatusException} (carrying any
+ * {@code Retry-After} delay of a 429 or 503), then writes every body chunk it receives to an
+ * output of the sink and reports the number of bytes written. The same instance serves every transport, so the
+ * status handling and write path are identical for classic and async transfers.
+ *
+ * <p>An attempt created with a non-zero {@code resumeFrom} (only given with a sink that
+ * {@link DownloadSink#supportsResume() supports resuming}) continues a partial file left by an
+ * earlier attempt: it sends {@code Range: bytes=resumeFrom-} guarded by {@code If-Range}, appends
+ * a {@code 206} response after the bytes already on disk, and falls back to rewriting the whole
+ * file if the server answers {@code 200} because the resource changed or ranges are unsupported.
+ * Whatever response it accepts, the attempt remembers its validator (see {@link #getValidator()})
+ * so that the next attempt can resume in turn.
+ *
+ * <p>An attempt created with a {@link MetadataStore.Entry} revalidates a file kept from an earlier
+ * run: its request carries the entry's conditional headers, and a {@code 304} answer completes it
+ * with a {@link DownloadResult#notModified} result for the kept file, without creating a new one.
+ *
+ * <p>An attempt set up with {@link #withDigest()} feeds every chunk to a SHA-256 digest on its
+ * way to disk and reports the hex digest in its result, so the content is never read back to be
+ * hashed. Resuming hashes the bytes already on disk first; a fallback to a full {@code 200}
+ * starts the digest over.
+ *
+ * <p>Every attempt checks that the body it wrote is as long as the response's {@code Content-Length}
+ * said, and fails with a resumable {@link IntegrityException} if not. An attempt set up with
+ * {@link #withExpected(ExpectedContent)} also checks the content against what the configuration
+ * expects, failing as early as the mismatch shows: a wrong {@code Content-Length} before any byte is
+ * written, an oversized body at the first chunk past the expected size, a wrong digest at the end.
+ * Such a failure discards the output, since its bytes cannot be resumed from.
+ *
+ * <p>A declared {@code Content-Length} is passed to {@link DownloadSink.Output#preallocate(long)}
+ * before the body is read, so the sink can reserve the space or refuse the download up front.
+ *
+ * <p>An attempt set up with {@link #withCompression(CompressionMode, boolean, int)} may transform
+ * the body on its way to the sink: a {@code gzip} or {@code deflate} body is decoded by a
+ * {@link ContentDecoder} under {@link CompressionMode#DECOMPRESS}, and an uncompressed body is
+ * compressed by a {@link GzipEncoder} when stored gzipped at rest. The {@code Content-Length} check
+ * counts the bytes received; the digest, the expected content and the reported size describe the
+ * bytes stored. A transformed body is neither preallocated nor resumed.
+ */
+final class DownloadAttempt implements TransferHandler<DownloadResult> {
+    private final String url;
+    private final String filename;
+    private final Path target; // where a FileSink stores filename; read to resume and to name a kept file
+    private final DownloadSink sink;
+    private final Instant startTime;
+    private final long resumeFrom;
+    private final MetadataStore.Entry cached;
+
+    private long sentNanos = System.nanoTime(); // replaced by onSent once the request goes out
+    private long responseNanos = -1;
+    private DownloadSink.Output output; // open between the response and the end of the transfer
+    private long totalBytes;
+    private String validator;
+    private HttpResponse acceptedResponse;
+    private boolean notModified;
+    private MessageDigest digest; // null unless the content is hashed
+    private ExpectedContent expected; // null unless the configuration knows the content
+    private long bodyStart; // offset of the first byte of the accepted body
+    private long bodyLength = -1; // its Content-Length, -1 if unknown
+    private long receivedBytes; // bytes of the accepted body received so far, before any decoding
+    private CompressionMode compression = CompressionMode.IDENTITY;
+    private boolean gzipAtRest;
+    private int codingBufferSize;
+    private String responseEncoding; // Content-Encoding of the accepted response, null for identity
+    private String storedEncoding; // content coding of the bytes written to the sink, null for identity
+    private BodyCoder coder; // null unless the body is transformed on its way to the sink
+
+    DownloadAttempt(String url, String filename, Path target, DownloadSink sink, Instant startTime,
+                    long resumeFrom, MetadataStore.Entry cached) {
+        this.url = url;
+        this.filename = filename;
+        this.target = target;
+        this.sink = sink;
+        this.startTime = startTime;
+        this.resumeFrom = resumeFrom;
+        this.cached = cached;
+    }
+
+    /**
+     * Makes this attempt compute the SHA-256 of the content as it is written.
+     *
+     * @return this attempt
+     */
+    DownloadAttempt withDigest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        return this;
+    }
+
+    /**
+     * Makes this attempt verify the content it downloads; an expected digest also enables
+     * {@link #withDigest()}.
+     *
+     * @param expected the expected content, may be {@code null}
+     * @return this attempt
+     */
+    DownloadAttempt withExpected(ExpectedContent expected) {
+        this.expected = expected;
+        if (expected != null && expected.sha256() != null && digest == null) {
+            withDigest();
+        }
+        return this;
+    }
+
+    /**
+     * Makes this attempt decode or compress the body it stores, following the configuration.
+     *
+     * @param compression what to store of a compressed body
+     * @param gzipAtRest  whether an uncompressed body is stored gzipped
+     * @param bufferSize  the size of the buffer a body is transformed into
+     * @return this attempt
+     */
+    DownloadAttempt withCompression(CompressionMode compression, boolean gzipAtRest, int bufferSize) {
+        this.compression = compression;
+        this.gzipAtRest = gzipAtRest;
+        this.codingBufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Returns the content coding of a response.
+     *
+     * @param response a response
+     * @return its lowercase {@code Content-Encoding}, or {@code null} if absent or {@code identity}
+     */
+    static String contentEncoding(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (header == null) {
+            return null;
+        }
+        String encoding = header.getValue().trim().toLowerCase(Locale.ROOT);
+        return encoding.isEmpty() || encoding.equals("identity") ? null : encoding;
+    }
+
+    /**
+     * Returns the headers that ask the server to continue after the bytes already on disk.
+     *
+     * @param resumeFrom the number of bytes already written
+     * @param validator  the ETag or Last-Modified value the partial file was downloaded with
+     * @return the {@code Range} and {@code If-Range} headers
+     */
+    static Map<String, String> resumeHeaders(long resumeFrom, String validator) {
+        return Map.of(HttpHeaders.RANGE, "bytes=" + resumeFrom + "-", HttpHeaders.IF_RANGE, validator);
+    }
+
+    /**
+     * Returns the validator to send in {@code If-Range} for a resource: its ETag if strong
+     * ({@code If-Range} does not accept weak ones), otherwise its Last-Modified date.
+     *
+     * @param response a successful response
+     * @return the validator, or {@code null} if the response carries neither header
+     */
+    static String resumeValidator(HttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified == null ? null : lastModified.getValue();
+    }
+
+    @Override
+    public void onSent() {
+        sentNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, EntityDetails entity) throws IOException {
+        responseNanos = System.nanoTime() - sentNanos;
+        int statusCode = response.getCode();
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            notModified = true;
+            return;
+        }
+        if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && resumeFrom > 0) {
+            // The partial file no longer matches the resource; the next attempt starts over
+            throw new IOException("Cannot resume " + url + " from byte " + resumeFrom + ": range not satisfiable");
+        }
+        if (statusCode < 200 || statusCode >= 300) {
+            throw HttpStatusException.fromResponse(response);
+        }
+        if (entity == null) {
+            throw new IOException("Empty response body");
+        }
+        boolean resuming = resumeFrom > 0 && statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+        bodyStart = resuming ? resumeFrom : 0;
+        bodyLength = entity.getContentLength();
+        responseEncoding = contentEncoding(response);
+        storedEncoding = responseEncoding;
+        boolean decode = compression == CompressionMode.DECOMPRESS && ContentDecoder.supports(responseEncoding);
+        boolean encode = gzipAtRest && responseEncoding == null;
+        if (resuming && (decode || encode)) {
+            // The bytes on disk are not the bytes the range starts after; the next attempt starts over
+            throw new IOException("Cannot resume " + url + " from byte " + resumeFrom
+                    + ": its body is transformed before it is stored");
+        }
+        if (expected != null && expected.size() != null && bodyLength >= 0 && !decode && !encode
+                && bodyStart + bodyLength != expected.size()) {
+            // Nothing has been written yet; a file being resumed is not known to be wrong, but cannot be finished
+            throw new IntegrityException(url + " has " + (bodyStart + bodyLength) + " bytes, expected "
+                    + expected.size(), false);
+        }
+        if (resuming) {
+            Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            if (contentRange == null || !contentRange.getValue().startsWith("bytes " + resumeFrom + "-")) {
+                throw new IOException("Unexpected Content-Range when resuming from byte " + resumeFrom + ": "
+                        + (contentRange == null ? "none" : contentRange.getValue()));
+            }
+            output = sink.open(url, filename, resumeFrom);
+            totalBytes = resumeFrom;
+            if (bodyLength >= 0) {
+                output.preallocate(resumeFrom + bodyLength);
+            }
+            if (digest != null) {
+                hashExistingBytes();
+            }
+        } else {
+            // Fresh download, or the server sent the full body instead of the requested range
+            output = sink.open(url, filename, 0);
+            if (digest != null) {
+                digest.reset();
+            }
+            if (decode) {
+                coder = new ContentDecoder(responseEncoding, this::store, codingBufferSize);
+                storedEncoding = null;
+            } else if (encode) {
+                coder = new GzipEncoder(this::store, GzipEncoder.DEFAULT_LEVEL, codingBufferSize);
+                storedEncoding = "gzip";
+            } else if (bodyLength >= 0) {
+                output.preallocate(bodyLength);
+            }
+        }
+        validator = resumeValidator(response);
+        acceptedResponse = response;
+    }
+
+    @Override
+    public void onData(ByteBuffer data) throws IOException {
+        if (notModified) {
+            data.position(data.limit()); // a 304 has no body
+            return;
+        }
+        receivedBytes += data.remaining();
+        if (coder != null) {
+            coder.write(data);
+        } else {
+            store(data);
+        }
+    }
+
+    private void store(ByteBuffer data) throws IOException {
+        if (expected != null && expected.size() != null && totalBytes + data.remaining() > expected.size()) {
+            throw new IntegrityException(url + " is longer than the expected " + expected.size() + " bytes", false);
+        }
+        if (digest != null) {
+            digest.update(data.duplicate());
+        }
+        int bytes = data.remaining();
+        output.write(data);
+        totalBytes += bytes;
+    }
+
+    private void hashExistingBytes() throws IOException {
+        Path partial = FileSink.partialPath(target);
+        try (FileChannel existing = FileChannel.open(partial, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            while (position < resumeFrom) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), resumeFrom - position));
+                int read = existing.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Partial file " + partial + " is shorter than " + resumeFrom + " bytes");
+                }
+                position += read;
+                digest.update(buffer.flip());
+            }
+        }
+    }
+
+    @Override
+    public DownloadResult onComplete() throws IOException {
+        if (notModified) {
+            return DownloadResult.notModified(url, keptFilename(), startTime, Instant.now(), cached.size());
+        }
+        if (bodyLength >= 0 && receivedBytes != bodyLength) {
+            // The bytes received are correct as far as they go; the retry resumes after them
+            throw abort(new IntegrityException(url + " ended after " + receivedBytes + " of "
+                    + bodyLength + " bytes", coder == null));
+        }
+        if (coder != null) {
+            try {
+                coder.finish();
+            } catch (IOException e) {
+                throw abort(e);
+            }
+            coder.end();
+        }
+        String sha256 = digest == null ? null : HexFormat.of().formatHex(digest.digest());
+        if (expected != null) {
+            verify(sha256);
+        }
+        DownloadSink.Output completed = output;
+        output = null;
+        completed.complete();
+        DownloadResult result = DownloadResult.success(url, filename, startTime, Instant.now(), totalBytes);
+        if (storedEncoding != null) {
+            result = result.withContentEncoding(storedEncoding);
+        }
+        return sha256 == null ? result : result.withContent(filename, sha256);
+    }
+
+    private void verify(String sha256) throws IOException {
+        String mismatch = null;
+        if (expected.size() != null && totalBytes != expected.size()) {
+            mismatch = url + " has " + totalBytes + " bytes, expected " + expected.size();
+        } else if (expected.sha256() != null && !expected.sha256().equalsIgnoreCase(sha256)) {
+            mismatch = url + " has SHA-256 " + sha256 + ", expected " + expected.sha256();
+        }
+        if (mismatch != null) {
+            throw abort(new IntegrityException(mismatch, false));
+        }
+    }
+
+    /**
+     * Names the kept file the way {@code filename} names this attempt's target: relative to the
+     * output directory, which is the target with {@code filename}'s path segments removed.
+     */
+    private String keptFilename() {
+        Path outputDirectory = target.toAbsolutePath().normalize();
+        for (int i = Path.of(filename).getNameCount(); i > 0 && outputDirectory != null; i--) {
+            outputDirectory = outputDirectory.getParent();
+        }
+        Path kept = Path.of(cached.path());
+        return outputDirectory != null && kept.startsWith(outputDirectory)
+                ? outputDirectory.relativize(kept).toString()
+                : kept.toString();
+    }
+
+    @Override
+    public void onFailure(Exception cause) {
+        abort(cause);
+    }
+
+    /**
+     * Aborts the output, if still open, discarding its bytes unless the failure leaves them
+     * fit to resume from. Content the sink has no room for is discarded too.
+     */
+    private <E extends Exception> E abort(E cause) {
+        if (coder != null) {
+            coder.end();
+        }
+        if (output != null) {
+            DownloadSink.Output aborted = output;
+            output = null;
+            try {
+                aborted.abort(coder != null || cause instanceof IntegrityException integrity && !integrity.isResumable()
+                        || cause instanceof SinkCapacityException);
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+        return cause;
+    }
+
+    /**
+     * Returns the validator of the response this attempt accepted, for resuming after a failure.
+     *
+     * @return the validator, or {@code null} if no response was accepted, it carried none, or
+     *         its body was transformed before it was stored
+     */
+    String getValidator() {
+        return coder == null ? validator : null;
+    }
+
+    /**
+     * Returns the number of body bytes received, as sent on the wire; differs from the stored
+     * size when the body was decoded or compressed.
+     *
+     * @return the bytes received for the accepted response
+     */
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * Returns the content coding of the accepted response.
+     *
+     * @return its {@code Content-Encoding}, or {@code null} if it was not encoded
+     */
+    String getResponseEncoding() {
+        return responseEncoding;
+    }
+
+    /**
+     * Returns the metadata to record for the file this attempt downloaded.
+     *
+     * @param file where the content ended up: the target, or the blob it was committed to
+     * @return the entry, or {@code null} if nothing was downloaded or the response carried no
+     *         {@code ETag} or {@code Last-Modified}
+     */
+    MetadataStore.Entry getMetadataEntry(Path file) {
+        return acceptedResponse == null ? null : MetadataStore.Entry.of(url, acceptedResponse, file, totalBytes);
+    }
+
+    /**
+     * Returns the time from sending the request, after any wait for a request token or a free
+     * stream, to receiving the response headers; {@link ConcurrencyLimiter} uses it as the
+     * round-trip time.
+     *
+     * @return the latency in nanoseconds, or -1 if no response was received
+     */
+    long getResponseNanos() {
+        return responseNanos;
+    }
+}
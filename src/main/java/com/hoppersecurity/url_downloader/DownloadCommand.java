@@ -11,8 +11,11 @@ import org.springframework.shell.standard.ShellOption;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
@@ -32,7 +35,7 @@ import java.util.List;
  * 
  * <p>The command supports the following usage pattern:
  * <pre>
- * download --config path/to/config.json
+ * download --config path/to/config.json [--resume]
  * </pre>
  * 
  * <p>The class integrates with Spring Boot's profile system to determine whether the application
@@ -43,6 +46,16 @@ import java.util.List;
  * <p>Configuration files must be valid JSON containing download parameters such as URLs,
  * output directory, concurrency settings, timeouts, and retry configuration.
  * 
+ * <p>For very large batches the URLs can be read lazily from {@code urlsFile}, and setting
+ * {@code resultsFile} switches to streaming mode: each result is appended to that JSON Lines
+ * file as it completes and the summary reports counts only.
+ * 
+ * <p>When the configuration names a {@code journalFile}, {@code --resume} continues an interrupted
+ * run: URLs the journal records as completed are skipped and the rest are downloaded.
+ * 
+ * <p>Output directories written by the {@code PACKED} sink are read back with
+ * {@code lookup --store <dir> --url <url>} and {@code extract --store <dir> --url <url> --output <file>}.
+ * 
  * @author Igal Haddad
  * @version 1.0
  * @since 1.0
@@ -58,8 +71,20 @@ public class DownloadCommand {
     @Autowired
     private Environment environment;
 
+    /**
+     * Runs a fresh download; equivalent to {@code download --config <configPath>}.
+     * 
+     * @param configPath path to the JSON configuration file
+     * @return the summary, or an error message
+     */
+    public String download(String configPath) {
+        return download(configPath, false);
+    }
+
     @ShellMethod(key = "download", value = "Download URLs concurrently using a JSON configuration file")
-    public String download(@ShellOption(value = "--config", help = "Path to JSON configuration file") String configPath) {
+    public String download(@ShellOption(value = "--config", help = "Path to JSON configuration file") String configPath,
+                           @ShellOption(value = "--resume", help = "Skip URLs the journal records as completed",
+                                   defaultValue = "false") boolean resume) {
         try {
             logger.info("Starting URL downloader with config file: {}", configPath);
             
@@ -72,6 +97,7 @@ public class DownloadCommand {
             // Read and parse configuration
             String configContent = Files.readString(Path.of(configPath));
             DownloadConfig config = objectMapper.readValue(configContent, DownloadConfig.class);
+            config.setResume(resume);
             
             // Validate configuration
             String validationError = validateConfig(config);
@@ -85,23 +111,89 @@ public class DownloadCommand {
 
             // Execute downloads
             Instant startTime = Instant.now();
-            List<DownloadResult> results = downloader.downloadAll();
+            List<DownloadResult> results;
+            long successfulDownloads;
+            long failedDownloads;
+            if (isStreamingResults(config)) {
+                // Streaming mode: results are flushed to the results file instead of being kept
+                results = List.of();
+                try (ResultsFileWriter resultsWriter = new ResultsFileWriter(Path.of(config.getResultsFile()))) {
+                    DownloadSummary downloadSummary = downloader.downloadAll(resultsWriter);
+                    successfulDownloads = downloadSummary.successful();
+                    failedDownloads = downloadSummary.failed();
+                }
+            } else {
+                results = downloader.downloadAll();
+                successfulDownloads = results.stream().filter(DownloadResult::success).count();
+                failedDownloads = results.size() - successfulDownloads;
+            }
             Instant endTime = Instant.now();
             Duration totalDuration = Duration.between(startTime, endTime);
 
             // Generate summary
-            long successfulDownloads = results.stream().filter(DownloadResult::success).count();
-            long failedDownloads = results.size() - successfulDownloads;
-
             StringBuilder summary = new StringBuilder();
             summary.append("\n=== Download Summary ===\n");
-            summary.append(String.format("Total URLs: %d\n", results.size()));
+            summary.append(String.format("Total URLs: %d\n", successfulDownloads + failedDownloads));
             summary.append(String.format("Successful: %d\n", successfulDownloads));
             summary.append(String.format("Failed: %d\n", failedDownloads));
             summary.append(String.format("Total time: %dms\n", totalDuration.toMillis()));
             summary.append(String.format("Output directory: %s\n", config.getOutputDirectory()));
+            if (config.getSink() == SinkType.TAR) {
+                summary.append(String.format("Archive: %s\n", config.getArchiveFile()));
+            }
+            if (config.getSink() == SinkType.PACKED) {
+                try (PackedStore store = PackedStore.open(Path.of(config.getOutputDirectory()))) {
+                    summary.append(String.format("Packed store: %d records in %d segments\n",
+                            store.size(), store.segmentCount()));
+                }
+            }
+            SinkMetrics sinkMetrics = downloader.getSinkMetrics();
+            summary.append(String.format("Sink: %s, %d bytes written, %dms in sink\n", config.getSink(),
+                    sinkMetrics.getBytesWritten(), sinkMetrics.getSinkTime().toMillis()));
+            WriterStage writerStage = downloader.getWriterStage();
+            if (writerStage != null) {
+                summary.append(String.format("Writer stage: peak queue %d, peak in flight %d bytes, network paused %dms (%d times)\n",
+                        writerStage.getPeakQueuedChunks(), writerStage.getPeakInFlightBytes(),
+                        writerStage.getPausedTime().toMillis(), writerStage.getPauses()));
+            }
+            if (config.getCompression() != CompressionMode.IDENTITY || config.isGzipAtRest()) {
+                summary.append(String.format("Compression: %s%s, %d compressed responses, %d bytes received, %d bytes stored\n",
+                        config.getCompression(), config.isGzipAtRest() ? " + gzip at rest" : "",
+                        downloader.getCompressedResponseCount(), downloader.getReceivedBodyBytes(),
+                        downloader.getStoredBodyBytes()));
+            }
+            if (config.getOutputLayout() != OutputLayout.TIMESTAMPED) {
+                summary.append(String.format("URL index: %s\n",
+                        Path.of(config.getOutputDirectory(), OutputIndex.INDEX_FILE)));
+            }
+            if (config.getOutputLayout() == OutputLayout.CONTENT_ADDRESSED) {
+                summary.append(String.format("Deduplicated: %d (%d bytes)\n",
+                        downloader.getDeduplicatedCount(), downloader.getDeduplicatedBytes()));
+            }
+            if (isStreamingResults(config)) {
+                summary.append(String.format("Results file: %s\n", config.getResultsFile()));
+            }
+            if (downloader.getConnectionsOpened() >= 0) {
+                summary.append(String.format("Connections opened: %d (%s)\n", downloader.getConnectionsOpened(),
+                        config.getTransportMode()));
+            }
+            if (config.isAdaptiveConcurrency()) {
+                summary.append(String.format("Concurrency limit: %d (adaptive)\n", downloader.getConcurrencyLimit()));
+            }
+            if (config.isResume()) {
+                summary.append(String.format("Already completed (resumed): %d\n", downloader.getResumedCount()));
+            }
+            if (config.getMetadataStore() != null) {
+                summary.append(String.format("Not modified: %d\n", downloader.getNotModifiedCount()));
+            }
+            if (downloader.getIntegrityFailureCount() > 0) {
+                summary.append(String.format("Integrity failures (attempts): %d\n", downloader.getIntegrityFailureCount()));
+            }
+            if (!downloader.getThrottledTime().isZero()) {
+                summary.append(String.format("Rate-limit wait: %dms\n", downloader.getThrottledTime().toMillis()));
+            }
 
-            if (failedDownloads > 0) {
+            if (!results.isEmpty() && failedDownloads > 0) {
                 summary.append("\n=== Failed Downloads ===\n");
                 results.stream()
                         .filter(result -> !result.success())
@@ -132,6 +224,57 @@ public class DownloadCommand {
         }
     }
 
+    @ShellMethod(key = "lookup", value = "Show where a packed output directory stores a URL")
+    public String lookup(@ShellOption(value = "--store", help = "Output directory written by the PACKED sink") String storePath,
+                         @ShellOption(value = "--url", help = "URL to look up") String url) {
+        return runStoreCommand(storePath, store -> {
+            PackedStore.Location location = store.lookup(url);
+            if (location == null) {
+                return "Not found: " + url;
+            }
+            return String.format("%s: %s, offset %d, %d bytes", url,
+                    PackedIndex.segmentPath(Path.of(storePath), location.segment()).getFileName(),
+                    location.offset(), location.length());
+        });
+    }
+
+    @ShellMethod(key = "extract", value = "Copy a URL's content out of a packed output directory")
+    public String extract(@ShellOption(value = "--store", help = "Output directory written by the PACKED sink") String storePath,
+                          @ShellOption(value = "--url", help = "URL to extract") String url,
+                          @ShellOption(value = "--output", help = "File to write the content to") String outputPath) {
+        return runStoreCommand(storePath, store -> {
+            PackedStore.Location location = store.lookup(url);
+            if (location == null) {
+                return "Not found: " + url;
+            }
+            Path output = Path.of(outputPath);
+            try (FileChannel channel = FileChannel.open(output,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                store.copy(location, channel);
+            }
+            return String.format("Extracted %d bytes of %s to %s", location.length(), url, output);
+        });
+    }
+
+    private interface StoreCommand {
+        String run(PackedStore store) throws IOException;
+    }
+
+    private String runStoreCommand(String storePath, StoreCommand command) {
+        int exitCode = 0;
+        try (PackedStore store = PackedStore.open(Path.of(storePath))) {
+            return command.run(store);
+        } catch (IOException e) {
+            exitCode = 1;
+            logger.error("Failed to read packed store {}", storePath, e);
+            return "Error: " + e.getMessage();
+        } finally {
+            if (shouldTerminateApplication()) {
+                scheduleApplicationTermination(exitCode, "Terminating application...");
+            }
+        }
+    }
+
     /**
      * Schedules application termination with a delay to allow output display.
      * 
@@ -151,11 +294,24 @@ public class DownloadCommand {
         }).start();
     }
 
+    private boolean isStreamingResults(DownloadConfig config) {
+        return config.getResultsFile() != null && !config.getResultsFile().isBlank();
+    }
+
     private String validateConfig(DownloadConfig config) {
-        if (config.getUrls() == null || config.getUrls().isEmpty()) {
+        boolean hasUrlsFile = config.getUrlsFile() != null && !config.getUrlsFile().isBlank();
+        if ((config.getUrls() == null || config.getUrls().isEmpty()) && !hasUrlsFile) {
             return "URLs list cannot be empty";
         }
         
+        if (hasUrlsFile && !Files.isRegularFile(Path.of(config.getUrlsFile()))) {
+            return "urlsFile not found: " + config.getUrlsFile();
+        }
+        
+        if (config.getMaxQueuedUrls() <= 0) {
+            return "maxQueuedUrls must be greater than 0";
+        }
+        
         if (config.getMaxDownloadTimePerUrl() <= 0) {
             return "maxDownloadTimePerUrl must be greater than 0";
         }
@@ -164,12 +320,111 @@ public class DownloadCommand {
             return "outputDirectory cannot be empty";
         }
         
+        if (config.getOutputLayout() == null) {
+            return "outputLayout must be one of TIMESTAMPED, HASHED, CONTENT_ADDRESSED";
+        }
+        
+        if (config.getSink() == null) {
+            return "sink must be one of FILE, MEMORY, NULL, TAR, PACKED";
+        }
+        
+        if (config.getSink() == SinkType.TAR && (config.getArchiveFile() == null || config.getArchiveFile().isBlank())) {
+            return "sink TAR requires an archiveFile";
+        }
+        
+        if (config.getPackedSegmentBytes() <= 0) {
+            return "packedSegmentBytes must be greater than 0";
+        }
+        
+        if (config.getFsyncPolicy() == null) {
+            return "fsyncPolicy must be one of NONE, PER_FILE, GROUP_COMMIT";
+        }
+        
+        if (config.getFsyncPolicy() != FsyncPolicy.NONE && config.getSink() != SinkType.FILE) {
+            return "fsyncPolicy " + config.getFsyncPolicy() + " requires the FILE sink";
+        }
+        
+        if (config.getGroupCommitIntervalMillis() < 0) {
+            return "groupCommitIntervalMillis cannot be negative";
+        }
+        
+        if (config.getMinFreeDiskBytes() < 0) {
+            return "minFreeDiskBytes cannot be negative";
+        }
+        
+        if ((config.isPreallocateFiles() || config.getMinFreeDiskBytes() > 0) && config.getSink() != SinkType.FILE) {
+            return "preallocateFiles and minFreeDiskBytes require the FILE sink";
+        }
+        
+        if (config.getCompression() == null) {
+            return "compression must be one of IDENTITY, DECOMPRESS, STORE";
+        }
+        
+        if (config.getCompression() == CompressionMode.DECOMPRESS && config.isGzipAtRest()) {
+            return "gzipAtRest would compress again what compression DECOMPRESS decodes; use STORE instead";
+        }
+        
+        if (config.getSink() != SinkType.FILE && (config.getOutputLayout() != OutputLayout.TIMESTAMPED
+                || config.getMetadataStore() != null || SegmentPlanner.isEnabled(config))) {
+            return "outputLayout " + config.getOutputLayout() + ", metadataStore and segmented downloads require the FILE sink";
+        }
+        
+        if (config.isResume() && (config.getJournalFile() == null || config.getJournalFile().isBlank())) {
+            return "--resume requires a journalFile";
+        }
+        
+        if (config.getJournalSyncIntervalMillis() < 0) {
+            return "journalSyncIntervalMillis cannot be negative";
+        }
+        
+        if (config.getExpectedContent() != null && config.getExpectedContent().values().stream().anyMatch(expected ->
+                expected == null
+                        || (expected.sha256() != null && !ExpectedContent.isSha256Hex(expected.sha256()))
+                        || (expected.size() != null && expected.size() < 0))) {
+            return "expectedContent values need a 64-digit hex sha256 and a size of at least 0";
+        }
+        
         if (config.getMaxConcurrentDownloads() <= 0) {
             return "maxConcurrentDownloads must be greater than 0";
         }
         
-        if (config.getMaxConcurrentDownloads() > 100) {
-            return "maxConcurrentDownloads cannot exceed 100";
+        if (config.getTransportMode() == null) {
+            return "transportMode must be one of CLASSIC, ASYNC, HTTP2";
+        }
+        
+        if (config.getHttp2ConnectionsPerHost() <= 0 || config.getHttp2MaxConcurrentStreams() <= 0) {
+            return "http2ConnectionsPerHost and http2MaxConcurrentStreams must be greater than 0";
+        }
+        
+        if (config.getExecutionMode() == null) {
+            return "executionMode must be one of PLATFORM_THREADS, VIRTUAL_THREADS";
+        }
+        
+        if (config.getMaxConcurrentDownloads() > config.getExecutionMode().getMaxConcurrentDownloads()) {
+            return "maxConcurrentDownloads cannot exceed " + config.getExecutionMode().getMaxConcurrentDownloads()
+                    + " with " + config.getExecutionMode() + " execution";
+        }
+        
+        if (config.getMaxConcurrentDownloadsPerHost() < 0) {
+            return "maxConcurrentDownloadsPerHost cannot be negative";
+        }
+        
+        if (config.getMinConcurrentDownloads() <= 0) {
+            return "minConcurrentDownloads must be greater than 0";
+        }
+        
+        if (config.getMinConcurrentDownloads() > config.getMaxConcurrentDownloads()) {
+            return "minConcurrentDownloads cannot exceed maxConcurrentDownloads";
+        }
+        
+        if (config.getHostConcurrencyLimits() != null
+                && config.getHostConcurrencyLimits().values().stream().anyMatch(limit -> limit == null || limit <= 0)) {
+            return "hostConcurrencyLimits values must be greater than 0";
+        }
+        
+        if (config.getHostWeights() != null
+                && config.getHostWeights().values().stream().anyMatch(weight -> weight == null || weight <= 0)) {
+            return "hostWeights values must be greater than 0";
         }
         
         if (config.getConnectTimeout() <= 0) {
@@ -180,10 +435,68 @@ public class DownloadCommand {
             return "readTimeout must be greater than 0";
         }
         
+        if (config.getMinBytesPerSecond() < 0) {
+            return "minBytesPerSecond cannot be negative";
+        }
+        
+        if (config.getMinThroughputWindowSeconds() <= 0) {
+            return "minThroughputWindowSeconds must be greater than 0";
+        }
+
+        if (config.getMaxRequestsPerSecond() < 0 || config.getMaxRequestsPerSecondPerHost() < 0) {
+            return "maxRequestsPerSecond and maxRequestsPerSecondPerHost cannot be negative";
+        }
+
+        if (config.getMaxBytesPerSecond() < 0 || config.getMaxBytesPerSecondPerHost() < 0) {
+            return "maxBytesPerSecond and maxBytesPerSecondPerHost cannot be negative";
+        }
+
+        if (config.getHostRequestsPerSecond() != null
+                && config.getHostRequestsPerSecond().values().stream().anyMatch(rate -> rate == null || rate <= 0)) {
+            return "hostRequestsPerSecond values must be greater than 0";
+        }
+
+        if (config.getHostBytesPerSecond() != null
+                && config.getHostBytesPerSecond().values().stream().anyMatch(rate -> rate == null || rate <= 0)) {
+            return "hostBytesPerSecond values must be greater than 0";
+        }
+
         if (config.getRetryAttempts() < 0) {
             return "retryAttempts cannot be negative";
         }
         
+        if (config.getIoBufferSize() < 1024) {
+            return "ioBufferSize must be at least 1024";
+        }
+        
+        if (config.getWriterThreads() < 0) {
+            return "writerThreads cannot be negative";
+        }
+        
+        if (config.getMaxInFlightWriteBytes() < config.getIoBufferSize()) {
+            return "maxInFlightWriteBytes must be at least ioBufferSize";
+        }
+        
+        if (config.getSegmentThresholdBytes() < 0) {
+            return "segmentThresholdBytes cannot be negative";
+        }
+        
+        if (config.getMaxSegmentsPerFile() <= 0) {
+            return "maxSegmentsPerFile must be greater than 0";
+        }
+        
+        if (config.getMinSegmentBytes() <= 0) {
+            return "minSegmentBytes must be greater than 0";
+        }
+        
+        if (config.getRetryBaseDelayMillis() < 0) {
+            return "retryBaseDelayMillis cannot be negative";
+        }
+        
+        if (config.getRetryMaxDelayMillis() < config.getRetryBaseDelayMillis()) {
+            return "retryMaxDelayMillis cannot be less than retryBaseDelayMillis";
+        }
+        
         return null;
     }
     
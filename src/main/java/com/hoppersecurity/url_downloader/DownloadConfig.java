@@ -1,7 +1,10 @@
 package com.hoppersecurity.url_downloader;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration class for URL download operations, supporting JSON deserialization.
@@ -13,13 +16,55 @@ import java.util.List;
  * <p>Configuration parameters include:
  * <ul>
  *   <li><strong>urls</strong> - List of URLs to download</li>
+ *   <li><strong>urlsFile</strong> - Text file with one URL per line, read lazily (for very large batches)</li>
+ *   <li><strong>maxQueuedUrls</strong> - How many URLs per host may be read ahead of dispatch (bounded work queue)</li>
+ *   <li><strong>resultsFile</strong> - JSON Lines file results are streamed to instead of being kept in memory</li>
  *   <li><strong>outputDirectory</strong> - Target directory for downloaded files</li>
+ *   <li><strong>outputLayout</strong> - How files are named in the output directory (see {@link OutputLayout})</li>
+ *   <li><strong>sink</strong> - Where downloaded content is stored (see {@link SinkType})</li>
+ *   <li><strong>archiveFile</strong> - Tar archive the {@code TAR} sink appends downloads to</li>
+ *   <li><strong>packedSegmentBytes</strong> - Size after which the {@code PACKED} sink starts a new segment file</li>
+ *   <li><strong>fsyncPolicy</strong> - How the {@code FILE} sink makes completed files durable (see {@link FsyncPolicy})</li>
+ *   <li><strong>groupCommitIntervalMillis</strong> - How long the {@code GROUP_COMMIT} flusher gathers completed files into one batch</li>
+ *   <li><strong>preallocateFiles</strong> - Whether the {@code FILE} sink extends a file to its {@code Content-Length} before writing it</li>
+ *   <li><strong>minFreeDiskBytes</strong> - Free space the {@code FILE} sink leaves on the disk; downloads that would use it are refused (0 = no floor)</li>
+ *   <li><strong>compression</strong> - Whether compressed bodies are requested, and decoded or stored as received (see {@link CompressionMode})</li>
+ *   <li><strong>gzipAtRest</strong> - Whether bodies that arrive uncompressed are stored gzipped</li>
+ *   <li><strong>metadataStore</strong> - File remembering each URL's ETag/Last-Modified, enabling conditional re-downloads</li>
+ *   <li><strong>journalFile</strong> - Append-only journal of finished URLs that {@code download --resume} picks up from</li>
+ *   <li><strong>journalSyncIntervalMillis</strong> - Longest time a journal entry may stay unsynced to disk (0 = sync every entry)</li>
+ *   <li><strong>expectedContent</strong> - Known SHA-256 and/or size per URL, verified while the file streams (see {@link ExpectedContent})</li>
  *   <li><strong>maxConcurrentDownloads</strong> - Maximum number of simultaneous downloads</li>
+ *   <li><strong>maxConcurrentDownloadsPerHost</strong> - Default limit of simultaneous downloads per host (0 = no extra limit)</li>
+ *   <li><strong>hostConcurrencyLimits</strong> - Per-host overrides of the concurrency limit, keyed by host name</li>
+ *   <li><strong>hostWeights</strong> - Weighted round-robin share per host, keyed by host name (default 1)</li>
+ *   <li><strong>adaptiveConcurrency</strong> - Adjust the global limit between the minimum and maximum from observed latency and errors</li>
+ *   <li><strong>minConcurrentDownloads</strong> - Floor of the adaptive limit (default 1)</li>
  *   <li><strong>maxDownloadTimePerUrl</strong> - Timeout per URL in seconds</li>
  *   <li><strong>connectTimeout</strong> - Connection timeout in seconds</li>
  *   <li><strong>readTimeout</strong> - Read timeout in seconds</li>
+ *   <li><strong>minBytesPerSecond</strong> - Abort and retry transfers slower than this (0 = disabled)</li>
+ *   <li><strong>minThroughputWindowSeconds</strong> - Window the minimum throughput is averaged over</li>
+ *   <li><strong>maxRequestsPerSecond</strong> - Rate of requests across all hosts (0 = unlimited)</li>
+ *   <li><strong>maxBytesPerSecond</strong> - Rate of response bytes across all hosts (0 = unlimited)</li>
+ *   <li><strong>maxRequestsPerSecondPerHost</strong> - Default rate of requests to each host (0 = unlimited)</li>
+ *   <li><strong>maxBytesPerSecondPerHost</strong> - Default rate of response bytes from each host (0 = unlimited)</li>
+ *   <li><strong>hostRequestsPerSecond</strong> - Per-host overrides of the request rate, keyed by host name</li>
+ *   <li><strong>hostBytesPerSecond</strong> - Per-host overrides of the byte rate, keyed by host name</li>
  *   <li><strong>retryAttempts</strong> - Number of retry attempts for failed downloads</li>
+ *   <li><strong>retryBaseDelayMillis</strong> - Base of the jittered exponential backoff between attempts</li>
+ *   <li><strong>retryMaxDelayMillis</strong> - Upper bound on any backoff, including a server's Retry-After</li>
  *   <li><strong>userAgent</strong> - HTTP User-Agent header value</li>
+ *   <li><strong>executionMode</strong> - Thread model used to run downloads (see {@link ExecutionMode})</li>
+ *   <li><strong>transportMode</strong> - HTTP transport used for transfers (see {@link TransportMode})</li>
+ *   <li><strong>http2ConnectionsPerHost</strong> - Connections the {@code HTTP2} transport multiplexes the downloads from one host over</li>
+ *   <li><strong>http2MaxConcurrentStreams</strong> - Most streams the {@code HTTP2} transport opens on one connection</li>
+ *   <li><strong>ioBufferSize</strong> - Size of the buffer each response body is read through, in bytes</li>
+ *   <li><strong>writerThreads</strong> - Dedicated disk-writer threads the network hands chunks to (0 = write on the reading thread)</li>
+ *   <li><strong>maxInFlightWriteBytes</strong> - Bytes queued for the writer threads before the network pauses</li>
+ *   <li><strong>segmentThresholdBytes</strong> - Files at least this large are fetched as parallel byte ranges (0 = disabled)</li>
+ *   <li><strong>maxSegmentsPerFile</strong> - Upper bound on the parallel ranges of one segmented download</li>
+ *   <li><strong>minSegmentBytes</strong> - Smallest byte range worth its own connection</li>
  * </ul>
  * 
  * <p>Example JSON configuration:
@@ -50,26 +95,155 @@ public class DownloadConfig {
     @JsonProperty("urls")
     private List<String> urls;
     
+    @JsonProperty("urlsFile")
+    private String urlsFile;
+    
+    @JsonProperty("maxQueuedUrls")
+    private int maxQueuedUrls = 10_000;
+    
+    @JsonProperty("resultsFile")
+    private String resultsFile;
+    
     @JsonProperty("maxDownloadTimePerUrl")
     private int maxDownloadTimePerUrl; // in seconds
     
     @JsonProperty("outputDirectory")
     private String outputDirectory;
     
+    @JsonProperty("outputLayout")
+    private OutputLayout outputLayout = OutputLayout.TIMESTAMPED;
+    
+    @JsonProperty("sink")
+    private SinkType sink = SinkType.FILE;
+    
+    @JsonProperty("archiveFile")
+    private String archiveFile; // only used by the TAR sink
+    
+    @JsonProperty("packedSegmentBytes")
+    private long packedSegmentBytes = PackedSink.DEFAULT_SEGMENT_BYTES; // only used by the PACKED sink
+    
+    @JsonProperty("fsyncPolicy")
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.NONE; // only used by the FILE sink
+    
+    @JsonProperty("groupCommitIntervalMillis")
+    private long groupCommitIntervalMillis = 10; // only used with GROUP_COMMIT
+    
+    @JsonProperty("preallocateFiles")
+    private boolean preallocateFiles; // only used by the FILE sink
+    
+    @JsonProperty("minFreeDiskBytes")
+    private long minFreeDiskBytes; // 0 = no free-space floor; only used by the FILE sink
+    
+    @JsonProperty("compression")
+    private CompressionMode compression = CompressionMode.IDENTITY; // IDENTITY = no Accept-Encoding is sent
+    
+    @JsonProperty("gzipAtRest")
+    private boolean gzipAtRest; // stored bytes, digests and expected content are then gzipped
+    
+    @JsonProperty("metadataStore")
+    private String metadataStore; // null = every run downloads every URL in full
+    
+    @JsonProperty("journalFile")
+    private String journalFile; // null = no journal, runs cannot be resumed
+    
+    @JsonProperty("journalSyncIntervalMillis")
+    private long journalSyncIntervalMillis = 1000;
+    
+    @JsonIgnore
+    private boolean resume; // set by download --resume, never read from the configuration file
+    
+    @JsonProperty("expectedContent")
+    private Map<String, ExpectedContent> expectedContent = new HashMap<>();
+    
     @JsonProperty("maxConcurrentDownloads")
     private int maxConcurrentDownloads;
     
+    @JsonProperty("maxConcurrentDownloadsPerHost")
+    private int maxConcurrentDownloadsPerHost; // 0 = bounded by maxConcurrentDownloads only
+    
+    @JsonProperty("hostConcurrencyLimits")
+    private Map<String, Integer> hostConcurrencyLimits = new HashMap<>();
+    
+    @JsonProperty("hostWeights")
+    private Map<String, Integer> hostWeights = new HashMap<>();
+    
+    @JsonProperty("adaptiveConcurrency")
+    private boolean adaptiveConcurrency; // false = maxConcurrentDownloads is a fixed limit
+    
+    @JsonProperty("minConcurrentDownloads")
+    private int minConcurrentDownloads = 1;
+    
     @JsonProperty("userAgent")
     private String userAgent = "Hopper-URL-Downloader/1.0";
     
     @JsonProperty("retryAttempts")
     private int retryAttempts = 3;
     
+    @JsonProperty("retryBaseDelayMillis")
+    private long retryBaseDelayMillis = 1000;
+    
+    @JsonProperty("retryMaxDelayMillis")
+    private long retryMaxDelayMillis = 30_000;
+    
     @JsonProperty("connectTimeout")
     private int connectTimeout = 30; // in seconds
     
     @JsonProperty("readTimeout")
     private int readTimeout = 60; // in seconds
+    
+    @JsonProperty("minBytesPerSecond")
+    private long minBytesPerSecond; // 0 = no minimum throughput
+    
+    @JsonProperty("minThroughputWindowSeconds")
+    private int minThroughputWindowSeconds = 30;
+    
+    @JsonProperty("maxRequestsPerSecond")
+    private double maxRequestsPerSecond; // 0 = no request-rate limit
+    
+    @JsonProperty("maxBytesPerSecond")
+    private long maxBytesPerSecond; // 0 = no byte-rate limit
+    
+    @JsonProperty("maxRequestsPerSecondPerHost")
+    private double maxRequestsPerSecondPerHost;
+    
+    @JsonProperty("maxBytesPerSecondPerHost")
+    private long maxBytesPerSecondPerHost;
+    
+    @JsonProperty("hostRequestsPerSecond")
+    private Map<String, Double> hostRequestsPerSecond = new HashMap<>();
+    
+    @JsonProperty("hostBytesPerSecond")
+    private Map<String, Long> hostBytesPerSecond = new HashMap<>();
+
+    @JsonProperty("executionMode")
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+
+    @JsonProperty("transportMode")
+    private TransportMode transportMode = TransportMode.CLASSIC;
+
+    @JsonProperty("http2ConnectionsPerHost")
+    private int http2ConnectionsPerHost = 1; // only used by the HTTP2 transport
+
+    @JsonProperty("http2MaxConcurrentStreams")
+    private int http2MaxConcurrentStreams = 100; // per connection; only used by the HTTP2 transport
+
+    @JsonProperty("ioBufferSize")
+    private int ioBufferSize = 64 * 1024; // bytes per read from the connection
+
+    @JsonProperty("writerThreads")
+    private int writerThreads; // 0 = no writer stage, the reading thread writes
+
+    @JsonProperty("maxInFlightWriteBytes")
+    private long maxInFlightWriteBytes = 64L * 1024 * 1024; // only used with writerThreads
+
+    @JsonProperty("segmentThresholdBytes")
+    private long segmentThresholdBytes; // 0 = segmented downloads disabled
+
+    @JsonProperty("maxSegmentsPerFile")
+    private int maxSegmentsPerFile = 4;
+
+    @JsonProperty("minSegmentBytes")
+    private long minSegmentBytes = 1024 * 1024;
 
     // Default constructor for Jackson
     public DownloadConfig() {}
@@ -83,6 +257,30 @@ public class DownloadConfig {
         this.urls = urls;
     }
 
+    public String getUrlsFile() {
+        return urlsFile;
+    }
+
+    public void setUrlsFile(String urlsFile) {
+        this.urlsFile = urlsFile;
+    }
+
+    public int getMaxQueuedUrls() {
+        return maxQueuedUrls;
+    }
+
+    public void setMaxQueuedUrls(int maxQueuedUrls) {
+        this.maxQueuedUrls = maxQueuedUrls;
+    }
+
+    public String getResultsFile() {
+        return resultsFile;
+    }
+
+    public void setResultsFile(String resultsFile) {
+        this.resultsFile = resultsFile;
+    }
+
     public int getMaxDownloadTimePerUrl() {
         return maxDownloadTimePerUrl;
     }
@@ -99,6 +297,126 @@ public class DownloadConfig {
         this.outputDirectory = outputDirectory;
     }
 
+    public OutputLayout getOutputLayout() {
+        return outputLayout;
+    }
+
+    public void setOutputLayout(OutputLayout outputLayout) {
+        this.outputLayout = outputLayout;
+    }
+
+    public SinkType getSink() {
+        return sink;
+    }
+
+    public void setSink(SinkType sink) {
+        this.sink = sink;
+    }
+
+    public String getArchiveFile() {
+        return archiveFile;
+    }
+
+    public void setArchiveFile(String archiveFile) {
+        this.archiveFile = archiveFile;
+    }
+
+    public long getPackedSegmentBytes() {
+        return packedSegmentBytes;
+    }
+
+    public void setPackedSegmentBytes(long packedSegmentBytes) {
+        this.packedSegmentBytes = packedSegmentBytes;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public long getGroupCommitIntervalMillis() {
+        return groupCommitIntervalMillis;
+    }
+
+    public void setGroupCommitIntervalMillis(long groupCommitIntervalMillis) {
+        this.groupCommitIntervalMillis = groupCommitIntervalMillis;
+    }
+
+    public boolean isPreallocateFiles() {
+        return preallocateFiles;
+    }
+
+    public void setPreallocateFiles(boolean preallocateFiles) {
+        this.preallocateFiles = preallocateFiles;
+    }
+
+    public long getMinFreeDiskBytes() {
+        return minFreeDiskBytes;
+    }
+
+    public void setMinFreeDiskBytes(long minFreeDiskBytes) {
+        this.minFreeDiskBytes = minFreeDiskBytes;
+    }
+
+    public CompressionMode getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionMode compression) {
+        this.compression = compression;
+    }
+
+    public boolean isGzipAtRest() {
+        return gzipAtRest;
+    }
+
+    public void setGzipAtRest(boolean gzipAtRest) {
+        this.gzipAtRest = gzipAtRest;
+    }
+
+    public String getMetadataStore() {
+        return metadataStore;
+    }
+
+    public void setMetadataStore(String metadataStore) {
+        this.metadataStore = metadataStore;
+    }
+
+    public String getJournalFile() {
+        return journalFile;
+    }
+
+    public void setJournalFile(String journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    public long getJournalSyncIntervalMillis() {
+        return journalSyncIntervalMillis;
+    }
+
+    public void setJournalSyncIntervalMillis(long journalSyncIntervalMillis) {
+        this.journalSyncIntervalMillis = journalSyncIntervalMillis;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public Map<String, ExpectedContent> getExpectedContent() {
+        return expectedContent;
+    }
+
+    public void setExpectedContent(Map<String, ExpectedContent> expectedContent) {
+        this.expectedContent = expectedContent;
+    }
+
     public int getMaxConcurrentDownloads() {
         return maxConcurrentDownloads;
     }
@@ -107,6 +425,46 @@ public class DownloadConfig {
         this.maxConcurrentDownloads = maxConcurrentDownloads;
     }
 
+    public int getMaxConcurrentDownloadsPerHost() {
+        return maxConcurrentDownloadsPerHost;
+    }
+
+    public void setMaxConcurrentDownloadsPerHost(int maxConcurrentDownloadsPerHost) {
+        this.maxConcurrentDownloadsPerHost = maxConcurrentDownloadsPerHost;
+    }
+
+    public Map<String, Integer> getHostConcurrencyLimits() {
+        return hostConcurrencyLimits;
+    }
+
+    public void setHostConcurrencyLimits(Map<String, Integer> hostConcurrencyLimits) {
+        this.hostConcurrencyLimits = hostConcurrencyLimits;
+    }
+
+    public Map<String, Integer> getHostWeights() {
+        return hostWeights;
+    }
+
+    public void setHostWeights(Map<String, Integer> hostWeights) {
+        this.hostWeights = hostWeights;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    public int getMinConcurrentDownloads() {
+        return minConcurrentDownloads;
+    }
+
+    public void setMinConcurrentDownloads(int minConcurrentDownloads) {
+        this.minConcurrentDownloads = minConcurrentDownloads;
+    }
+
     public String getUserAgent() {
         return userAgent;
     }
@@ -123,6 +481,22 @@ public class DownloadConfig {
         this.retryAttempts = retryAttempts;
     }
 
+    public long getRetryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    public void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    public void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+        this.retryMaxDelayMillis = retryMaxDelayMillis;
+    }
+
     public int getConnectTimeout() {
         return connectTimeout;
     }
@@ -139,17 +513,204 @@ public class DownloadConfig {
         this.readTimeout = readTimeout;
     }
 
+    public long getMinBytesPerSecond() {
+        return minBytesPerSecond;
+    }
+
+    public void setMinBytesPerSecond(long minBytesPerSecond) {
+        this.minBytesPerSecond = minBytesPerSecond;
+    }
+
+    public int getMinThroughputWindowSeconds() {
+        return minThroughputWindowSeconds;
+    }
+
+    public void setMinThroughputWindowSeconds(int minThroughputWindowSeconds) {
+        this.minThroughputWindowSeconds = minThroughputWindowSeconds;
+    }
+
+    public double getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    public void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public double getMaxRequestsPerSecondPerHost() {
+        return maxRequestsPerSecondPerHost;
+    }
+
+    public void setMaxRequestsPerSecondPerHost(double maxRequestsPerSecondPerHost) {
+        this.maxRequestsPerSecondPerHost = maxRequestsPerSecondPerHost;
+    }
+
+    public long getMaxBytesPerSecondPerHost() {
+        return maxBytesPerSecondPerHost;
+    }
+
+    public void setMaxBytesPerSecondPerHost(long maxBytesPerSecondPerHost) {
+        this.maxBytesPerSecondPerHost = maxBytesPerSecondPerHost;
+    }
+
+    public Map<String, Double> getHostRequestsPerSecond() {
+        return hostRequestsPerSecond;
+    }
+
+    public void setHostRequestsPerSecond(Map<String, Double> hostRequestsPerSecond) {
+        this.hostRequestsPerSecond = hostRequestsPerSecond;
+    }
+
+    public Map<String, Long> getHostBytesPerSecond() {
+        return hostBytesPerSecond;
+    }
+
+    public void setHostBytesPerSecond(Map<String, Long> hostBytesPerSecond) {
+        this.hostBytesPerSecond = hostBytesPerSecond;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    public void setTransportMode(TransportMode transportMode) {
+        this.transportMode = transportMode;
+    }
+
+    public int getHttp2ConnectionsPerHost() {
+        return http2ConnectionsPerHost;
+    }
+
+    public void setHttp2ConnectionsPerHost(int http2ConnectionsPerHost) {
+        this.http2ConnectionsPerHost = http2ConnectionsPerHost;
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+    }
+
+    public int getIoBufferSize() {
+        return ioBufferSize;
+    }
+
+    public void setIoBufferSize(int ioBufferSize) {
+        this.ioBufferSize = ioBufferSize;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public long getMaxInFlightWriteBytes() {
+        return maxInFlightWriteBytes;
+    }
+
+    public void setMaxInFlightWriteBytes(long maxInFlightWriteBytes) {
+        this.maxInFlightWriteBytes = maxInFlightWriteBytes;
+    }
+
+    public long getSegmentThresholdBytes() {
+        return segmentThresholdBytes;
+    }
+
+    public void setSegmentThresholdBytes(long segmentThresholdBytes) {
+        this.segmentThresholdBytes = segmentThresholdBytes;
+    }
+
+    public int getMaxSegmentsPerFile() {
+        return maxSegmentsPerFile;
+    }
+
+    public void setMaxSegmentsPerFile(int maxSegmentsPerFile) {
+        this.maxSegmentsPerFile = maxSegmentsPerFile;
+    }
+
+    public long getMinSegmentBytes() {
+        return minSegmentBytes;
+    }
+
+    public void setMinSegmentBytes(long minSegmentBytes) {
+        this.minSegmentBytes = minSegmentBytes;
+    }
+
     @Override
     public String toString() {
         return "DownloadConfig{" +
                 "urls=" + urls +
+                ", urlsFile='" + urlsFile + '\'' +
+                ", maxQueuedUrls=" + maxQueuedUrls +
+                ", resultsFile='" + resultsFile + '\'' +
                 ", maxDownloadTimePerUrl=" + maxDownloadTimePerUrl +
                 ", outputDirectory='" + outputDirectory + '\'' +
+                ", outputLayout=" + outputLayout +
+                ", sink=" + sink +
+                ", archiveFile='" + archiveFile + '\'' +
+                ", packedSegmentBytes=" + packedSegmentBytes +
+                ", fsyncPolicy=" + fsyncPolicy +
+                ", groupCommitIntervalMillis=" + groupCommitIntervalMillis +
+                ", preallocateFiles=" + preallocateFiles +
+                ", minFreeDiskBytes=" + minFreeDiskBytes +
+                ", compression=" + compression +
+                ", gzipAtRest=" + gzipAtRest +
+                ", metadataStore='" + metadataStore + '\'' +
+                ", journalFile='" + journalFile + '\'' +
+                ", journalSyncIntervalMillis=" + journalSyncIntervalMillis +
+                ", resume=" + resume +
+                ", expectedContent=" + (expectedContent == null ? 0 : expectedContent.size()) + " URLs" +
                 ", maxConcurrentDownloads=" + maxConcurrentDownloads +
+                ", maxConcurrentDownloadsPerHost=" + maxConcurrentDownloadsPerHost +
+                ", hostConcurrencyLimits=" + hostConcurrencyLimits +
+                ", hostWeights=" + hostWeights +
+                ", adaptiveConcurrency=" + adaptiveConcurrency +
+                ", minConcurrentDownloads=" + minConcurrentDownloads +
                 ", userAgent='" + userAgent + '\'' +
                 ", retryAttempts=" + retryAttempts +
+                ", retryBaseDelayMillis=" + retryBaseDelayMillis +
+                ", retryMaxDelayMillis=" + retryMaxDelayMillis +
                 ", connectTimeout=" + connectTimeout +
                 ", readTimeout=" + readTimeout +
+                ", minBytesPerSecond=" + minBytesPerSecond +
+                ", minThroughputWindowSeconds=" + minThroughputWindowSeconds +
+                ", maxRequestsPerSecond=" + maxRequestsPerSecond +
+                ", maxBytesPerSecond=" + maxBytesPerSecond +
+                ", maxRequestsPerSecondPerHost=" + maxRequestsPerSecondPerHost +
+                ", maxBytesPerSecondPerHost=" + maxBytesPerSecondPerHost +
+                ", hostRequestsPerSecond=" + hostRequestsPerSecond +
+                ", hostBytesPerSecond=" + hostBytesPerSecond +
+                ", executionMode=" + executionMode +
+                ", transportMode=" + transportMode +
+                ", http2ConnectionsPerHost=" + http2ConnectionsPerHost +
+                ", http2MaxConcurrentStreams=" + http2MaxConcurrentStreams +
+                ", ioBufferSize=" + ioBufferSize +
+                ", writerThreads=" + writerThreads +
+                ", maxInFlightWriteBytes=" + maxInFlightWriteBytes +
+                ", segmentThresholdBytes=" + segmentThresholdBytes +
+                ", maxSegmentsPerFile=" + maxSegmentsPerFile +
+                ", minSegmentBytes=" + minSegmentBytes +
                 '}';
     }
 }
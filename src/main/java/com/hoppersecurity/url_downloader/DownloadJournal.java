@@ -0,0 +1,307 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Append-only record of the URLs a batch has finished, so an interrupted run can be resumed.
+ *
+ * <p>Every final result is appended as one tab-separated line, status first and path last
+ * (tabs shown as spaces):
+ * <pre>
+ * OK            1024  http://example.com/a.bin  /data/1735689600000_a.bin
+ * NOT_MODIFIED   512  http://example.com/b.bin  /data/1735689500000_b.bin
+ * FAILED           0  http://example.com/c.bin  /data/1735689600003_c.bin
+ * </pre>
+ * Each line is handed to the operating system as soon as it is written, so a JVM crash loses
+ * nothing, while {@code fsync} is batched: the file is forced to disk at most once per sync
+ * interval (and on close), so a power failure loses at most that interval's entries. A lost or
+ * torn entry only means the URL is downloaded again.
+ *
+ * <p>{@link #replay(Path)} reads a journal back into a {@link CompletedUrls} set of the URLs that
+ * completed successfully; failed URLs are not included, so a resumed run tries them again. The
+ * set keeps a 64-bit hash per URL rather than the URL itself, so replaying 10M entries takes a
+ * few seconds and about 130 MB. The price is that a hash collision, with odds of about one in
+ * several hundred thousand for a 10M-URL journal, can make a resumed run skip one URL.
+ *
+ * <p>Thread Safety: {@link #record} may be called from any thread.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class DownloadJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadJournal.class);
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int ESTIMATED_LINE_BYTES = 96; // status, size, URL and absolute path
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+    private final long syncIntervalNanos;
+    private long lastSyncNanos = System.nanoTime();
+    private boolean unsynced;
+
+    private DownloadJournal(Path file, boolean append, Duration syncInterval) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+        this.syncIntervalNanos = syncInterval.toNanos();
+    }
+
+    /**
+     * Opens a journal for writing.
+     *
+     * @param file         the journal file
+     * @param append       {@code true} to keep the existing entries (resume), {@code false} to start empty
+     * @param syncInterval the longest time an entry may stay unsynced; zero syncs every entry
+     * @return the open journal
+     * @throws IOException if the file cannot be opened
+     */
+    public static DownloadJournal open(Path file, boolean append, Duration syncInterval) throws IOException {
+        return new DownloadJournal(file, append, syncInterval);
+    }
+
+    /**
+     * Appends the final result of a URL.
+     *
+     * @param result the result
+     * @param path   the file the URL was (or would have been) downloaded to
+     */
+    public synchronized void record(DownloadResult result, Path path) {
+        String status = result.notModified() ? "NOT_MODIFIED" : result.success() ? "OK" : "FAILED";
+        try {
+            writer.write(status);
+            writer.write('\t');
+            writer.write(Long.toString(result.success() ? result.fileSize() : 0));
+            writer.write('\t');
+            writer.write(result.url());
+            writer.write('\t');
+            writer.write(path.toString());
+            writer.write('\n');
+            writer.flush();
+            unsynced = true;
+            long now = System.nanoTime();
+            if (now - lastSyncNanos >= syncIntervalNanos) {
+                channel.force(false);
+                lastSyncNanos = now;
+                unsynced = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write journal " + file, e);
+        }
+    }
+
+    /**
+     * Syncs any outstanding entries and closes the journal.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writer.flush();
+        if (unsynced) {
+            channel.force(false);
+        }
+        writer.close();
+    }
+
+    /**
+     * Reads the URLs a journal records as successfully completed.
+     *
+     * @param file the journal file
+     * @return the completed URLs; empty if the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static CompletedUrls replay(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new CompletedUrls(0);
+        }
+        // Sizing the table up front from the file avoids rehashing it while it grows
+        CompletedUrls completed = new CompletedUrls(Files.size(file) / ESTIMATED_LINE_BYTES);
+        // Lines are scanned as raw bytes: no charset decoding and no String per line
+        long skipped = 0;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int buffered = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer, buffered, buffer.length - buffered)) != -1) {
+                buffered += read;
+                int lineStart = 0;
+                for (int i = 0; i < buffered; i++) {
+                    if (buffer[i] == '\n') {
+                        if (!replayLine(buffer, lineStart, i, completed)) {
+                            skipped++;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                System.arraycopy(buffer, lineStart, buffer, 0, buffered - lineStart);
+                buffered -= lineStart;
+                if (buffered == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+        if (buffered > 0) {
+            // No trailing newline: the last line was torn by a crash mid-write
+            skipped++;
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} incomplete lines in journal {}", skipped, file);
+        }
+        return completed;
+    }
+
+    private static boolean replayLine(byte[] line, int from, int to, CompletedUrls completed) {
+        int statusEnd = indexOfTab(line, from, to);
+        int sizeEnd = statusEnd < 0 ? -1 : indexOfTab(line, statusEnd + 1, to);
+        int urlEnd = sizeEnd < 0 ? -1 : indexOfTab(line, sizeEnd + 1, to);
+        if (urlEnd < 0) {
+            return false;
+        }
+        if (line[from] != 'F') { // OK or NOT_MODIFIED; FAILED URLs are tried again
+            completed.add(hash(line, sizeEnd + 1, urlEnd));
+        }
+        return true;
+    }
+
+    private static int indexOfTab(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 64-bit hash of the bytes {@code [from, to)}: eight bytes per xxHash-style round, then the
+     * MurmurHash3 finalizer so that URLs differing only in a counter spread across the table.
+     */
+    static long hash(byte[] bytes, int from, int to) {
+        long h = 0x27d4eb2f165667c5L + (to - from);
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            h = Long.rotateLeft(h + (long) LONG_VIEW.get(bytes, i) * 0xc2b2ae3d27d4eb4fL, 31) * 0x9e3779b185ebca87L;
+        }
+        for (; i < to; i++) {
+            h = Long.rotateLeft(h ^ (bytes[i] & 0xffL) * 0x27d4eb2f165667c5L, 11) * 0x9e3779b185ebca87L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The URLs replayed from a journal, held as an open-addressing set of 64-bit hashes.
+     *
+     * <p>Not thread-safe; it is filled once by {@link #replay(Path)} and only read afterwards.
+     */
+    public static final class CompletedUrls {
+        private static final long EMPTY = 0;
+
+        private static final int MIN_CAPACITY = 1024;
+        private static final int MAX_CAPACITY = 1 << 30;
+
+        private long[] table;
+        private int size;
+        private boolean containsEmpty; // the one hash value that doubles as the empty-slot marker
+
+        CompletedUrls(long expectedSize) {
+            long capacity = Math.clamp(expectedSize * 4 / 3, MIN_CAPACITY, MAX_CAPACITY);
+            this.table = new long[Integer.highestOneBit((int) capacity - 1) << 1];
+        }
+
+        /**
+         * Returns whether the journal records the URL as completed.
+         *
+         * @param url the URL
+         * @return {@code true} if the URL does not need to be downloaded again
+         */
+        public boolean contains(String url) {
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            long h = hash(bytes, 0, bytes.length);
+            if (h == EMPTY) {
+                return containsEmpty;
+            }
+            int mask = table.length - 1;
+            for (int i = (int) h & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+                if (table[i] == h) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        void add(long h) {
+            if (h == EMPTY) {
+                if (!containsEmpty) {
+                    containsEmpty = true;
+                    size++;
+                }
+                return;
+            }
+            if (insert(table, h)) {
+                size++;
+                // Keep the load factor at or below three quarters so probe sequences stay short
+                if (size * 4L > table.length * 3L) {
+                    long[] grown = new long[table.length * 2];
+                    for (long existing : table) {
+                        if (existing != EMPTY) {
+                            insert(grown, existing);
+                        }
+                    }
+                    table = grown;
+                }
+            }
+        }
+
+        private static boolean insert(long[] table, long h) {
+            int mask = table.length - 1;
+            int i = (int) h & mask;
+            while (table[i] != EMPTY) {
+                if (table[i] == h) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = h;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "CompletedUrls[size=" + size + ", capacity=" + table.length + "]";
+        }
+    }
+}
@@ -13,12 +13,18 @@ import java.time.Instant;
  *   <li>Timing information (start time, end time, duration)</li>
  *   <li>File information for successful downloads (filename, file size)</li>
  *   <li>Error details for failed downloads</li>
+ *   <li>Whether the URL was skipped because the server reported it unchanged since the last run</li>
+ *   <li>The SHA-256 of the content, when it was computed during the transfer</li>
+ *   <li>The content coding the content is stored in, when it is stored compressed</li>
  * </ul>
  * 
  * <p>The class provides factory methods for creating success and failure results:
  * <ul>
  *   <li>{@link #success(String, String, Instant, Instant, long)} - for successful downloads</li>
  *   <li>{@link #failure(String, String, Instant, Instant)} - for failed downloads</li>
+ *   <li>{@link #notModified(String, String, Instant, Instant, long)} - for URLs answered with
+ *       {@code 304 Not Modified}; these count as successful, and the filename and size are those
+ *       of the file kept from an earlier run</li>
  * </ul>
  * 
  * <p>Example usage:
@@ -55,7 +61,10 @@ public record DownloadResult(
         Instant startTime,
         Instant endTime,
         String errorMessage,
-        long fileSize
+        long fileSize,
+        boolean notModified,
+        String sha256,
+        String contentEncoding
 ) {
     // Compact constructor for basic validation
     public DownloadResult {
@@ -67,26 +76,65 @@ public record DownloadResult(
     // Factory methods to mirror previous API
     public static DownloadResult success(String url, String filename,
                                          Instant startTime, Instant endTime, long fileSize) {
-        return new DownloadResult(url, filename, true, startTime, endTime, null, fileSize);
+        return new DownloadResult(url, filename, true, startTime, endTime, null, fileSize, false, null, null);
+    }
+
+    public static DownloadResult notModified(String url, String filename,
+                                             Instant startTime, Instant endTime, long fileSize) {
+        return new DownloadResult(url, filename, true, startTime, endTime, null, fileSize, true, null, null);
     }
 
     public static DownloadResult failure(String url, String errorMessage,
                                          Instant startTime, Instant endTime) {
-        return new DownloadResult(url, null, false, startTime, endTime, errorMessage, 0);
+        return new DownloadResult(url, null, false, startTime, endTime, errorMessage, 0, false, null, null);
+    }
+
+    /**
+     * Returns this result for content that was stored under a different name, with its digest.
+     *
+     * @param filename the name the content was stored under, relative to the output directory
+     * @param sha256   the lowercase hex SHA-256 of the content
+     * @return a copy of this result with the filename and digest replaced
+     */
+    public DownloadResult withContent(String filename, String sha256) {
+        return new DownloadResult(url, filename, success, startTime, endTime, errorMessage, fileSize, notModified,
+                sha256, contentEncoding);
+    }
+
+    /**
+     * Returns this result for content stored compressed.
+     *
+     * @param contentEncoding the content coding of the stored bytes, such as {@code gzip}
+     * @return a copy of this result with the content coding replaced
+     */
+    public DownloadResult withContentEncoding(String contentEncoding) {
+        return new DownloadResult(url, filename, success, startTime, endTime, errorMessage, fileSize, notModified,
+                sha256, contentEncoding);
     }
 
     public Duration duration() {
         return Duration.between(startTime, endTime);
     }
 
+    /**
+     * Returns the duration in milliseconds without allocating a {@link Duration}.
+     *
+     * @return the elapsed time between start and end, in milliseconds
+     */
+    public long durationMillis() {
+        return endTime.toEpochMilli() - startTime.toEpochMilli();
+    }
+
+    // Plain concatenation: this runs once per download, and String.format parses its pattern every time
     @Override
     public String toString() {
-        if (success) {
-            return String.format("✓ Downloaded %s to %s (%d bytes) in %dms",
-                    url, filename, fileSize, duration().toMillis());
+        if (notModified) {
+            return "= Not modified " + url + ", kept " + filename + " (" + fileSize + " bytes) in " + durationMillis() + "ms";
+        } else if (success) {
+            return "✓ Downloaded " + url + " to " + filename + " (" + fileSize + " bytes"
+                    + (contentEncoding == null ? "" : ", " + contentEncoding) + ") in " + durationMillis() + "ms";
         } else {
-            return String.format("✗ Failed to download %s: %s (took %dms)",
-                    url, errorMessage, duration().toMillis());
+            return "✗ Failed to download " + url + ": " + errorMessage + " (took " + durationMillis() + "ms)";
         }
     }
 }
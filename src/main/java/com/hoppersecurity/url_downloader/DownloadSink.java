@@ -0,0 +1,140 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Destination {@link ConcurrentUrlDownloader} streams downloaded content into.
+ *
+ * <p>Every attempt at a download opens one {@link Output} under the download's filename, writes
+ * the body to it chunk by chunk as the transport delivers it, and then either completes it or
+ * aborts it. Outputs of different downloads are written concurrently, possibly from I/O reactor
+ * threads, so implementations must be thread-safe across outputs; the calls on one output never
+ * overlap.
+ *
+ * <p>Built-in sinks, selected with {@link SinkType}:
+ * <ul>
+ *   <li>{@link FileSink} - one file per download under the output directory, renamed into place
+ *       once complete (the default)</li>
+ *   <li>{@link MemorySink} - keeps each payload on the heap, for small payloads</li>
+ *   <li>{@link NullSink} - discards the content, for measuring the network alone</li>
+ *   <li>{@link TarSink} - appends every download to one tar archive</li>
+ *   <li>{@link PackedSink} - appends every download to indexed segment files, for many small payloads</li>
+ * </ul>
+ * Only a sink that {@link #supportsResume() supports resuming} lets a retry continue after the
+ * bytes an earlier attempt wrote; with any other sink a retry starts over.
+ *
+ * <p>The downloader meters its sink: {@link SinkMetrics} reports the bytes written and the time
+ * spent inside sink calls, which separates the cost of storage from the cost of the transfer.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see ConcurrentUrlDownloader#ConcurrentUrlDownloader(DownloadConfig, DownloadSink)
+ */
+public interface DownloadSink extends Closeable {
+
+    /**
+     * Opens the output of one attempt.
+     *
+     * @param url      the URL being downloaded
+     * @param filename the name of the download, relative to the output directory
+     * @param position the number of bytes kept from an earlier attempt to append after; always 0
+     *                 unless {@link #supportsResume()}
+     * @return the open output
+     * @throws IOException if the output cannot be opened
+     */
+    Output open(String url, String filename, long position) throws IOException;
+
+    /**
+     * Returns whether an output may be reopened at the position an earlier attempt reached.
+     *
+     * @return {@code true} if partial content survives a failed attempt
+     */
+    default boolean supportsResume() {
+        return false;
+    }
+
+    /**
+     * Flushes and releases the sink once every output is completed or aborted.
+     *
+     * @throws IOException if pending content cannot be written
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * The content of one attempt. Exactly one of {@link #complete()} or {@link #abort(boolean)}
+     * ends it.
+     */
+    interface Output {
+
+        /**
+         * Writes all remaining bytes of a chunk.
+         *
+         * @param data the chunk; fully consumed on return
+         * @throws IOException if the chunk cannot be written
+         */
+        void write(ByteBuffer data) throws IOException;
+
+        /**
+         * Announces the size the content will have once complete, when the response declares it
+         * before any byte of the body is read. A sink may reserve the space up front, or refuse
+         * content it cannot hold before bandwidth is spent on it. Does nothing by default.
+         *
+         * @param totalBytes the final size, including any bytes kept from an earlier attempt
+         * @throws IOException if the content will not fit
+         */
+        default void preallocate(long totalBytes) throws IOException {
+        }
+
+        /**
+         * Makes the content final.
+         *
+         * @throws IOException if the content cannot be made final
+         */
+        void complete() throws IOException;
+
+        /**
+         * Gives up on the content after a failed attempt.
+         *
+         * @param discard {@code true} if the bytes written are wrong and must not be resumed from
+         * @throws IOException if releasing the output fails
+         */
+        void abort(boolean discard) throws IOException;
+    }
+
+    /**
+     * Creates the sink selected by {@link DownloadConfig#getSink()}.
+     *
+     * @param config the download configuration
+     * @return an open sink
+     */
+    static DownloadSink create(DownloadConfig config) {
+        return switch (config.getSink()) {
+            case FILE -> new FileSink(Paths.get(config.getOutputDirectory()), config.getFsyncPolicy(),
+                    Duration.ofMillis(config.getGroupCommitIntervalMillis()), config.isPreallocateFiles(),
+                    config.getMinFreeDiskBytes());
+            case MEMORY -> new MemorySink(MemorySink.DEFAULT_MAX_PAYLOAD_BYTES);
+            case NULL -> new NullSink();
+            case TAR -> {
+                try {
+                    yield TarSink.open(Paths.get(config.getArchiveFile()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to create archive: " + config.getArchiveFile(), e);
+                }
+            }
+            case PACKED -> {
+                try {
+                    yield PackedSink.open(Paths.get(config.getOutputDirectory()), config.getPackedSegmentBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to open packed directory: " + config.getOutputDirectory(), e);
+                }
+            }
+        };
+    }
+}
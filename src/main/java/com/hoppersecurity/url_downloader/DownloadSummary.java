@@ -0,0 +1,24 @@
+package com.hoppersecurity.url_downloader;
+
+import java.time.Duration;
+
+/**
+ * Aggregate outcome of a streaming {@link ConcurrentUrlDownloader#downloadAll(java.util.function.Consumer)} run.
+ *
+ * <p>Only counters are kept, so the summary stays the same size no matter how many URLs were
+ * processed; the individual {@link DownloadResult}s are handed to the caller's result sink as
+ * they complete.
+ *
+ * @param successful number of successful downloads
+ * @param failed     number of failed downloads
+ * @param duration   wall-clock time of the whole run
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public record DownloadSummary(long successful, long failed, Duration duration) {
+
+    public long total() {
+        return successful + failed;
+    }
+}
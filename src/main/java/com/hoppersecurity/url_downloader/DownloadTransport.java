@@ -0,0 +1,151 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Transport abstraction used by {@link ConcurrentUrlDownloader} to perform a single HTTP transfer.
+ *
+ * <p>A transport owns its HTTP client and connection pool. For every call to {@link #execute}
+ * it sends the request, feeds the response to the supplied {@link TransferHandler} and completes
+ * the returned future with the handler's result, or exceptionally with the failure that
+ * ended the transfer. Implementations may perform the exchange on the calling thread and return
+ * an already-completed future ({@link ClassicHttpTransport}) or complete it later from their own
+ * I/O threads ({@link AsyncHttpTransport}).
+ *
+ * <p>Transports enforce {@link TransferRequest#deadline()} through a shared {@link TimerWheel}:
+ * one timer thread aborts every overdue transfer, so no thread is created or parked per request.
+ * Socket-level timeouts still apply underneath: {@code connectTimeout} bounds connection setup
+ * and {@code readTimeout} bounds the wait for any single read. Handlers are wrapped in a
+ * {@link ThroughputGuard}, which aborts transfers that stay below {@code minBytesPerSecond}, and
+ * throttled by the {@link RateLimiter} they are created with. With a {@link WriterStage}, reads
+ * also pause while the disk writers are behind.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see TransportMode
+ */
+public interface DownloadTransport extends Closeable {
+
+    /**
+     * Executes one transfer.
+     *
+     * @param request the request to send
+     * @param handler receives the response head and body
+     * @param <T>     the type of result produced by the handler
+     * @return a future completed with the handler's result
+     */
+    <T> CompletableFuture<T> execute(TransferRequest request, TransferHandler<T> handler);
+
+    /**
+     * Returns how many connections the transport has opened so far; with HTTP/2 far fewer than
+     * the transfers it ran.
+     *
+     * @return the connections opened, or -1 if the transport does not count them
+     */
+    default long getConnectionsOpened() {
+        return -1;
+    }
+
+    /**
+     * Blocks until a transfer started by {@link #execute} completes and unwraps its failure.
+     * If the waiting thread is interrupted, the transfer is cancelled (releasing its connection)
+     * and the interrupt flag is restored.
+     *
+     * @param transfer the future returned by {@link #execute}
+     * @param url      the URL being transferred, for error messages
+     * @param <T>      the type of result produced by the handler
+     * @return the handler's result
+     * @throws IOException if the transfer failed or the thread was interrupted
+     */
+    static <T> T await(CompletableFuture<T> transfer, String url) throws IOException {
+        try {
+            return transfer.get();
+        } catch (InterruptedException e) {
+            transfer.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted: " + url);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Schedules the abort of a transfer at its request's deadline.
+     *
+     * @param timer   the timer wheel
+     * @param request the request being executed
+     * @param abort   aborts the transfer; runs on the timer thread
+     * @return the timeout to cancel once the transfer completes, or {@code null} if the request has no deadline
+     */
+    static TimerWheel.Timeout scheduleDeadline(TimerWheel timer, TransferRequest request, Runnable abort) {
+        if (request.deadline() == null) {
+            return null;
+        }
+        return timer.schedule(abort, Duration.between(Instant.now(), request.deadline()));
+    }
+
+    /**
+     * Takes a request token and parks the calling thread until it is due. The wait counts against
+     * the request's deadline: if the token is not due before the deadline, the thread parks until
+     * the deadline and the transfer fails without sending the request.
+     *
+     * @param rateLimiter the request budgets
+     * @param request     the request about to be sent
+     * @throws DeadlineExceededException if the deadline passes before the token is due
+     * @throws InterruptedIOException    if the thread is interrupted while waiting
+     */
+    static void awaitRequestToken(RateLimiter rateLimiter, TransferRequest request) throws InterruptedIOException {
+        long waitNanos = rateLimiter.reserveRequest(request.uri());
+        if (request.deadline() != null) {
+            long remainingNanos = Duration.between(Instant.now(), request.deadline()).toNanos();
+            if (waitNanos >= remainingNanos) {
+                RateLimiter.park(remainingNanos);
+                throw deadlineExceeded(request, null);
+            }
+        }
+        RateLimiter.park(waitNanos);
+    }
+
+    /**
+     * Creates the failure reported for a transfer aborted at its deadline.
+     *
+     * @param request the aborted request
+     * @param cause   the error the abort caused, added as suppressed
+     * @return the exception to fail the transfer with
+     */
+    static DeadlineExceededException deadlineExceeded(TransferRequest request, Exception cause) {
+        DeadlineExceededException exception = new DeadlineExceededException(
+                "Download timeout: " + request.uri() + " did not complete before its deadline");
+        if (cause != null) {
+            exception.addSuppressed(cause);
+        }
+        return exception;
+    }
+
+    /**
+     * Creates the transport selected by {@link DownloadConfig#getTransportMode()}.
+     *
+     * @param config      the download configuration
+     * @param rateLimiter the request and byte budgets every transfer draws from
+     * @param writerStage the disk-writer stage whose backpressure pauses reads, or {@code null}
+     * @return a started transport
+     */
+    static DownloadTransport create(DownloadConfig config, RateLimiter rateLimiter, WriterStage writerStage) {
+        return switch (config.getTransportMode()) {
+            case CLASSIC -> new ClassicHttpTransport(config, rateLimiter, writerStage);
+            case ASYNC, HTTP2 -> new AsyncHttpTransport(config, rateLimiter, writerStage);
+        };
+    }
+}
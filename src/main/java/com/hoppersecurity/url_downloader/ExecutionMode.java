@@ -0,0 +1,42 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * Execution strategy used by {@link ConcurrentUrlDownloader} to run download tasks.
+ *
+ * <p>In both modes the number of in-flight downloads is capped by the {@link HostScheduler}, which
+ * only dispatches a download while fewer than the global limit are running in total and fewer
+ * than the per-host limit on its host. The global limit is
+ * {@link DownloadConfig#getMaxConcurrentDownloads()}, or with {@code adaptiveConcurrency} the
+ * current value of the {@link ConcurrencyLimiter} below it. The modes differ only in what a
+ * waiting download costs:
+ * <ul>
+ *   <li>{@link #PLATFORM_THREADS} - a fixed pool with one platform thread per concurrent download.
+ *       Every blocked transfer pins an OS thread, so concurrency is kept to at most 100.</li>
+ *   <li>{@link #VIRTUAL_THREADS} - one Java 21 virtual thread per download. A transfer blocked on
+ *       socket I/O unmounts from its carrier thread, so thousands of in-flight downloads share a
+ *       handful of carriers and concurrency is bounded only by the scheduler's limits.</li>
+ * </ul>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see DownloadConfig#getExecutionMode()
+ */
+public enum ExecutionMode {
+    PLATFORM_THREADS(100),
+    VIRTUAL_THREADS(100_000);
+
+    private final int maxConcurrentDownloads;
+
+    ExecutionMode(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    /**
+     * Returns the highest {@code maxConcurrentDownloads} value accepted for this mode.
+     *
+     * @return the upper bound on concurrent downloads
+     */
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+}
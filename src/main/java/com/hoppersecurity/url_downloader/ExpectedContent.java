@@ -0,0 +1,27 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * What the content of a URL is known to be, as configured in {@code expectedContent}.
+ *
+ * <p>Either component may be omitted. A download is checked against both while it streams: the
+ * size as soon as the response headers announce one and again with every chunk, the SHA-256 as
+ * the last chunk is written. A mismatch fails the attempt with an {@link IntegrityException}.
+ *
+ * @param sha256 the lowercase or uppercase hex SHA-256 of the content, or {@code null}
+ * @param size   the size of the content in bytes, or {@code null}
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public record ExpectedContent(String sha256, Long size) {
+
+    /**
+     * Returns whether a value is a well-formed hex SHA-256 digest.
+     *
+     * @param sha256 the value
+     * @return {@code true} for 64 hex digits
+     */
+    static boolean isSha256Hex(String sha256) {
+        return sha256 != null && sha256.length() == 64 && sha256.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+}
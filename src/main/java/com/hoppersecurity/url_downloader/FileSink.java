@@ -0,0 +1,440 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link DownloadSink} writing every download to its own file under a root directory.
+ *
+ * <p>An output writes to a {@code .part} file next to its target (see {@link #partialPath(Path)})
+ * and completing it renames that file to the target atomically, so a file under its final name
+ * is always complete. An output opened at position 0 creates or truncates the partial file; one
+ * opened further in truncates it to that position and appends after it, so a retry continues
+ * where the earlier attempt stopped. Aborting an output keeps its partial file for that purpose
+ * unless the bytes are to be discarded. Should the same file be downloaded twice at once (a URL
+ * listed twice), the second output writes a partial file of its own, which is never resumed;
+ * whichever completes last leaves its content under the final name. Resuming a partial file that
+ * another output is still writing fails instead.
+ *
+ * <p>The {@link FsyncPolicy} decides whether a file is forced to disk before the rename, and
+ * its directory after it: never, for every file on the completing thread, or for a batch of files
+ * at once by a background flusher thread owned by the sink.
+ *
+ * <p>When the response declares its size ({@link Output#preallocate(long)}), a sink created with
+ * {@code preallocate} extends the partial file to its final length before the body is written, so
+ * the file reaches its size in one step instead of growing with every write; aborting truncates
+ * it back to the bytes actually written, which is where a retry resumes. Java offers no
+ * {@code fallocate}, so on most file systems the extended range is sparse until written. A sink
+ * created with a {@code minFreeBytes} floor refuses, with a {@link SinkCapacityException}, to
+ * open a file while the file system has less than that free, or to accept a declared size that
+ * would take it below the floor. The bytes declared but not yet written by other outputs count
+ * as used, so concurrent downloads cannot all be admitted into the same free space.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class FileSink implements DownloadSink {
+    private static final Logger logger = LoggerFactory.getLogger(FileSink.class);
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final Path root;
+    private final FsyncPolicy fsyncPolicy;
+    private final GroupCommit groupCommit; // null unless the policy is GROUP_COMMIT
+    private final Set<Path> openPartials = ConcurrentHashMap.newKeySet();
+    private final AtomicLong duplicateSequence = new AtomicLong();
+    private final boolean preallocate;
+    private final long minFreeBytes; // 0 = no floor
+    private final AtomicLong reservedBytes = new AtomicLong(); // declared by open outputs, not yet written
+    private volatile FileStore fileStore; // looked up on first use; the root may not exist yet
+
+    /**
+     * Creates a sink writing under a directory that leaves write-back to the operating system.
+     *
+     * @param root the directory filenames are resolved against; must exist
+     */
+    public FileSink(Path root) {
+        this(root, FsyncPolicy.NONE, Duration.ZERO);
+    }
+
+    /**
+     * Creates a sink writing under a directory.
+     *
+     * @param root                the directory filenames are resolved against; must exist
+     * @param fsyncPolicy         how completed files are made durable
+     * @param groupCommitInterval how long the flusher waits for more files to join a batch; only
+     *                            used with {@link FsyncPolicy#GROUP_COMMIT}
+     */
+    public FileSink(Path root, FsyncPolicy fsyncPolicy, Duration groupCommitInterval) {
+        this(root, fsyncPolicy, groupCommitInterval, false, 0);
+    }
+
+    /**
+     * Creates a sink writing under a directory, with preallocation and a free-space floor.
+     *
+     * @param root                the directory filenames are resolved against; must exist
+     * @param fsyncPolicy         how completed files are made durable
+     * @param groupCommitInterval how long the flusher waits for more files to join a batch; only
+     *                            used with {@link FsyncPolicy#GROUP_COMMIT}
+     * @param preallocate         whether to extend a file to its declared size before writing it
+     * @param minFreeBytes        the free space downloads must leave on the file system; 0 for none
+     */
+    public FileSink(Path root, FsyncPolicy fsyncPolicy, Duration groupCommitInterval, boolean preallocate,
+                    long minFreeBytes) {
+        this.root = root;
+        this.fsyncPolicy = fsyncPolicy;
+        this.preallocate = preallocate;
+        this.minFreeBytes = minFreeBytes;
+        this.groupCommit = fsyncPolicy == FsyncPolicy.GROUP_COMMIT ? new GroupCommit(groupCommitInterval) : null;
+    }
+
+    /**
+     * Returns the file a download is written to until it completes.
+     *
+     * @param target the final file
+     * @return the partial file next to it
+     */
+    static Path partialPath(Path target) {
+        return target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) throws IOException {
+        return open(root.resolve(filename), position);
+    }
+
+    /**
+     * Opens the partial file of a target. Segmented downloads use it directly to write their
+     * ranges through {@link FileOutput#channel()}.
+     *
+     * @param target   the final file
+     * @param position the number of bytes kept from an earlier attempt to append after
+     * @return the open output
+     * @throws IOException if the partial file cannot be opened, or is to be resumed while another
+     *                     output is writing it
+     */
+    FileOutput open(Path target, long position) throws IOException {
+        reserve(target, 0);
+        Path partial = partialPath(target);
+        boolean owned = openPartials.add(partial);
+        if (!owned) {
+            // Another output is writing the same file: keep out of its way
+            if (position > 0) {
+                throw new IOException("Cannot resume " + partial.getFileName() + " from byte " + position
+                        + ": another download is writing it");
+            }
+            partial = target.resolveSibling(target.getFileName() + "." + duplicateSequence.incrementAndGet() + PARTIAL_SUFFIX);
+        }
+        FileChannel channel;
+        try {
+            if (position > 0) {
+                channel = FileChannel.open(partial, StandardOpenOption.WRITE);
+                channel.position(position);
+                channel.truncate(position);
+            } else {
+                channel = FileChannel.open(partial,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (owned) {
+                openPartials.remove(partial);
+            }
+            throw e;
+        }
+        return new FileOutput(target, partial, channel, owned);
+    }
+
+    /**
+     * Reserves space for a download, or refuses it if that would leave less than the free-space
+     * floor on the file system. Reserving before checking keeps concurrent downloads from being
+     * admitted into the same free space.
+     */
+    private void reserve(Path target, long bytes) throws IOException {
+        long reserved = reservedBytes.addAndGet(bytes);
+        if (minFreeBytes <= 0) {
+            return;
+        }
+        try {
+            FileStore store = fileStore;
+            if (store == null) {
+                store = fileStore = Files.getFileStore(root);
+            }
+            long free = store.getUsableSpace() - (reserved - bytes);
+            if (free - bytes < minFreeBytes) {
+                throw new SinkCapacityException("Not enough disk space for " + target.getFileName() + ": " + bytes
+                        + " bytes needed, " + free + " free, " + minFreeBytes + " must stay free");
+            }
+        } catch (IOException e) {
+            reservedBytes.addAndGet(-bytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a fully written partial file final according to the fsync policy: forces it if
+     * required, closes it and renames it to its target.
+     */
+    private void commit(FileChannel channel, Path partial, Path target) throws IOException {
+        switch (fsyncPolicy) {
+            case NONE -> {
+                channel.close();
+                publish(partial, target);
+            }
+            case PER_FILE -> {
+                try (channel) {
+                    channel.force(false);
+                }
+                publish(partial, target);
+                syncDirectory(target.getParent());
+            }
+            case GROUP_COMMIT -> groupCommit.commit(channel, partial, target);
+        }
+    }
+
+    private static void publish(Path partial, Path target) throws IOException {
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forces a directory, which makes the renames into it durable.
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows cannot open a directory; a rename there is as durable as the file system makes it
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public boolean supportsResume() {
+        return true;
+    }
+
+    /**
+     * Stops the group-commit flusher once it has committed every queued file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (groupCommit != null) {
+            groupCommit.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileSink[" + root + "]";
+    }
+
+    /**
+     * The partial file of one download, renamed to its target on completion.
+     */
+    final class FileOutput implements Output {
+        private final Path target;
+        private final Path partial;
+        private final FileChannel channel;
+        private final boolean owned; // false for a duplicate writing a partial file of its own
+        private long reserved; // declared bytes not yet written, counted in reservedBytes
+        private boolean extended; // the file is longer than the bytes written
+
+        private FileOutput(Path target, Path partial, FileChannel channel, boolean owned) {
+            this.target = target;
+            this.partial = partial;
+            this.channel = channel;
+            this.owned = owned;
+        }
+
+        /**
+         * Returns the channel of the partial file, for positional writes.
+         *
+         * @return the open channel
+         */
+        FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int bytes = data.remaining();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            if (reserved > 0) {
+                long written = Math.min(reserved, bytes);
+                reserved -= written;
+                reservedBytes.addAndGet(-written);
+            }
+        }
+
+        @Override
+        public void preallocate(long totalBytes) throws IOException {
+            long bytes = totalBytes - channel.position();
+            if (bytes <= 0 || reserved > 0) {
+                return;
+            }
+            reserve(target, bytes);
+            reserved = bytes;
+            if (FileSink.this.preallocate) {
+                channel.write(ByteBuffer.wrap(new byte[1]), totalBytes - 1);
+                extended = true;
+            }
+        }
+
+        @Override
+        public void complete() throws IOException {
+            try {
+                commit(channel, partial, target);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void abort(boolean discard) throws IOException {
+            try {
+                if (extended && !discard) {
+                    channel.truncate(channel.position()); // a retry resumes after the bytes written
+                }
+                channel.close();
+                if (discard || !owned) {
+                    Files.deleteIfExists(partial);
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (owned) {
+                openPartials.remove(partial);
+            }
+            reservedBytes.addAndGet(-reserved);
+            reserved = 0;
+        }
+    }
+
+    /**
+     * Background flusher for {@link FsyncPolicy#GROUP_COMMIT}. A completing thread queues its
+     * still open file and waits. The flusher takes the first queued file, waits the group-commit
+     * interval for others to arrive, then forces and closes every file of the batch, renames them,
+     * forces each directory they were renamed into once and releases the threads waiting in
+     * {@link #commit}. The completing threads never flush anything themselves.
+     */
+    private static final class GroupCommit {
+        private static final Pending STOP = new Pending(null, null, null, null);
+
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final long intervalNanos;
+        private final Thread flusher;
+
+        GroupCommit(Duration interval) {
+            this.intervalNanos = interval.toNanos();
+            this.flusher = Thread.ofPlatform().name("fsync-group-commit").daemon().start(this::run);
+        }
+
+        void commit(FileChannel channel, Path partial, Path target) throws IOException {
+            if (!flusher.isAlive()) {
+                channel.close();
+                throw new IOException("The sink is closed, cannot commit " + target);
+            }
+            Pending pending = new Pending(channel, partial, target, new CompletableFuture<>());
+            queue.add(pending);
+            try {
+                pending.committed().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the group commit of " + target);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+            }
+        }
+
+        private void run() {
+            List<Pending> batch = new ArrayList<>();
+            boolean stopped = false;
+            while (!stopped) {
+                try {
+                    batch.add(queue.take());
+                    if (intervalNanos > 0 && batch.getFirst() != STOP) {
+                        Thread.sleep(Duration.ofNanos(intervalNanos));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch);
+                stopped = batch.remove(STOP);
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        private static void flush(List<Pending> batch) {
+            List<Pending> forced = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                try (FileChannel channel = pending.channel()) {
+                    channel.force(false);
+                    forced.add(pending);
+                } catch (IOException e) {
+                    pending.committed().completeExceptionally(e);
+                }
+            }
+            Map<Path, List<Pending>> directories = new LinkedHashMap<>();
+            for (Pending pending : forced) {
+                try {
+                    publish(pending.partial(), pending.target());
+                    directories.computeIfAbsent(pending.target().getParent(), directory -> new ArrayList<>()).add(pending);
+                } catch (IOException e) {
+                    pending.committed().completeExceptionally(e);
+                }
+            }
+            for (Map.Entry<Path, List<Pending>> directory : directories.entrySet()) {
+                try {
+                    syncDirectory(directory.getKey());
+                    directory.getValue().forEach(pending -> pending.committed().complete(null));
+                } catch (IOException e) {
+                    directory.getValue().forEach(pending -> pending.committed().completeExceptionally(e));
+                }
+            }
+            logger.trace("Group commit of {} files in {} directories", batch.size(), directories.size());
+        }
+
+        void close() throws IOException {
+            queue.add(STOP);
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the group-commit flusher");
+            }
+        }
+
+        private record Pending(FileChannel channel, Path partial, Path target, CompletableFuture<Void> committed) {
+        }
+    }
+}
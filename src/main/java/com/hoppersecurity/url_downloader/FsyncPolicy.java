@@ -0,0 +1,27 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * How {@link FileSink} makes a completed download durable before renaming it into place.
+ *
+ * <ul>
+ *   <li>{@link #NONE} - The file is renamed as soon as it is written and left to the operating
+ *       system to write back. A crash never leaves a half-written file under the final name, but
+ *       a power failure may lose recently completed files, or leave them empty.</li>
+ *   <li>{@link #PER_FILE} - Every file is forced to disk, renamed, and its directory forced
+ *       before {@code complete} returns: two synchronous flushes per download.</li>
+ *   <li>{@link #GROUP_COMMIT} - Every file is queued for a background flusher that forces a batch
+ *       of them to disk, renames them and forces each of their directories once; {@code complete}
+ *       returns when its batch is committed. Downloads that finish within
+ *       {@code groupCommitIntervalMillis} of each other are flushed together, and no completing
+ *       thread blocks on a flush of its own.</li>
+ * </ul>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see DownloadConfig#getFsyncPolicy()
+ */
+public enum FsyncPolicy {
+    NONE,
+    PER_FILE,
+    GROUP_COMMIT
+}
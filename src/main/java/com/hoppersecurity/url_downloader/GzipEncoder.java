@@ -0,0 +1,87 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@link BodyCoder} that compresses a body into a single gzip member as its chunks arrive, for
+ * storing content compressed at rest.
+ *
+ * <p>The header carries no name and no modification time, so the same content always compresses to
+ * the same bytes and is stored once by the {@link OutputLayout#CONTENT_ADDRESSED content-addressed}
+ * layout. The output is what {@code gzip -d} and {@link java.util.zip.GZIPInputStream} read.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class GzipEncoder implements BodyCoder {
+    /** The compression level used for content stored at rest; see TESTING.md for its throughput. */
+    static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Target target;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer compressed;
+    private boolean started;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param target     where the compressed bytes are written
+     * @param level      the {@link Deflater} compression level
+     * @param bufferSize the size of the buffer the bytes are compressed into
+     */
+    GzipEncoder(Target target, int level, int bufferSize) {
+        this.target = target;
+        this.deflater = new Deflater(level, true);
+        this.compressed = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        start();
+        crc.update(data.duplicate());
+        deflater.setInput(data);
+        while (!deflater.needsInput()) {
+            drain();
+        }
+        // The transport reuses the chunk once this returns; finish() must not see it again
+        deflater.setInput(EMPTY);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        start();
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain();
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead());
+        target.write(trailer.flip());
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            target.write(ByteBuffer.wrap(HEADER));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (deflater.deflate(compressed.clear()) > 0) {
+            target.write(compressed.flip());
+        }
+    }
+
+    @Override
+    public void end() {
+        deflater.end();
+    }
+}
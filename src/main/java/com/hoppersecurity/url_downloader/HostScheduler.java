@@ -0,0 +1,429 @@
+package com.hoppersecurity.url_downloader;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Host-aware dispatcher that decides which URL {@link ConcurrentUrlDownloader} starts next.
+ *
+ * <p>URLs are kept in one FIFO queue per host. Hosts that have pending URLs and free capacity
+ * sit in a ready ring that is served in weighted round-robin order: the host at the head of the
+ * ring dispatches up to {@code weight} URLs in a row before it moves to the back. With the
+ * default weight of 1 this is plain round-robin, so a list clustered by host is interleaved
+ * across hosts instead of being started in list order.
+ *
+ * <p>Two limits are enforced at dispatch time:
+ * <ul>
+ *   <li>a global limit of {@code maxConcurrentDownloads} in-flight downloads, and</li>
+ *   <li>a per-host limit taken from {@code hostConcurrencyLimits}, falling back to
+ *       {@code maxConcurrentDownloadsPerHost} (0 means "no limit beyond the global one").</li>
+ * </ul>
+ * A host that reaches its limit leaves the ready ring until one of its downloads is released,
+ * so a slow host can never occupy more than its own share of the workers. Every operation is
+ * O(1) regardless of the number of hosts. The global limit can be lowered or raised at runtime
+ * with {@link #setGlobalLimit(int)}, which is how {@link ConcurrencyLimiter} applies its
+ * decisions; host limits stay capped by {@code maxConcurrentDownloads}.
+ *
+ * <p>{@link #tryAdd(String)} keeps the look-ahead bounded. It admits a URL while its host has
+ * fewer than {@code maxQueuedUrls} URLs queued and the scheduler as a whole holds fewer than that
+ * many. Past the global window it still admits URLs while no queued URL can start: every host with
+ * queued URLs is at its own limit and workers sit idle. A host-clustered list therefore cannot
+ * keep the hosts further down the list from being read, and memory stays bounded by the window
+ * per host that has downloads in flight.
+ *
+ * <p>A failed attempt that should be retried is handed back with {@link #retry(Dispatch, Duration)}.
+ * Its slots are freed at once and the URL waits in a delay queue ordered by due time, so the
+ * workers keep serving other URLs during the backoff. When the delay expires, {@link #next()}
+ * moves the URL to the front of its host's queue and dispatches it like any other URL, subject
+ * to the same limits.
+ *
+ * <p>Thread Safety: all methods are thread-safe. {@link #next()} is intended for a single
+ * dispatching thread; {@link #release(Dispatch)} and {@link #retry(Dispatch, Duration)} are
+ * called from the worker threads.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class HostScheduler {
+
+    /**
+     * A URL handed out by {@link #next()}. It holds one global and one per-host slot until it
+     * is passed back to {@link #release(Dispatch)} or {@link #retry(Dispatch, Duration)}.
+     *
+     * @param url       the URL to download
+     * @param host      the normalized host the URL was queued under
+     * @param attempt   the attempt number, starting at 1
+     * @param startTime when the first attempt was dispatched
+     */
+    public record Dispatch(String url, String host, int attempt, Instant startTime) {
+
+        Dispatch nextAttempt() {
+            return new Dispatch(url, host, attempt + 1, startTime);
+        }
+    }
+
+    private record Deferred(Dispatch dispatch, long dueNanos) {}
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final ArrayDeque<HostQueue> ready = new ArrayDeque<>();
+    private final PriorityQueue<Deferred> deferred = new PriorityQueue<>(Comparator.comparingLong(Deferred::dueNanos));
+    private final int maxGlobalLimit;
+    private final int maxQueuedUrls;
+    private final int defaultHostLimit;
+    private final Map<String, Integer> hostLimits;
+    private final Map<String, Integer> hostWeights;
+
+    private int globalLimit;
+    private int inFlight;
+    private int pending;
+    private boolean closed;
+
+    public HostScheduler(DownloadConfig config) {
+        this.maxGlobalLimit = config.getMaxConcurrentDownloads();
+        this.globalLimit = maxGlobalLimit;
+        this.maxQueuedUrls = config.getMaxQueuedUrls();
+        this.defaultHostLimit = config.getMaxConcurrentDownloadsPerHost() > 0
+                ? Math.min(config.getMaxConcurrentDownloadsPerHost(), maxGlobalLimit)
+                : maxGlobalLimit;
+        this.hostLimits = normalizeKeys(config.getHostConcurrencyLimits());
+        this.hostWeights = normalizeKeys(config.getHostWeights());
+    }
+
+    /**
+     * Returns the connection-pool size per route implied by the host limits: the largest
+     * limit any single host may reach, capped by the global limit, times the connections one
+     * download may hold (see {@link SegmentPlanner#maxConnectionsPerDownload(DownloadConfig)}).
+     *
+     * @param config the download configuration
+     * @return the maximum number of connections a transport should allow per route
+     */
+    public static int maxConnectionsPerRoute(DownloadConfig config) {
+        int global = config.getMaxConcurrentDownloads();
+        int perRoute = config.getMaxConcurrentDownloadsPerHost() > 0
+                ? Math.min(config.getMaxConcurrentDownloadsPerHost(), global)
+                : global;
+        if (config.getHostConcurrencyLimits() != null) {
+            for (int limit : config.getHostConcurrencyLimits().values()) {
+                perRoute = Math.max(perRoute, Math.min(limit, global));
+            }
+        }
+        return perRoute * SegmentPlanner.maxConnectionsPerDownload(config);
+    }
+
+    /**
+     * Returns the scheduling key for a URL: its lower-cased host, or an empty string if the
+     * URL cannot be parsed (such URLs still flow through the scheduler and fail on download).
+     *
+     * @param url the URL
+     * @return the host key
+     */
+    public static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Queues a URL behind any other pending URLs of the same host.
+     *
+     * @param url the URL to download
+     * @throws IllegalStateException if the scheduler has been closed
+     */
+    public void add(String url) {
+        String host = hostOf(url);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            HostQueue queue = hosts.computeIfAbsent(host, this::newHostQueue);
+            queue.urls.addLast(url);
+            pending++;
+            markReadyIfEligible(queue);
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a URL like {@link #add(String)} if the look-ahead window leaves room for it: its
+     * host has fewer than {@code maxQueuedUrls} URLs queued, and either fewer than that many are
+     * queued in total or none of them can be dispatched while the global limit has room.
+     *
+     * @param url the URL to download
+     * @return whether the URL was queued; if not, it should be offered again after the next dispatch
+     * @throws IllegalStateException if the scheduler has been closed
+     */
+    public boolean tryAdd(String url) {
+        String host = hostOf(url);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            promoteDueRetries();
+            HostQueue queue = hosts.get(host);
+            if (queue != null && queue.urls.size() + queue.retries.size() >= maxQueuedUrls) {
+                return false;
+            }
+            boolean starved = inFlight < globalLimit && ready.isEmpty();
+            if (pending >= maxQueuedUrls && !starved) {
+                return false;
+            }
+            if (queue == null) {
+                queue = hosts.computeIfAbsent(host, this::newHostQueue);
+            }
+            queue.urls.addLast(url);
+            pending++;
+            markReadyIfEligible(queue);
+            stateChanged.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals that no more URLs will be added. Once every URL has been handed out and released
+     * for good, {@link #next()} returns {@code null}.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands out the next URL, blocking until both the global limit and the limit of some host
+     * with pending URLs leave room for another download. Retries whose backoff has expired are
+     * served before new URLs of the same host.
+     *
+     * <p>Because any in-flight download may still be retried, {@code null} is only returned once
+     * the scheduler is closed and nothing is pending, in flight or waiting out a backoff.
+     *
+     * @return the next dispatch, or {@code null} once the scheduler is closed and drained
+     * @throws InterruptedException if interrupted while waiting for capacity
+     */
+    public Dispatch next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                promoteDueRetries();
+                if (inFlight < globalLimit && !ready.isEmpty()) {
+                    break;
+                }
+                if (closed && pending == 0 && inFlight == 0 && deferred.isEmpty()) {
+                    return null;
+                }
+                if (inFlight >= globalLimit || deferred.isEmpty()) {
+                    stateChanged.await();
+                } else {
+                    // Nothing to do until the earliest backoff expires (or a slot or URL shows up)
+                    stateChanged.awaitNanos(deferred.peek().dueNanos() - System.nanoTime());
+                }
+            }
+
+            HostQueue queue = ready.peekFirst();
+            Dispatch dispatch = queue.retries.isEmpty()
+                    ? new Dispatch(queue.urls.pollFirst(), queue.host, 1, Instant.now())
+                    : queue.retries.pollFirst();
+            pending--;
+            inFlight++;
+            queue.inFlight++;
+            queue.credit--;
+
+            if (!queue.hasWork() || queue.inFlight >= queue.limit) {
+                // Out of work or at its limit: leave the ring until release() or add() re-queues it
+                ready.pollFirst();
+                queue.queued = false;
+                queue.credit = queue.weight;
+            } else if (queue.credit <= 0) {
+                // Used up its turn: rotate to the back of the ring
+                ready.addLast(ready.pollFirst());
+                queue.credit = queue.weight;
+            }
+            return dispatch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the slots held by a finished download and wakes the dispatcher.
+     *
+     * @param dispatch the dispatch previously returned by {@link #next()}
+     */
+    public void release(Dispatch dispatch) {
+        lock.lock();
+        try {
+            releaseSlots(dispatch);
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the slots held by a failed attempt and queues the next attempt of the same URL
+     * once {@code delay} has elapsed. This never blocks, so the calling worker is free at once.
+     *
+     * @param dispatch the dispatch previously returned by {@link #next()}
+     * @param delay    the backoff before the next attempt may be dispatched
+     */
+    public void retry(Dispatch dispatch, Duration delay) {
+        lock.lock();
+        try {
+            releaseSlots(dispatch);
+            deferred.add(new Deferred(dispatch.nextAttempt(), System.nanoTime() + delay.toNanos()));
+            stateChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the global limit. Lowering it never interrupts running downloads: no new URL is
+     * dispatched until enough of them have been released.
+     *
+     * @param limit the new limit, clamped to {@code [1, maxConcurrentDownloads]}
+     */
+    public void setGlobalLimit(int limit) {
+        lock.lock();
+        try {
+            int clamped = Math.max(1, Math.min(limit, maxGlobalLimit));
+            if (clamped != globalLimit) {
+                globalLimit = clamped;
+                stateChanged.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs queued but not yet dispatched, including retries whose
+     * backoff has expired.
+     *
+     * @return the pending URL count
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of failed attempts still waiting out their backoff.
+     *
+     * @return the deferred retry count
+     */
+    public int deferredCount() {
+        lock.lock();
+        try {
+            return deferred.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of dispatched downloads not yet released.
+     *
+     * @return the in-flight download count
+     */
+    public int inFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseSlots(Dispatch dispatch) {
+        HostQueue queue = hosts.get(dispatch.host());
+        inFlight--;
+        queue.inFlight--;
+        if (!queue.hasWork() && queue.inFlight == 0) {
+            hosts.remove(queue.host);
+        } else {
+            markReadyIfEligible(queue);
+        }
+    }
+
+    private void promoteDueRetries() {
+        long now = System.nanoTime();
+        while (!deferred.isEmpty() && deferred.peek().dueNanos() - now <= 0) {
+            Dispatch retry = deferred.poll().dispatch();
+            HostQueue queue = hosts.computeIfAbsent(retry.host(), this::newHostQueue);
+            queue.retries.addLast(retry);
+            pending++;
+            markReadyIfEligible(queue);
+        }
+    }
+
+    private void markReadyIfEligible(HostQueue queue) {
+        if (!queue.queued && queue.hasWork() && queue.inFlight < queue.limit) {
+            ready.addLast(queue);
+            queue.queued = true;
+        }
+    }
+
+    private HostQueue newHostQueue(String host) {
+        int limit = Math.min(hostLimits.getOrDefault(host, defaultHostLimit), maxGlobalLimit);
+        int weight = hostWeights.getOrDefault(host, 1);
+        return new HostQueue(host, limit, weight);
+    }
+
+    private static Map<String, Integer> normalizeKeys(Map<String, Integer> byHost) {
+        Map<String, Integer> normalized = new HashMap<>();
+        if (byHost != null) {
+            byHost.forEach((host, value) -> normalized.put(host.toLowerCase(Locale.ROOT), value));
+        }
+        return normalized;
+    }
+
+    private static final class HostQueue {
+        final String host;
+        final int limit;
+        final int weight;
+        final ArrayDeque<String> urls = new ArrayDeque<>();
+        final ArrayDeque<Dispatch> retries = new ArrayDeque<>();
+        int inFlight;
+        int credit;
+        boolean queued;
+
+        HostQueue(String host, int limit, int weight) {
+            this.host = host;
+            this.limit = limit;
+            this.weight = weight;
+            this.credit = weight;
+        }
+
+        boolean hasWork() {
+            return !urls.isEmpty() || !retries.isEmpty();
+        }
+    }
+}
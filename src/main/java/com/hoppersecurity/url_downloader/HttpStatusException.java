@@ -0,0 +1,59 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Signals that a server answered with a non-2xx status code.
+ *
+ * <p>Carries the status code and, for {@code 429 Too Many Requests} and
+ * {@code 503 Service Unavailable}, the delay requested by the server's {@code Retry-After}
+ * header so that {@link RetryPolicy} can honor it.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public HttpStatusException(int statusCode, String reasonPhrase, Duration retryAfter) {
+        super("HTTP " + statusCode + ": " + reasonPhrase);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Creates the exception for a rejected response, reading {@code Retry-After} from 429 and 503 responses.
+     *
+     * @param response the non-2xx response
+     * @return the exception to fail the transfer with
+     */
+    public static HttpStatusException fromResponse(HttpResponse response) {
+        int statusCode = response.getCode();
+        Duration retryAfter = null;
+        if (statusCode == HttpStatus.SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            retryAfter = RetryPolicy.parseRetryAfter(header == null ? null : header.getValue());
+        }
+        return new HttpStatusException(statusCode, response.getReasonPhrase(), retryAfter);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the delay requested by the server's {@code Retry-After} header.
+     *
+     * @return the requested delay, or {@code null} if the response did not carry a usable one
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,33 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+
+/**
+ * Signals that a transfer did not deliver the content it should have: fewer bytes than its
+ * {@code Content-Length}, or a size or SHA-256 that differs from its {@link ExpectedContent}.
+ *
+ * <p>{@link RetryPolicy} retries it like any other I/O error. A body that merely ended early is
+ * {@link #isResumable() resumable}: its bytes are correct as far as they go, so the retry continues
+ * after them. Any other mismatch means the bytes on disk cannot be trusted; the attempt deletes
+ * them and the retry downloads the whole content again.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class IntegrityException extends IOException {
+    private final boolean resumable;
+
+    public IntegrityException(String message, boolean resumable) {
+        super(message);
+        this.resumable = resumable;
+    }
+
+    /**
+     * Returns whether the bytes written before the failure may be kept and resumed from.
+     *
+     * @return {@code true} if only the end of the content is missing
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+}
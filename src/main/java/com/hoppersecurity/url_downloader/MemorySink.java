@@ -0,0 +1,115 @@
+package com.hoppersecurity.url_downloader;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DownloadSink} keeping every completed payload on the heap, keyed by filename.
+ *
+ * <p>Meant for small payloads consumed by the caller right after the run, and for measuring the
+ * write path without a disk. A payload that grows beyond the configured limit fails its download
+ * with a {@link SinkCapacityException} instead of exhausting the heap, as soon as its declared
+ * size shows it; a payload of declared size is buffered in one allocation. Payloads stay in the sink
+ * until {@link #remove(String) removed}, also after it is closed.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class MemorySink implements DownloadSink {
+    static final int DEFAULT_MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final int maxPayloadBytes;
+    private final Map<String, byte[]> payloads = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty sink.
+     *
+     * @param maxPayloadBytes the largest payload the sink accepts
+     */
+    public MemorySink(int maxPayloadBytes) {
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) {
+        return new MemoryOutput(filename);
+    }
+
+    /**
+     * Returns a completed payload.
+     *
+     * @param filename the name the download was stored under
+     * @return the content, or {@code null} if no download with that name completed
+     */
+    public byte[] get(String filename) {
+        return payloads.get(filename);
+    }
+
+    /**
+     * Removes a completed payload from the sink, freeing its memory.
+     *
+     * @param filename the name the download was stored under
+     * @return the content, or {@code null} if no download with that name completed
+     */
+    public byte[] remove(String filename) {
+        return payloads.remove(filename);
+    }
+
+    public int size() {
+        return payloads.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MemorySink[" + payloads.size() + " payloads]";
+    }
+
+    private final class MemoryOutput implements Output {
+        private final String filename;
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+        private int length;
+
+        MemoryOutput(String filename) {
+            this.filename = filename;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws SinkCapacityException {
+            int bytes = data.remaining();
+            if ((long) length + bytes > maxPayloadBytes) {
+                throw new SinkCapacityException(filename + " is larger than the in-memory limit of "
+                        + maxPayloadBytes + " bytes");
+            }
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxPayloadBytes, Math.max(length + bytes, 2L * buffer.length)));
+            }
+            data.get(buffer, length, bytes);
+            length += bytes;
+        }
+
+        @Override
+        public void preallocate(long totalBytes) throws SinkCapacityException {
+            if (totalBytes > maxPayloadBytes) {
+                throw new SinkCapacityException(filename + " has " + totalBytes + " bytes, more than the in-memory limit of "
+                        + maxPayloadBytes + " bytes");
+            }
+            if (totalBytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) totalBytes); // one allocation instead of doubling
+            }
+        }
+
+        @Override
+        public void complete() {
+            payloads.put(filename, length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+            buffer = null;
+        }
+
+        @Override
+        public void abort(boolean discard) {
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.hoppersecurity.url_downloader;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of what was downloaded for each URL, used to make repeat runs incremental.
+ *
+ * <p>For every URL downloaded successfully the store keeps the response's {@code ETag} and
+ * {@code Last-Modified} headers together with the size and path of the file written. On a later
+ * run {@link ConcurrentUrlDownloader} sends them back as {@code If-None-Match} and
+ * {@code If-Modified-Since}, and a {@code 304 Not Modified} answer completes the URL without
+ * transferring the body (see {@link DownloadResult#notModified}). An entry is only used while its
+ * file still exists with the recorded size, so deleting or truncating a file forces a full
+ * download.
+ *
+ * <p>The file is in JSON Lines format, one entry per line:
+ * <pre>{@code
+ * {"url":"http://example.com/a.bin","etag":"\"v1\"","lastModified":"Wed, 01 Jan 2025 00:00:00 GMT","size":1024,"path":"/data/1735689600000_a.bin"}
+ * }</pre>
+ * It is read into memory once, and every update is appended as a new line immediately, so an
+ * interrupted run keeps what it already downloaded. When the store is closed it is compacted:
+ * rewritten to a temporary file with one line per URL and moved over the original atomically.
+ *
+ * <p>Thread Safety: all methods are thread-safe.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class MetadataStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataStore.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * What is known about the last successful download of a URL.
+     *
+     * @param url          the downloaded URL
+     * @param etag         the response's {@code ETag}, or {@code null}
+     * @param lastModified the response's {@code Last-Modified} date, or {@code null}
+     * @param size         the size of the downloaded file in bytes
+     * @param path         the absolute path of the downloaded file
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Entry(String url, String etag, String lastModified, long size, String path) {
+
+        /**
+         * Creates the entry for a completed download.
+         *
+         * @param url      the downloaded URL
+         * @param response the response the file was downloaded from
+         * @param file     the downloaded file
+         * @param size     the size of the file in bytes
+         * @return the entry, or {@code null} if the response carries no validator to revalidate with
+         */
+        static Entry of(String url, HttpResponse response, Path file, long size) {
+            Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            if (etag == null && lastModified == null) {
+                return null;
+            }
+            return new Entry(url, etag == null ? null : etag.getValue(),
+                    lastModified == null ? null : lastModified.getValue(),
+                    size, file.toAbsolutePath().normalize().toString());
+        }
+
+        /**
+         * Returns the headers that make a request conditional on the resource having changed.
+         *
+         * @return {@code If-None-Match} and/or {@code If-Modified-Since}
+         */
+        Map<String, String> conditionalHeaders() {
+            Map<String, String> headers = new LinkedHashMap<>();
+            if (etag != null) {
+                headers.put(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                headers.put(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+            return headers;
+        }
+
+        /**
+         * Returns whether the recorded file is still in place, so a {@code 304} can be trusted.
+         *
+         * @return {@code true} if the file exists with the recorded size
+         */
+        boolean fileMatches() {
+            try {
+                Path file = Path.of(path);
+                return Files.isRegularFile(file) && Files.size(file) == size;
+            } catch (IOException | RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final BufferedWriter appender;
+    private int lines;
+
+    private MetadataStore(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            load();
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.appender = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens a store, loading the entries of an existing file.
+     *
+     * @param file the store file; created on first update if it does not exist
+     * @return the open store
+     * @throws IOException if the file cannot be read or opened for appending
+     */
+    public static MetadataStore open(Path file) throws IOException {
+        return new MetadataStore(file);
+    }
+
+    /**
+     * Returns the entry recorded for a URL.
+     *
+     * @param url the URL
+     * @return the entry, or {@code null} if the URL was never downloaded
+     */
+    public Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Records a download, replacing any earlier entry for its URL, and appends it to the file.
+     *
+     * @param entry the entry to record
+     * @throws IOException if the entry cannot be written
+     */
+    public void put(Entry entry) throws IOException {
+        entries.put(entry.url(), entry);
+        synchronized (this) {
+            appender.write(MAPPER.writeValueAsString(entry));
+            appender.newLine();
+            appender.flush();
+            lines++;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Closes the store, compacting the file if it holds superseded entries.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        appender.close();
+        if (lines == entries.size()) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(MAPPER.writeValueAsString(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Compacted metadata store {} from {} to {} lines", file, lines, entries.size());
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines++;
+                try {
+                    Entry entry = MAPPER.readValue(line, Entry.class);
+                    entries.put(entry.url(), entry);
+                } catch (IOException e) {
+                    // A line torn by a crash costs one conditional request, not the whole store
+                    logger.warn("Skipping unreadable line in metadata store {}: {}", file, e.getMessage());
+                }
+            }
+        }
+    }
+}
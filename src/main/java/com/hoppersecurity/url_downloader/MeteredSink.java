@@ -0,0 +1,96 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decorator recording the bytes and the time of every call into a {@link DownloadSink} in its
+ * {@link SinkMetrics}, so sinks do not have to measure themselves.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class MeteredSink implements DownloadSink {
+    private final DownloadSink delegate;
+    private final SinkMetrics metrics = new SinkMetrics();
+
+    MeteredSink(DownloadSink delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            return new MeteredOutput(delegate.open(url, filename, position));
+        } finally {
+            metrics.recordCall(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public boolean supportsResume() {
+        return delegate.supportsResume();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    DownloadSink getDelegate() {
+        return delegate;
+    }
+
+    SinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private final class MeteredOutput implements Output {
+        private final Output output;
+
+        MeteredOutput(Output output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int bytes = data.remaining();
+            long startNanos = System.nanoTime();
+            output.write(data);
+            metrics.recordWrite(bytes, System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public void preallocate(long totalBytes) throws IOException {
+            long startNanos = System.nanoTime();
+            try {
+                output.preallocate(totalBytes);
+            } finally {
+                metrics.recordCall(System.nanoTime() - startNanos);
+            }
+        }
+
+        @Override
+        public void complete() throws IOException {
+            long startNanos = System.nanoTime();
+            output.complete();
+            metrics.recordCompleted(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public void abort(boolean discard) throws IOException {
+            long startNanos = System.nanoTime();
+            try {
+                output.abort(discard);
+            } finally {
+                metrics.recordCall(System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.hoppersecurity.url_downloader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DownloadSink} that discards all content, so a run measures the network and the client
+ * without any storage cost. Results still report the number of bytes received.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class NullSink implements DownloadSink {
+    private static final Output DISCARD = new Output() {
+        @Override
+        public void write(ByteBuffer data) {
+            data.position(data.limit());
+        }
+
+        @Override
+        public void complete() {
+        }
+
+        @Override
+        public void abort(boolean discard) {
+        }
+    };
+
+    @Override
+    public Output open(String url, String filename, long position) {
+        return DISCARD;
+    }
+
+    @Override
+    public String toString() {
+        return "NullSink";
+    }
+}
@@ -0,0 +1,264 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * URL to file mapping of an output directory using the {@link OutputLayout#HASHED} or
+ * {@link OutputLayout#CONTENT_ADDRESSED} layout.
+ *
+ * <p>A URL is stored at {@code <h0h1>/<h2h3>/<h0..h15>_<basename>}, where {@code h} is the hex
+ * SHA-256 of the URL and {@code basename} the sanitized last path segment, so the same URL gets
+ * the same path on every run. The first assignment of a path wins: should a different URL already
+ * own it (two URLs sharing the first 64 bits of their hash), the later one gets
+ * {@code <h0..h15>-1_<basename>}, {@code -2} and so on.
+ *
+ * <p>Assignments are kept in {@code url-index.tsv} at the root of the output directory, one
+ * {@code <url>\t<path>} line each, appended as they are made. The index is what makes collision
+ * suffixes stable across runs and lets {@link #lookup(String)} answer where a URL was stored
+ * without touching the file system. A line torn by a crash is cut off when the index is opened.
+ *
+ * <p>With {@link OutputLayout#CONTENT_ADDRESSED} paths are not assigned up front but
+ * {@link #record recorded} once the content is known, and many URLs may share one blob. A URL
+ * whose content changed is recorded again; the last line for a URL wins.
+ *
+ * <p>Thread Safety: all methods are thread-safe.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class OutputIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(OutputIndex.class);
+    static final String INDEX_FILE = "url-index.tsv";
+    private static final Pattern UNSAFE_FILENAME_CHARS = Pattern.compile("[^a-zA-Z0-9._-]");
+    private static final int MAX_BASENAME_LENGTH = 128;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path root;
+    private final Path indexFile;
+    private final Map<String, String> pathsByUrl = new ConcurrentHashMap<>();
+    private final Set<String> assignedPaths = ConcurrentHashMap.newKeySet();
+    private final Set<Path> shardDirectories = ConcurrentHashMap.newKeySet();
+    private final BufferedWriter appender;
+
+    private OutputIndex(Path root) throws IOException {
+        this.root = root;
+        this.indexFile = root.resolve(INDEX_FILE);
+        Files.createDirectories(root);
+        if (Files.exists(indexFile)) {
+            truncateTornLine();
+            load();
+        }
+        this.appender = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens the index of an output directory, creating the directory if needed.
+     *
+     * @param outputDirectory the output directory
+     * @return the open index
+     * @throws IOException if the index cannot be read or opened for appending
+     */
+    public static OutputIndex open(Path outputDirectory) throws IOException {
+        return new OutputIndex(outputDirectory);
+    }
+
+    /**
+     * Returns where a URL is stored.
+     *
+     * @param url the URL
+     * @return the path relative to the output directory, or {@code null} if the URL was never assigned one
+     */
+    public String lookup(String url) {
+        return pathsByUrl.get(url);
+    }
+
+    /**
+     * Returns the path a URL is stored at, assigning and recording one on first use, and makes
+     * sure its shard directory exists.
+     *
+     * @param url the URL
+     * @return the path relative to the output directory
+     */
+    public String assign(String url) {
+        String path = pathsByUrl.get(url);
+        if (path == null) {
+            path = assignNew(url);
+        }
+        createShardDirectory(path);
+        return path;
+    }
+
+    private synchronized String assignNew(String url) {
+        String path = pathsByUrl.get(url);
+        if (path != null) {
+            return path;
+        }
+        String hash = sha256Hex(url);
+        String basename = safeBasename(url);
+        int suffix = 0;
+        path = hashedPath(hash, suffix, basename);
+        while (assignedPaths.contains(path)) {
+            path = hashedPath(hash, ++suffix, basename);
+        }
+        if (suffix > 0) {
+            logger.warn("Hash prefix collision for {}: stored as {}", url, path);
+        }
+        append(url, path);
+        assignedPaths.add(path);
+        pathsByUrl.put(url, path);
+        return path;
+    }
+
+    private void append(String url, String path) {
+        try {
+            appender.write(url);
+            appender.write('\t');
+            appender.write(path);
+            appender.newLine();
+            appender.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write URL index " + indexFile, e);
+        }
+    }
+
+    /**
+     * Records the path a URL's content was stored at, if it differs from the one on record.
+     *
+     * @param url  the URL
+     * @param path the path relative to the output directory
+     */
+    public synchronized void record(String url, String path) {
+        if (path.equals(pathsByUrl.get(url))) {
+            return;
+        }
+        append(url, path);
+        pathsByUrl.put(url, path);
+    }
+
+    public int size() {
+        return pathsByUrl.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        appender.close();
+    }
+
+    /**
+     * Returns the last path segment of a URL with everything but letters, digits, {@code .},
+     * {@code _} and {@code -} replaced by {@code _}; {@code index.html} for a URL ending in
+     * {@code /} and {@code download} for one that cannot be parsed.
+     *
+     * @param url the URL
+     * @return a name that is safe on every file system
+     */
+    static String safeBasename(String url) {
+        String path;
+        try {
+            path = new URI(url).toURL().getPath();
+        } catch (Exception e) {
+            // Log at debug to avoid noise; safe fallback below
+            logger.debug("Failed to derive filename from URL '{}', falling back to default name", url, e);
+            return "download";
+        }
+        String filename = path.substring(path.lastIndexOf('/') + 1);
+        if (filename.isEmpty()) {
+            return "index.html";
+        }
+        if (filename.length() > MAX_BASENAME_LENGTH) {
+            filename = filename.substring(filename.length() - MAX_BASENAME_LENGTH);
+        }
+        return UNSAFE_FILENAME_CHARS.matcher(filename).replaceAll("_");
+    }
+
+    static String hashedPath(String hash, int suffix, String basename) {
+        StringBuilder path = new StringBuilder(hash.length() + basename.length() + 8)
+                .append(hash, 0, 2).append('/').append(hash, 2, 4).append('/').append(hash, 0, 16);
+        if (suffix > 0) {
+            path.append('-').append(suffix);
+        }
+        return path.append('_').append(basename).toString();
+    }
+
+    static String sha256Hex(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HEX.formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void createShardDirectory(String path) {
+        Path directory = root.resolve(path).getParent();
+        if (shardDirectories.contains(directory)) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            shardDirectories.add(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create shard directory " + directory, e);
+        }
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    String path = line.substring(tab + 1);
+                    pathsByUrl.put(line.substring(0, tab), path);
+                    assignedPaths.add(path);
+                }
+            }
+        }
+        logger.debug("Loaded {} entries from URL index {}", pathsByUrl.size(), indexFile);
+    }
+
+    /**
+     * Cuts the index back to its last complete line, so a path torn by a crash is never used.
+     */
+    private void truncateTornLine() throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer single = ByteBuffer.allocate(1);
+            long end = channel.size();
+            while (end > 0) {
+                single.clear();
+                channel.read(single, end - 1);
+                if (single.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < channel.size()) {
+                logger.warn("Discarding {} bytes of an incomplete line at the end of URL index {}",
+                        channel.size() - end, indexFile);
+                channel.truncate(end);
+            }
+        }
+    }
+}
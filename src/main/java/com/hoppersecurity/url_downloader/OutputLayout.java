@@ -0,0 +1,29 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * How {@link ConcurrentUrlDownloader} names downloaded files inside the output directory.
+ *
+ * <ul>
+ *   <li>{@link #TIMESTAMPED} - {@code <epochMillis>_<basename>} directly in the output directory.
+ *       Every run writes new files, and two URLs with the same basename that start in the same
+ *       millisecond write the same file.</li>
+ *   <li>{@link #HASHED} - {@code <h0h1>/<h2h3>/<h0..h15>_<basename>}, where {@code h} is the hex
+ *       SHA-256 of the URL. A URL always maps to the same path, so reruns overwrite instead of
+ *       duplicating; files are spread over 65,536 shard directories so none of them grows large; and
+ *       the assignments are recorded in an {@link OutputIndex} that resolves hash collisions.</li>
+ *   <li>{@link #CONTENT_ADDRESSED} - {@code blobs/<h0h1>/<h2h3>/<sha256>}, where the digest is that
+ *       of the content, computed while it streams to disk. Identical content served by several
+ *       URLs is stored once (see {@link ContentStore}), and the {@link OutputIndex} records which
+ *       blob each URL resolved to. Segmented downloads are not used, since their ranges arrive
+ *       out of order.</li>
+ * </ul>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see OutputIndex
+ */
+public enum OutputLayout {
+    TIMESTAMPED,
+    HASHED,
+    CONTENT_ADDRESSED
+}
@@ -0,0 +1,259 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * On-disk format of a packed output directory, shared by {@link PackedSink} and {@link PackedStore},
+ * and the in-memory entry table the index file is built from.
+ *
+ * <p>Segments {@code segment-000000.pack}, {@code segment-000001.pack}, ... hold one record per
+ * download, each a 12-byte header (URL length as an {@code int}, body length as a {@code long})
+ * followed by the UTF-8 URL and the body. Records are self-describing, so the index can always
+ * be rebuilt from the segments.
+ *
+ * <p>The index {@code packed.idx} is a 24-byte header (magic, number of segments it covers,
+ * entry size, number of entries) followed by 32-byte entries sorted by the unsigned 64-bit hash of the URL:
+ * hash, record offset, body length, segment and URL length. Entries with the same hash keep the
+ * order they were written in, so the last one for a URL is its latest download. Fixed-size
+ * sorted entries let a reader binary-search the mapped file without loading it.
+ *
+ * <p>{@link #load(Path)} reads the index and scans any segment written after it, which is how a
+ * run that did not close cleanly is recovered; a record torn by the crash is cut off its segment.
+ *
+ * <p>Not thread-safe; callers synchronize.
+ */
+final class PackedIndex {
+    private static final Logger logger = LoggerFactory.getLogger(PackedIndex.class);
+    static final String INDEX_FILE = "packed.idx";
+    static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    static final int HEADER_BYTES = 24;
+    static final int ENTRY_BYTES = 32;
+    static final int MAX_URL_BYTES = 64 * 1024;
+    private static final long MAGIC = 0x444c5041434b3031L; // "DLPACK01"
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private long[] hashes = new long[1024];
+    private long[] offsets = new long[1024];
+    private long[] lengths = new long[1024];
+    private int[] segments = new int[1024];
+    private int[] urlLengths = new int[1024];
+    private int size;
+    private int coveredSegments;
+
+    static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(String.format("segment-%06d.pack", segment));
+    }
+
+    /**
+     * Returns how many segments the directory holds, counting up from {@code segment-000000.pack}.
+     */
+    static int segmentCount(Path directory) {
+        int count = 0;
+        while (Files.exists(segmentPath(directory, count))) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many segments an index file covers.
+     *
+     * @throws IOException if the file is not a packed index
+     */
+    static int coveredSegments(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            return checkHeader(header.flip(), indexFile);
+        }
+    }
+
+    static int checkHeader(ByteBuffer header, Path indexFile) throws IOException {
+        if (header.remaining() < HEADER_BYTES || header.getLong(0) != MAGIC) {
+            throw new IOException(indexFile + " is not a packed index");
+        }
+        return header.getInt(8);
+    }
+
+    /**
+     * Reads the index of a directory and adds the records of every segment it does not cover.
+     *
+     * @param directory the packed output directory
+     * @return the entries of every segment in the directory
+     * @throws IOException if the index or a segment cannot be read
+     */
+    static PackedIndex load(Path directory) throws IOException {
+        PackedIndex index = new PackedIndex();
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            index.readIndex(indexFile);
+        }
+        int segmentCount = segmentCount(directory);
+        for (int segment = index.coveredSegments; segment < segmentCount; segment++) {
+            index.scan(directory, segment);
+        }
+        index.coveredSegments = Math.max(index.coveredSegments, segmentCount);
+        return index;
+    }
+
+    private void readIndex(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            coveredSegments = checkHeader(mapped, indexFile);
+            long entries = mapped.getLong(16);
+            for (int i = 0; i < entries; i++) {
+                int at = HEADER_BYTES + i * ENTRY_BYTES;
+                add(mapped.getLong(at), mapped.getInt(at + 24), mapped.getLong(at + 8), mapped.getLong(at + 16),
+                        mapped.getInt(at + 28));
+            }
+        }
+    }
+
+    private void scan(Path directory, int segment) throws IOException {
+        Path file = segmentPath(directory, segment);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            long position = 0;
+            int records = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            while (position + RECORD_HEADER_BYTES <= fileSize) {
+                readFully(channel, header.clear(), position);
+                int urlLength = header.getInt(0);
+                long bodyLength = header.getLong(Integer.BYTES);
+                long end = position + RECORD_HEADER_BYTES + urlLength + bodyLength;
+                if (urlLength <= 0 || urlLength > MAX_URL_BYTES || bodyLength < 0 || end > fileSize) {
+                    break;
+                }
+                ByteBuffer url = ByteBuffer.allocate(urlLength);
+                readFully(channel, url, position + RECORD_HEADER_BYTES);
+                add(DownloadJournal.hash(url.array(), 0, urlLength), segment, position, bodyLength, urlLength);
+                position = end;
+                records++;
+            }
+            if (position < fileSize) {
+                logger.warn("Discarding {} bytes of an incomplete record at the end of {}", fileSize - position, file);
+                channel.truncate(position);
+            }
+            logger.info("Recovered {} records from unindexed segment {}", records, file);
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of packed segment at byte " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+    }
+
+    void add(long hash, int segment, long offset, long length, int urlLength) {
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            urlLengths = Arrays.copyOf(urlLengths, capacity);
+        }
+        hashes[size] = hash;
+        offsets[size] = offset;
+        lengths[size] = length;
+        segments[size] = segment;
+        urlLengths[size] = urlLength;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int coveredSegments() {
+        return coveredSegments;
+    }
+
+    void setCoveredSegments(int coveredSegments) {
+        this.coveredSegments = coveredSegments;
+    }
+
+    /**
+     * Writes the sorted index next to the segments, replacing the previous one atomically.
+     *
+     * @param directory the packed output directory
+     * @throws IOException if the index cannot be written
+     */
+    void write(Path directory) throws IOException {
+        if (HEADER_BYTES + (long) size * ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Packed index of " + size + " entries exceeds the 2 GB a reader can map");
+        }
+        Path indexFile = directory.resolve(INDEX_FILE);
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+        int[] order = sortedOrder();
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+            buffer.putLong(MAGIC).putInt(coveredSegments).putInt(ENTRY_BYTES).putLong(size);
+            for (int entry : order) {
+                if (buffer.remaining() < ENTRY_BYTES) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+                }
+                buffer.putLong(hashes[entry]).putLong(offsets[entry]).putLong(lengths[entry])
+                        .putInt(segments[entry]).putInt(urlLengths[entry]);
+            }
+            writeFully(channel, buffer.flip());
+            channel.force(false);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Orders the entries by unsigned hash with a stable LSD radix sort, 16 bits per pass, so
+     * entries with equal hashes stay in the order they were added.
+     */
+    private int[] sortedOrder() {
+        int[] order = new int[size];
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] starts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift < Long.SIZE; shift += 16) {
+            Arrays.fill(starts, 0);
+            for (int i = 0; i < size; i++) {
+                starts[(int) (hashes[order[i]] >>> shift & 0xffff) + 1]++;
+            }
+            for (int digit = 0; digit < 1 << 16; digit++) {
+                starts[digit + 1] += starts[digit];
+            }
+            for (int i = 0; i < size; i++) {
+                int entry = order[i];
+                sorted[starts[(int) (hashes[entry] >>> shift & 0xffff)]++] = entry;
+            }
+            int[] swap = order;
+            order = sorted;
+            sorted = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,276 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link DownloadSink} appending every completed download to rolling segment files, for runs of
+ * many small downloads where creating one file per URL costs more than the transfer.
+ *
+ * <p>Each output buffers its body on the heap, spilling to a file under {@code .incoming} once it
+ * outgrows {@value #SPILL_THRESHOLD} bytes, and completing it appends one record (URL, length,
+ * body) to the current segment in a single gathering write. A segment is closed and the next one
+ * started once the record would take it past the configured size, so a file holds thousands of
+ * downloads and the file system sees a handful of large sequential writes instead of a create,
+ * write and close per URL. Failed attempts leave nothing in a segment.
+ *
+ * <p>Every run starts a new segment next to those of earlier runs. {@link #close()} writes the
+ * sorted index {@link PackedStore} looks URLs up in; a run that dies before that is recovered
+ * from the segments the next time the directory is opened. The record format is described in
+ * {@link PackedIndex}.
+ *
+ * <p>Like {@link FileSink}, segments are not forced to disk while the run writes them.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see PackedStore
+ */
+public class PackedSink implements DownloadSink {
+    private static final Logger logger = LoggerFactory.getLogger(PackedSink.class);
+    static final long DEFAULT_SEGMENT_BYTES = 256L * 1024 * 1024;
+    static final int SPILL_THRESHOLD = 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final Path directory;
+    private final Path spoolDirectory;
+    private final long segmentBytes;
+    private final PackedIndex index;
+    private final int firstSegment;
+    private int segment;
+    private FileChannel channel;
+    private long position;
+
+    private PackedSink(Path directory, long segmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.spoolDirectory = directory.resolve(".incoming");
+        this.segmentBytes = segmentBytes;
+        removeSpooled();
+        this.index = PackedIndex.load(directory);
+        this.firstSegment = index.coveredSegments();
+        this.segment = firstSegment;
+        this.channel = createSegment(segment);
+    }
+
+    /**
+     * Opens a packed directory for appending, creating it if needed and recovering the records
+     * of a run that did not close it.
+     *
+     * @param directory    the directory holding segments and index
+     * @param segmentBytes the size after which a segment is closed and the next one started
+     * @return the open sink
+     * @throws IOException if the directory cannot be read or the first segment cannot be created
+     */
+    public static PackedSink open(Path directory, long segmentBytes) throws IOException {
+        return new PackedSink(directory, segmentBytes);
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) {
+        return new PackedOutput(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns how many records the directory holds, including those of earlier runs.
+     *
+     * @return the number of records
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns how many segments this run has written to.
+     *
+     * @return the number of segments
+     */
+    public synchronized int segmentsWritten() {
+        return segment - firstSegment + (position > 0 ? 1 : 0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+        int segments = segment + 1;
+        if (position == 0) {
+            Files.delete(PackedIndex.segmentPath(directory, segment));
+            segments--;
+        }
+        index.setCoveredSegments(segments);
+        index.write(directory);
+        try {
+            Files.deleteIfExists(spoolDirectory);
+        } catch (IOException e) {
+            logger.warn("Could not remove spool directory {}: {}", spoolDirectory, e.getMessage());
+        }
+        logger.debug("Closed packed directory {} with {} records in {} segments", directory, index.size(), segments);
+    }
+
+    /**
+     * Removes bodies a run that did not close the directory left spilled.
+     */
+    private void removeSpooled() throws IOException {
+        if (!Files.isDirectory(spoolDirectory)) {
+            return;
+        }
+        try (var spooled = Files.list(spoolDirectory)) {
+            for (Path file : (Iterable<Path>) spooled::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private FileChannel createSegment(int number) throws IOException {
+        return FileChannel.open(PackedIndex.segmentPath(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        channel = createSegment(++segment);
+        position = 0;
+    }
+
+    private synchronized void append(byte[] url, byte[] body, int length) throws IOException {
+        ByteBuffer[] record = {header(url, length), ByteBuffer.wrap(url), ByteBuffer.wrap(body, 0, length)};
+        long recordBytes = prepare(url, length);
+        try {
+            for (long written = 0; written < recordBytes; ) {
+                written += channel.write(record);
+            }
+        } catch (IOException e) {
+            throw discardTail(e);
+        }
+        commit(url, length, recordBytes);
+    }
+
+    private synchronized void append(byte[] url, FileChannel body) throws IOException {
+        long length = body.size();
+        ByteBuffer[] record = {header(url, length), ByteBuffer.wrap(url)};
+        long recordBytes = prepare(url, length);
+        try {
+            for (long written = 0; written < recordBytes - length; ) {
+                written += channel.write(record);
+            }
+            for (long copied = 0; copied < length; ) {
+                copied += body.transferTo(copied, length - copied, channel);
+            }
+        } catch (IOException e) {
+            throw discardTail(e);
+        }
+        commit(url, length, recordBytes);
+    }
+
+    /**
+     * Cuts a partly written record off the segment, so the next one starts where the index expects.
+     */
+    private IOException discardTail(IOException cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+        return cause;
+    }
+
+    private long prepare(byte[] url, long length) throws IOException {
+        long recordBytes = PackedIndex.RECORD_HEADER_BYTES + url.length + length;
+        if (position > 0 && position + recordBytes > segmentBytes) {
+            roll();
+        }
+        return recordBytes;
+    }
+
+    private void commit(byte[] url, long length, long recordBytes) {
+        index.add(DownloadJournal.hash(url, 0, url.length), segment, position, length, url.length);
+        position += recordBytes;
+    }
+
+    private static ByteBuffer header(byte[] url, long length) throws IOException {
+        if (url.length > PackedIndex.MAX_URL_BYTES) {
+            throw new IOException("URL of " + url.length + " bytes is too long for a packed record");
+        }
+        return ByteBuffer.allocate(PackedIndex.RECORD_HEADER_BYTES).putInt(url.length).putLong(length).flip();
+    }
+
+    @Override
+    public String toString() {
+        return "PackedSink[" + directory + "]";
+    }
+
+    private final class PackedOutput implements Output {
+        private final byte[] url;
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+        private int length;
+        private Path spool;
+        private FileChannel spilled;
+
+        PackedOutput(byte[] url) {
+            this.url = url;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            int bytes = data.remaining();
+            if (spilled == null && length + bytes > SPILL_THRESHOLD) {
+                spill();
+            }
+            if (spilled != null) {
+                while (data.hasRemaining()) {
+                    spilled.write(data);
+                }
+                return;
+            }
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(SPILL_THRESHOLD, Math.max(length + bytes, 2 * buffer.length)));
+            }
+            data.get(buffer, length, bytes);
+            length += bytes;
+        }
+
+        private void spill() throws IOException {
+            Files.createDirectories(spoolDirectory);
+            spool = Files.createTempFile(spoolDirectory, "record-", ".part");
+            spilled = FileChannel.open(spool, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            ByteBuffer buffered = ByteBuffer.wrap(buffer, 0, length);
+            while (buffered.hasRemaining()) {
+                spilled.write(buffered);
+            }
+            buffer = null;
+        }
+
+        @Override
+        public void complete() throws IOException {
+            if (spilled == null) {
+                append(url, buffer, length);
+                buffer = null;
+                return;
+            }
+            try (FileChannel body = spilled) {
+                append(url, body);
+            } finally {
+                Files.deleteIfExists(spool);
+            }
+        }
+
+        @Override
+        public void abort(boolean discard) throws IOException {
+            buffer = null;
+            if (spilled != null) {
+                try (FileChannel body = spilled) {
+                    Files.deleteIfExists(spool);
+                }
+            }
+        }
+    }
+}
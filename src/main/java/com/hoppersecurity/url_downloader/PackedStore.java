@@ -0,0 +1,197 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read access to a directory written by {@link PackedSink}.
+ *
+ * <p>The index is memory-mapped rather than loaded, so opening a store of millions of records
+ * costs no heap and a lookup touches a few pages of the index: a binary search over the sorted
+ * hashes, then a read of the candidate records' URLs to rule out hash collisions. When a URL was
+ * downloaded more than once the latest record wins.
+ *
+ * <p>A directory whose index does not cover every segment, because the run writing it did not
+ * close it, is indexed again on {@link #open(Path)}; a store must therefore not be opened while
+ * a run is still writing to the directory.
+ *
+ * <p>Thread Safety: lookups and extractions are thread-safe.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class PackedStore implements Closeable {
+
+    /**
+     * Where a record's body is stored.
+     *
+     * @param segment the segment file number
+     * @param offset  the offset of the body within the segment
+     * @param length  the length of the body
+     */
+    public record Location(int segment, long offset, long length) {
+    }
+
+    private final Path directory;
+    private final MappedByteBuffer index;
+    private final int entryCount;
+    private final FileChannel[] segments;
+
+    private PackedStore(Path directory) throws IOException {
+        this.directory = directory;
+        Path indexFile = directory.resolve(PackedIndex.INDEX_FILE);
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(indexFile + " is too large to map");
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.segments = new FileChannel[PackedIndex.checkHeader(index, indexFile)];
+        this.entryCount = (int) index.getLong(16);
+    }
+
+    /**
+     * Opens a packed directory for reading, indexing any segments its index does not cover.
+     *
+     * @param directory the directory holding segments and index
+     * @return the open store
+     * @throws IOException if the directory is not a packed directory or cannot be read
+     */
+    public static PackedStore open(Path directory) throws IOException {
+        Path indexFile = directory.resolve(PackedIndex.INDEX_FILE);
+        int segmentCount = PackedIndex.segmentCount(directory);
+        if (segmentCount == 0 && !Files.exists(indexFile)) {
+            throw new IOException(directory + " holds no packed segments");
+        }
+        if (!Files.exists(indexFile) || PackedIndex.coveredSegments(indexFile) < segmentCount) {
+            PackedIndex.load(directory).write(directory);
+        }
+        return new PackedStore(directory);
+    }
+
+    /**
+     * Finds the latest record of a URL.
+     *
+     * @param url the URL
+     * @return where its body is stored, or {@code null} if the store holds no record of it
+     * @throws IOException if a segment cannot be read
+     */
+    public Location lookup(String url) throws IOException {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        long hash = DownloadJournal.hash(urlBytes, 0, urlBytes.length);
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(hashAt(middle), hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        Location found = null;
+        for (int entry = low; entry < entryCount && hashAt(entry) == hash; entry++) {
+            int at = PackedIndex.HEADER_BYTES + entry * PackedIndex.ENTRY_BYTES;
+            int segment = index.getInt(at + 24);
+            long offset = index.getLong(at + 8);
+            int urlLength = index.getInt(at + 28);
+            if (urlLength == urlBytes.length && matches(segment, offset, urlBytes)) {
+                found = new Location(segment, offset + PackedIndex.RECORD_HEADER_BYTES + urlLength, index.getLong(at + 16));
+            }
+        }
+        return found;
+    }
+
+    private long hashAt(int entry) {
+        return index.getLong(PackedIndex.HEADER_BYTES + entry * PackedIndex.ENTRY_BYTES);
+    }
+
+    private boolean matches(int segment, long offset, byte[] url) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(url.length);
+        PackedIndex.readFully(segment(segment), stored, offset + PackedIndex.RECORD_HEADER_BYTES);
+        return Arrays.equals(stored.array(), url);
+    }
+
+    /**
+     * Copies a record's body to a channel without passing it through the heap.
+     *
+     * @param location where the body is stored
+     * @param target   the channel to copy to
+     * @throws IOException if the body cannot be read or written
+     */
+    public void copy(Location location, WritableByteChannel target) throws IOException {
+        FileChannel segment = segment(location.segment());
+        for (long copied = 0; copied < location.length(); ) {
+            long transferred = segment.transferTo(location.offset() + copied, location.length() - copied, target);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of packed segment " + location.segment());
+            }
+            copied += transferred;
+        }
+    }
+
+    /**
+     * Reads a record's body onto the heap.
+     *
+     * @param location where the body is stored
+     * @return the body
+     * @throws IOException if the body cannot be read
+     */
+    public byte[] read(Location location) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(Math.toIntExact(location.length()));
+        PackedIndex.readFully(segment(location.segment()), body, location.offset());
+        return body.array();
+    }
+
+    /**
+     * Returns how many records the store holds, counting every download of a URL.
+     *
+     * @return the number of records
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    private synchronized FileChannel segment(int number) throws IOException {
+        if (segments[number] == null) {
+            segments[number] = FileChannel.open(PackedIndex.segmentPath(directory, number), StandardOpenOption.READ);
+        }
+        return segments[number];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel segment : segments) {
+            if (segment == null) {
+                continue;
+            }
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackedStore[" + directory + ", " + entryCount + " records]";
+    }
+}
@@ -0,0 +1,145 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Request-rate and byte-rate budgets applied by the transports, globally and per host.
+ *
+ * <p>Four kinds of {@link TokenBucket} may apply to a transfer:
+ * <ul>
+ *   <li>{@code maxRequestsPerSecond} and {@code maxBytesPerSecond}, shared by all hosts;</li>
+ *   <li>a per-host request rate taken from {@code hostRequestsPerSecond}, falling back to
+ *       {@code maxRequestsPerSecondPerHost};</li>
+ *   <li>a per-host byte rate taken from {@code hostBytesPerSecond}, falling back to
+ *       {@code maxBytesPerSecondPerHost}.</li>
+ * </ul>
+ * A value of 0 means "no limit". Every request, including the HEAD probe and each range of a
+ * segmented download, takes one request token before it is sent; every chunk of a response body
+ * takes one byte token per byte once it has been read. A transfer subject to both a global and a
+ * host bucket takes from both and waits for the later of the two. Host buckets are created on
+ * first use and live as long as the transport.
+ *
+ * <p>The {@code reserve} methods never block; they return how long the caller must wait.
+ * {@link #park(long)} waits that long with {@link LockSupport#parkNanos}, so a throttled worker
+ * sleeps exactly until its tokens are due and costs nothing in the meantime.
+ *
+ * <p>Thread Safety: all methods are thread-safe and lock-free.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class RateLimiter {
+    private final TokenBucket globalRequests; // null = unlimited
+    private final TokenBucket globalBytes;
+    private final double defaultHostRequestsPerSecond;
+    private final long defaultHostBytesPerSecond;
+    private final Map<String, Double> hostRequestsPerSecond;
+    private final Map<String, Long> hostBytesPerSecond;
+    private final ConcurrentMap<String, TokenBucket> hostRequestBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> hostByteBuckets = new ConcurrentHashMap<>();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    public RateLimiter(DownloadConfig config) {
+        this.globalRequests = config.getMaxRequestsPerSecond() > 0 ? new TokenBucket(config.getMaxRequestsPerSecond()) : null;
+        this.globalBytes = config.getMaxBytesPerSecond() > 0 ? new TokenBucket(config.getMaxBytesPerSecond()) : null;
+        this.defaultHostRequestsPerSecond = config.getMaxRequestsPerSecondPerHost();
+        this.defaultHostBytesPerSecond = config.getMaxBytesPerSecondPerHost();
+        this.hostRequestsPerSecond = normalizeKeys(config.getHostRequestsPerSecond());
+        this.hostBytesPerSecond = normalizeKeys(config.getHostBytesPerSecond());
+    }
+
+    /**
+     * Returns whether any byte-rate budget is configured, so transports can skip the accounting
+     * entirely when it is not.
+     *
+     * @return {@code true} if response bodies are throttled
+     */
+    public boolean limitsBytes() {
+        return globalBytes != null || defaultHostBytesPerSecond > 0 || !hostBytesPerSecond.isEmpty();
+    }
+
+    /**
+     * Takes one request token for a request to the given URI.
+     *
+     * @param uri the request URI
+     * @return nanoseconds to wait before sending the request
+     */
+    public long reserveRequest(URI uri) {
+        String host = hostOf(uri);
+        long waitNanos = reserve(globalRequests, 1);
+        double rate = hostRequestsPerSecond.getOrDefault(host, defaultHostRequestsPerSecond);
+        if (rate > 0) {
+            waitNanos = Math.max(waitNanos, hostRequestBuckets.computeIfAbsent(host, h -> new TokenBucket(rate)).reserve(1));
+        }
+        throttledNanos.add(waitNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Takes byte tokens for a chunk received from the given URI.
+     *
+     * @param uri   the request URI
+     * @param bytes the size of the chunk
+     * @return nanoseconds to wait before reading more of the body
+     */
+    public long reserveBytes(URI uri, long bytes) {
+        String host = hostOf(uri);
+        long waitNanos = reserve(globalBytes, bytes);
+        long rate = hostBytesPerSecond.getOrDefault(host, defaultHostBytesPerSecond);
+        if (rate > 0) {
+            waitNanos = Math.max(waitNanos, hostByteBuckets.computeIfAbsent(host, h -> new TokenBucket(rate)).reserve(bytes));
+        }
+        throttledNanos.add(waitNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Returns the total time transfers have been told to wait, the rate-limiting metric.
+     *
+     * @return the accumulated wait in nanoseconds
+     */
+    public long getThrottledNanos() {
+        return throttledNanos.sum();
+    }
+
+    /**
+     * Parks the calling thread for the given time. Spurious wake-ups park again for the rest.
+     *
+     * @param nanos the time to wait; 0 or less returns at once
+     * @throws InterruptedIOException if the thread is interrupted while waiting; the interrupt
+     *                                flag is left set
+     */
+    public static void park(long nanos) throws InterruptedIOException {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(RateLimiter.class, remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while rate limited");
+            }
+        }
+    }
+
+    private static long reserve(TokenBucket bucket, long tokens) {
+        return bucket == null ? 0 : bucket.reserve(tokens);
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    private static <V> Map<String, V> normalizeKeys(Map<String, V> byHost) {
+        Map<String, V> normalized = new HashMap<>();
+        if (byHost != null) {
+            byHost.forEach((host, value) -> normalized.put(host.toLowerCase(Locale.ROOT), value));
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hoppersecurity.url_downloader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Result sink that appends each {@link DownloadResult} to a JSON Lines file as it completes.
+ *
+ * <p>Used by the streaming download mode so that results are flushed to disk instead of being
+ * accumulated in memory. Each line is one self-contained JSON object:
+ * <pre>{@code
+ * {"url":"http://example.com/a","success":true,"filename":"a","fileSize":1024,"startTime":"...","endTime":"...","durationMillis":12}
+ * {"url":"http://example.com/c","success":true,"filename":"c","fileSize":512,"notModified":true,"startTime":"...","endTime":"...","durationMillis":3}
+ * {"url":"http://example.com/d","success":true,"filename":"blobs/9f/86/9f86d0...","fileSize":4,"sha256":"9f86d0...","startTime":"...","endTime":"...","durationMillis":5}
+ * {"url":"http://example.com/e","success":true,"filename":"e.json","fileSize":310,"contentEncoding":"gzip","startTime":"...","endTime":"...","durationMillis":9}
+ * {"url":"http://example.com/b","success":false,"errorMessage":"HTTP 404: Not Found","startTime":"...","endTime":"...","durationMillis":7}
+ * }</pre>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class ResultsFileWriter implements Consumer<DownloadResult>, Closeable {
+    private final BufferedWriter writer;
+    private final JsonGenerator generator;
+
+    public ResultsFileWriter(Path resultsFile) throws IOException {
+        Path parent = resultsFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.writer = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8);
+        this.generator = new JsonFactory().createGenerator(writer);
+        this.generator.setRootValueSeparator(null);
+        // Lines are flushed into the buffered writer only; the OS sees large writes
+        this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    @Override
+    public synchronized void accept(DownloadResult result) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("url", result.url());
+            generator.writeBooleanField("success", result.success());
+            if (result.success()) {
+                generator.writeStringField("filename", result.filename());
+                generator.writeNumberField("fileSize", result.fileSize());
+                if (result.notModified()) {
+                    generator.writeBooleanField("notModified", true);
+                }
+                if (result.sha256() != null) {
+                    generator.writeStringField("sha256", result.sha256());
+                }
+                if (result.contentEncoding() != null) {
+                    generator.writeStringField("contentEncoding", result.contentEncoding());
+                }
+            } else {
+                generator.writeStringField("errorMessage", result.errorMessage());
+            }
+            generator.writeStringField("startTime", result.startTime().toString());
+            generator.writeStringField("endTime", result.endTime().toString());
+            generator.writeNumberField("durationMillis", result.durationMillis());
+            generator.writeEndObject();
+            generator.flush();
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write result for " + result.url(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        generator.close();
+        writer.close();
+    }
+}
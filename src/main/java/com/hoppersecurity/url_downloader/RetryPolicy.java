@@ -0,0 +1,106 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed download attempt is retried and how long to back off first.
+ *
+ * <p>Only transient failures are retried: I/O errors such as refused connections and timeouts,
+ * and the HTTP statuses {@code 408}, {@code 429} and {@code 5xx}. Other client errors such as
+ * {@code 404} fail immediately, since repeating the request cannot change the answer, and so do
+ * downloads that ran out of time ({@link DeadlineExceededException}).
+ *
+ * <p>The backoff before attempt {@code n + 1} is drawn uniformly from
+ * {@code [0, min(retryMaxDelayMillis, retryBaseDelayMillis * 2^(n-1))]} ("full jitter"), so
+ * URLs that failed together do not retry together. A {@code Retry-After} header on a
+ * {@code 429} or {@code 503} response replaces the computed backoff; if the server asks for
+ * longer than {@code retryMaxDelayMillis} the URL is failed instead of retried early.
+ *
+ * <p>Thread Safety: instances are immutable and safe to share between worker threads.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(DownloadConfig config) {
+        // retryAttempts counts every attempt, including the first one
+        this.maxAttempts = Math.max(1, config.getRetryAttempts());
+        this.baseDelayMillis = config.getRetryBaseDelayMillis();
+        this.maxDelayMillis = config.getRetryMaxDelayMillis();
+    }
+
+    /**
+     * Returns the backoff before the next attempt of a download that just failed.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @param cause   why it failed
+     * @return the delay before the next attempt, or {@code null} if the download must not be retried
+     */
+    public Duration retryDelay(int attempt, Throwable cause) {
+        if (attempt >= maxAttempts || !isRetryable(cause)) {
+            return null;
+        }
+        if (cause instanceof HttpStatusException statusException && statusException.getRetryAfter() != null) {
+            Duration retryAfter = statusException.getRetryAfter();
+            return retryAfter.toMillis() <= maxDelayMillis ? retryAfter : null;
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Returns whether a failure is transient, independent of how many attempts are left.
+     *
+     * @param cause the failure
+     * @return {@code true} for I/O errors and retryable HTTP statuses
+     */
+    public boolean isRetryable(Throwable cause) {
+        if (cause instanceof DeadlineExceededException) {
+            return false; // the URL's time budget is spent
+        }
+        if (cause instanceof SinkCapacityException) {
+            return false; // the next attempt would not fit either
+        }
+        if (cause instanceof HttpStatusException statusException) {
+            int status = statusException.getStatusCode();
+            return status == 408 || status == 429 || status >= 500;
+        }
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header value, given either as delay-seconds or as an HTTP date.
+     *
+     * @param value the header value, may be {@code null}
+     * @return the delay from now (never negative), or {@code null} if the value is absent or malformed
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds < 0 ? null : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            // Not delay-seconds; try the HTTP-date form below
+        }
+        try {
+            Instant retryAt = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), retryAt);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.hoppersecurity.url_downloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses how many byte ranges a segmented download is split into.
+ *
+ * <p>The count grows with the file size (no segment smaller than {@code minSegmentBytes}, no
+ * more than {@code maxSegmentsPerFile}) and shrinks when single connections are already fast:
+ * the planner keeps a moving average of the throughput measured per connection and only adds
+ * a segment for every {@link #TARGET_SEGMENT_SECONDS} seconds of transfer one connection would
+ * need. On a high-latency link, where each connection is slow, files are split as far as the
+ * limits allow; on a link where one connection can fetch the file in a couple of seconds,
+ * extra handshakes would cost more than they save and the file stays in fewer pieces.
+ *
+ * <p>Thread Safety: measurements may be recorded concurrently from any transfer thread.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class SegmentPlanner {
+    /** Transfer time per segment that makes another connection worth opening. */
+    static final int TARGET_SEGMENT_SECONDS = 2;
+
+    /** Weight of the newest sample in the throughput moving average, as a fraction of 8. */
+    private static final int SAMPLE_WEIGHT_EIGHTHS = 2;
+
+    private final long thresholdBytes;
+    private final int maxSegments;
+    private final long minSegmentBytes;
+    private final AtomicLong bytesPerSecond = new AtomicLong(); // 0 = nothing measured yet
+
+    public SegmentPlanner(DownloadConfig config) {
+        this.thresholdBytes = config.getSegmentThresholdBytes();
+        this.maxSegments = config.getMaxSegmentsPerFile();
+        this.minSegmentBytes = config.getMinSegmentBytes();
+    }
+
+    /**
+     * Returns whether segmented downloads are enabled by the configuration.
+     *
+     * @param config the download configuration
+     * @return {@code true} if {@code segmentThresholdBytes} is set
+     */
+    public static boolean isEnabled(DownloadConfig config) {
+        return config.getSegmentThresholdBytes() > 0 && config.getMaxSegmentsPerFile() > 1;
+    }
+
+    /**
+     * Returns how many connections one download may hold at once, which transports use to
+     * size their connection pools.
+     *
+     * @param config the download configuration
+     * @return {@code maxSegmentsPerFile} if segmented downloads are enabled, otherwise 1
+     */
+    public static int maxConnectionsPerDownload(DownloadConfig config) {
+        return isEnabled(config) ? config.getMaxSegmentsPerFile() : 1;
+    }
+
+    /**
+     * Returns the number of segments for a file of the given size.
+     *
+     * @param contentLength the file size in bytes
+     * @return the segment count; 1 means "download in one piece"
+     */
+    public int segmentCount(long contentLength) {
+        if (contentLength < thresholdBytes) {
+            return 1;
+        }
+        long bySize = Math.max(1, contentLength / Math.max(1, minSegmentBytes));
+        long count = Math.min(maxSegments, bySize);
+
+        long throughput = bytesPerSecond.get();
+        if (throughput > 0) {
+            long bytesPerTargetTime = throughput * TARGET_SEGMENT_SECONDS;
+            long byThroughput = (contentLength + bytesPerTargetTime - 1) / bytesPerTargetTime;
+            count = Math.min(count, Math.max(1, byThroughput));
+        }
+        return (int) count;
+    }
+
+    /**
+     * Feeds the throughput of one completed connection into the moving average.
+     *
+     * @param bytes        bytes received over the connection
+     * @param elapsedNanos time from request to last byte
+     */
+    public void recordTransfer(long bytes, long elapsedNanos) {
+        if (bytes < minSegmentBytes || elapsedNanos <= 0) {
+            return; // small transfers measure latency, not throughput
+        }
+        long sample = (long) (bytes * 1_000_000_000.0 / elapsedNanos);
+        bytesPerSecond.accumulateAndGet(sample, (current, next) -> current == 0
+                ? next
+                : (current * (8 - SAMPLE_WEIGHT_EIGHTHS) + next * SAMPLE_WEIGHT_EIGHTHS) / 8);
+    }
+
+    /**
+     * Returns the current per-connection throughput estimate.
+     *
+     * @return bytes per second, or 0 if nothing has been measured yet
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond.get();
+    }
+}
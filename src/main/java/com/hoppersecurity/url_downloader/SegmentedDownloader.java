@@ -0,0 +1,279 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads one large file as several byte ranges fetched over parallel connections.
+ *
+ * <p>A {@code HEAD} probe reads {@code Content-Length} and {@code Accept-Ranges}. If the server
+ * supports byte ranges and {@link SegmentPlanner} decides the file is worth splitting, the
+ * target file is sized up front and every segment is fetched with its own
+ * {@code Range: bytes=first-last} request, writing at its offset through positional
+ * {@link FileChannel} writes. Segments carry an {@code If-Range} validator taken from the probe,
+ * so a file that changes mid-download is answered with a full {@code 200} and rejected instead
+ * of being stitched together from two versions. The first failing segment cancels the others
+ * and fails the whole download, which is then retried like any other failure.
+ *
+ * <p>Segments write to the file directly rather than through a {@link DownloadSink}, which has no
+ * positional writes, so this is only used with a {@link FileSink}; the writes are still recorded in
+ * its {@link SinkMetrics}. They write through the channel of a {@link FileSink.FileOutput}, so the
+ * file is renamed into place under the sink's fsync policy once every segment has arrived; a
+ * failed download discards it, since the holes between its segments cannot be resumed from.
+ *
+ * <p>With a {@link MetadataStore} the probe's {@code ETag} and {@code Last-Modified} are recorded
+ * for the finished file, so the next run can revalidate it.
+ *
+ * <p>Segments run on virtual threads owned by this class, never on the download workers, so a
+ * segmented download cannot starve the pool it was started from.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class SegmentedDownloader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedDownloader.class);
+
+    private final DownloadTransport transport;
+    private final SegmentPlanner planner;
+    private final FileSink fileSink;
+    private final MetadataStore metadataStore; // null = not recorded
+    private final SinkMetrics sinkMetrics;
+    private final ExecutorService segmentExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("segment-", 0).factory());
+
+    SegmentedDownloader(DownloadTransport transport, SegmentPlanner planner, FileSink fileSink,
+                        MetadataStore metadataStore, SinkMetrics sinkMetrics) {
+        this.transport = transport;
+        this.planner = planner;
+        this.fileSink = fileSink;
+        this.metadataStore = metadataStore;
+        this.sinkMetrics = sinkMetrics;
+    }
+
+    /**
+     * Probes the resource and downloads it in parallel byte ranges if it qualifies.
+     *
+     * @return the result, or {@code null} if the resource should be downloaded in one piece
+     * @throws IOException if the probe or any segment fails
+     */
+    DownloadResult download(TransferRequest request, String url, String filename, Path target, Instant startTime)
+            throws IOException {
+        Probe probe = DownloadTransport.await(transport.execute(request.derive("HEAD", Map.of()), new ProbeHandler()), url);
+        if (!probe.acceptsRanges() || probe.contentLength() <= 0) {
+            return null;
+        }
+        int segmentCount = planner.segmentCount(probe.contentLength());
+        if (segmentCount <= 1) {
+            return null;
+        }
+        long length = probe.contentLength();
+        long segmentSize = (length + segmentCount - 1) / segmentCount;
+        logger.debug("Downloading {} ({} bytes) in {} segments of up to {} bytes", url, length, segmentCount, segmentSize);
+
+        FileSink.FileOutput output = fileSink.open(target, 0);
+        FileChannel channel = output.channel();
+        try {
+            // Reserve the space (or be refused) before any segment starts, then size the file up
+            // front so every segment can write at its own offset
+            output.preallocate(length);
+            channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+
+            CompletionService<Long> segments = new ExecutorCompletionService<>(segmentExecutor);
+            List<Future<Long>> started = new ArrayList<>();
+            for (long first = 0; first < length; first += segmentSize) {
+                long last = Math.min(length, first + segmentSize) - 1;
+                Map<String, String> headers = new LinkedHashMap<>();
+                headers.put(HttpHeaders.RANGE, "bytes=" + first + "-" + last);
+                if (probe.validator() != null) {
+                    headers.put(HttpHeaders.IF_RANGE, probe.validator());
+                }
+                TransferRequest segmentRequest = request.derive("GET", headers);
+                SegmentWriter writer = new SegmentWriter(channel, first, last);
+                started.add(segments.submit(() -> DownloadTransport.await(transport.execute(segmentRequest, writer), url)));
+            }
+            awaitSegments(segments, started, url);
+        } catch (IOException | RuntimeException e) {
+            try {
+                output.abort(true);
+            } catch (IOException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+        output.complete();
+        sinkMetrics.recordCompleted(0);
+        MetadataStore.Entry entry = metadataStore == null ? null : MetadataStore.Entry.of(url, probe.response(), target, length);
+        if (entry != null) {
+            metadataStore.put(entry);
+        }
+        return DownloadResult.success(url, filename, startTime, Instant.now(), length);
+    }
+
+    private static void awaitSegments(CompletionService<Long> segments, List<Future<Long>> started, String url)
+            throws IOException {
+        try {
+            for (int i = 0; i < started.size(); i++) {
+                segments.take().get();
+            }
+        } catch (InterruptedException e) {
+            started.forEach(segment -> segment.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted: " + url);
+        } catch (ExecutionException e) {
+            // Fail fast: interrupting the other segments aborts their transfers
+            started.forEach(segment -> segment.cancel(true));
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        segmentExecutor.shutdownNow();
+    }
+
+    /**
+     * What the {@code HEAD} probe learned about the resource.
+     *
+     * @param contentLength the size in bytes, or -1 if unknown
+     * @param acceptsRanges whether the server advertises {@code Accept-Ranges: bytes}
+     * @param validator     a strong ETag or Last-Modified date for {@code If-Range}, or {@code null}
+     * @param response      the successful probe response, or {@code null}
+     */
+    record Probe(long contentLength, boolean acceptsRanges, String validator, HttpResponse response) {}
+
+    private static final class ProbeHandler implements TransferHandler<Probe> {
+        private Probe probe = new Probe(-1, false, null, null);
+
+        @Override
+        public void onResponse(HttpResponse response, EntityDetails entity) {
+            if (response.getCode() < 200 || response.getCode() >= 300) {
+                // HEAD may be unsupported; the GET that follows reports real errors
+                return;
+            }
+            Header acceptRanges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+            Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            long length = -1;
+            if (contentLength != null) {
+                try {
+                    length = Long.parseLong(contentLength.getValue().trim());
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+            }
+            probe = new Probe(length,
+                    acceptRanges != null && "bytes".equalsIgnoreCase(acceptRanges.getValue().trim()),
+                    DownloadAttempt.resumeValidator(response), response);
+        }
+
+        @Override
+        public void onData(ByteBuffer data) {
+            data.position(data.limit()); // a HEAD response has no body
+        }
+
+        @Override
+        public Probe onComplete() {
+            return probe;
+        }
+
+        @Override
+        public void onFailure(Exception cause) {
+            // Nothing to release
+        }
+    }
+
+    /**
+     * Writes one byte range at its offset in the shared file channel. Positional writes do not
+     * move the channel's position, so segments never interfere with each other.
+     */
+    private final class SegmentWriter implements TransferHandler<Long> {
+        private final FileChannel channel;
+        private final long first;
+        private final long last;
+        private final long startNanos = System.nanoTime();
+        private long position;
+
+        SegmentWriter(FileChannel channel, long first, long last) {
+            this.channel = channel;
+            this.first = first;
+            this.last = last;
+            this.position = first;
+        }
+
+        @Override
+        public void onResponse(HttpResponse response, EntityDetails entity) throws IOException {
+            int statusCode = response.getCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                throw HttpStatusException.fromResponse(response);
+            }
+            if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException("Server ignored the range request for bytes " + first + "-" + last
+                        + " (the file may have changed)");
+            }
+            Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            if (contentRange == null || !contentRange.getValue().startsWith("bytes " + first + "-" + last + "/")) {
+                throw new IOException("Unexpected Content-Range for bytes " + first + "-" + last + ": "
+                        + (contentRange == null ? "none" : contentRange.getValue()));
+            }
+            if (entity == null) {
+                throw new IOException("Empty response body");
+            }
+        }
+
+        @Override
+        public void onData(ByteBuffer data) throws IOException {
+            if (position + data.remaining() > last + 1) {
+                throw new IOException("Server sent more than the requested range " + first + "-" + last);
+            }
+            long writeStartNanos = System.nanoTime();
+            long from = position;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+            sinkMetrics.recordWrite(position - from, System.nanoTime() - writeStartNanos);
+        }
+
+        @Override
+        public Long onComplete() throws IOException {
+            if (position != last + 1) {
+                throw new IOException("Segment " + first + "-" + last + " ended early at byte " + position);
+            }
+            long bytes = last - first + 1;
+            planner.recordTransfer(bytes, System.nanoTime() - startNanos);
+            return bytes;
+        }
+
+        @Override
+        public void onFailure(Exception cause) {
+            // The shared channel is closed by download()
+        }
+    }
+}
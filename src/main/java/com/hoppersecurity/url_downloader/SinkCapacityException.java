@@ -0,0 +1,20 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+
+/**
+ * Signals that a download is larger than its {@link DownloadSink} can hold, such as a payload
+ * beyond the limit of a {@link MemorySink}, or a file that would take the disk below the
+ * free-space floor of a {@link FileSink}.
+ *
+ * <p>Another attempt would receive the same content, so {@link RetryPolicy} never retries it.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class SinkCapacityException extends IOException {
+
+    public SinkCapacityException(String message) {
+        super(message);
+    }
+}
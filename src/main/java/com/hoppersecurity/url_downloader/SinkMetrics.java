@@ -0,0 +1,63 @@
+package com.hoppersecurity.url_downloader;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What storing a run's downloads cost: the bytes handed to the {@link DownloadSink} and the time
+ * spent inside its calls (opening, writing, completing and aborting outputs).
+ *
+ * <p>The sink time is the storage share of the run; the rest of a transfer's time went to the
+ * network, the HTTP client and rate limiting. Updated concurrently by every transfer, so reads
+ * during a run are approximate.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public final class SinkMetrics {
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder sinkNanos = new LongAdder();
+    private final LongAdder completedOutputs = new LongAdder();
+
+    void recordWrite(long bytes, long nanos) {
+        bytesWritten.add(bytes);
+        sinkNanos.add(nanos);
+    }
+
+    void recordCall(long nanos) {
+        sinkNanos.add(nanos);
+    }
+
+    void recordCompleted(long nanos) {
+        completedOutputs.increment();
+        sinkNanos.add(nanos);
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Returns the time spent inside sink calls, summed over all transfers.
+     *
+     * @return the cumulative sink time
+     */
+    public Duration getSinkTime() {
+        return Duration.ofNanos(sinkNanos.sum());
+    }
+
+    /**
+     * Returns the number of outputs that were completed, i.e. downloads the sink stored.
+     *
+     * @return the number of stored downloads
+     */
+    public long getCompletedOutputs() {
+        return completedOutputs.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SinkMetrics[bytesWritten=" + getBytesWritten() + ", sinkTime=" + getSinkTime().toMillis()
+                + "ms, completedOutputs=" + getCompletedOutputs() + "]";
+    }
+}
@@ -0,0 +1,32 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * Where {@link ConcurrentUrlDownloader} stores downloaded content.
+ *
+ * <ul>
+ *   <li>{@link #FILE} - One file per download under {@code outputDirectory} ({@link FileSink}).
+ *       The only sink that supports resuming partial files, segmented downloads, the
+ *       {@link OutputLayout#HASHED} and {@link OutputLayout#CONTENT_ADDRESSED} layouts and a
+ *       {@code metadataStore}.</li>
+ *   <li>{@link #MEMORY} - Each payload is kept on the heap ({@link MemorySink}); meant for small
+ *       payloads and for measuring the write path without a disk.</li>
+ *   <li>{@link #NULL} - The content is discarded ({@link NullSink}), so a run measures the
+ *       network and the client alone.</li>
+ *   <li>{@link #TAR} - Every download is appended to the tar archive {@code archiveFile}
+ *       ({@link TarSink}).</li>
+ *   <li>{@link #PACKED} - Every download is appended to rolling segment files of
+ *       {@code packedSegmentBytes} under {@code outputDirectory}, with an index to look URLs up in
+ *       ({@link PackedSink}, read back with {@link PackedStore}). For millions of small files.</li>
+ * </ul>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see DownloadSink
+ */
+public enum SinkType {
+    FILE,
+    MEMORY,
+    NULL,
+    TAR,
+    PACKED
+}
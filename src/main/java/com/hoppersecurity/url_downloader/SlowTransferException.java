@@ -0,0 +1,31 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.IOException;
+
+/**
+ * Signals that a transfer was aborted because its throughput stayed below
+ * {@code minBytesPerSecond} for a whole {@code minThroughputWindowSeconds} window.
+ *
+ * <p>The abort discards the connection, so the retry that {@link RetryPolicy} schedules for
+ * this (retryable) failure opens a fresh one and resumes the partial file where possible.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class SlowTransferException extends IOException {
+    private final long bytesPerSecond;
+
+    public SlowTransferException(String message, long bytesPerSecond) {
+        super(message);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Returns the throughput measured over the window that triggered the abort.
+     *
+     * @return bytes per second
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
@@ -0,0 +1,109 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns the transfers of the {@link TransportMode#HTTP2} transport to the connections of their
+ * host, never opening more than {@code http2MaxConcurrentStreams} streams on one connection.
+ *
+ * <p>Each host gets a lane per connection ({@code http2ConnectionsPerHost}), and a transfer takes
+ * a stream permit from the lane with the most free streams, so streams are spread evenly over the
+ * connections. When every lane is full the calling thread waits for a permit, like it waits for a
+ * request token of the {@link RateLimiter}. The lane's index selects the client, and therefore
+ * the connection, that carries the transfer.
+ *
+ * <p>The cap is kept on the client side because the HTTP/2 client does not queue streams beyond
+ * the server's {@code SETTINGS_MAX_CONCURRENT_STREAMS}; a server that enforces its limit refuses
+ * the extra streams instead.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class StreamLanes {
+    private final int connectionsPerHost;
+    private final int maxConcurrentStreams;
+    private final Map<String, Semaphore[]> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLane = new AtomicInteger();
+
+    StreamLanes(int connectionsPerHost, int maxConcurrentStreams) {
+        if (connectionsPerHost <= 0 || maxConcurrentStreams <= 0) {
+            throw new IllegalArgumentException("connectionsPerHost and maxConcurrentStreams must be greater than 0");
+        }
+        this.connectionsPerHost = connectionsPerHost;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    /**
+     * A stream permit on one connection to a host; released once the transfer ends.
+     *
+     * @param index     the connection, from 0 to {@code connectionsPerHost - 1}
+     * @param semaphore the lane the permit was taken from
+     */
+    record Lane(int index, Semaphore semaphore) {
+        void release() {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Takes a stream permit for a transfer, waiting while every connection to its host is full.
+     *
+     * @param uri the URI of the transfer
+     * @return the lane the transfer must use
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    Lane acquire(URI uri) throws InterruptedIOException {
+        Semaphore[] lanes = hosts.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(), host -> newLanes());
+        int best = -1;
+        int bestFree = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            int free = lanes[i].availablePermits();
+            if (free > bestFree) {
+                best = i;
+                bestFree = free;
+            }
+        }
+        if (best >= 0 && lanes[best].tryAcquire()) {
+            return new Lane(best, lanes[best]);
+        }
+        int index = Math.floorMod(nextLane.getAndIncrement(), lanes.length);
+        try {
+            lanes[index].acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an HTTP/2 stream to " + uri.getHost());
+        }
+        return new Lane(index, lanes[index]);
+    }
+
+    /**
+     * Returns the number of streams currently open to a host.
+     *
+     * @param uri any URI of the host
+     * @return the streams in use over all its connections
+     */
+    int openStreams(URI uri) {
+        Semaphore[] lanes = hosts.get(uri.getScheme() + "://" + uri.getAuthority());
+        if (lanes == null) {
+            return 0;
+        }
+        int open = 0;
+        for (Semaphore lane : lanes) {
+            open += maxConcurrentStreams - lane.availablePermits();
+        }
+        return open;
+    }
+
+    private Semaphore[] newLanes() {
+        Semaphore[] lanes = new Semaphore[connectionsPerHost];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Semaphore(maxConcurrentStreams);
+        }
+        return lanes;
+    }
+}
@@ -0,0 +1,197 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link DownloadSink} appending every completed download to one tar archive.
+ *
+ * <p>A tar entry is its header followed by its content, and the header carries the size, so an
+ * entry cannot be written until its size is final, nor can two entries be written at once. Each
+ * output therefore spools its content to a file next to the archive, and completing it appends
+ * header, content and padding to the archive in one step, copied with {@code transferTo} so the
+ * bytes do not pass through the heap. The archive grows as downloads complete and is valid up
+ * to its last entry whenever no entry is being appended; {@link #close()} writes the two empty
+ * blocks that end it. Failed attempts leave nothing in the archive.
+ *
+ * <p>Entries use the GNU tar format: names longer than 100 bytes are stored in a
+ * {@code ././@LongLink} entry before the one they name, and sizes of 8 GiB or more are encoded
+ * in base-256.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class TarSink implements DownloadSink {
+    private static final Logger logger = LoggerFactory.getLogger(TarSink.class);
+    static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final byte REGULAR_FILE = '0';
+    private static final byte GNU_LONG_NAME = 'L';
+
+    private final Path archive;
+    private final Path spoolDirectory;
+    private final FileChannel channel;
+    private int entryCount;
+
+    private TarSink(Path archive) throws IOException {
+        this.archive = archive;
+        Path parent = archive.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        this.spoolDirectory = Files.createDirectories(parent.resolve(archive.getFileName() + ".parts"));
+        this.channel = FileChannel.open(archive,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Creates an empty archive, replacing any existing file.
+     *
+     * @param archive the archive file
+     * @return the open sink
+     * @throws IOException if the archive cannot be created
+     */
+    public static TarSink open(Path archive) throws IOException {
+        return new TarSink(archive);
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) throws IOException {
+        Path spool = Files.createTempFile(spoolDirectory, "entry-", ".part");
+        return new TarOutput(filename, spool, FileChannel.open(spool, StandardOpenOption.WRITE, StandardOpenOption.READ));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeFully(ByteBuffer.allocate(2 * BLOCK_SIZE));
+            channel.close();
+        } finally {
+            try {
+                Files.deleteIfExists(spoolDirectory);
+            } catch (IOException e) {
+                logger.warn("Could not remove spool directory {}: {}", spoolDirectory, e.getMessage());
+            }
+        }
+        logger.debug("Closed archive {} with {} entries", archive, entryCount);
+    }
+
+    private synchronized void append(String filename, FileChannel content, long mtimeSeconds) throws IOException {
+        long size = content.size();
+        byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+        if (name.length > NAME_LENGTH) {
+            byte[] longName = Arrays.copyOf(name, name.length + 1); // NUL-terminated
+            writeFully(ByteBuffer.wrap(header("././@LongLink", longName.length, mtimeSeconds, GNU_LONG_NAME)));
+            writeFully(ByteBuffer.wrap(longName));
+            writeFully(ByteBuffer.allocate(padding(longName.length)));
+        }
+        writeFully(ByteBuffer.wrap(header(filename, size, mtimeSeconds, REGULAR_FILE)));
+        for (long copied = 0; copied < size; ) {
+            copied += content.transferTo(copied, size - copied, channel);
+        }
+        writeFully(ByteBuffer.allocate(padding(size)));
+        entryCount++;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static int padding(long size) {
+        return (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    /**
+     * Builds a header block; a name beyond 100 bytes is cut, its full form goes in a long-name entry.
+     */
+    static byte[] header(String name, long size, long mtimeSeconds, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, NAME_LENGTH));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        size(header, size);
+        octal(header, 136, 12, mtimeSeconds);
+        header[156] = type;
+        System.arraycopy("ustar  \0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum); // six digits and a NUL, then the space already there
+        return header;
+    }
+
+    private static void size(byte[] header, long size) {
+        if (size < 1L << 33) {
+            octal(header, 124, 12, size);
+            return;
+        }
+        // Too large for 11 octal digits: GNU base-256, big-endian after a marker bit
+        header[124] = (byte) 0x80;
+        for (int i = 135; i > 124; i--, size >>>= 8) {
+            header[i] = (byte) size;
+        }
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int pad = length - 1 - digits.length();
+        Arrays.fill(header, offset, offset + pad, (byte) '0');
+        for (int i = 0; i < digits.length(); i++) {
+            header[offset + pad + i] = (byte) digits.charAt(i);
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TarSink[" + archive + "]";
+    }
+
+    private final class TarOutput implements Output {
+        private final String filename;
+        private final Path spool;
+        private final FileChannel content;
+
+        TarOutput(String filename, Path spool, FileChannel content) {
+            this.filename = filename;
+            this.spool = spool;
+            this.content = content;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                content.write(data);
+            }
+        }
+
+        @Override
+        public void complete() throws IOException {
+            try (content) {
+                append(filename, content, System.currentTimeMillis() / 1000);
+            } finally {
+                Files.deleteIfExists(spool);
+            }
+        }
+
+        @Override
+        public void abort(boolean discard) throws IOException {
+            try (content) {
+                Files.deleteIfExists(spool);
+            }
+        }
+    }
+}
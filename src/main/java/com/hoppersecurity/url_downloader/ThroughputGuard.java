@@ -0,0 +1,116 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link TransferHandler} decorator that aborts transfers which stay slower than a minimum
+ * throughput, in the manner of curl's {@code --speed-limit}/{@code --speed-time}.
+ *
+ * <p>The body is measured in consecutive windows of {@code minThroughputWindowSeconds}, starting
+ * when the response head arrives. Whenever a chunk closes a window whose average rate is below
+ * {@code minBytesPerSecond}, the chunk is rejected with a {@link SlowTransferException}; the
+ * transport then fails the transfer and drops its connection. The check costs one clock read per
+ * chunk. A server that sends nothing at all is caught by {@code readTimeout} instead, since no
+ * chunk arrives to close the window.
+ *
+ * <p>Time the transport reports through {@link #onPaused(long)} does not count towards a window:
+ * a transfer parked by the {@link RateLimiter}, or waiting for the disk writers of a
+ * {@link WriterStage}, is slow by design or because of the disk, not because of the server.
+ *
+ * <p>Transports wrap every handler with {@link #wrap(TransferHandler, DownloadConfig)}, so plain
+ * and segmented downloads are guarded alike.
+ *
+ * @param <T> the type of result produced by the wrapped handler
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+final class ThroughputGuard<T> implements TransferHandler<T> {
+    private final TransferHandler<T> delegate;
+    private final long minBytesPerSecond;
+    private final long windowNanos;
+    private final LongSupplier nanoTime;
+
+    private final AtomicLong pausedNanos = new AtomicLong(); // reported from any thread
+
+    private long windowStartNanos;
+    private long windowPausedNanos; // pausedNanos when the window started
+    private long windowBytes;
+
+    ThroughputGuard(TransferHandler<T> delegate, long minBytesPerSecond, long windowNanos, LongSupplier nanoTime) {
+        this.delegate = delegate;
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.windowNanos = windowNanos;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Wraps a handler if a minimum throughput is configured.
+     *
+     * @param handler the handler to guard
+     * @param config  the download configuration
+     * @return the guarded handler, or {@code handler} itself if {@code minBytesPerSecond} is 0
+     */
+    static <T> TransferHandler<T> wrap(TransferHandler<T> handler, DownloadConfig config) {
+        if (config.getMinBytesPerSecond() <= 0) {
+            return handler;
+        }
+        return new ThroughputGuard<>(handler, config.getMinBytesPerSecond(),
+                TimeUnit.SECONDS.toNanos(config.getMinThroughputWindowSeconds()), System::nanoTime);
+    }
+
+    @Override
+    public void onSent() {
+        delegate.onSent();
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, EntityDetails entity) throws IOException {
+        windowStartNanos = nanoTime.getAsLong();
+        windowPausedNanos = pausedNanos.get();
+        delegate.onResponse(response, entity);
+    }
+
+    @Override
+    public void onData(ByteBuffer data) throws IOException {
+        windowBytes += data.remaining();
+        long now = nanoTime.getAsLong();
+        long paused = pausedNanos.get();
+        long elapsed = now - windowStartNanos - (paused - windowPausedNanos);
+        if (elapsed >= windowNanos) {
+            long bytesPerSecond = (long) (windowBytes * 1_000_000_000.0 / elapsed);
+            if (bytesPerSecond < minBytesPerSecond) {
+                throw new SlowTransferException("Transfer too slow: " + bytesPerSecond + " bytes/s over the last "
+                        + TimeUnit.NANOSECONDS.toSeconds(elapsed) + "s (minimum " + minBytesPerSecond + ")",
+                        bytesPerSecond);
+            }
+            windowStartNanos = now;
+            windowPausedNanos = paused;
+            windowBytes = 0;
+        }
+        delegate.onData(data);
+    }
+
+    @Override
+    public void onPaused(long nanos) {
+        pausedNanos.addAndGet(nanos);
+        delegate.onPaused(nanos);
+    }
+
+    @Override
+    public T onComplete() throws IOException {
+        return delegate.onComplete();
+    }
+
+    @Override
+    public void onFailure(Exception cause) {
+        delegate.onFailure(cause);
+    }
+}
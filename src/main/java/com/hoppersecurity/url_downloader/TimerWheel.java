@@ -0,0 +1,207 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel that runs short tasks when their delay expires, using a single thread for
+ * any number of pending timeouts.
+ *
+ * <p>The wheel is an array of {@code wheelSize} buckets, each covering one tick. A timeout due in
+ * {@code n} ticks goes into bucket {@code (current + n) % wheelSize} together with the number of
+ * full revolutions it must wait, so scheduling and cancelling are O(1) and each tick only looks
+ * at one bucket. New timeouts are handed to the timer thread through a lock-free queue and
+ * cancelled ones are dropped when their bucket comes around, so callers never contend on the
+ * wheel itself. Timeouts fire up to one tick late, which is irrelevant for download deadlines
+ * measured in seconds.
+ *
+ * <p>Tasks run on the timer thread and must be quick; aborting a request qualifies.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class TimerWheel implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean closed;
+    private long tick; // confined to the worker thread
+
+    /**
+     * Creates the wheel and starts its daemon thread.
+     *
+     * @param name      name of the timer thread
+     * @param tick      resolution of the wheel
+     * @param wheelSize number of buckets; one revolution spans {@code tick * wheelSize}
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, Duration tick, int wheelSize) {
+        if (tick.isNegative() || tick.isZero() || wheelSize <= 0) {
+            throw new IllegalArgumentException("tick and wheelSize must be positive");
+        }
+        this.tickNanos = tick.toNanos();
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.worker = Thread.ofPlatform().name(name).daemon().unstarted(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to run once {@code delay} has elapsed.
+     *
+     * @param task  the task; runs on the timer thread
+     * @param delay the delay, zero or negative to run on the next tick
+     * @return a handle to cancel the timeout or check whether it fired
+     * @throws IllegalStateException if the wheel has been closed
+     */
+    public Timeout schedule(Runnable task, Duration delay) {
+        if (closed) {
+            throw new IllegalStateException("Timer wheel is closed");
+        }
+        long dueNanos = System.nanoTime() - startNanos + Math.max(0, delay.toNanos());
+        Timeout timeout = new Timeout(task, dueNanos);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timeouts scheduled but neither fired nor discarded yet, including
+     * cancelled ones whose bucket has not come around.
+     *
+     * @return the pending timeout count
+     */
+    public int pendingCount() {
+        int count = scheduled.size();
+        for (List<Timeout> bucket : buckets) {
+            synchronized (bucket) {
+                count += bucket.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts never fire.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!closed) {
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            transferScheduled();
+            expireBucket(buckets[(int) (tick % buckets.length)]);
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // Never place a timeout behind the current tick: an overdue one fires now
+            long dueTick = Math.max(tick, (timeout.dueNanos + tickNanos - 1) / tickNanos);
+            timeout.remainingRounds = (dueTick - tick) / buckets.length;
+            List<Timeout> bucket = buckets[(int) (dueTick % buckets.length)];
+            synchronized (bucket) {
+                bucket.add(timeout);
+            }
+        }
+    }
+
+    private void expireBucket(List<Timeout> bucket) {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (bucket) {
+            bucket.removeIf(timeout -> {
+                if (timeout.isCancelled()) {
+                    return true;
+                }
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    return false;
+                }
+                due.add(timeout);
+                return true;
+            });
+        }
+        for (Timeout timeout : due) {
+            timeout.expire();
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long dueNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds; // confined to the worker thread
+
+        private Timeout(Runnable task, long dueNanos) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+        }
+
+        /**
+         * Cancels the timeout unless it has already fired.
+         *
+         * @return {@code true} if the task will not run
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Returns whether the timeout fired, i.e. its task has started.
+         *
+         * @return {@code true} once the delay expired without the timeout being cancelled
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Timer task failed", e);
+            }
+        }
+    }
+}
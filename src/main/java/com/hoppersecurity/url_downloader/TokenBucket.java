@@ -0,0 +1,75 @@
+package com.hoppersecurity.url_downloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket that meters a rate of requests or bytes.
+ *
+ * <p>The bucket holds up to one second's worth of tokens (at least one) and refills
+ * continuously at {@code ratePerSecond}. Instead of a token count it keeps a single timestamp:
+ * the instant at which the bucket will be full again. Taking {@code n} tokens pushes that
+ * instant {@code n / ratePerSecond} seconds further out with one compare-and-set, so concurrent
+ * callers never lock and each call is O(1). A caller that takes more tokens than the bucket
+ * holds still gets them, together with the time it has to wait before using them; later
+ * callers queue behind that debt, which keeps the long-run rate exact and serves waiters in the
+ * order they arrived.
+ *
+ * <p>Callers decide how to wait: worker threads park for the returned time (see
+ * {@link RateLimiter#park(long)}), while the async transport stops reading from the socket and
+ * resumes from a timer.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class TokenBucket {
+    private final double ratePerSecond;
+    private final double nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAtNanos;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param ratePerSecond tokens added per second; must be positive
+     */
+    public TokenBucket(double ratePerSecond) {
+        this(ratePerSecond, System.nanoTime());
+    }
+
+    TokenBucket(double ratePerSecond, long nowNanos) {
+        if (!(ratePerSecond > 0) || Double.isInfinite(ratePerSecond)) {
+            throw new IllegalArgumentException("ratePerSecond must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.nanosPerToken = 1_000_000_000.0 / ratePerSecond;
+        this.capacityNanos = (long) (Math.max(1, ratePerSecond) * nanosPerToken);
+        this.fullAtNanos = new AtomicLong(nowNanos);
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Takes tokens from the bucket, borrowing against future refills if it does not hold enough.
+     *
+     * @param tokens the number of tokens to take
+     * @return how long the caller must wait before using the tokens, in nanoseconds; 0 if they
+     *         were available
+     */
+    public long reserve(long tokens) {
+        return reserve(tokens, System.nanoTime());
+    }
+
+    long reserve(long tokens, long nowNanos) {
+        long costNanos = (long) (tokens * nanosPerToken);
+        while (true) {
+            long fullAt = fullAtNanos.get();
+            // A bucket that has been full for a while does not accumulate more than its capacity
+            long next = Math.max(fullAt, nowNanos) + costNanos;
+            if (fullAtNanos.compareAndSet(fullAt, next)) {
+                return Math.max(0, next - nowNanos - capacityNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the response of a single transfer from a {@link DownloadTransport}.
+ *
+ * <p>Transports drive the handler in a fixed order: {@link #onSent} once the request goes out
+ * (unless the transfer fails before that), {@link #onResponse} once, {@link #onData}
+ * zero or more times, then exactly one of {@link #onComplete} or {@link #onFailure}. Status
+ * handling and everything that happens to the body bytes live in the handler, so every
+ * transport shares the same write path. Calls for one transfer never overlap, but they may
+ * arrive on different threads (for example on I/O reactor threads).
+ *
+ * @param <T> the type of result produced once the transfer completes
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public interface TransferHandler<T> {
+
+    /**
+     * Called just before the request is sent, once any wait for a request token or for a free
+     * stream is over. Handlers that time the exchange start the clock here, so that throttling
+     * and queueing inside the client are not mistaken for server latency; the default does
+     * nothing.
+     */
+    default void onSent() {
+    }
+
+    /**
+     * Called once the response head is available, before any body data.
+     *
+     * @param response the final (non-informational) response
+     * @param entity   details of the response body, or {@code null} if the response has none
+     * @throws IOException to reject the response; the transfer then fails with this exception
+     */
+    void onResponse(HttpResponse response, EntityDetails entity) throws IOException;
+
+    /**
+     * Consumes the next chunk of the response body. The buffer is only valid for the
+     * duration of the call and must be fully consumed before returning.
+     *
+     * @param data the body bytes between the buffer's position and limit
+     * @throws IOException if the chunk cannot be processed; the transfer then fails
+     */
+    void onData(ByteBuffer data) throws IOException;
+
+    /**
+     * Called when the transport held back reading the body on purpose, to keep within a byte-rate
+     * limit or to let the disk writers catch up. Handlers that time the transfer leave this time
+     * out; the default does nothing. Unlike the other calls it may arrive on another thread while
+     * {@link #onData} runs.
+     *
+     * @param nanos how long reading was paused
+     */
+    default void onPaused(long nanos) {
+    }
+
+    /**
+     * Called after the last body chunk.
+     *
+     * @return the result of the transfer
+     * @throws IOException if the transfer cannot be completed
+     */
+    T onComplete() throws IOException;
+
+    /**
+     * Called instead of {@link #onComplete()} when the transfer fails at any stage.
+     * Implementations release their resources here; they must not throw.
+     *
+     * @param cause the failure
+     */
+    void onFailure(Exception cause);
+}
@@ -0,0 +1,67 @@
+package com.hoppersecurity.url_downloader;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transport-neutral description of a single HTTP request issued by a {@link DownloadTransport}.
+ * Downloads use {@code GET}; {@code HEAD} probes a resource before a segmented download.
+ *
+ * <p>A request may carry a wall-clock deadline. Transports abort a transfer still running at
+ * its deadline, whatever state it is in, and fail it with a {@link DeadlineExceededException}.
+ * Derived requests keep the deadline, so the segments of a download share the URL's budget.
+ *
+ * @param method   the request method, {@code GET} or {@code HEAD}
+ * @param uri      the resource to fetch
+ * @param headers  request headers to send, in insertion order
+ * @param deadline when the transfer must be complete, or {@code null} for no deadline
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public record TransferRequest(String method, URI uri, Map<String, String> headers, Instant deadline) {
+    public TransferRequest {
+        if (method == null) {
+            throw new IllegalArgumentException("method must not be null");
+        }
+        if (uri == null) {
+            throw new IllegalArgumentException("uri must not be null");
+        }
+        headers = headers == null ? Map.of() : headers;
+    }
+
+    /**
+     * Creates a {@code GET} request.
+     *
+     * @param uri     the resource to fetch
+     * @param headers request headers to send, in insertion order
+     */
+    public TransferRequest(URI uri, Map<String, String> headers) {
+        this("GET", uri, headers, null);
+    }
+
+    /**
+     * Returns the same request with a deadline.
+     *
+     * @param deadline when the transfer must be complete, or {@code null} for no deadline
+     * @return the request with the deadline
+     */
+    public TransferRequest withDeadline(Instant deadline) {
+        return new TransferRequest(method, uri, headers, deadline);
+    }
+
+    /**
+     * Returns a request for the same resource with a different method and extra headers.
+     *
+     * @param method     the request method
+     * @param extraHeaders headers added to (or replacing) the headers of this request
+     * @return the derived request
+     */
+    public TransferRequest derive(String method, Map<String, String> extraHeaders) {
+        Map<String, String> merged = new LinkedHashMap<>(headers);
+        merged.putAll(extraHeaders);
+        return new TransferRequest(method, uri, merged, deadline);
+    }
+}
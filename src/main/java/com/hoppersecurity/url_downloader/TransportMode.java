@@ -0,0 +1,27 @@
+package com.hoppersecurity.url_downloader;
+
+/**
+ * HTTP transport used by {@link ConcurrentUrlDownloader} to perform transfers.
+ *
+ * <ul>
+ *   <li>{@link #CLASSIC} - Apache HttpClient 5 classic (blocking) client. The calling worker
+ *       thread performs the exchange and reads the response body from an {@code InputStream}.</li>
+ *   <li>{@link #ASYNC} - Apache HttpClient 5 async client on an NIO I/O reactor. Body chunks are
+ *       written to disk from the reactor threads as they arrive, so a handful of reactor threads
+ *       drive every open connection. Pair it with {@link ExecutionMode#VIRTUAL_THREADS} so that
+ *       a download waiting for its transfer only parks a virtual thread.</li>
+ *   <li>{@link #HTTP2} - The async transport speaking HTTP/2: downloads from one host share
+ *       {@code http2ConnectionsPerHost} connections as multiplexed streams, at most
+ *       {@code http2MaxConcurrentStreams} per connection. Over {@code http} it requires a server
+ *       that accepts cleartext HTTP/2 ({@code h2c}) with prior knowledge.</li>
+ * </ul>
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ * @see DownloadTransport
+ */
+public enum TransportMode {
+    CLASSIC,
+    ASYNC,
+    HTTP2
+}
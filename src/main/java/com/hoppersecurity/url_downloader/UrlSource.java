@@ -0,0 +1,109 @@
+package com.hoppersecurity.url_downloader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily supplies the URLs of a download job.
+ *
+ * <p>URLs come from the in-memory {@code urls} list of the configuration, followed by the lines
+ * of {@code urlsFile} if one is configured. The file is read one line at a time as the
+ * downloader asks for more work, so a job with millions of URLs never holds more than the
+ * scheduler's look-ahead window in memory. Blank lines and lines starting with {@code #} are
+ * skipped.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public class UrlSource implements Iterator<String>, Closeable {
+    private final Iterator<String> listUrls;
+    private final Path urlsFile;
+    private final String description;
+    private BufferedReader fileReader;
+    private String nextUrl;
+
+    private UrlSource(List<String> urls, Path urlsFile) {
+        this.listUrls = urls == null ? Collections.emptyIterator() : urls.iterator();
+        this.urlsFile = urlsFile;
+        int listSize = urls == null ? 0 : urls.size();
+        this.description = urlsFile == null
+                ? listSize + " URLs"
+                : (listSize > 0 ? listSize + " URLs plus " : "") + "URLs streamed from " + urlsFile;
+    }
+
+    /**
+     * Opens the URL source described by the configuration.
+     *
+     * @param config the download configuration
+     * @return a source positioned before the first URL
+     */
+    public static UrlSource open(DownloadConfig config) {
+        Path urlsFile = config.getUrlsFile() == null || config.getUrlsFile().isBlank() ? null : Path.of(config.getUrlsFile());
+        return new UrlSource(config.getUrls(), urlsFile);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextUrl != null) {
+            return true;
+        }
+        if (listUrls.hasNext()) {
+            nextUrl = listUrls.next();
+            return true;
+        }
+        nextUrl = readNextFileUrl();
+        return nextUrl != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String url = nextUrl;
+        nextUrl = null;
+        return url;
+    }
+
+    private String readNextFileUrl() {
+        if (urlsFile == null) {
+            return null;
+        }
+        try {
+            if (fileReader == null) {
+                fileReader = Files.newBufferedReader(urlsFile, StandardCharsets.UTF_8);
+            }
+            String line;
+            while ((line = fileReader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    return line;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read URLs file: " + urlsFile, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileReader != null) {
+            fileReader.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,436 @@
+package com.hoppersecurity.url_downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedicated disk-writer stage between the network and a {@link DownloadSink}, enabled with
+ * {@code writerThreads}.
+ *
+ * <p>Without it, the thread reading a response also writes it: a slow disk or a long fsync holds
+ * the socket read, and a stalled socket holds the writer. With it, {@link Output#write} copies
+ * the chunk into a pooled buffer and queues it on a bounded ring buffer ({@link ArrayBlockingQueue})
+ * served by one writer thread, and returns at once. Each output is pinned to one writer, so its
+ * chunks are written in order and its calls never overlap; outputs are spread round-robin over
+ * the writers. Opening an output is queued too. A write that fails on the writer thread fails
+ * the next call on the output. {@link Output#complete()} and {@link Output#abort(boolean)} wait
+ * until the writer has written everything queued before them, so a download is only reported
+ * once its content is in the sink and a retry never races the bytes of the attempt before it.
+ *
+ * <p>Backpressure: the bytes queued but not yet written are capped at {@code maxInFlightWriteBytes},
+ * and the queued chunks at half of the ring capacity. Once either is reached the network stops
+ * reading until the writers catch up: the classic transport parks its worker in
+ * {@link #awaitCapacity()}, the async transport withholds the connection's capacity window through
+ * {@link #admit(Runnable)}. A classic transfer finishes the chunk it is reading, so the cap can be
+ * exceeded by one chunk per transfer; an async one may also deliver what its socket already holds,
+ * as described in {@link AsyncHttpTransport}. Queueing itself never blocks, since the async
+ * transport writes on its reactor thread: chunks that arrive while a ring is full wait in an
+ * overflow list behind it and move into the ring as the writer frees slots. The queue depth, the
+ * bytes in flight (current and peak) and how long the network was paused are reported by the
+ * stage.
+ *
+ * <p>Segmented downloads write their ranges directly and do not pass through the stage.
+ *
+ * @author Igal Haddad
+ * @since 1.1
+ */
+public final class WriterStage implements DownloadSink {
+    private static final Logger logger = LoggerFactory.getLogger(WriterStage.class);
+    private static final int MIN_RING_SLOTS = 256;
+    private static final int MAX_RING_SLOTS = 64 * 1024;
+    private static final Runnable STOP = () -> { };
+
+    private final DownloadSink delegate;
+    private final long maxInFlightBytes;
+    private final int maxQueuedChunks;
+    private final BufferPool buffers;
+    private final Writer[] writers;
+    private final AtomicInteger nextWriter = new AtomicInteger();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicInteger queuedChunks = new AtomicInteger();
+    private final LongAccumulator peakInFlightBytes = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peakQueuedChunks = new LongAccumulator(Math::max, 0);
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder pausedNanos = new LongAdder();
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts the writer threads of a stage in front of a sink.
+     *
+     * @param delegate         the sink the writers write to
+     * @param writerThreads    the number of writer threads, each with its own ring buffer
+     * @param maxInFlightBytes how many bytes may be queued before the network pauses
+     * @param bufferSize       the capacity of the buffers chunks are copied into
+     */
+    WriterStage(DownloadSink delegate, int writerThreads, long maxInFlightBytes, int bufferSize) {
+        this.delegate = delegate;
+        this.maxInFlightBytes = maxInFlightBytes;
+        int ringSlots = (int) Math.max(MIN_RING_SLOTS, Math.min(MAX_RING_SLOTS, 2 * maxInFlightBytes / bufferSize));
+        this.maxQueuedChunks = ringSlots / 2;
+        this.buffers = new BufferPool(bufferSize, ringSlots, false);
+        this.writers = new Writer[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            writers[i] = new Writer(ringSlots);
+            Thread.ofPlatform().name("disk-writer-" + i).daemon().start(writers[i]);
+        }
+        logger.debug("Started {} disk writers with {} ring slots each, {} bytes in flight at most",
+                writerThreads, ringSlots, maxInFlightBytes);
+    }
+
+    static WriterStage create(DownloadSink delegate, DownloadConfig config) {
+        return new WriterStage(delegate, config.getWriterThreads(), config.getMaxInFlightWriteBytes(),
+                config.getIoBufferSize());
+    }
+
+    @Override
+    public Output open(String url, String filename, long position) throws IOException {
+        Writer writer = writers[Math.floorMod(nextWriter.getAndIncrement(), writers.length)];
+        StagedOutput output = new StagedOutput(writer);
+        writer.submit(() -> {
+            try {
+                output.output = delegate.open(url, filename, position);
+            } catch (IOException e) {
+                output.failure = e;
+            }
+        });
+        return output;
+    }
+
+    @Override
+    public boolean supportsResume() {
+        return delegate.supportsResume();
+    }
+
+    /**
+     * Returns whether the network may read more without exceeding the in-flight caps.
+     *
+     * @return {@code true} if bytes and chunks in flight are below their caps
+     */
+    boolean hasCapacity() {
+        return inFlightBytes.get() < maxInFlightBytes && queuedChunks.get() < maxQueuedChunks;
+    }
+
+    /**
+     * Lets a non-blocking reader continue, or registers it to be resumed once the writers have
+     * caught up.
+     *
+     * @param onCapacity run once, from a writer thread, when there is capacity again; not run if
+     *                   this method returns {@code true}
+     * @return {@code true} if the reader may continue now
+     */
+    boolean admit(Runnable onCapacity) {
+        if (hasCapacity()) {
+            return true;
+        }
+        long pausedAt = System.nanoTime();
+        Runnable resume = () -> {
+            pausedNanos.add(System.nanoTime() - pausedAt);
+            onCapacity.run();
+        };
+        waiting.add(resume);
+        // A writer may have made room between the check and the registration
+        if (hasCapacity() && waiting.remove(resume)) {
+            return true;
+        }
+        pauses.increment();
+        return false;
+    }
+
+    /**
+     * Parks a blocking reader until the writers have caught up.
+     *
+     * @return how long the reader was parked in nanoseconds, 0 if there was capacity
+     * @throws InterruptedIOException if the thread is interrupted while parked
+     */
+    long awaitCapacity() throws InterruptedIOException {
+        if (hasCapacity()) {
+            return 0;
+        }
+        long pausedAt = System.nanoTime();
+        CountDownLatch resumed = new CountDownLatch(1);
+        if (admit(resumed::countDown)) {
+            return 0;
+        }
+        try {
+            resumed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the disk writers");
+        }
+        return System.nanoTime() - pausedAt;
+    }
+
+    private void wakeWaiting() {
+        Runnable resume;
+        while (hasCapacity() && (resume = waiting.poll()) != null) {
+            resume.run();
+        }
+    }
+
+    /**
+     * Returns the number of chunks, opens, completions and aborts queued but not yet executed.
+     *
+     * @return the current queue depth over all writers
+     */
+    public int getQueuedChunks() {
+        return queuedChunks.get();
+    }
+
+    public long getPeakQueuedChunks() {
+        return peakQueuedChunks.get();
+    }
+
+    /**
+     * Returns the bytes handed to the stage that the sink has not yet written.
+     *
+     * @return the bytes in flight
+     */
+    public long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    public long getPeakInFlightBytes() {
+        return peakInFlightBytes.get();
+    }
+
+    /**
+     * Returns how often a transfer stopped reading because the writers were behind.
+     *
+     * @return the number of pauses
+     */
+    public long getPauses() {
+        return pauses.sum();
+    }
+
+    /**
+     * Returns how long transfers stopped reading because the writers were behind, summed over all
+     * transfers.
+     *
+     * @return the cumulative pause time
+     */
+    public Duration getPausedTime() {
+        return Duration.ofNanos(pausedNanos.sum());
+    }
+
+    /**
+     * Waits for the writers to drain their queues, stops them and closes the sink.
+     *
+     * @throws IOException if the sink cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        for (Writer writer : writers) {
+            writer.stop();
+        }
+        delegate.close();
+        logger.debug("Closed writer stage: peak {} queued chunks, peak {} bytes in flight, {} pauses ({}ms)",
+                getPeakQueuedChunks(), getPeakInFlightBytes(), getPauses(), getPausedTime().toMillis());
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private static void await(CompletableFuture<Void> done) throws IOException {
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the disk writer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Disk writer failed", e.getCause());
+        }
+    }
+
+    /**
+     * One writer thread, the ring buffer it drains and the overflow behind the ring.
+     */
+    private final class Writer implements Runnable {
+        private final BlockingQueue<Runnable> ring;
+        private final Queue<Runnable> overflow = new ArrayDeque<>(); // guarded by this; queued after the ring
+        private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+
+        Writer(int slots) {
+            this.ring = new ArrayBlockingQueue<>(slots);
+        }
+
+        void submit(Runnable task) {
+            peakQueuedChunks.accumulate(queuedChunks.incrementAndGet());
+            enqueue(task);
+        }
+
+        /**
+         * Queues a task without blocking: the caller may be a reactor thread. While the ring is
+         * full, or anything is already waiting in the overflow, the task joins the overflow so
+         * that tasks still run in submission order.
+         */
+        private synchronized void enqueue(Runnable task) {
+            if (overflow.isEmpty() && ring.offer(task)) {
+                return;
+            }
+            overflow.add(task);
+        }
+
+        /**
+         * Moves tasks from the overflow into the slots the writer has freed.
+         */
+        private synchronized void refill() {
+            Runnable task;
+            while ((task = overflow.peek()) != null && ring.offer(task)) {
+                overflow.remove();
+            }
+        }
+
+        void stop() throws InterruptedIOException {
+            enqueue(STOP);
+            try {
+                stopped.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while stopping the disk writer");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e); // never completed exceptionally
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                while ((task = ring.take()) != STOP) {
+                    queuedChunks.decrementAndGet();
+                    refill();
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Disk writer task failed", e);
+                    }
+                    if (!waiting.isEmpty()) {
+                        wakeWaiting();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stopped.complete(null);
+            }
+        }
+    }
+
+    /**
+     * The caller's side of an output; the delegate's output is only touched by its writer.
+     */
+    private final class StagedOutput implements Output {
+        private final Writer writer;
+        private Output output; // set by the writer once opened
+        private volatile IOException failure; // first failure on the writer, reported to the caller
+
+        StagedOutput(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            throwFailure();
+            while (data.hasRemaining()) {
+                ByteBuffer chunk = buffers.acquire();
+                int bytes = Math.min(chunk.capacity(), data.remaining());
+                chunk.put(data.slice(data.position(), bytes)).flip();
+                data.position(data.position() + bytes);
+                peakInFlightBytes.accumulate(inFlightBytes.addAndGet(bytes));
+                writer.submit(() -> writeChunk(chunk, bytes));
+            }
+        }
+
+        private void writeChunk(ByteBuffer chunk, int bytes) {
+            try {
+                if (failure == null) {
+                    output.write(chunk);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                buffers.release(chunk);
+                inFlightBytes.addAndGet(-bytes);
+            }
+        }
+
+        @Override
+        public void preallocate(long totalBytes) throws IOException {
+            // Queued like a chunk: a refusal fails the next call, before the body is written
+            throwFailure();
+            writer.submit(() -> {
+                try {
+                    if (failure == null) {
+                        output.preallocate(totalBytes);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            });
+        }
+
+        private void throwFailure() throws IOException {
+            IOException cause = failure;
+            if (cause != null) {
+                throw cause;
+            }
+        }
+
+        @Override
+        public void complete() throws IOException {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            writer.submit(() -> {
+                try {
+                    if (failure != null && output != null) {
+                        // The caller has not seen the failure yet and will not abort
+                        output.abort(false);
+                    }
+                    throwFailure();
+                    output.complete();
+                    done.complete(null);
+                } catch (IOException e) {
+                    done.completeExceptionally(e);
+                }
+            });
+            await(done);
+        }
+
+        @Override
+        public void abort(boolean discard) throws IOException {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            writer.submit(() -> {
+                try {
+                    if (output != null) {
+                        output.abort(discard);
+                    }
+                    done.complete(null);
+                } catch (IOException e) {
+                    done.completeExceptionally(e);
+                }
+            });
+            await(done);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.hoppersecurity.url_downloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight local HTTP server for throughput benchmarks.
+ *
+ * <p>WireMock's servlet container is sized for functional tests and queues requests long before
+ * thousands of connections are open. This server uses the JDK's built-in HTTP server with a
+ * virtual thread per exchange, so it can hold 10k+ in-flight responses open while each one
+ * waits out its simulated latency.
+ *
+ * <p>Every path serves the same payload: {@code GET /anything} returns {@code payloadSize}
+ * bytes after {@code latencyMillis} milliseconds. The server advertises {@code Accept-Ranges},
+ * answers {@code HEAD} and serves single {@code Range: bytes=first-last} requests with
+ * {@code 206 Partial Content}, so it can also back segmented downloads. Ranges are honored only
+ * while {@code If-Range} (if sent) matches the current ETag, and {@link #failNextResponseAfter(int)}
+ * cuts the next body short to simulate a transfer that dies midway.
+ *
+ * <p>The server can also run as its own process ({@code main(payloadSize, latencyMillis)}) so
+ * that benchmarks at 10k in-flight downloads don't share one file-descriptor budget between
+ * client sockets, server sockets and output files. It prints {@code port=<n>} once listening.
+ */
+public class BenchmarkServer {
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkServer.class);
+
+    private final int payloadSize;
+    private final long latencyMillis;
+    private final byte[] payload;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicInteger failNextAfterBytes = new AtomicInteger(-1);
+    private final List<String> rangeRequests = new CopyOnWriteArrayList<>();
+    private volatile String etag = "\"v1\"";
+    private volatile String etagAfterFailure;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public BenchmarkServer(int payloadSize, long latencyMillis) {
+        this.payloadSize = payloadSize;
+        this.latencyMillis = latencyMillis;
+        this.payload = new byte[payloadSize];
+        for (int i = 0; i < payloadSize; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BenchmarkServer server = new BenchmarkServer(Integer.parseInt(args[0]), Long.parseLong(args[1]));
+        server.start();
+        System.out.println("port=" + server.getPort());
+        System.out.flush();
+        Thread.currentThread().join(); // runs until the parent process destroys it
+    }
+
+    public void start() throws IOException {
+        // The JDK server closes keep-alive connections beyond 200 idle ones by default, which
+        // would surface as stale pooled connections on the client side at high concurrency
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "65536");
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16_384);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Benchmark server started on port {} ({} byte payload, {}ms latency)",
+                getPort(), payloadSize, latencyMillis);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            logger.info("Benchmark server stopped after {} requests", requestCount.get());
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public byte[] getPayload() {
+        return payload.clone();
+    }
+
+    /** Sends only {@code bytes} bytes of the next GET body, then drops the connection. */
+    public void failNextResponseAfter(int bytes) {
+        failNextAfterBytes.set(bytes);
+    }
+
+    /** Like {@link #failNextResponseAfter(int)}, and replaces the resource (new ETag) right after the failure. */
+    public void failNextResponseAfter(int bytes, String newEtag) {
+        etagAfterFailure = newEtag;
+        failNextAfterBytes.set(bytes);
+    }
+
+    /** Returns the {@code Range} headers received so far, in arrival order. */
+    public List<String> getRangeRequests() {
+        return List.copyOf(rangeRequests);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", etag);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(payload.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            int first = 0;
+            int last = payload.length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (range != null) {
+                rangeRequests.add(range);
+            }
+            if (range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                first = Integer.parseInt(bounds[0]);
+                last = bounds[1].isEmpty() ? last : Math.min(last, Integer.parseInt(bounds[1]));
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + payload.length);
+            }
+            int length = last - first + 1;
+            exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+            int failAfter = failNextAfterBytes.getAndSet(-1);
+            if (failAfter >= 0 && failAfter < length) {
+                // Send part of the body; closing the exchange short of Content-Length drops the connection
+                OutputStream body = exchange.getResponseBody();
+                body.write(payload, first, failAfter);
+                body.flush();
+                if (etagAfterFailure != null) {
+                    etag = etagAfterFailure;
+                    etagAfterFailure = null;
+                }
+                return;
+            }
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(payload, first, length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the per-download allocations of the transfer loop and the completion path.
+ *
+ * <p>The transfer benchmarks read {@code payloadBytes} from an in-memory entity stream the way
+ * {@link ClassicHttpTransport} does, once with a freshly allocated chunk per transfer (the
+ * previous behaviour) and once with chunks from a {@link BufferPool}, heap and direct. The
+ * completion benchmarks compare the old {@code String.format} progress line with
+ * {@link DownloadResult#toString()}. Run it with the GC profiler and compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per operation:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main BufferPoolBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferPoolBenchmark {
+    @Param({"4096", "1048576"})
+    private long payloadBytes;
+
+    @Param({"65536"})
+    private int ioBufferSize;
+
+    private byte[] template;
+    private BufferPool heapPool;
+    private BufferPool directPool;
+    private DownloadResult result;
+
+    @Setup
+    public void setUp() {
+        template = new byte[ioBufferSize];
+        heapPool = new BufferPool(ioBufferSize, 16, false);
+        directPool = new BufferPool(ioBufferSize, 16, true);
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        result = DownloadResult.success("http://example.com/files/report.pdf", "1735689600000_report.pdf",
+                start, start.plusMillis(42), payloadBytes);
+    }
+
+    @Benchmark
+    public void freshBuffer(Blackhole blackhole) throws IOException {
+        transfer(ByteBuffer.allocate(ioBufferSize), blackhole);
+    }
+
+    @Benchmark
+    public void pooledHeapBuffer(Blackhole blackhole) throws IOException {
+        ByteBuffer chunk = heapPool.acquire();
+        try {
+            transfer(chunk, blackhole);
+        } finally {
+            heapPool.release(chunk);
+        }
+    }
+
+    @Benchmark
+    public void pooledDirectBuffer(Blackhole blackhole) {
+        ByteBuffer chunk = directPool.acquire();
+        try {
+            for (long remaining = payloadBytes; remaining > 0; remaining -= chunk.limit()) {
+                chunk.clear().put(template, 0, (int) Math.min(remaining, chunk.capacity())).flip();
+                blackhole.consume(chunk);
+            }
+        } finally {
+            directPool.release(chunk);
+        }
+    }
+
+    @Benchmark
+    public String completionLineFormat() {
+        return String.format("✓ Downloaded %s to %s (%d bytes) in %dms",
+                result.url(), result.filename(), result.fileSize(), result.duration().toMillis());
+    }
+
+    @Benchmark
+    public String completionLineToString() {
+        return result.toString();
+    }
+
+    private void transfer(ByteBuffer chunk, Blackhole blackhole) throws IOException {
+        try (InputStream in = new WritePathBenchmark.SyntheticInputStream(template, payloadBytes)) {
+            int bytesRead;
+            while ((bytesRead = in.read(chunk.array(), 0, chunk.capacity())) != -1) {
+                blackhole.consume(chunk.clear().limit(bytesRead));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void testReleasedBufferIsReusedCleared() {
+        BufferPool pool = new BufferPool(1024, 4, false);
+
+        ByteBuffer first = pool.acquire();
+        first.put((byte) 1).limit(10);
+        pool.release(first);
+        ByteBuffer second = pool.acquire();
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(1024, second.limit());
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    void testSteadyStateDoesNotAllocate() {
+        BufferPool pool = new BufferPool(1024, 4, false);
+
+        for (int i = 0; i < 1000; i++) {
+            pool.release(pool.acquire());
+        }
+
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    void testVirtualThreadsShareTheQueue() throws InterruptedException {
+        BufferPool pool = new BufferPool(1024, 4, true);
+        AtomicReference<ByteBuffer> released = new AtomicReference<>();
+        AtomicReference<ByteBuffer> acquired = new AtomicReference<>();
+
+        Thread.ofVirtual().start(() -> {
+            released.set(pool.acquire());
+            pool.release(released.get());
+        }).join();
+        Thread.ofVirtual().start(() -> acquired.set(pool.acquire())).join();
+
+        assertTrue(acquired.get().isDirect());
+        assertSame(released.get(), acquired.get(), "a buffer released by one virtual thread is reused by the next");
+        assertEquals(1, pool.getAllocationCount());
+    }
+
+    @Test
+    void testPoolIsBounded() throws InterruptedException {
+        BufferPool pool = new BufferPool(1024, 2, false);
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        Thread.ofVirtual().start(() -> {
+            for (int i = 0; i < 5; i++) {
+                buffers.add(pool.acquire());
+            }
+            buffers.forEach(pool::release); // only two are kept
+            buffers.clear();
+            for (int i = 0; i < 3; i++) {
+                buffers.add(pool.acquire());
+            }
+        }).join();
+
+        assertEquals(6, pool.getAllocationCount());
+    }
+
+    @Test
+    void testRejectsForeignBuffers() {
+        BufferPool pool = new BufferPool(1024, 4, false);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(512)));
+        assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(1024)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void testFixedLimitIgnoresSamples() {
+        DownloadConfig config = config(1, 20);
+        config.setAdaptiveConcurrency(false);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config);
+
+        assertEquals(20, limiter.getLimit());
+        assertEquals(20, limiter.onOverload());
+        assertEquals(20, limiter.onSuccess(RTT, 20));
+    }
+
+    @Test
+    void testSlowStartGrowsToMaximum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config(2, 20));
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 30; i++) {
+            limiter.onSuccess(RTT, limiter.getLimit(), i * RTT);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void testOverloadDecreasesOncePerEpisodeThenGrowsAdditively() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config(1, 100));
+        long now = 0;
+        for (int i = 0; i < 39; i++) {
+            limiter.onSuccess(RTT, limiter.getLimit(), now);
+        }
+        assertEquals(40, limiter.getLimit());
+
+        // A burst of timeouts within one round trip counts as one congestion signal
+        assertEquals(30, limiter.onOverload(now));
+        assertEquals(30, limiter.onOverload(now + RTT / 2));
+        assertEquals(22, limiter.onOverload(now + 2 * RTT));
+
+        // Congestion avoidance: about one more permit per round of 22 responses
+        for (int i = 0; i < 22; i++) {
+            limiter.onSuccess(RTT, limiter.getLimit(), now + 3 * RTT);
+        }
+        assertEquals(23, limiter.getLimit());
+    }
+
+    @Test
+    void testLatencyGradientLowersLimitWithoutErrors() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config(1, 100));
+        long now = 0;
+        for (int i = 0; i < 19; i++) {
+            limiter.onSuccess(RTT, limiter.getLimit(), now += RTT);
+        }
+        assertEquals(20, limiter.getLimit());
+
+        // Responses slow down tenfold: requests are queueing at the server
+        for (int i = 0; i < 5; i++) {
+            limiter.onSuccess(10 * RTT, limiter.getLimit(), now += 100 * RTT);
+        }
+
+        assertTrue(limiter.getLimit() < 20, "limit was " + limiter.getLimit());
+    }
+
+    @Test
+    void testUnderusedLimitDoesNotGrow() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config(10, 100));
+
+        for (int i = 0; i < 50; i++) {
+            limiter.onSuccess(RTT, 2, i * RTT);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitNeverDropsBelowMinimum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(config(3, 10));
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onOverload(i * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void testOverloadSignals() {
+        assertTrue(ConcurrencyLimiter.isOverloadSignal(new SocketTimeoutException("Read timed out")));
+        assertTrue(ConcurrencyLimiter.isOverloadSignal(new HttpStatusException(503, "Service Unavailable", null)));
+        assertTrue(ConcurrencyLimiter.isOverloadSignal(new HttpStatusException(429, "Too Many Requests", null)));
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new HttpStatusException(404, "Not Found", null)));
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new HttpStatusException(500, "Server Error", null)));
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new IllegalArgumentException("bad URL")));
+        assertTrue(ConcurrencyLimiter.isOverloadSignal(new IOException("Connection reset")));
+    }
+
+    @Test
+    void testIntegrityFailureIsNoOverloadSignal() {
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new IntegrityException("SHA-256 mismatch", false)));
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new IntegrityException("Body ended after 10 of 20 bytes", true)));
+    }
+
+    @Test
+    void testSinkCapacityFailureIsNoOverloadSignal() {
+        assertFalse(ConcurrencyLimiter.isOverloadSignal(new SinkCapacityException("Download would leave less than 1048576 bytes free")));
+    }
+
+    private static DownloadConfig config(int min, int max) {
+        DownloadConfig config = new DownloadConfig();
+        config.setAdaptiveConcurrency(true);
+        config.setMinConcurrentDownloads(min);
+        config.setMaxConcurrentDownloads(max);
+        return config;
+    }
+}
@@ -5,17 +5,30 @@ import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class ConcurrentUrlDownloaderIntegrationTest {
+    // BenchmarkServer speaks HTTP/1.1 only; tests against it have HTTP2 variants against WireMock, which serves h2c
+    private static final List<TransportMode> HTTP1_TRANSPORT_MODES = List.of(TransportMode.CLASSIC, TransportMode.ASYNC);
 
     private IntegrationTestServer testServer;
     private String baseUrl;
@@ -172,6 +185,247 @@ class ConcurrentUrlDownloaderIntegrationTest {
         assertTrue(testServer.getRequestCount() >= 3);
     }
 
+    @Test
+    void testRetryBackoffDoesNotBlockWorkers() {
+        // One worker: the 503 honors its Retry-After of 1s without holding the worker
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/unavailable-once",
+            baseUrl + "/success",
+            baseUrl + "/file.txt"
+        ));
+        config.setMaxConcurrentDownloads(1);
+        config.setRetryAttempts(2);
+        
+        Instant startTime = Instant.now();
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        Duration totalTime = Duration.between(startTime, Instant.now());
+        
+        assertEquals(3, results.size());
+        assertEquals(3, results.stream().filter(DownloadResult::success).count());
+        assertTrue(totalTime.toMillis() >= 1000, "Retry-After should be honored");
+        
+        // The healthy URLs complete while the flaky one is backing off
+        assertEquals(baseUrl + "/unavailable-once", results.getLast().url());
+        assertEquals(4, testServer.getRequestCount());
+    }
+
+    @Test
+    void testAdaptiveConcurrencyBacksOffOnOverload() {
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/success",
+            baseUrl + "/file.txt",
+            baseUrl + "/unavailable-once",
+            baseUrl + "/binary"
+        ));
+        config.setMaxConcurrentDownloads(8);
+        config.setMinConcurrentDownloads(2);
+        config.setAdaptiveConcurrency(true);
+        config.setRetryAttempts(2);
+        
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        assertEquals(2, downloader.getConcurrencyLimit(), "adaptive mode starts at the minimum");
+        List<DownloadResult> results = downloader.downloadAll();
+        
+        assertEquals(4, results.size());
+        assertEquals(4, results.stream().filter(DownloadResult::success).count());
+        assertTrue(downloader.getConcurrencyLimit() >= 2 && downloader.getConcurrencyLimit() <= 8,
+                "limit was " + downloader.getConcurrencyLimit());
+    }
+
+    @Test
+    void testRequestThrottlingIsNotMistakenForServerLatency() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            DownloadConfig config = createTestConfig(Collections.nCopies(8, baseUrl + "/success"));
+            config.setTransportMode(transportMode);
+            config.setMaxConcurrentDownloads(4);
+            config.setMinConcurrentDownloads(2);
+            config.setAdaptiveConcurrency(true);
+            // The first requests go out at once, the later ones wait longer and longer for a token
+            config.setMaxRequestsPerSecond(4);
+
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+
+            assertEquals(8, results.stream().filter(DownloadResult::success).count());
+            assertEquals(4, downloader.getConcurrencyLimit(), transportMode + ": the limit backed off");
+        }
+    }
+
+    @Test
+    void testDeadlineAbortsSlowDripDownload() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // Each chunk arrives well within readTimeout, so only the total deadline can stop it
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/trickle"));
+            config.setTransportMode(transportMode);
+            config.setMaxDownloadTimePerUrl(2);
+            config.setRetryAttempts(3);
+            int requestsBefore = testServer.getRequestCount();
+            
+            Instant startTime = Instant.now();
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            Duration totalTime = Duration.between(startTime, Instant.now());
+            
+            assertEquals(1, results.size());
+            assertFalse(results.getFirst().success());
+            assertTrue(results.getFirst().errorMessage().startsWith("Download timeout"), results.getFirst().errorMessage());
+            assertTrue(totalTime.toMillis() < 5000, transportMode + " aborted after " + totalTime.toMillis() + "ms");
+            assertEquals(requestsBefore + 1, testServer.getRequestCount(), "an expired deadline is not retried");
+        }
+    }
+
+    @Test
+    void testRequestTokenWaitCountsAgainstDeadline() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // One request every 5 seconds: only the first URL gets a token within its deadline
+            DownloadConfig config = createTestConfig(Collections.nCopies(3, baseUrl + "/success"));
+            config.setTransportMode(transportMode);
+            config.setMaxRequestsPerSecond(0.2);
+            config.setMaxDownloadTimePerUrl(1);
+            int requestsBefore = testServer.getRequestCount();
+
+            Instant startTime = Instant.now();
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            Duration totalTime = Duration.between(startTime, Instant.now());
+
+            assertEquals(1, results.stream().filter(DownloadResult::success).count());
+            results.stream().filter(result -> !result.success()).forEach(result ->
+                    assertTrue(result.errorMessage().startsWith("Download timeout"), result.errorMessage()));
+            assertTrue(totalTime.toMillis() < 3000, transportMode + " gave up after " + totalTime.toMillis() + "ms");
+            assertEquals(requestsBefore + 1, testServer.getRequestCount(), "timed-out requests were sent");
+        }
+    }
+
+    @Test
+    void testSlowTransferIsAbortedAndRetried() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // The trickle endpoint sends about 200 bytes/s, far below the floor
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/trickle"));
+            config.setTransportMode(transportMode);
+            config.setMinBytesPerSecond(1000);
+            config.setMinThroughputWindowSeconds(1);
+            config.setRetryAttempts(2);
+            config.setRetryBaseDelayMillis(100);
+            int requestsBefore = testServer.getRequestCount();
+            
+            Instant startTime = Instant.now();
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            Duration totalTime = Duration.between(startTime, Instant.now());
+            
+            assertFalse(results.getFirst().success());
+            assertTrue(results.getFirst().errorMessage().contains("Transfer too slow"), results.getFirst().errorMessage());
+            assertEquals(requestsBefore + 2, testServer.getRequestCount(), "the slow attempt is retried");
+            assertTrue(totalTime.toMillis() < 5000, transportMode + " took " + totalTime.toMillis() + "ms");
+        }
+    }
+
+    @Test
+    void testHostRequestRateIsEnforced() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // A burst of 2, then one request every 500 ms
+            DownloadConfig config = createTestConfig(Arrays.asList(
+                baseUrl + "/success", baseUrl + "/binary", baseUrl + "/file.txt", baseUrl + "/empty"));
+            config.setTransportMode(transportMode);
+            config.setHostRequestsPerSecond(Map.of("LOCALHOST", 2.0));
+
+            Instant startTime = Instant.now();
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            Duration totalTime = Duration.between(startTime, Instant.now());
+
+            assertTrue(results.stream().allMatch(DownloadResult::success));
+            assertTrue(totalTime.toMillis() >= 900, transportMode + " took only " + totalTime.toMillis() + "ms");
+            assertTrue(downloader.getThrottledTime().toMillis() > 0);
+        }
+    }
+
+    @Test
+    void testThrottledTransferIsNotAbortedAsSlow() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // Two downloads share 512 KB/s, so each gets about 256 KB/s: well below the floor,
+            // which only the time spent reading the network must meet
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/large", baseUrl + "/large"));
+            config.setOutputDirectory(tempDir.resolve("throttled-" + transportMode).toString());
+            config.setTransportMode(transportMode);
+            config.setMaxBytesPerSecond(512 * 1024);
+            config.setMinBytesPerSecond(400 * 1024);
+            config.setMinThroughputWindowSeconds(1);
+
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+
+            assertEquals(2, results.size());
+            for (DownloadResult result : results) {
+                assertTrue(result.success(), transportMode + ": " + result.errorMessage());
+                assertEquals(1024 * 1024, result.fileSize());
+            }
+            assertTrue(downloader.getThrottledTime().toMillis() > 0, transportMode + " was not throttled");
+        }
+    }
+
+    @Test
+    void testGlobalByteRateIsEnforced() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // 1 MB at 512 KB/s: the first half is covered by the full bucket, the rest takes a second
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/large"));
+            config.setTransportMode(transportMode);
+            config.setMaxBytesPerSecond(512 * 1024);
+
+            Instant startTime = Instant.now();
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            Duration totalTime = Duration.between(startTime, Instant.now());
+
+            assertTrue(results.getFirst().success(), results.getFirst().errorMessage());
+            assertEquals(1024 * 1024, results.getFirst().fileSize());
+            assertTrue(totalTime.toMillis() >= 800, transportMode + " took only " + totalTime.toMillis() + "ms");
+            assertTrue(totalTime.toMillis() < 5000, transportMode + " took " + totalTime.toMillis() + "ms");
+        }
+    }
+
+    @Test
+    void testUnchangedUrlIsNotDownloadedAgain() throws IOException {
+        for (TransportMode transportMode : TransportMode.values()) {
+            Path downloadDir = tempDir.resolve("incremental-" + transportMode);
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/etagged"));
+            config.setTransportMode(transportMode);
+            config.setOutputDirectory(downloadDir.toString());
+            config.setMetadataStore(tempDir.resolve("metadata-" + transportMode + ".jsonl").toString());
+
+            DownloadResult first = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+            assertTrue(first.success(), first.errorMessage());
+            assertFalse(first.notModified());
+
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            DownloadResult second = downloader.downloadAll().getFirst();
+            assertTrue(second.success(), second.errorMessage());
+            assertTrue(second.notModified(), transportMode + " downloaded the unchanged URL again");
+            assertEquals(first.filename(), second.filename());
+            assertEquals(first.fileSize(), second.fileSize());
+            assertEquals(1, downloader.getNotModifiedCount());
+            try (var files = Files.list(downloadDir)) {
+                assertEquals(1, files.count(), "a 304 must not write a new file");
+            }
+        }
+    }
+
+    @Test
+    void testClientErrorsAreNotRetried() {
+        DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/notfound"));
+        config.setRetryAttempts(3);
+        
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        
+        assertEquals(1, results.size());
+        assertFalse(results.getFirst().success());
+        assertEquals("HTTP 404: Not Found", results.getFirst().errorMessage());
+        assertEquals(1, testServer.getRequestCount());
+    }
+
     @Test
     void testLargeFileDownload() throws IOException {
         DownloadConfig config = createTestConfig(Arrays.asList(
@@ -207,6 +461,242 @@ class ConcurrentUrlDownloaderIntegrationTest {
             });
     }
 
+    @Test
+    void testSegmentedDownload() throws IOException {
+        BenchmarkServer rangeServer = new BenchmarkServer(5 * 1024 * 1024 + 123, 0);
+        rangeServer.start();
+        try {
+            for (TransportMode transportMode : HTTP1_TRANSPORT_MODES) {
+                assertSegmentedDownload(rangeServer.getBaseUrl(), rangeServer.getPayload(), rangeServer::getRequestCount, transportMode);
+            }
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    void testSegmentedDownloadOverHttp2() throws IOException {
+        // The ranges become concurrent streams on one connection
+        assertSegmentedDownload(baseUrl + "/ranged", testServer.getRangedPayload(), testServer::getRequestCount, TransportMode.HTTP2);
+    }
+
+    private void assertSegmentedDownload(String baseUrl, byte[] payload, LongSupplier requestCount,
+                                         TransportMode transportMode) throws IOException {
+        DownloadConfig config = createTestConfig(List.of(baseUrl + "/big-" + transportMode + ".bin"));
+        config.setOutputDirectory(tempDir.resolve("segmented-" + transportMode).toString());
+        config.setTransportMode(transportMode);
+        config.setSegmentThresholdBytes(1024 * 1024);
+        config.setMinSegmentBytes(1024 * 1024);
+        config.setMaxSegmentsPerFile(4);
+        long requestsBefore = requestCount.getAsLong();
+        
+        List<DownloadResult> results = new ConcurrentUrlDownloader(config).downloadAll();
+        
+        assertEquals(1, results.size());
+        DownloadResult result = results.getFirst();
+        assertTrue(result.success(), transportMode + ": " + result.errorMessage());
+        assertEquals(payload.length, result.fileSize());
+        Path file = tempDir.resolve("segmented-" + transportMode).resolve(result.filename());
+        assertArrayEquals(payload, Files.readAllBytes(file));
+        // One HEAD probe plus four range requests
+        assertEquals(5, requestCount.getAsLong() - requestsBefore);
+    }
+
+    @Test
+    void testSegmentedModeFallsBackWithoutRangeSupport() throws IOException {
+        // The WireMock endpoints do not advertise Accept-Ranges
+        DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/large"));
+        config.setSegmentThresholdBytes(1024);
+        config.setMinSegmentBytes(1024);
+        
+        List<DownloadResult> results = new ConcurrentUrlDownloader(config).downloadAll();
+        
+        assertEquals(1, results.size());
+        assertTrue(results.getFirst().success());
+        assertEquals(1024 * 1024, results.getFirst().fileSize());
+        // HEAD probe, then a single GET
+        assertEquals(2, testServer.getRequestCount());
+    }
+
+    @Test
+    void testRetryResumesPartialDownload() throws IOException {
+        BenchmarkServer rangeServer = new BenchmarkServer(256 * 1024, 0);
+        rangeServer.start();
+        try {
+            rangeServer.failNextResponseAfter(100_000);
+            DownloadConfig config = createTestConfig(List.of(rangeServer.getBaseUrl() + "/resumable.bin"));
+            config.setRetryAttempts(3);
+            config.setRetryBaseDelayMillis(50);
+            config.setFsyncPolicy(FsyncPolicy.GROUP_COMMIT);
+            
+            List<DownloadResult> results = new ConcurrentUrlDownloader(config).downloadAll();
+            
+            DownloadResult result = results.getFirst();
+            assertTrue(result.success(), result.errorMessage());
+            assertEquals(256 * 1024, result.fileSize());
+            assertArrayEquals(rangeServer.getPayload(), Files.readAllBytes(tempDir.resolve("downloads").resolve(result.filename())));
+            // The partial file the retry resumed was renamed into place
+            assertFalse(Files.exists(tempDir.resolve("downloads").resolve(result.filename() + ".part")));
+            // The retry asked only for the bytes the first attempt did not get
+            assertEquals(List.of("bytes=100000-"), rangeServer.getRangeRequests());
+            assertEquals(2, rangeServer.getRequestCount());
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    void testContentAddressedResumeHashesWholeContent() throws Exception {
+        BenchmarkServer rangeServer = new BenchmarkServer(256 * 1024, 0);
+        rangeServer.start();
+        try {
+            rangeServer.failNextResponseAfter(100_000);
+            DownloadConfig config = createTestConfig(List.of(rangeServer.getBaseUrl() + "/resumable.bin"));
+            config.setOutputLayout(OutputLayout.CONTENT_ADDRESSED);
+            config.setRetryAttempts(3);
+            config.setRetryBaseDelayMillis(50);
+            
+            DownloadResult result = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+            
+            assertTrue(result.success(), result.errorMessage());
+            assertEquals(List.of("bytes=100000-"), rangeServer.getRangeRequests());
+            // The digest covers the bytes kept from the first attempt, not just the resumed tail
+            String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(rangeServer.getPayload()));
+            assertEquals(expected, result.sha256());
+            assertEquals(ContentStore.blobPath(expected), result.filename());
+            assertArrayEquals(rangeServer.getPayload(), Files.readAllBytes(tempDir.resolve("downloads").resolve(result.filename())));
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    void testResumeFallsBackToFullDownloadWhenResourceChanged() throws IOException {
+        BenchmarkServer rangeServer = new BenchmarkServer(256 * 1024, 0);
+        rangeServer.start();
+        try {
+            // The resource is replaced after the first attempt fails, so If-Range no longer matches
+            rangeServer.failNextResponseAfter(100_000, "\"v2\"");
+            DownloadConfig config = createTestConfig(List.of(rangeServer.getBaseUrl() + "/changing.bin"));
+            config.setRetryAttempts(3);
+            config.setRetryBaseDelayMillis(50);
+            
+            List<DownloadResult> results = new ConcurrentUrlDownloader(config).downloadAll();
+            
+            DownloadResult result = results.getFirst();
+            assertTrue(result.success(), result.errorMessage());
+            // The server answered 200 with the full body, which replaced the partial file
+            assertEquals(256 * 1024, result.fileSize());
+            assertArrayEquals(rangeServer.getPayload(), Files.readAllBytes(tempDir.resolve("downloads").resolve(result.filename())));
+            assertEquals(List.of("bytes=100000-"), rangeServer.getRangeRequests());
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    void testExpectedContentIsVerifiedWhileStreaming() throws Exception {
+        BenchmarkServer server = new BenchmarkServer(64 * 1024, 0);
+        server.start();
+        try {
+            for (TransportMode transportMode : HTTP1_TRANSPORT_MODES) {
+                assertExpectedContentIsVerified(server.getBaseUrl(), server.getPayload(), transportMode);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testExpectedContentIsVerifiedOverHttp2() throws Exception {
+        assertExpectedContentIsVerified(baseUrl + "/ranged", testServer.getRangedPayload(), TransportMode.HTTP2);
+    }
+
+    private void assertExpectedContentIsVerified(String baseUrl, byte[] payload, TransportMode transportMode) throws Exception {
+        String good = baseUrl + "/good-" + transportMode + ".bin";
+        String corrupt = baseUrl + "/corrupt-" + transportMode + ".bin";
+        String oversized = baseUrl + "/oversized-" + transportMode + ".bin";
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        DownloadConfig config = createTestConfig(List.of(good, corrupt, oversized));
+        config.setOutputDirectory(tempDir.resolve("verified-" + transportMode).toString());
+        config.setTransportMode(transportMode);
+        config.setRetryAttempts(2);
+        config.setRetryBaseDelayMillis(10);
+        config.setExpectedContent(Map.of(
+                good, new ExpectedContent(sha256.toUpperCase(), (long) payload.length),
+                corrupt, new ExpectedContent("0".repeat(64), null),
+                oversized, new ExpectedContent(null, 1000L)));
+        
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        Map<String, DownloadResult> results = new HashMap<>();
+        downloader.downloadAll(result -> results.put(result.url(), result));
+        
+        assertTrue(results.get(good).success(), results.get(good).errorMessage());
+        assertEquals(sha256, results.get(good).sha256());
+        assertFalse(results.get(corrupt).success());
+        assertTrue(results.get(corrupt).errorMessage().contains("expected " + "0".repeat(64)), results.get(corrupt).errorMessage());
+        assertFalse(results.get(oversized).success());
+        assertTrue(results.get(oversized).errorMessage().contains("expected 1000"), results.get(oversized).errorMessage());
+        // Both bad URLs were retried once; no file that failed verification is left behind
+        assertEquals(4, downloader.getIntegrityFailureCount(), transportMode.toString());
+        try (var files = Files.list(tempDir.resolve("verified-" + transportMode))) {
+            assertEquals(List.of(results.get(good).filename()), files.map(f -> f.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void testCorruptPartialFileIsNotResumed() throws Exception {
+        BenchmarkServer rangeServer = new BenchmarkServer(256 * 1024, 0);
+        rangeServer.start();
+        try {
+            rangeServer.failNextResponseAfter(100_000);
+            String url = rangeServer.getBaseUrl() + "/mismatch.bin";
+            DownloadConfig config = createTestConfig(List.of(url));
+            config.setRetryAttempts(3);
+            config.setRetryBaseDelayMillis(50);
+            config.setExpectedContent(Map.of(url, new ExpectedContent("f".repeat(64), null)));
+            
+            DownloadResult result = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+            
+            assertFalse(result.success());
+            // The truncated first attempt was resumed, but after the digest mismatch the last one started over
+            assertEquals(List.of("bytes=100000-"), rangeServer.getRangeRequests());
+            assertEquals(3, rangeServer.getRequestCount());
+        } finally {
+            rangeServer.stop();
+        }
+    }
+
+    @Test
+    void testContentAddressedLayoutSkipsExpectedContentAlreadyStored() throws Exception {
+        BenchmarkServer server = new BenchmarkServer(32 * 1024, 0);
+        server.start();
+        try {
+            String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(server.getPayload()));
+            DownloadConfig config = createTestConfig(List.of(server.getBaseUrl() + "/original.bin"));
+            config.setOutputLayout(OutputLayout.CONTENT_ADDRESSED);
+            assertTrue(new ConcurrentUrlDownloader(config).downloadAll().getFirst().success());
+            assertEquals(1, server.getRequestCount());
+            
+            String mirror = server.getBaseUrl() + "/mirror.bin";
+            config.setUrls(List.of(mirror));
+            config.setExpectedContent(Map.of(mirror, new ExpectedContent(sha256, 32L * 1024)));
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            DownloadResult result = downloader.downloadAll().getFirst();
+            
+            assertTrue(result.success(), result.errorMessage());
+            assertEquals(ContentStore.blobPath(sha256), result.filename());
+            assertEquals(32 * 1024, result.fileSize());
+            assertEquals(1, server.getRequestCount(), "the stored blob made the request unnecessary");
+            assertEquals(1, downloader.getDeduplicatedCount());
+            try (OutputIndex index = OutputIndex.open(tempDir.resolve("downloads"))) {
+                assertEquals(ContentStore.blobPath(sha256), index.lookup(mirror));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
     @Test
     void testBinaryFileDownload() throws IOException {
         DownloadConfig config = createTestConfig(Arrays.asList(
@@ -337,6 +827,435 @@ class ConcurrentUrlDownloaderIntegrationTest {
             "Total time should not exceed 8 seconds");
     }
 
+    @Test
+    void testVirtualThreadExecution() {
+        DownloadConfig config = createTestConfig(Collections.nCopies(10, baseUrl + "/slow"));
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        config.setMaxConcurrentDownloads(10);
+        
+        Instant startTime = Instant.now();
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        Duration totalTime = Duration.between(startTime, Instant.now());
+        
+        assertEquals(10, results.size());
+        assertEquals(10, results.stream().filter(DownloadResult::success).count());
+        
+        // All 10 slow downloads run on their own virtual thread at the same time
+        assertTrue(totalTime.toMillis() < 4000,
+            "Total time (" + totalTime.toMillis() + "ms) should be less than 4000ms with virtual threads");
+        assertEquals(10, testServer.getRequestCount());
+    }
+
+    @Test
+    void testVirtualThreadPermitLimit() {
+        DownloadConfig config = createTestConfig(Collections.nCopies(4, baseUrl + "/slow"));
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        config.setMaxConcurrentDownloads(2); // The scheduler, not the executor, caps concurrency
+        
+        Instant startTime = Instant.now();
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        Duration totalTime = Duration.between(startTime, Instant.now());
+        
+        assertEquals(4, results.size());
+        assertEquals(4, results.stream().filter(DownloadResult::success).count());
+        
+        // 4 slow downloads with 2 permits need two 2-second waves
+        assertTrue(totalTime.toMillis() >= 4000,
+            "Total time (" + totalTime.toMillis() + "ms) should be at least 4000ms with 2 permits");
+    }
+
+    @Test
+    void testAsyncTransportDownloads() throws IOException {
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/success",
+            baseUrl + "/binary",
+            baseUrl + "/large",
+            baseUrl + "/empty",
+            baseUrl + "/redirect",
+            baseUrl + "/notfound",
+            baseUrl + "/error"
+        ));
+        config.setTransportMode(TransportMode.ASYNC);
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        
+        assertEquals(7, results.size());
+        assertEquals(5, results.stream().filter(DownloadResult::success).count());
+        
+        // Bodies written from the I/O reactor match the classic transport byte for byte
+        DownloadResult large = results.stream().filter(r -> r.url().endsWith("/large")).findFirst().orElseThrow();
+        assertEquals(1024 * 1024, large.fileSize());
+        assertEquals(1024 * 1024, Files.size(tempDir.resolve("downloads").resolve(large.filename())));
+        DownloadResult empty = results.stream().filter(r -> r.url().endsWith("/empty")).findFirst().orElseThrow();
+        assertEquals(0, empty.fileSize());
+        
+        DownloadResult notFound = results.stream().filter(r -> r.url().endsWith("/notfound")).findFirst().orElseThrow();
+        assertFalse(notFound.success());
+        assertTrue(notFound.errorMessage().contains("HTTP 404"));
+    }
+
+    @Test
+    void testPreallocationAndFreeSpaceFloor() throws IOException {
+        DownloadConfig config = createTestConfig(List.of(baseUrl + "/large"));
+        config.setPreallocateFiles(true);
+        config.setMinFreeDiskBytes(1);
+        
+        DownloadResult result = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+        
+        assertTrue(result.success(), result.errorMessage());
+        assertEquals(1024 * 1024, Files.size(tempDir.resolve("downloads").resolve(result.filename())));
+        
+        // No disk has this much free: refused once the response is in, without reading the body or retrying
+        config.setOutputDirectory(tempDir.resolve("full").toString());
+        config.setMinFreeDiskBytes(Long.MAX_VALUE / 2);
+        config.setRetryAttempts(3);
+        DownloadResult refused = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+        
+        assertFalse(refused.success());
+        assertTrue(refused.errorMessage().contains("Not enough disk space"), refused.errorMessage());
+        assertEquals(2, testServer.getRequestCount());
+        try (var files = Files.list(tempDir.resolve("full"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testHttp2MultiplexesDownloadsOverFewConnections() throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            urls.add(baseUrl + (i % 2 == 0 ? "/success" : "/binary"));
+        }
+        for (int connections : new int[] {1, 2}) {
+            DownloadConfig config = createTestConfig(urls);
+            config.setOutputDirectory(tempDir.resolve("http2-" + connections).toString());
+            config.setTransportMode(TransportMode.HTTP2);
+            config.setMaxConcurrentDownloads(10);
+            config.setHttp2ConnectionsPerHost(connections);
+            config.setHttp2MaxConcurrentStreams(3);
+            
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            
+            assertEquals(20, results.size());
+            results.forEach(result -> assertTrue(result.success(), result.errorMessage()));
+            assertEquals(connections, downloader.getConnectionsOpened(), "one connection per lane, shared by every download");
+        }
+        
+        // HTTP/1.1 needs a connection per concurrent download
+        DownloadConfig config = createTestConfig(urls);
+        config.setOutputDirectory(tempDir.resolve("http1").toString());
+        config.setTransportMode(TransportMode.ASYNC);
+        config.setMaxConcurrentDownloads(10);
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        downloader.downloadAll();
+        assertTrue(downloader.getConnectionsOpened() > 2, "opened " + downloader.getConnectionsOpened());
+    }
+
+    @Test
+    void testCompressionIsNegotiatedAndDecodedOrStored() throws IOException {
+        for (TransportMode transportMode : TransportMode.values()) {
+            assertCompressionModes(transportMode);
+        }
+    }
+
+    private void assertCompressionModes(TransportMode transportMode) throws IOException {
+        byte[] content = "A".repeat(1024 * 1024).getBytes(StandardCharsets.US_ASCII);
+        DownloadConfig config = createTestConfig(List.of(baseUrl + "/large"));
+        config.setTransportMode(transportMode);
+        config.setOutputDirectory(tempDir.resolve("compression-" + transportMode).toString());
+        
+        config.setCompression(CompressionMode.DECOMPRESS);
+        ConcurrentUrlDownloader decoding = new ConcurrentUrlDownloader(config);
+        DownloadResult decoded = decoding.downloadAll().getFirst();
+        assertTrue(decoded.success(), decoded.errorMessage());
+        assertNull(decoded.contentEncoding());
+        assertArrayEquals(content, Files.readAllBytes(Path.of(config.getOutputDirectory(), decoded.filename())));
+        assertEquals(1, decoding.getCompressedResponseCount(), transportMode.toString());
+        assertTrue(decoding.getReceivedBodyBytes() < content.length / 10, "the server sent it gzipped");
+        assertEquals(content.length, decoding.getStoredBodyBytes());
+        
+        config.setCompression(CompressionMode.STORE);
+        DownloadResult stored = new ConcurrentUrlDownloader(config).downloadAll().getFirst();
+        assertTrue(stored.success(), stored.errorMessage());
+        assertEquals("gzip", stored.contentEncoding());
+        assertArrayEquals(content, gunzip(Path.of(config.getOutputDirectory(), stored.filename())));
+        
+        // Nothing is negotiated: the body arrives as is and is gzipped on its way to disk
+        config.setCompression(CompressionMode.IDENTITY);
+        config.setGzipAtRest(true);
+        ConcurrentUrlDownloader gzipping = new ConcurrentUrlDownloader(config);
+        DownloadResult atRest = gzipping.downloadAll().getFirst();
+        assertTrue(atRest.success(), atRest.errorMessage());
+        assertEquals("gzip", atRest.contentEncoding());
+        assertArrayEquals(content, gunzip(Path.of(config.getOutputDirectory(), atRest.filename())));
+        assertEquals(0, gzipping.getCompressedResponseCount());
+        assertEquals(content.length, gzipping.getReceivedBodyBytes());
+        assertEquals(atRest.fileSize(), gzipping.getStoredBodyBytes());
+    }
+
+    private static byte[] gunzip(Path file) throws IOException {
+        try (var in = new java.util.zip.GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testWriterStagePausesTheNetworkForASlowDisk() throws IOException {
+        for (TransportMode transportMode : TransportMode.values()) {
+            assertWriterStageKeepsUpWithSlowDisk(transportMode);
+        }
+    }
+
+    private void assertWriterStageKeepsUpWithSlowDisk(TransportMode transportMode) throws IOException {
+        List<String> urls = Arrays.asList(baseUrl + "/large", baseUrl + "/binary", baseUrl + "/success");
+        DownloadConfig config = createTestConfig(urls);
+        config.setTransportMode(transportMode);
+        config.setIoBufferSize(16 * 1024);
+        config.setWriterThreads(2);
+        config.setMaxInFlightWriteBytes(32 * 1024);
+        MemorySink memorySink = new MemorySink(2 * 1024 * 1024);
+        // A disk that takes 2ms per chunk: the writers fall behind and the transfers must wait
+        DownloadSink slowDisk = slowDisk(memorySink, 2_000_000);
+
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config, slowDisk);
+        List<DownloadResult> results = downloader.downloadAll();
+
+        assertEquals(3, results.stream().filter(DownloadResult::success).count());
+        DownloadResult large = results.stream().filter(r -> r.url().endsWith("/large")).findFirst().orElseThrow();
+        assertEquals(1024 * 1024, memorySink.get(large.filename()).length, "completed only once fully written");
+        WriterStage stage = downloader.getWriterStage();
+        assertTrue(stage.getPauses() > 0, transportMode + ": the network waited for the writers");
+        if (transportMode == TransportMode.CLASSIC) {
+            // One chunk per transfer over the cap; the async decoder may drain a socket burst first
+            assertTrue(stage.getPeakInFlightBytes() <= 32 * 1024 + urls.size() * 16 * 1024,
+                    "in flight: " + stage.getPeakInFlightBytes());
+        }
+        assertEquals(0, stage.getInFlightBytes());
+        assertEquals(0, stage.getQueuedChunks());
+    }
+
+    @Test
+    void testSlowDiskIsNotMistakenForASlowTransfer() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/large"));
+            config.setTransportMode(transportMode);
+            config.setIoBufferSize(16 * 1024);
+            config.setWriterThreads(1);
+            config.setMaxInFlightWriteBytes(32 * 1024);
+            // The disk stores about 800 KB/s; the floor only applies to the time spent reading
+            config.setMinBytesPerSecond(2 * 1024 * 1024);
+            config.setMinThroughputWindowSeconds(1);
+            MemorySink memorySink = new MemorySink(2 * 1024 * 1024);
+
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config, slowDisk(memorySink, 20_000_000));
+            DownloadResult result = downloader.downloadAll().getFirst();
+
+            assertTrue(result.success(), transportMode + ": " + result.errorMessage());
+            assertEquals(1024 * 1024, memorySink.get(result.filename()).length);
+            assertTrue(downloader.getWriterStage().getPausedTime().toMillis() >= 500,
+                    transportMode + ": the network waited for the writers");
+        }
+    }
+
+    @Test
+    void testAsyncFsyncCompletesOffTheReactorThread() throws IOException {
+        for (TransportMode transportMode : List.of(TransportMode.ASYNC, TransportMode.HTTP2)) {
+            DownloadConfig config = createTestConfig(Arrays.asList(baseUrl + "/success", baseUrl + "/binary"));
+            config.setOutputDirectory(tempDir.resolve("fsync-" + transportMode).toString());
+            config.setTransportMode(transportMode);
+            config.setFsyncPolicy(FsyncPolicy.PER_FILE);
+            List<Thread> completingThreads = new CopyOnWriteArrayList<>();
+            DownloadSink fileSink = DownloadSink.create(config);
+            // Without a byte-rate limit or a writer stage, only the fsync keeps completion off the reactor
+            DownloadSink recordingSink = (url, filename, position) -> {
+                DownloadSink.Output output = fileSink.open(url, filename, position);
+                return new DownloadSink.Output() {
+                    @Override
+                    public void write(ByteBuffer data) throws IOException {
+                        output.write(data);
+                    }
+
+                    @Override
+                    public void complete() throws IOException {
+                        completingThreads.add(Thread.currentThread());
+                        output.complete();
+                    }
+
+                    @Override
+                    public void abort(boolean discard) throws IOException {
+                        output.abort(discard);
+                    }
+                };
+            };
+
+            List<DownloadResult> results = new ConcurrentUrlDownloader(config, recordingSink).downloadAll();
+
+            assertEquals(2, results.stream().filter(DownloadResult::success).count(), transportMode.toString());
+            for (DownloadResult result : results) {
+                assertTrue(Files.exists(tempDir.resolve("fsync-" + transportMode).resolve(result.filename())));
+            }
+            assertEquals(2, completingThreads.size());
+            for (Thread thread : completingThreads) {
+                assertTrue(thread.isVirtual(), transportMode + " completed on " + thread.getName());
+            }
+        }
+    }
+
+    /** Wraps a sink in one that takes {@code nanosPerChunk} to write each chunk. */
+    private static DownloadSink slowDisk(DownloadSink sink, long nanosPerChunk) {
+        return (url, filename, position) -> {
+            DownloadSink.Output output = sink.open(url, filename, position);
+            return new DownloadSink.Output() {
+                @Override
+                public void write(ByteBuffer data) throws IOException {
+                    LockSupport.parkNanos(nanosPerChunk);
+                    output.write(data);
+                }
+
+                @Override
+                public void complete() throws IOException {
+                    output.complete();
+                }
+
+                @Override
+                public void abort(boolean discard) throws IOException {
+                    output.abort(discard);
+                }
+            };
+        };
+    }
+
+    @Test
+    void testAsyncTransportConcurrency() {
+        DownloadConfig config = createTestConfig(Collections.nCopies(5, baseUrl + "/slow"));
+        config.setTransportMode(TransportMode.ASYNC);
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        
+        Instant startTime = Instant.now();
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        Duration totalTime = Duration.between(startTime, Instant.now());
+        
+        assertEquals(5, results.stream().filter(DownloadResult::success).count());
+        assertTrue(totalTime.toMillis() < 4000,
+            "Total time (" + totalTime.toMillis() + "ms) should be less than 4000ms with the async transport");
+    }
+
+    @Test
+    void testAsyncTransportTimeout() {
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/timeout",
+            baseUrl + "/success"
+        ));
+        config.setTransportMode(TransportMode.ASYNC);
+        config.setMaxDownloadTimePerUrl(2);
+        
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        
+        assertEquals(2, results.size());
+        DownloadResult timeoutResult = results.stream().filter(r -> !r.success()).findFirst().orElseThrow();
+        assertTrue(timeoutResult.url().contains("/timeout"));
+    }
+
+    @Test
+    void testPerHostLimitKeepsOtherHostsFlowing() {
+        // "localhost" and "127.0.0.1" reach the same server but are scheduled as two hosts
+        String otherHostUrl = baseUrl.replace("localhost", "127.0.0.1");
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/slow",
+            baseUrl + "/slow",
+            otherHostUrl + "/success",
+            otherHostUrl + "/file.txt",
+            otherHostUrl + "/binary"
+        ));
+        config.setMaxConcurrentDownloads(2);
+        config.setMaxConcurrentDownloadsPerHost(1);
+        
+        Instant startTime = Instant.now();
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        List<DownloadResult> results = downloader.downloadAll();
+        Duration totalTime = Duration.between(startTime, Instant.now());
+        
+        assertEquals(5, results.size());
+        assertEquals(5, results.stream().filter(DownloadResult::success).count());
+        
+        // The slow host is limited to one download at a time...
+        assertTrue(totalTime.toMillis() >= 4000,
+            "Two slow downloads on one host should run one after the other");
+        
+        // ...while the other host uses the second slot instead of queueing behind it
+        Instant firstSlowEnd = results.stream()
+            .filter(r -> r.url().endsWith("/slow"))
+            .map(DownloadResult::endTime)
+            .min(Instant::compareTo)
+            .orElseThrow();
+        results.stream()
+            .filter(r -> r.url().startsWith(otherHostUrl))
+            .forEach(r -> assertTrue(r.endTime().isBefore(firstSlowEnd),
+                r.url() + " should finish before the first slow download"));
+    }
+
+    @Test
+    void testClusteredHostDoesNotHoldBackTheNextHost() {
+        String otherHostUrl = baseUrl.replace("localhost", "127.0.0.1");
+        // One host's URLs fill the look-ahead window before the other host's URL is read
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/slow",
+            baseUrl + "/slow",
+            baseUrl + "/slow",
+            otherHostUrl + "/success"
+        ));
+        config.setMaxConcurrentDownloadsPerHost(1);
+        config.setMaxQueuedUrls(2);
+
+        List<DownloadResult> results = new ConcurrentUrlDownloader(config).downloadAll();
+
+        assertEquals(4, results.stream().filter(DownloadResult::success).count());
+        Instant firstSlowEnd = results.stream()
+            .filter(r -> r.url().endsWith("/slow"))
+            .map(DownloadResult::endTime)
+            .min(Instant::compareTo)
+            .orElseThrow();
+        DownloadResult other = results.stream().filter(r -> r.url().startsWith(otherHostUrl)).findFirst().orElseThrow();
+        // The slow host is at its limit with workers idle, so the reader goes on past its queued URLs
+        assertTrue(other.endTime().isBefore(firstSlowEnd), "the other host waited for the clustered one");
+    }
+
+    @Test
+    void testStreamingUrlsFileAndResultsFile() throws IOException {
+        // More URLs than the look-ahead window, read lazily from a file
+        Path urlsFile = tempDir.resolve("urls.txt");
+        List<String> lines = new ArrayList<>(List.of("# comment", ""));
+        for (int i = 0; i < 20; i++) {
+            lines.add(baseUrl + (i % 5 == 0 ? "/notfound" : "/success"));
+        }
+        Files.write(urlsFile, lines);
+        
+        DownloadConfig config = createTestConfig(List.of());
+        config.setUrlsFile(urlsFile.toString());
+        config.setMaxQueuedUrls(3);
+        Path resultsFile = tempDir.resolve("results.jsonl");
+        
+        DownloadSummary summary;
+        try (ResultsFileWriter writer = new ResultsFileWriter(resultsFile)) {
+            summary = new ConcurrentUrlDownloader(config).downloadAll(writer);
+        }
+        
+        assertEquals(20, summary.total());
+        assertEquals(16, summary.successful());
+        assertEquals(4, summary.failed());
+        
+        List<String> written = Files.readAllLines(resultsFile);
+        assertEquals(20, written.size());
+        assertEquals(4, written.stream().filter(line -> line.contains("\"success\":false")).count());
+        assertTrue(written.stream().allMatch(line -> line.startsWith("{") && line.endsWith("}")));
+    }
+
     @Test
     void testUserAgentHeader() {
         DownloadConfig config = createTestConfig(Arrays.asList(
@@ -426,6 +1345,131 @@ class ConcurrentUrlDownloaderIntegrationTest {
         assertEquals(4, testServer.getRequestCount());
     }
 
+    @Test
+    void testHashedLayoutIsDeterministicAndSharded() throws IOException {
+        // Same basename, different URLs: the timestamped layout could give both the same name
+        DownloadConfig config = createTestConfig(Arrays.asList(
+            baseUrl + "/path/with/special-chars/a/same.txt",
+            baseUrl + "/path/with/special-chars/b/same.txt"
+        ));
+        config.setOutputLayout(OutputLayout.HASHED);
+        Path downloadDir = tempDir.resolve("downloads");
+        
+        List<DownloadResult> first = new ConcurrentUrlDownloader(config).downloadAll();
+        List<DownloadResult> second = new ConcurrentUrlDownloader(config).downloadAll();
+        
+        assertEquals(2, first.stream().filter(DownloadResult::success).count());
+        assertNotEquals(first.get(0).filename(), first.get(1).filename());
+        for (DownloadResult result : first) {
+            assertTrue(result.filename().matches("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{16}_same\\.txt"), result.filename());
+            assertTrue(Files.isRegularFile(downloadDir.resolve(result.filename())));
+        }
+        // A rerun writes the same paths instead of new files
+        assertEquals(first.stream().map(DownloadResult::filename).sorted().toList(),
+                second.stream().map(DownloadResult::filename).sorted().toList());
+        try (var files = Files.walk(downloadDir)) {
+            assertEquals(2, files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().equals(OutputIndex.INDEX_FILE)).count());
+        }
+        assertEquals(2, Files.readAllLines(downloadDir.resolve(OutputIndex.INDEX_FILE)).size());
+    }
+
+    @Test
+    void testContentAddressedLayoutStoresDuplicatesOnce() throws Exception {
+        for (TransportMode transportMode : TransportMode.values()) {
+            // Both URLs serve the same body
+            DownloadConfig config = createTestConfig(Arrays.asList(
+                baseUrl + "/path/with/special-chars/mirror-a.txt",
+                baseUrl + "/path/with/special-chars/mirror-b.txt",
+                baseUrl + "/binary"
+            ));
+            config.setTransportMode(transportMode);
+            config.setOutputLayout(OutputLayout.CONTENT_ADDRESSED);
+            Path downloadDir = tempDir.resolve("cas-" + transportMode);
+            config.setOutputDirectory(downloadDir.toString());
+            
+            ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+            List<DownloadResult> results = downloader.downloadAll();
+            
+            assertEquals(3, results.stream().filter(DownloadResult::success).count());
+            String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest("File with special characters in path".getBytes(StandardCharsets.UTF_8)));
+            List<DownloadResult> mirrors = results.stream().filter(r -> r.url().contains("mirror")).toList();
+            for (DownloadResult mirror : mirrors) {
+                assertEquals(expected, mirror.sha256(), transportMode.toString());
+                assertEquals(ContentStore.blobPath(expected), mirror.filename());
+            }
+            assertEquals(1, downloader.getDeduplicatedCount());
+            assertEquals(36, downloader.getDeduplicatedBytes());
+            try (var blobs = Files.walk(downloadDir.resolve(ContentStore.BLOB_DIRECTORY));
+                 var staging = Files.list(downloadDir.resolve(ContentStore.STAGING_DIRECTORY))) {
+                assertEquals(2, blobs.filter(Files::isRegularFile).count(), "one blob per distinct content");
+                assertEquals(0, staging.count(), "staging files are moved or deleted");
+            }
+            try (OutputIndex index = OutputIndex.open(downloadDir)) {
+                assertEquals(3, index.size());
+                assertEquals(ContentStore.blobPath(expected), index.lookup(baseUrl + "/path/with/special-chars/mirror-b.txt"));
+            }
+        }
+    }
+
+    @Test
+    void testDownloadsStreamIntoAlternativeSinks() throws IOException {
+        String body = "{\"status\": \"success\", \"message\": \"Hello World\"}";
+        List<String> urls = Arrays.asList(baseUrl + "/success", baseUrl + "/large");
+        
+        MemorySink memorySink = new MemorySink(2 * 1024 * 1024);
+        ConcurrentUrlDownloader memoryDownloader = new ConcurrentUrlDownloader(createTestConfig(urls), memorySink);
+        List<DownloadResult> results = memoryDownloader.downloadAll();
+        assertEquals(2, results.stream().filter(DownloadResult::success).count());
+        DownloadResult success = results.stream().filter(r -> r.url().endsWith("/success")).findFirst().orElseThrow();
+        assertEquals(body, new String(memorySink.get(success.filename()), StandardCharsets.UTF_8));
+        assertEquals(1024 * 1024 + body.length(), memoryDownloader.getSinkMetrics().getBytesWritten());
+        assertEquals(2, memoryDownloader.getSinkMetrics().getCompletedOutputs());
+        
+        DownloadConfig nullConfig = createTestConfig(urls);
+        nullConfig.setSink(SinkType.NULL);
+        ConcurrentUrlDownloader nullDownloader = new ConcurrentUrlDownloader(nullConfig);
+        results = nullDownloader.downloadAll();
+        assertEquals(2, results.stream().filter(DownloadResult::success).count());
+        assertEquals(1024 * 1024 + body.length(), results.stream().mapToLong(DownloadResult::fileSize).sum());
+        assertEquals(1024 * 1024 + body.length(), nullDownloader.getSinkMetrics().getBytesWritten());
+        
+        DownloadConfig tarConfig = createTestConfig(urls);
+        tarConfig.setSink(SinkType.TAR);
+        Path archive = tempDir.resolve("downloads.tar");
+        tarConfig.setArchiveFile(archive.toString());
+        results = new ConcurrentUrlDownloader(tarConfig).downloadAll();
+        assertEquals(2, results.stream().filter(DownloadResult::success).count());
+        String tar = Files.readString(archive, StandardCharsets.ISO_8859_1);
+        assertTrue(tar.contains(body));
+        for (DownloadResult result : results) {
+            assertTrue(tar.contains(result.filename()), result.filename());
+        }
+        
+        try (var files = Files.list(tempDir.resolve("downloads"))) {
+            assertEquals(0, files.count(), "no sink but FILE writes to the output directory");
+        }
+
+        DownloadConfig packedConfig = createTestConfig(urls);
+        packedConfig.setSink(SinkType.PACKED);
+        Path packed = tempDir.resolve("packed");
+        packedConfig.setOutputDirectory(packed.toString());
+        results = new ConcurrentUrlDownloader(packedConfig).downloadAll();
+        assertEquals(2, results.stream().filter(DownloadResult::success).count());
+        try (PackedStore store = PackedStore.open(packed)) {
+            assertEquals(2, store.size());
+            assertEquals(1, store.segmentCount());
+            assertEquals(body, new String(store.read(store.lookup(baseUrl + "/success")), StandardCharsets.UTF_8));
+            assertEquals(1024 * 1024, store.lookup(baseUrl + "/large").length());
+        }
+        assertThrows(IllegalArgumentException.class, () -> {
+            DownloadConfig hashed = createTestConfig(urls);
+            hashed.setOutputLayout(OutputLayout.HASHED);
+            new ConcurrentUrlDownloader(hashed, new NullSink());
+        });
+    }
+
     @Test
     void testFilenameGenerationEdgeCases() {
         // Add a test endpoint that returns different URL patterns
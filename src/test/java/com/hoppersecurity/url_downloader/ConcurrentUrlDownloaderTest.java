@@ -75,6 +75,11 @@ class ConcurrentUrlDownloaderTest {
         assertEquals(3, config.getRetryAttempts());
         assertEquals(30, config.getConnectTimeout());
         assertEquals(60, config.getReadTimeout());
+        assertEquals(ExecutionMode.PLATFORM_THREADS, config.getExecutionMode());
+        assertEquals(TransportMode.CLASSIC, config.getTransportMode());
+        assertEquals(10_000, config.getMaxQueuedUrls());
+        assertNull(config.getUrlsFile());
+        assertNull(config.getResultsFile());
     }
 
     @Test
@@ -105,6 +110,12 @@ class ConcurrentUrlDownloaderTest {
         
         config.setReadTimeout(45);
         assertEquals(45, config.getReadTimeout());
+        
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        assertEquals(ExecutionMode.VIRTUAL_THREADS, config.getExecutionMode());
+        
+        config.setTransportMode(TransportMode.ASYNC);
+        assertEquals(TransportMode.ASYNC, config.getTransportMode());
     }
 
     @Test
@@ -0,0 +1,130 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the CPU cost of compression: how fast {@link ContentDecoder} decodes a gzipped
+ * JSON body and {@link GzipEncoder} compresses one for storage at rest, per compression level.
+ *
+ * <p>The body is a megabyte of generated JSON records, fed in {@code chunkBytes} chunks the way a
+ * transport delivers it; each operation decodes or encodes the whole body into a discarding
+ * target, so one operation per second is a megabyte per second. The encode benchmark prints the
+ * compressed size of the body for each level when its trial starts.
+ *
+ * <p>Run it from the project root (see TESTING.md for sample results):
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main ContentCodingBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentCodingBenchmark {
+    private static final int BODY_BYTES = 1024 * 1024;
+
+    @Param({"1", "6"})
+    private int level;
+
+    @Param({"65536"})
+    private int chunkBytes;
+
+    private byte[] json;
+    private byte[] gzipped;
+    private ByteBuffer chunk;
+    private long written;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = generateJson();
+        gzipped = encode(json, level);
+        chunk = ByteBuffer.allocate(chunkBytes);
+        System.out.printf("%n%d bytes of JSON compress to %d bytes at level %d%n", json.length, gzipped.length, level);
+    }
+
+    @Benchmark
+    public long decode() throws IOException {
+        ContentDecoder decoder = new ContentDecoder("gzip", this::discard, chunkBytes);
+        try {
+            feed(decoder, gzipped);
+            decoder.finish();
+        } finally {
+            decoder.end();
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        GzipEncoder encoder = new GzipEncoder(this::discard, level, chunkBytes);
+        try {
+            feed(encoder, json);
+            encoder.finish();
+        } finally {
+            encoder.end();
+        }
+        return written;
+    }
+
+    private void feed(BodyCoder coder, byte[] body) throws IOException {
+        for (int offset = 0; offset < body.length; offset += chunk.capacity()) {
+            chunk.clear().put(body, offset, Math.min(chunk.capacity(), body.length - offset));
+            coder.write(chunk.flip());
+        }
+    }
+
+    private void discard(ByteBuffer data) {
+        written += data.remaining();
+        data.position(data.limit());
+    }
+
+    private static byte[] encode(byte[] body, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipEncoder encoder = new GzipEncoder(data -> {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        }, level, 64 * 1024);
+        encoder.write(ByteBuffer.wrap(body));
+        encoder.finish();
+        encoder.end();
+        return out.toByteArray();
+    }
+
+    /** API-style records: repeated keys, varied ids, timestamps and words. */
+    private static byte[] generateJson() {
+        String[] words = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"};
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder(BODY_BYTES + 256).append('[');
+        for (int i = 0; json.length() < BODY_BYTES; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(random.nextInt(1_000_000))
+                    .append(",\"name\":\"").append(words[random.nextInt(words.length)]).append('-')
+                    .append(words[random.nextInt(words.length)])
+                    .append("\",\"createdAt\":\"2026-").append(1 + random.nextInt(12)).append('-')
+                    .append(1 + random.nextInt(28)).append("T12:").append(random.nextInt(60)).append(":00Z\"")
+                    .append(",\"score\":").append(random.nextDouble())
+                    .append(",\"active\":").append(random.nextBoolean()).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
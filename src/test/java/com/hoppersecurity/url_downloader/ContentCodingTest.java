@@ -0,0 +1,164 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentCodingTest {
+    private static final byte[] CONTENT = content(200_000);
+
+    @Test
+    void testDecodesGzipWhateverTheChunking() throws IOException {
+        byte[] gzipped = gzip(CONTENT);
+
+        for (int chunkSize : new int[] {1, 7, 4096, gzipped.length}) {
+            assertArrayEquals(CONTENT, decode("gzip", gzipped, chunkSize), "chunks of " + chunkSize);
+        }
+    }
+
+    @Test
+    void testDecodesHeaderFieldsAndMultipleMembers() throws IOException {
+        byte[] first = Arrays.copyOf(CONTENT, 1000);
+        byte[] second = Arrays.copyOfRange(CONTENT, 1000, 5000);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(gzipWithHeaderFields(first));
+        body.write(gzip(second));
+
+        for (int chunkSize : new int[] {1, 3, 64 * 1024}) {
+            assertArrayEquals(Arrays.copyOf(CONTENT, 5000), decode("x-gzip", body.toByteArray(), chunkSize));
+        }
+    }
+
+    @Test
+    void testDecodesZlibAndRawDeflate() throws IOException {
+        for (boolean raw : new boolean[] {false, true}) {
+            byte[] deflated = deflate(CONTENT, raw);
+
+            assertArrayEquals(CONTENT, decode("deflate", deflated, 1), "raw=" + raw);
+            assertArrayEquals(CONTENT, decode("Deflate", deflated, 1000), "raw=" + raw);
+        }
+    }
+
+    @Test
+    void testRejectsTruncatedAndCorruptBodies() throws IOException {
+        byte[] gzipped = gzip(CONTENT);
+
+        IntegrityException truncated = assertThrows(IntegrityException.class,
+                () -> decode("gzip", Arrays.copyOf(gzipped, gzipped.length - 4), 1000));
+        assertFalse(truncated.isResumable());
+
+        byte[] wrongCrc = gzipped.clone();
+        wrongCrc[wrongCrc.length - 8] ^= 1;
+        assertThrows(IntegrityException.class, () -> decode("gzip", wrongCrc, 1000));
+
+        byte[] notGzip = "plain text".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IntegrityException.class, () -> decode("gzip", notGzip, 1000));
+        assertThrows(IntegrityException.class, () -> decode("deflate", notGzip, 1000));
+
+        // An empty body has nothing to decode
+        assertEquals(0, decode("gzip", new byte[0], 1).length);
+    }
+
+    @Test
+    void testEncodesGzipThatDecodesToTheContent() throws IOException {
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        GzipEncoder encoder = new GzipEncoder(data -> write(stored, data), GzipEncoder.DEFAULT_LEVEL, 1024);
+        // One chunk buffer refilled for every read, the way the transports use theirs
+        ByteBuffer chunk = ByteBuffer.allocate(3000);
+        for (int offset = 0; offset < CONTENT.length; offset += chunk.capacity()) {
+            chunk.clear().put(CONTENT, offset, Math.min(chunk.capacity(), CONTENT.length - offset));
+            encoder.write(chunk.flip());
+        }
+        chunk.clear();
+        encoder.finish();
+        encoder.end();
+
+        byte[] gzipped = stored.toByteArray();
+        assertTrue(gzipped.length < CONTENT.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+        assertArrayEquals(CONTENT, decode("gzip", gzipped, 512));
+    }
+
+    private static byte[] decode(String encoding, byte[] body, int chunkSize) throws IOException {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        ContentDecoder decoder = new ContentDecoder(encoding, data -> write(decoded, data), 4096);
+        try {
+            for (int offset = 0; offset < body.length; offset += chunkSize) {
+                ByteBuffer chunk = ByteBuffer.wrap(body, offset, Math.min(chunkSize, body.length - offset));
+                decoder.write(chunk);
+                assertFalse(chunk.hasRemaining());
+            }
+            decoder.finish();
+        } finally {
+            decoder.end();
+        }
+        return decoded.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        out.writeBytes(bytes);
+    }
+
+    private static byte[] content(int size) {
+        // Compressible, but not trivially
+        Random random = new Random(42);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content, boolean raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** A gzip member whose header carries every optional field: FHCRC, FEXTRA, FNAME and FCOMMENT. */
+    private static byte[] gzipWithHeaderFields(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3});
+        out.write(new byte[] {3, 0, 'x', 'y', 'z'});
+        out.write("name.txt\0comment\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(new byte[] {0x12, 0x34}); // FHCRC is not checked
+        out.write(deflate(content, true));
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        out.write(trailer.putInt((int) crc.getValue()).putInt(content.length).array());
+        return out.toByteArray();
+    }
+}
@@ -247,6 +247,141 @@ class DownloadCommandIntegrationTest {
         assertTrue(result4.contains("retryAttempts cannot be negative"));
     }
 
+    @Test
+    void testDownloadCommandWithVirtualThreadConcurrency() throws IOException {
+        // Concurrency above the platform-thread limit is accepted with virtual threads
+        DownloadConfig config = new DownloadConfig();
+        config.setUrls(Arrays.asList(baseUrl + "/success"));
+        config.setMaxDownloadTimePerUrl(30);
+        config.setOutputDirectory(tempDir.resolve("cli-virtual").toString());
+        config.setMaxConcurrentDownloads(1000);
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        config.setRetryAttempts(1);
+        
+        Path configFile = tempDir.resolve("virtual-config.json");
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writeValue(configFile.toFile(), config);
+        
+        String result = downloadCommand.download(configFile.toString());
+        
+        assertFalse(result.startsWith("Configuration error:"));
+        assertTrue(result.contains("Successful: 1"));
+        
+        // The same concurrency is still rejected for platform threads
+        config.setExecutionMode(ExecutionMode.PLATFORM_THREADS);
+        mapper.writeValue(configFile.toFile(), config);
+        
+        String rejected = downloadCommand.download(configFile.toString());
+        assertTrue(rejected.startsWith("Configuration error:"));
+        assertTrue(rejected.contains("maxConcurrentDownloads cannot exceed 100"));
+    }
+
+    @Test
+    void testDownloadCommandWithUrlsFileAndResultsFile() throws IOException {
+        Path urlsFile = tempDir.resolve("urls.txt");
+        Files.write(urlsFile, List.of(baseUrl + "/success", baseUrl + "/notfound", baseUrl + "/file.txt"));
+        Path resultsFile = tempDir.resolve("results.jsonl");
+        
+        DownloadConfig config = new DownloadConfig();
+        config.setUrlsFile(urlsFile.toString());
+        config.setResultsFile(resultsFile.toString());
+        config.setMaxDownloadTimePerUrl(30);
+        config.setOutputDirectory(tempDir.resolve("cli-streaming").toString());
+        config.setMaxConcurrentDownloads(2);
+        config.setRetryAttempts(1);
+        
+        Path configFile = tempDir.resolve("streaming-config.json");
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writeValue(configFile.toFile(), config);
+        
+        String result = downloadCommand.download(configFile.toString());
+        
+        assertTrue(result.contains("Total URLs: 3"));
+        assertTrue(result.contains("Successful: 2"));
+        assertTrue(result.contains("Failed: 1"));
+        assertTrue(result.contains("Results file: " + resultsFile));
+        assertEquals(3, Files.readAllLines(resultsFile).size());
+        
+        // A missing URLs file is a configuration error
+        config.setUrlsFile(tempDir.resolve("missing.txt").toString());
+        mapper.writeValue(configFile.toFile(), config);
+        String rejected = downloadCommand.download(configFile.toString());
+        assertTrue(rejected.startsWith("Configuration error:"));
+        assertTrue(rejected.contains("urlsFile not found"));
+    }
+
+    @Test
+    void testDownloadCommandResumesFromJournal() throws IOException {
+        Path journalFile = tempDir.resolve("journal.tsv");
+        // The journal of an interrupted run that had finished one URL and failed another
+        Files.write(journalFile, List.of(
+                "OK\t7\t" + baseUrl + "/success\t/downloads/1_success",
+                "FAILED\t0\t" + baseUrl + "/file.txt\t/downloads/1_file.txt"));
+        
+        DownloadConfig config = new DownloadConfig();
+        config.setUrls(Arrays.asList(baseUrl + "/success", baseUrl + "/file.txt", baseUrl + "/binary"));
+        config.setJournalFile(journalFile.toString());
+        config.setMaxDownloadTimePerUrl(30);
+        config.setOutputDirectory(tempDir.resolve("cli-resume").toString());
+        config.setMaxConcurrentDownloads(2);
+        config.setRetryAttempts(1);
+        
+        Path configFile = tempDir.resolve("resume-config.json");
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writeValue(configFile.toFile(), config);
+        
+        String result = downloadCommand.download(configFile.toString(), true);
+        
+        assertTrue(result.contains("Total URLs: 2"), result);
+        assertTrue(result.contains("Successful: 2"), result);
+        assertTrue(result.contains("Already completed (resumed): 1"), result);
+        assertEquals(2, testServer.getRequestCount(), "only the unfinished URLs are downloaded");
+        assertEquals(4, Files.readAllLines(journalFile).size(), "a resumed run appends to the journal");
+        assertEquals(3, DownloadJournal.replay(journalFile).size());
+        
+        // A fresh run starts a new journal
+        String fresh = downloadCommand.download(configFile.toString());
+        assertTrue(fresh.contains("Total URLs: 3"), fresh);
+        assertEquals(3, Files.readAllLines(journalFile).size());
+        
+        // Resuming needs a journal to resume from
+        config.setJournalFile(null);
+        mapper.writeValue(configFile.toFile(), config);
+        String rejected = downloadCommand.download(configFile.toString(), true);
+        assertTrue(rejected.startsWith("Configuration error:"));
+        assertTrue(rejected.contains("--resume requires a journalFile"));
+    }
+
+    @Test
+    void testPackedDownloadsAreLookedUpAndExtracted() throws IOException {
+        Path store = tempDir.resolve("cli-packed");
+        DownloadConfig config = new DownloadConfig();
+        config.setUrls(Arrays.asList(baseUrl + "/success", baseUrl + "/file.txt"));
+        config.setSink(SinkType.PACKED);
+        config.setMaxDownloadTimePerUrl(30);
+        config.setOutputDirectory(store.toString());
+        config.setMaxConcurrentDownloads(2);
+        config.setRetryAttempts(1);
+
+        Path configFile = tempDir.resolve("packed-config.json");
+        new ObjectMapper().writeValue(configFile.toFile(), config);
+
+        String result = downloadCommand.download(configFile.toString());
+        assertTrue(result.contains("Successful: 2"), result);
+        assertTrue(result.contains("Packed store: 2 records in 1 segments"), result);
+
+        String found = downloadCommand.lookup(store.toString(), baseUrl + "/file.txt");
+        assertTrue(found.contains("segment-000000.pack"), found);
+        assertTrue(downloadCommand.lookup(store.toString(), baseUrl + "/missing").startsWith("Not found"));
+
+        Path extracted = tempDir.resolve("success.json");
+        String copied = downloadCommand.extract(store.toString(), baseUrl + "/success", extracted.toString());
+        assertTrue(copied.startsWith("Extracted"), copied);
+        assertTrue(Files.readString(extracted).contains("Hello World"));
+
+        assertTrue(downloadCommand.lookup(tempDir.resolve("nothing").toString(), baseUrl + "/success").startsWith("Error:"));
+    }
+
     @Test
     void testDownloadCommandWithInvalidConfiguration() throws IOException {
         // Create a config with invalid values
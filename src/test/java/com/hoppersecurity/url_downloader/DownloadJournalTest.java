@@ -0,0 +1,91 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadJournalTest {
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReplayReturnsSuccessfulUrlsOnly() throws IOException {
+        Path journalFile = tempDir.resolve("journal.tsv");
+        try (DownloadJournal journal = DownloadJournal.open(journalFile, false, Duration.ofSeconds(1))) {
+            journal.record(DownloadResult.success("http://a/1", "1_1", START, START, 10), tempDir.resolve("1_1"));
+            journal.record(DownloadResult.notModified("http://a/2", "1_2", START, START, 20), tempDir.resolve("1_2"));
+            journal.record(DownloadResult.failure("http://a/3", "HTTP 500: Server Error", START, START), tempDir.resolve("1_3"));
+        }
+
+        DownloadJournal.CompletedUrls completed = DownloadJournal.replay(journalFile);
+        assertEquals(2, completed.size());
+        assertTrue(completed.contains("http://a/1"));
+        assertTrue(completed.contains("http://a/2"));
+        assertFalse(completed.contains("http://a/3"), "failed URLs are retried on resume");
+        assertFalse(completed.contains("http://a/4"));
+        assertTrue(Files.readAllLines(journalFile).getFirst().startsWith("OK\t10\thttp://a/1\t"));
+    }
+
+    @Test
+    void testFreshJournalTruncatesAndResumedJournalAppends() throws IOException {
+        Path journalFile = tempDir.resolve("journal.tsv");
+        try (DownloadJournal journal = DownloadJournal.open(journalFile, false, Duration.ZERO)) {
+            journal.record(DownloadResult.success("http://a/1", "1_1", START, START, 10), tempDir.resolve("1_1"));
+        }
+        try (DownloadJournal journal = DownloadJournal.open(journalFile, true, Duration.ZERO)) {
+            journal.record(DownloadResult.success("http://a/2", "1_2", START, START, 10), tempDir.resolve("1_2"));
+        }
+        assertEquals(2, DownloadJournal.replay(journalFile).size());
+
+        try (DownloadJournal journal = DownloadJournal.open(journalFile, false, Duration.ZERO)) {
+            journal.record(DownloadResult.success("http://a/3", "1_3", START, START, 10), tempDir.resolve("1_3"));
+        }
+        DownloadJournal.CompletedUrls completed = DownloadJournal.replay(journalFile);
+        assertEquals(1, completed.size());
+        assertTrue(completed.contains("http://a/3"));
+    }
+
+    @Test
+    void testTornLineIsSkipped() throws IOException {
+        Path journalFile = tempDir.resolve("journal.tsv");
+        try (DownloadJournal journal = DownloadJournal.open(journalFile, false, Duration.ZERO)) {
+            journal.record(DownloadResult.success("http://a/1", "1_1", START, START, 10), tempDir.resolve("1_1"));
+        }
+        // A prefix of a longer URL must not count as that URL being done
+        Files.writeString(journalFile, "OK\t10\thttp://a/1", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.writeString(tempDir.resolve("other.tsv"), "OK\t10\thttp://a/10", StandardCharsets.UTF_8);
+
+        assertEquals(1, DownloadJournal.replay(journalFile).size());
+        assertEquals(0, DownloadJournal.replay(tempDir.resolve("other.tsv")).size());
+        assertEquals(0, DownloadJournal.replay(tempDir.resolve("missing.tsv")).size());
+    }
+
+    @Test
+    void testCompletedUrlsGrowsPastInitialCapacity() throws IOException {
+        Path journalFile = tempDir.resolve("journal.tsv");
+        int entries = 100_000;
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            lines.append("OK\t1\thttp://example.com/files/").append(i).append("\t/data/").append(i).append('\n');
+        }
+        Files.writeString(journalFile, lines, StandardCharsets.UTF_8);
+
+        DownloadJournal.CompletedUrls completed = DownloadJournal.replay(journalFile);
+        assertEquals(entries, completed.size());
+        for (int i = 0; i < entries; i++) {
+            assertTrue(completed.contains("http://example.com/files/" + i));
+        }
+        assertFalse(completed.contains("http://example.com/files/" + entries));
+    }
+}
@@ -0,0 +1,243 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFileSinkResumesAfterKeptBytes() throws IOException {
+        FileSink sink = new FileSink(tempDir);
+
+        DownloadSink.Output first = sink.open("http://example.com/a.bin", "a.bin", 0);
+        first.write(ascii("hello, wor"));
+        first.abort(false);
+        assertFalse(Files.exists(tempDir.resolve("a.bin")), "an unfinished file never has its final name");
+        assertEquals("hello, wor", Files.readString(tempDir.resolve("a.bin.part")), "kept for a retry");
+
+        DownloadSink.Output retry = sink.open("http://example.com/a.bin", "a.bin", 7);
+        retry.write(ascii("world"));
+        retry.complete();
+        assertEquals("hello, world", Files.readString(tempDir.resolve("a.bin")));
+        assertFalse(Files.exists(tempDir.resolve("a.bin.part")));
+
+        DownloadSink.Output corrupt = sink.open("http://example.com/a.bin", "a.bin", 0);
+        corrupt.write(ascii("garbage"));
+        corrupt.abort(true);
+        assertFalse(Files.exists(tempDir.resolve("a.bin.part")), "discarded bytes are deleted");
+        assertEquals("hello, world", Files.readString(tempDir.resolve("a.bin")), "the completed file is untouched");
+    }
+
+    @Test
+    void testFileSinkKeepsConcurrentOutputsOfOneFileApart() throws IOException {
+        FileSink sink = new FileSink(tempDir);
+
+        DownloadSink.Output first = sink.open("http://example.com/dup.bin", "dup.bin", 0);
+        DownloadSink.Output duplicate = sink.open("http://example.com/dup.bin", "dup.bin", 0);
+        first.write(ascii("first"));
+        duplicate.write(ascii("second"));
+        first.complete();
+        assertEquals("first", Files.readString(tempDir.resolve("dup.bin")));
+        duplicate.complete();
+        assertEquals("second", Files.readString(tempDir.resolve("dup.bin")), "the last to complete wins");
+
+        DownloadSink.Output owner = sink.open("http://example.com/dup.bin", "dup.bin", 0);
+        owner.write(ascii("owned"));
+        assertThrows(IOException.class, () -> sink.open("http://example.com/dup.bin", "dup.bin", 3),
+                "a partial file in use is not resumed");
+        assertEquals("owned", Files.readString(tempDir.resolve("dup.bin.part")), "the owner's bytes are untouched");
+        DownloadSink.Output failed = sink.open("http://example.com/dup.bin", "dup.bin", 0);
+        failed.write(ascii("lost"));
+        failed.abort(false);
+        owner.abort(false);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of("dup.bin", "dup.bin.part"), files.map(f -> f.getFileName().toString()).sorted().toList(),
+                    "only the partial file a retry can find is kept");
+        }
+    }
+
+    @Test
+    void testFileSinkPreallocatesDeclaredSizeAndKeepsFreeSpaceFloor() throws IOException {
+        FileSink sink = new FileSink(tempDir, FsyncPolicy.NONE, Duration.ZERO, true, 0);
+        DownloadSink.Output first = sink.open("http://example.com/big.bin", "big.bin", 0);
+        first.preallocate(10_000);
+        assertEquals(10_000, Files.size(tempDir.resolve("big.bin.part")), "sized before the body arrives");
+        first.write(ascii("0123"));
+        first.abort(false);
+        assertEquals(4, Files.size(tempDir.resolve("big.bin.part")), "a retry resumes after the bytes written");
+
+        DownloadSink.Output retry = sink.open("http://example.com/big.bin", "big.bin", 4);
+        retry.preallocate(10_000);
+        retry.write(ByteBuffer.allocate(9_996));
+        retry.complete();
+        assertEquals(10_000, Files.size(tempDir.resolve("big.bin")));
+
+        // Declared sizes count against the floor until written, so two downloads cannot share the headroom
+        long floor = Files.getFileStore(tempDir).getUsableSpace() - 64L * 1024 * 1024;
+        FileSink guarded = new FileSink(tempDir, FsyncPolicy.NONE, Duration.ZERO, false, floor);
+        DownloadSink.Output admitted = guarded.open("http://example.com/a", "a", 0);
+        admitted.preallocate(40L * 1024 * 1024);
+        DownloadSink.Output refused = guarded.open("http://example.com/b", "b", 0);
+        assertThrows(SinkCapacityException.class, () -> refused.preallocate(40L * 1024 * 1024));
+        admitted.abort(true);
+        refused.abort(true);
+        FileSink full = new FileSink(tempDir, FsyncPolicy.NONE, Duration.ZERO, false, Long.MAX_VALUE / 2);
+        assertThrows(SinkCapacityException.class, () -> full.open("http://example.com/c", "c", 0));
+    }
+
+    @Test
+    void testFileSinkRenamesCompletedFilesUnderEveryFsyncPolicy() throws Exception {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            Path root = Files.createDirectories(tempDir.resolve(policy.name()));
+            FileSink sink = new FileSink(root, policy, Duration.ofMillis(5));
+            // Outputs completing together share one group commit
+            List<Thread> writers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String filename = i + ".bin";
+                writers.add(Thread.ofVirtual().start(() -> {
+                    try {
+                        DownloadSink.Output output = sink.open("http://example.com/" + filename, filename, 0);
+                        output.write(ascii("content of " + filename));
+                        output.complete();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            sink.close();
+
+            for (int i = 0; i < 8; i++) {
+                assertEquals("content of " + i + ".bin", Files.readString(root.resolve(i + ".bin")), policy.toString());
+            }
+            try (Stream<Path> files = Files.list(root)) {
+                assertEquals(8, files.count(), "no partial file is left under " + policy);
+            }
+        }
+    }
+
+    @Test
+    void testMemorySinkKeepsCompletedPayloadsWithinLimit() throws IOException {
+        MemorySink sink = new MemorySink(32 * 1024);
+        byte[] payload = new byte[20_000];
+        Arrays.fill(payload, (byte) 7);
+
+        DownloadSink.Output output = sink.open("http://example.com/big.bin", "big.bin", 0);
+        output.write(ByteBuffer.wrap(payload, 0, 12_000));
+        output.write(ByteBuffer.wrap(payload, 12_000, 8_000));
+        output.complete();
+        DownloadSink.Output aborted = sink.open("http://example.com/aborted.bin", "aborted.bin", 0);
+        aborted.write(ascii("partial"));
+        aborted.abort(false);
+
+        assertArrayEquals(payload, sink.get("big.bin"));
+        assertNull(sink.get("aborted.bin"));
+        assertEquals(1, sink.size());
+
+        DownloadSink.Output declared = sink.open("http://example.com/declared.bin", "declared.bin", 0);
+        assertThrows(SinkCapacityException.class, () -> declared.preallocate(64 * 1024), "refused before any byte");
+
+        DownloadSink.Output tooLarge = sink.open("http://example.com/huge.bin", "huge.bin", 0);
+        tooLarge.write(ByteBuffer.wrap(payload));
+        assertThrows(SinkCapacityException.class, () -> tooLarge.write(ByteBuffer.wrap(payload)));
+        assertArrayEquals(payload, sink.remove("big.bin"));
+        assertEquals(0, sink.size());
+    }
+
+    @Test
+    void testNullSinkConsumesEverything() throws IOException {
+        MeteredSink sink = new MeteredSink(new NullSink());
+        ByteBuffer chunk = ascii("discarded");
+
+        DownloadSink.Output output = sink.open("http://example.com/x", "x", 0);
+        output.write(chunk);
+        output.complete();
+
+        assertFalse(chunk.hasRemaining());
+        assertEquals(9, sink.getMetrics().getBytesWritten());
+        assertEquals(1, sink.getMetrics().getCompletedOutputs());
+    }
+
+    @Test
+    void testTarSinkWritesCompletedEntries() throws IOException {
+        Path archive = tempDir.resolve("out/downloads.tar");
+        String longName = "1735689600000_" + "n".repeat(120) + ".txt";
+        try (TarSink sink = TarSink.open(archive)) {
+            DownloadSink.Output a = sink.open("http://example.com/a.txt", "a.txt", 0);
+            DownloadSink.Output b = sink.open("http://example.com/long", longName, 0);
+            DownloadSink.Output failed = sink.open("http://example.com/failed.txt", "failed.txt", 0);
+            // Interleaved writes: each entry is spooled until it completes
+            a.write(ascii("first "));
+            b.write(ascii("second entry"));
+            failed.write(ascii("never archived"));
+            a.write(ascii("entry"));
+            b.complete();
+            failed.abort(false);
+            a.complete();
+        }
+
+        Map<String, String> entries = readTar(Files.readAllBytes(archive));
+        assertEquals(Map.of(longName, "second entry", "a.txt", "first entry"), entries);
+        assertEquals(0, Files.size(archive) % TarSink.BLOCK_SIZE);
+        assertFalse(Files.exists(tempDir.resolve("out/downloads.tar.parts")), "spool directory is removed");
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Reads regular and GNU long-name entries, verifying every header checksum. */
+    private static Map<String, String> readTar(byte[] tar) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        String longName = null;
+        int offset = 0;
+        while (tar[offset] != 0) {
+            long checksum = 0;
+            for (int i = 0; i < TarSink.BLOCK_SIZE; i++) {
+                checksum += i >= 148 && i < 156 ? ' ' : tar[offset + i] & 0xff;
+            }
+            assertEquals(checksum, Long.parseLong(field(tar, offset + 148, 6), 8));
+            String name = field(tar, offset, 100);
+            int size = Integer.parseInt(field(tar, offset + 124, 11), 8);
+            String content = new String(tar, offset + TarSink.BLOCK_SIZE, size, StandardCharsets.UTF_8);
+            if (tar[offset + 156] == 'L') {
+                longName = content.substring(0, content.length() - 1);
+            } else {
+                entries.put(longName != null ? longName : name, content);
+                longName = null;
+            }
+            offset += TarSink.BLOCK_SIZE + size + TarSink.padding(size);
+        }
+        assertEquals(tar.length, offset + 2 * TarSink.BLOCK_SIZE, "two empty blocks end the archive");
+        return entries;
+    }
+
+    private static String field(byte[] tar, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && tar[end] != 0) {
+            end++;
+        }
+        return new String(tar, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+}
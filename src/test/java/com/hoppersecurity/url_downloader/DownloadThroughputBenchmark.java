@@ -0,0 +1,181 @@
+package com.hoppersecurity.url_downloader;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Manual throughput benchmark for {@link ConcurrentUrlDownloader} against a local {@link BenchmarkServer}.
+ *
+ * <p>For every requested in-flight level the benchmark downloads {@code inFlight * waves} URLs
+ * from a server process that answers each request after a fixed latency, and reports completed
+ * downloads per second for each scenario. Platform threads are run at their 100-download
+ * ceiling; virtual threads with the classic transport and the async NIO transport run at the
+ * full in-flight level, so the two transports can be compared side by side. The async transport
+ * runs once more with the {@link NullSink}, so the gap between the two async rows is the cost of
+ * writing the files.
+ *
+ * <p>Run it from the project root after {@code ./mvnw test-compile}:
+ * <pre>
+ * ./mvnw exec:java -Dexec.mainClass="com.hoppersecurity.url_downloader.DownloadThroughputBenchmark" \
+ *     -Dexec.classpathScope=test -Dbenchmark.inFlight=1000,10000
+ * </pre>
+ *
+ * <p>Tunables (system properties): {@code benchmark.inFlight} (default {@code 1000,10000}),
+ * {@code benchmark.waves} (default 3), {@code benchmark.latencyMillis} (default 200) and
+ * {@code benchmark.payloadBytes} (default 1024). 10k in-flight downloads hold 10k sockets plus
+ * 10k open output files, so the open-file limit must exceed 20k ({@code ulimit -n}).
+ */
+public class DownloadThroughputBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadThroughputBenchmark.class);
+
+    record Scenario(String name, Consumer<DownloadConfig> customizer) {}
+
+    record Measurement(String scenario, int inFlight, int urls, long succeeded, Duration elapsed, int peakThreads) {
+        double downloadsPerSecond() {
+            return succeeded * 1000.0 / Math.max(1, elapsed.toMillis());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        int[] inFlightLevels = Arrays.stream(System.getProperty("benchmark.inFlight", "1000,10000").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        int waves = Integer.getInteger("benchmark.waves", 3);
+        long latencyMillis = Long.getLong("benchmark.latencyMillis", 200L);
+        int payloadBytes = Integer.getInteger("benchmark.payloadBytes", 1024);
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (int inFlight : inFlightLevels) {
+            for (Scenario scenario : scenarios(inFlight)) {
+                // A fresh server process per run so its sockets neither share our file-descriptor
+                // limit nor carry keep-alive connections over from the previous run
+                Process server = startServerProcess(payloadBytes, latencyMillis);
+                try {
+                    String baseUrl = "http://127.0.0.1:" + readServerPort(server);
+                    measurements.add(run(baseUrl, scenario, inFlight, inFlight * waves));
+                } finally {
+                    server.destroy();
+                    server.waitFor();
+                }
+            }
+        }
+
+        System.out.printf("%n%-28s %9s %8s %10s %10s %12s %8s%n",
+                "Scenario", "In-flight", "URLs", "Succeeded", "Time(ms)", "Downloads/s", "Threads");
+        for (Measurement m : measurements) {
+            System.out.printf("%-28s %9d %8d %10d %10d %12.1f %8d%n", m.scenario(), m.inFlight(), m.urls(),
+                    m.succeeded(), m.elapsed().toMillis(), m.downloadsPerSecond(), m.peakThreads());
+        }
+        System.exit(0);
+    }
+
+    static List<Scenario> scenarios(int inFlight) {
+        return List.of(
+                new Scenario("platform-threads (max 100)", config -> {
+                    config.setExecutionMode(ExecutionMode.PLATFORM_THREADS);
+                    config.setMaxConcurrentDownloads(Math.min(inFlight, ExecutionMode.PLATFORM_THREADS.getMaxConcurrentDownloads()));
+                }),
+                new Scenario("virtual-threads", config -> {
+                    config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+                    config.setMaxConcurrentDownloads(inFlight);
+                }),
+                new Scenario("async-transport", config -> {
+                    config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+                    config.setTransportMode(TransportMode.ASYNC);
+                    config.setMaxConcurrentDownloads(inFlight);
+                }),
+                new Scenario("async-transport, null sink", config -> {
+                    config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+                    config.setTransportMode(TransportMode.ASYNC);
+                    config.setMaxConcurrentDownloads(inFlight);
+                    config.setSink(SinkType.NULL);
+                })
+        );
+    }
+
+    static Process startServerProcess(int payloadBytes, long latencyMillis) throws IOException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        return new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+                BenchmarkServer.class.getName(), String.valueOf(payloadBytes), String.valueOf(latencyMillis))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    static int readServerPort(Process server) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.startsWith("port=")) {
+                return Integer.parseInt(line.substring("port=".length()));
+            }
+        }
+        throw new IOException("Benchmark server exited before reporting its port");
+    }
+
+    static Measurement run(String baseUrl, Scenario scenario, int inFlight, int urlCount) throws IOException {
+        Path outputDir = Files.createTempDirectory("download-benchmark");
+        DownloadConfig config = new DownloadConfig();
+        config.setUrls(IntStream.range(0, urlCount)
+                .mapToObj(i -> baseUrl + "/payload/" + i)
+                .toList());
+        config.setOutputDirectory(outputDir.toString());
+        config.setMaxDownloadTimePerUrl(120);
+        config.setConnectTimeout(30);
+        config.setRetryAttempts(1);
+        scenario.customizer().accept(config);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // silence per-download progress lines
+        Instant start = Instant.now();
+        List<DownloadResult> results;
+        try {
+            results = new ConcurrentUrlDownloader(config).downloadAll();
+        } finally {
+            System.setOut(stdout);
+        }
+        Duration elapsed = Duration.between(start, Instant.now());
+
+        long succeeded = results.stream().filter(DownloadResult::success).count();
+        logger.warn("{} @ {} in-flight: {}/{} downloads in {}ms",
+                scenario.name(), inFlight, succeeded, urlCount, elapsed.toMillis());
+        results.stream()
+                .filter(result -> !result.success())
+                .findFirst()
+                .ifPresent(result -> logger.warn("  first failure: {}", result.errorMessage()));
+        deleteRecursively(outputDir);
+        return new Measurement(scenario.name(), inFlight, urlCount, succeeded, elapsed, threads.getPeakThreadCount());
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmark for the cost of each {@link FsyncPolicy}: files per second completed through one
+ * {@link FileSink} by {@code 8} threads, the way concurrent downloads complete.
+ *
+ * <p>Each operation opens an output, writes a {@code payloadBytes} body and completes it, which
+ * writes a partial file and renames it into place under the policy. The sink and its directory
+ * are replaced after every iteration, so the file system does not fill up across iterations.
+ *
+ * <p>Run it from the project root (see TESTING.md for sample results):
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main FsyncPolicyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class FsyncPolicyBenchmark {
+
+    @Param({"NONE", "PER_FILE", "GROUP_COMMIT"})
+    private FsyncPolicy fsyncPolicy;
+
+    @Param({"65536"})
+    private int payloadBytes;
+
+    @Param({"2"})
+    private long groupCommitIntervalMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private Path directory;
+    private FileSink sink;
+
+    @Setup(Level.Iteration)
+    public void openSink() throws IOException {
+        directory = Files.createTempDirectory("fsync-bench");
+        sink = new FileSink(directory, fsyncPolicy, Duration.ofMillis(groupCommitIntervalMillis));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSink() throws IOException {
+        sink.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payload {
+        private ByteBuffer body;
+
+        @Setup
+        public void setUp(FsyncPolicyBenchmark benchmark) {
+            body = ByteBuffer.allocate(benchmark.payloadBytes);
+        }
+    }
+
+    @Benchmark
+    public void completeFile(Payload payload) throws IOException {
+        long id = sequence.incrementAndGet();
+        DownloadSink.Output output = sink.open("https://cdn.example.com/objects/" + id, id + ".bin", 0);
+        output.write(payload.body.clear());
+        output.complete();
+    }
+}
@@ -0,0 +1,210 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostSchedulerTest {
+
+    @Test
+    void testRoundRobinAcrossHosts() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(config(10, 0));
+        // Input clustered by host
+        List.of("http://a.com/1", "http://a.com/2", "http://a.com/3",
+                "http://b.com/1", "http://b.com/2",
+                "http://c.com/1").forEach(scheduler::add);
+        scheduler.close();
+
+        List<String> order = drain(scheduler);
+
+        assertEquals(List.of("http://a.com/1", "http://b.com/1", "http://c.com/1",
+                "http://a.com/2", "http://b.com/2", "http://a.com/3"), order);
+    }
+
+    @Test
+    void testWeightedDispatch() throws InterruptedException {
+        DownloadConfig config = config(10, 0);
+        config.setHostWeights(Map.of("a.com", 3));
+        HostScheduler scheduler = new HostScheduler(config);
+        for (int i = 1; i <= 4; i++) {
+            scheduler.add("http://a.com/" + i);
+            scheduler.add("http://b.com/" + i);
+        }
+        scheduler.close();
+
+        List<String> order = drain(scheduler);
+
+        assertEquals(List.of("http://a.com/1", "http://a.com/2", "http://a.com/3", "http://b.com/1",
+                "http://a.com/4", "http://b.com/2", "http://b.com/3", "http://b.com/4"), order);
+    }
+
+    @Test
+    void testPerHostLimitSkipsBusyHost() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(config(10, 1));
+        scheduler.add("http://slow.com/1");
+        scheduler.add("http://slow.com/2");
+        scheduler.add("http://fast.com/1");
+        scheduler.add("http://fast.com/2");
+        scheduler.close();
+
+        HostScheduler.Dispatch slow = scheduler.next();
+        HostScheduler.Dispatch fast1 = scheduler.next();
+        assertEquals("slow.com", slow.host());
+        assertEquals("fast.com", fast1.host());
+
+        // Both hosts are at their limit of 1, so nothing can be dispatched yet
+        CompletableFuture<HostScheduler.Dispatch> blocked = nextAsync(scheduler);
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+
+        // Releasing the fast host lets its next URL through while slow.com stays busy
+        scheduler.release(fast1);
+        assertEquals("http://fast.com/2", assertDoesNotThrow(() -> blocked.get(1, TimeUnit.SECONDS)).url());
+        assertEquals(1, scheduler.pendingCount());
+    }
+
+    @Test
+    void testHostOverrideAndGlobalLimit() throws InterruptedException {
+        DownloadConfig config = config(3, 1);
+        config.setHostConcurrencyLimits(Map.of("big.com", 5));
+        HostScheduler scheduler = new HostScheduler(config);
+        for (int i = 0; i < 5; i++) {
+            scheduler.add("http://big.com/" + i);
+        }
+        scheduler.close();
+
+        // The override allows 5 for big.com, but the global limit of 3 still applies
+        scheduler.next();
+        scheduler.next();
+        scheduler.next();
+        assertEquals(3, scheduler.inFlightCount());
+        CompletableFuture<HostScheduler.Dispatch> blocked = nextAsync(scheduler);
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+        assertEquals(3, HostScheduler.maxConnectionsPerRoute(config));
+    }
+
+    @Test
+    void testNextReturnsNullWhenClosedAndDrained() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(config(2, 0));
+        scheduler.add("not a url");
+        scheduler.close();
+
+        HostScheduler.Dispatch dispatch = scheduler.next();
+        assertEquals("", dispatch.host());
+        scheduler.release(dispatch);
+        assertNull(scheduler.next());
+        assertThrows(IllegalStateException.class, () -> scheduler.add("http://a.com/late"));
+    }
+
+    @Test
+    void testRetryFreesSlotDuringBackoff() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(config(1, 0));
+        scheduler.add("http://flaky.com/1");
+        scheduler.add("http://good.com/1");
+        scheduler.close();
+
+        HostScheduler.Dispatch flaky = scheduler.next();
+        assertEquals(1, flaky.attempt());
+        scheduler.retry(flaky, Duration.ofMillis(300));
+
+        // The single slot is free again while the retry waits out its backoff
+        HostScheduler.Dispatch good = scheduler.next();
+        assertEquals("http://good.com/1", good.url());
+        assertEquals(1, scheduler.deferredCount());
+        scheduler.release(good);
+
+        long start = System.nanoTime();
+        HostScheduler.Dispatch retried = scheduler.next();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals("http://flaky.com/1", retried.url());
+        assertEquals(2, retried.attempt());
+        assertEquals(flaky.startTime(), retried.startTime());
+
+        // Not drained until the retried attempt has been released
+        CompletableFuture<HostScheduler.Dispatch> last = nextAsync(scheduler);
+        assertThrows(TimeoutException.class, () -> last.get(200, TimeUnit.MILLISECONDS));
+        scheduler.release(retried);
+        assertNull(assertDoesNotThrow(() -> last.get(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void testGlobalLimitCanChangeAtRuntime() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(config(4, 0));
+        for (int i = 0; i < 4; i++) {
+            scheduler.add("http://host" + i + ".com/1");
+        }
+        scheduler.setGlobalLimit(1);
+
+        HostScheduler.Dispatch first = scheduler.next();
+        CompletableFuture<HostScheduler.Dispatch> blocked = nextAsync(scheduler);
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+
+        // Raising the limit wakes the dispatcher without any release
+        scheduler.setGlobalLimit(10);
+        assertNotNull(assertDoesNotThrow(() -> blocked.get(1, TimeUnit.SECONDS)));
+        assertNotNull(scheduler.next());
+        assertNotNull(scheduler.next());
+        assertEquals(4, scheduler.inFlightCount(), "clamped to maxConcurrentDownloads");
+        scheduler.release(first);
+    }
+
+    @Test
+    void testLookAheadWindowIsPerHost() throws InterruptedException {
+        DownloadConfig config = config(4, 1);
+        config.setMaxQueuedUrls(3);
+        HostScheduler scheduler = new HostScheduler(config);
+        // A list clustered by host: a.com fills its window, then the global one
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(scheduler.tryAdd("http://a.com/" + i));
+        }
+        assertEquals("http://a.com/1", scheduler.next().url());
+        assertTrue(scheduler.tryAdd("http://a.com/4"));
+        assertFalse(scheduler.tryAdd("http://a.com/5"), "a.com has a full window");
+
+        // a.com is at its limit and workers are idle, so the hosts behind it are still read
+        assertTrue(scheduler.tryAdd("http://b.com/1"));
+        assertEquals("http://b.com/1", scheduler.next().url());
+        assertTrue(scheduler.tryAdd("http://c.com/1"));
+
+        // c.com/1 can start, so the global window applies again
+        assertFalse(scheduler.tryAdd("http://c.com/2"));
+        assertEquals(4, scheduler.pendingCount());
+        assertEquals("http://c.com/1", scheduler.next().url());
+    }
+
+    private static List<String> drain(HostScheduler scheduler) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        HostScheduler.Dispatch dispatch;
+        while ((dispatch = scheduler.next()) != null) {
+            order.add(dispatch.url());
+            scheduler.release(dispatch);
+        }
+        return order;
+    }
+
+    private static CompletableFuture<HostScheduler.Dispatch> nextAsync(HostScheduler scheduler) {
+        CompletableFuture<HostScheduler.Dispatch> future = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                future.complete(scheduler.next());
+            } catch (InterruptedException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static DownloadConfig config(int maxConcurrentDownloads, int maxPerHost) {
+        DownloadConfig config = new DownloadConfig();
+        config.setMaxConcurrentDownloads(maxConcurrentDownloads);
+        config.setMaxConcurrentDownloadsPerHost(maxPerHost);
+        return config;
+    }
+}
@@ -0,0 +1,177 @@
+package com.hoppersecurity.url_downloader;
+
+import ch.qos.logback.classic.Level;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+/**
+ * Manual benchmark of the {@link TransportMode#HTTP2} transport against HTTP/1.1, downloading from
+ * a local WireMock stub that speaks both protocols on one port (HTTP/2 as cleartext h2c with prior
+ * knowledge).
+ *
+ * <p>For every requested in-flight level the benchmark downloads {@code inFlight * waves} URLs
+ * whose responses arrive after a fixed latency, once with the async transport over HTTP/1.1 and
+ * once over HTTP/2 for each connections-per-host count, and reports completed downloads per
+ * second next to the number of connections the client opened. HTTP/1.1 needs a connection per
+ * download in flight; HTTP/2 carries them as streams, {@code benchmark.maxStreams} at most per
+ * connection.
+ *
+ * <p>Run it from the project root after {@code ./mvnw test-compile}:
+ * <pre>
+ * ./mvnw exec:java -Dexec.mainClass="com.hoppersecurity.url_downloader.Http2TransportBenchmark" \
+ *     -Dexec.classpathScope=test -Dbenchmark.inFlight=100,500
+ * </pre>
+ *
+ * <p>Tunables (system properties): {@code benchmark.inFlight} (default {@code 100,500}),
+ * {@code benchmark.waves} (default 3), {@code benchmark.latencyMillis} (default 100),
+ * {@code benchmark.payloadBytes} (default 16384), {@code benchmark.connections} (HTTP/2
+ * connections per host, default {@code 1,4}) and {@code benchmark.maxStreams} (default 100).
+ * The stub runs in the benchmark's own JVM, so the client and the server share its CPUs.
+ */
+public class Http2TransportBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(Http2TransportBenchmark.class);
+
+    record Scenario(String name, Consumer<DownloadConfig> customizer) {}
+
+    record Measurement(String scenario, int inFlight, int urls, long succeeded, Duration elapsed, long connections) {
+        double downloadsPerSecond() {
+            return succeeded * 1000.0 / Math.max(1, elapsed.toMillis());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        int[] inFlightLevels = intList(System.getProperty("benchmark.inFlight", "100,500"));
+        int[] connectionCounts = intList(System.getProperty("benchmark.connections", "1,4"));
+        int waves = Integer.getInteger("benchmark.waves", 3);
+        int latencyMillis = Integer.getInteger("benchmark.latencyMillis", 100);
+        int payloadBytes = Integer.getInteger("benchmark.payloadBytes", 16384);
+        int maxStreams = Integer.getInteger("benchmark.maxStreams", 100);
+
+        WireMockServer server = new WireMockServer(WireMockConfiguration.options()
+                .dynamicPort()
+                .asynchronousResponseEnabled(true) // delayed responses must not hold a server thread each
+                .asynchronousResponseThreads(16)
+                .containerThreads(64)
+                .jettyAcceptQueueSize(4096));
+        server.stubFor(get(urlPathMatching("/payload/.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/octet-stream")
+                        .withBody(new byte[payloadBytes])
+                        .withFixedDelay(latencyMillis)));
+        server.start();
+
+        List<Measurement> measurements = new ArrayList<>();
+        try {
+            String baseUrl = "http://127.0.0.1:" + server.port();
+            for (int inFlight : inFlightLevels) {
+                for (Scenario scenario : scenarios(inFlight, connectionCounts, maxStreams)) {
+                    measurements.add(run(baseUrl, scenario, inFlight, inFlight * waves));
+                }
+            }
+        } finally {
+            server.stop();
+        }
+
+        System.out.printf("%n%-24s %9s %8s %10s %10s %12s %12s%n",
+                "Scenario", "In-flight", "URLs", "Succeeded", "Time(ms)", "Downloads/s", "Connections");
+        for (Measurement m : measurements) {
+            System.out.printf("%-24s %9d %8d %10d %10d %12.1f %12d%n", m.scenario(), m.inFlight(), m.urls(),
+                    m.succeeded(), m.elapsed().toMillis(), m.downloadsPerSecond(), m.connections());
+        }
+        System.exit(0);
+    }
+
+    static List<Scenario> scenarios(int inFlight, int[] connectionCounts, int maxStreams) {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("http/1.1 (async)", config -> {
+            config.setTransportMode(TransportMode.ASYNC);
+            config.setMaxConcurrentDownloads(inFlight);
+        }));
+        for (int connections : connectionCounts) {
+            scenarios.add(new Scenario("http/2, " + connections + " conn/host", config -> {
+                config.setTransportMode(TransportMode.HTTP2);
+                config.setMaxConcurrentDownloads(inFlight);
+                config.setHttp2ConnectionsPerHost(connections);
+                config.setHttp2MaxConcurrentStreams(maxStreams);
+            }));
+        }
+        return scenarios;
+    }
+
+    static Measurement run(String baseUrl, Scenario scenario, int inFlight, int urlCount) throws IOException {
+        Path outputDir = Files.createTempDirectory("http2-benchmark");
+        DownloadConfig config = new DownloadConfig();
+        config.setUrls(IntStream.range(0, urlCount)
+                .mapToObj(i -> baseUrl + "/payload/" + i)
+                .toList());
+        config.setOutputDirectory(outputDir.toString());
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        config.setMaxConcurrentDownloadsPerHost(inFlight);
+        config.setMaxDownloadTimePerUrl(120);
+        config.setConnectTimeout(30);
+        config.setRetryAttempts(1);
+        config.setSink(SinkType.NULL);
+        scenario.customizer().accept(config);
+
+        ConcurrentUrlDownloader downloader = new ConcurrentUrlDownloader(config);
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // silence per-download progress lines
+        Instant start = Instant.now();
+        List<DownloadResult> results;
+        try {
+            results = downloader.downloadAll();
+        } finally {
+            System.setOut(stdout);
+        }
+        Duration elapsed = Duration.between(start, Instant.now());
+
+        long succeeded = results.stream().filter(DownloadResult::success).count();
+        logger.warn("{} @ {} in-flight: {}/{} downloads in {}ms over {} connections",
+                scenario.name(), inFlight, succeeded, urlCount, elapsed.toMillis(), downloader.getConnectionsOpened());
+        results.stream()
+                .filter(result -> !result.success())
+                .findFirst()
+                .ifPresent(result -> logger.warn("  first failure: {}", result.errorMessage()));
+        deleteRecursively(outputDir);
+        return new Measurement(scenario.name(), inFlight, urlCount, succeeded, elapsed, downloader.getConnectionsOpened());
+    }
+
+    private static int[] intList(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
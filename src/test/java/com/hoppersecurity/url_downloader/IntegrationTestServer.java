@@ -2,19 +2,32 @@ package com.hoppersecurity.url_downloader;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.extension.ResponseTransformerV2;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 public class IntegrationTestServer {
     private static final Logger logger = LoggerFactory.getLogger(IntegrationTestServer.class);
+    // Served under /ranged/ like BenchmarkServer serves its payload, but over HTTP/2 as well
+    private static final byte[] RANGED_PAYLOAD = generateRangedPayload(5 * 1024 * 1024 + 123);
+    private static final String RANGED_ETAG = "\"r1\"";
     
     private WireMockServer wireMockServer;
     private int port;
     
     public void start() {
-        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer = new WireMockServer(WireMockConfiguration.options()
+                .dynamicPort()
+                .extensions(new ByteRangeTransformer()));
         
         // Setup all the mock endpoints
         setupMockEndpoints();
@@ -39,6 +52,13 @@ public class IntegrationTestServer {
         return "http://localhost:" + port;
     }
     
+    /**
+     * Returns the payload every {@code /ranged/} path serves.
+     */
+    public byte[] getRangedPayload() {
+        return RANGED_PAYLOAD.clone();
+    }
+    
     public int getRequestCount() {
         return wireMockServer.getAllServeEvents().size();
     }
@@ -90,6 +110,15 @@ public class IntegrationTestServer {
                         .withBody("This should timeout")
                         .withFixedDelay(10000)));
         
+        // Slow-drip response: headers at once, then 20 small chunks over 10 seconds
+        // (identity encoding: a gzipped body would reach the client in one piece at the end)
+        wireMockServer.stubFor(get(urlEqualTo("/trickle"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Encoding", "identity")
+                        .withBody("x".repeat(2000))
+                        .withChunkedDribbleDelay(20, 10000)));
+        
         // Empty response (zero bytes)
         wireMockServer.stubFor(get(urlEqualTo("/empty"))
                 .willReturn(aResponse()
@@ -118,6 +147,53 @@ public class IntegrationTestServer {
                         .withHeader("Content-Disposition", "attachment; filename=\"test-file.txt\"")
                         .withBody("This is a text file")));
         
+        // 503 with Retry-After on the first request, then success (for retry policy tests)
+        wireMockServer.stubFor(get(urlEqualTo("/unavailable-once"))
+                .inScenario("unavailable-once")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withHeader("Retry-After", "1")
+                        .withBody("Service Unavailable"))
+                .willSetStateTo("recovered"));
+        wireMockServer.stubFor(get(urlEqualTo("/unavailable-once"))
+                .inScenario("unavailable-once")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("Recovered")));
+        
+        // ETag-validated resource answering 304 to a matching If-None-Match (for incremental runs)
+        wireMockServer.stubFor(get(urlEqualTo("/etagged"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody("Versioned content")));
+        wireMockServer.stubFor(get(urlEqualTo("/etagged"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .atPriority(1)
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"v1\"")));
+        
+        // Any path under /ranged/: the same payload, with HEAD and single byte ranges (for segmented downloads)
+        wireMockServer.stubFor(head(urlPathMatching("/ranged/.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Accept-Ranges", "bytes")
+                        .withHeader("ETag", RANGED_ETAG)
+                        .withHeader("Content-Length", String.valueOf(RANGED_PAYLOAD.length))));
+        wireMockServer.stubFor(get(urlPathMatching("/ranged/.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/octet-stream")
+                        .withHeader("Accept-Ranges", "bytes")
+                        .withHeader("ETag", RANGED_ETAG)
+                        .withBody(RANGED_PAYLOAD)
+                        .withTransformers(ByteRangeTransformer.NAME)));
+        
         // Special characters in path (for filename generation tests)
         wireMockServer.stubFor(get(urlMatching("/path/with/special-chars.*"))
                 .willReturn(aResponse()
@@ -137,4 +213,50 @@ public class IntegrationTestServer {
         }
         return data;
     }
+    
+    private static byte[] generateRangedPayload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        return payload;
+    }
+    
+    /**
+     * Answers a single {@code Range: bytes=first-last} request with {@code 206 Partial Content},
+     * unless an {@code If-Range} header names another ETag.
+     */
+    private static final class ByteRangeTransformer implements ResponseTransformerV2 {
+        static final String NAME = "byte-range";
+        
+        @Override
+        public Response transform(Response response, ServeEvent serveEvent) {
+            Request request = serveEvent.getRequest();
+            String range = request.getHeader("Range");
+            String ifRange = request.getHeader("If-Range");
+            if (range == null || !range.startsWith("bytes=") || (ifRange != null && !ifRange.equals(RANGED_ETAG))) {
+                return response;
+            }
+            byte[] body = response.getBody();
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            int first = Integer.parseInt(bounds[0]);
+            int last = bounds[1].isEmpty() ? body.length - 1 : Math.min(body.length - 1, Integer.parseInt(bounds[1]));
+            return Response.Builder.like(response).but()
+                    .status(206)
+                    .headers(response.getHeaders().plus(
+                            new HttpHeader("Content-Range", "bytes " + first + "-" + last + "/" + body.length)))
+                    .body(Arrays.copyOfRange(body, first, last + 1))
+                    .build();
+        }
+        
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+        
+        @Override
+        public String getName() {
+            return NAME;
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for replaying a {@link DownloadJournal} when a batch is resumed.
+ *
+ * <p>Writes a journal of {@code entries} completed URLs of realistic length once, then measures
+ * how long {@link DownloadJournal#replay(Path)} takes to read it back into the completed-URL set.
+ * Run it with a heap large enough for the set:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main JournalReplayBenchmark -jvmArgs -Xmx2g
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class JournalReplayBenchmark {
+    @Param({"1000000", "10000000"})
+    private int entries;
+
+    private Path journalFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journalFile = Files.createTempFile("journal-replay", ".tsv");
+        try (BufferedWriter writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < entries; i++) {
+                writer.write("OK\t" + (i % 65_536) + "\thttps://cdn" + (i % 16) + ".example.com/datasets/2025/part-"
+                        + i + ".bin\t/data/downloads/1735689600000_part-" + i + ".bin\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Benchmark
+    public DownloadJournal.CompletedUrls replay() throws IOException {
+        return DownloadJournal.replay(journalFile);
+    }
+}
@@ -0,0 +1,82 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEntriesSurviveReopen() throws IOException {
+        Path storeFile = tempDir.resolve("metadata.jsonl");
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            store.put(new MetadataStore.Entry("http://a/1", "\"v1\"", null, 10, "/data/1"));
+            store.put(new MetadataStore.Entry("http://a/2", null, "Wed, 01 Jan 2025 00:00:00 GMT", 20, "/data/2"));
+        }
+
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            assertEquals(2, store.size());
+            assertEquals("\"v1\"", store.get("http://a/1").etag());
+            assertNull(store.get("http://a/1").lastModified());
+            assertEquals(20, store.get("http://a/2").size());
+            assertNull(store.get("http://a/3"));
+        }
+    }
+
+    @Test
+    void testCloseCompactsSupersededEntries() throws IOException {
+        Path storeFile = tempDir.resolve("metadata.jsonl");
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            store.put(new MetadataStore.Entry("http://a/1", "\"v1\"", null, 10, "/data/1"));
+            store.put(new MetadataStore.Entry("http://a/1", "\"v2\"", null, 11, "/data/1b"));
+            assertEquals(2, Files.readAllLines(storeFile).size(), "updates are appended until close");
+        }
+
+        assertEquals(1, Files.readAllLines(storeFile).size());
+        assertFalse(Files.exists(tempDir.resolve("metadata.jsonl.tmp")));
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            assertEquals("\"v2\"", store.get("http://a/1").etag());
+        }
+    }
+
+    @Test
+    void testTornLineIsSkipped() throws IOException {
+        Path storeFile = tempDir.resolve("metadata.jsonl");
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            store.put(new MetadataStore.Entry("http://a/1", "\"v1\"", null, 10, "/data/1"));
+        }
+        Files.writeString(storeFile, "{\"url\":\"http://a/2\",\"et", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (MetadataStore store = MetadataStore.open(storeFile)) {
+            assertEquals(1, store.size());
+            assertNotNull(store.get("http://a/1"));
+        }
+        assertEquals(1, Files.readAllLines(storeFile).size(), "the torn line is dropped by compaction");
+    }
+
+    @Test
+    void testConditionalHeadersAndFileCheck() throws IOException {
+        Path file = tempDir.resolve("kept.bin");
+        Files.write(file, new byte[10]);
+
+        MetadataStore.Entry entry = new MetadataStore.Entry("http://a/1", "\"v1\"", "Wed, 01 Jan 2025 00:00:00 GMT",
+                10, file.toString());
+        assertEquals(Map.of("If-None-Match", "\"v1\"", "If-Modified-Since", "Wed, 01 Jan 2025 00:00:00 GMT"),
+                entry.conditionalHeaders());
+        assertTrue(entry.fileMatches());
+
+        Files.write(file, new byte[5]);
+        assertFalse(entry.fileMatches(), "a truncated file must be downloaded again");
+    }
+}
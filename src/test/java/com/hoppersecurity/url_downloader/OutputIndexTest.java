@@ -0,0 +1,94 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPathIsHashDerivedAndSharded() throws IOException {
+        String url = "http://example.com/files/report.pdf";
+        String hash = OutputIndex.sha256Hex(url);
+
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            String path = index.assign(url);
+
+            assertEquals(hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash.substring(0, 16) + "_report.pdf", path);
+            assertTrue(Files.isDirectory(tempDir.resolve(path).getParent()), "the shard directory is created");
+            assertEquals(path, index.assign(url));
+            assertEquals(path, index.lookup(url));
+            assertNull(index.lookup("http://example.com/other"));
+        }
+    }
+
+    @Test
+    void testAssignmentsAreStableAcrossRuns() throws IOException {
+        String first;
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            first = index.assign("http://example.com/a/data.bin");
+            index.assign("http://example.com/b/data.bin");
+        }
+
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            assertEquals(2, index.size());
+            assertEquals(first, index.lookup("http://example.com/a/data.bin"));
+            assertNotEquals(first, index.lookup("http://example.com/b/data.bin"), "same basename, different URL");
+        }
+        assertEquals(2, Files.readAllLines(tempDir.resolve(OutputIndex.INDEX_FILE)).size());
+    }
+
+    @Test
+    void testPathOwnedByAnotherUrlGetsSuffix() throws IOException {
+        String url = "http://example.com/data.bin";
+        String hash = OutputIndex.sha256Hex(url);
+        String taken = OutputIndex.hashedPath(hash, 0, "data.bin");
+        // Another URL that happened to claim the same path first
+        Files.writeString(tempDir.resolve(OutputIndex.INDEX_FILE), "http://other.example.com/data.bin\t" + taken + "\n");
+
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            String path = index.assign(url);
+
+            assertEquals(OutputIndex.hashedPath(hash, 1, "data.bin"), path);
+            assertTrue(path.contains(hash.substring(0, 16) + "-1_data.bin"));
+        }
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            assertEquals(OutputIndex.hashedPath(hash, 1, "data.bin"), index.lookup(url), "the suffix survives a rerun");
+        }
+    }
+
+    @Test
+    void testTornLineIsDiscarded() throws IOException {
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            index.assign("http://example.com/a.bin");
+        }
+        Path indexFile = tempDir.resolve(OutputIndex.INDEX_FILE);
+        Files.writeString(indexFile, "http://example.com/b.bin\tab/c", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (OutputIndex index = OutputIndex.open(tempDir)) {
+            assertEquals(1, index.size());
+            assertNull(index.lookup("http://example.com/b.bin"));
+            assertTrue(index.assign("http://example.com/b.bin").endsWith("_b.bin"));
+        }
+        assertEquals(2, Files.readAllLines(indexFile).size());
+    }
+
+    @Test
+    void testSafeBasename() {
+        assertEquals("report.pdf", OutputIndex.safeBasename("http://example.com/files/report.pdf"));
+        assertEquals("index.html", OutputIndex.safeBasename("http://example.com/"));
+        assertEquals("a_b.txt", OutputIndex.safeBasename("http://example.com/a+b.txt"));
+        assertEquals("download", OutputIndex.safeBasename("not a url"));
+        assertEquals(128, OutputIndex.safeBasename("http://example.com/" + "x".repeat(300)).length());
+    }
+}
@@ -0,0 +1,131 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmark for storing many small downloads: files per second written through
+ * {@link FileSink}, one file per download, against {@link PackedSink}, one record per download
+ * in a rolling segment, plus the cost of a {@link PackedStore} lookup in a store of
+ * {@code storeRecords} records.
+ *
+ * <p>Each write operation opens an output for a new URL, writes a {@code payloadBytes} body and
+ * completes it, which is what a download does once the transfer is over. The output directory
+ * is emptied after every iteration, so the file system does not fill up across iterations.
+ *
+ * <p>Run it from the project root (see TESTING.md for sample results):
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main PackedSinkBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackedSinkBenchmark {
+
+    @Param({"4096"})
+    private int payloadBytes;
+
+    @Param({"1000000"})
+    private int storeRecords;
+
+    private ByteBuffer payload;
+    private Path directory;
+    private FileSink fileSink;
+    private PackedSink packedSink;
+    private long sequence;
+
+    private Path storeDirectory;
+    private PackedStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = ByteBuffer.allocate(payloadBytes);
+        storeDirectory = Files.createTempDirectory("packed-store-bench");
+        try (PackedSink sink = PackedSink.open(storeDirectory, PackedSink.DEFAULT_SEGMENT_BYTES)) {
+            ByteBuffer small = ByteBuffer.allocate(64);
+            for (int i = 0; i < storeRecords; i++) {
+                DownloadSink.Output output = sink.open(url(i), "ignored", 0);
+                output.write(small.clear());
+                output.complete();
+            }
+        }
+        store = PackedStore.open(storeDirectory);
+    }
+
+    @Setup(Level.Iteration)
+    public void openSinks() throws IOException {
+        directory = Files.createTempDirectory("packed-sink-bench");
+        fileSink = new FileSink(directory.resolve("files"));
+        Files.createDirectories(directory.resolve("files"));
+        packedSink = PackedSink.open(directory.resolve("packed"), PackedSink.DEFAULT_SEGMENT_BYTES);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSinks() throws IOException {
+        packedSink.close();
+        delete(directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        delete(storeDirectory);
+    }
+
+    @Benchmark
+    public void fileSink() throws IOException {
+        long id = sequence++;
+        write(fileSink.open(url(id), id + ".bin", 0));
+    }
+
+    @Benchmark
+    public void packedSink() throws IOException {
+        write(packedSink.open(url(sequence++), "ignored", 0));
+    }
+
+    @Benchmark
+    public PackedStore.Location packedLookup() throws IOException {
+        return store.lookup(url(sequence++ % storeRecords));
+    }
+
+    private void write(DownloadSink.Output output) throws IOException {
+        output.write(payload.clear());
+        output.complete();
+    }
+
+    private static String url(long id) {
+        return "https://cdn.example.com/objects/" + id + ".bin";
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsRollAcrossSegmentsAndAreFoundAfterReopening() throws IOException {
+        try (PackedSink sink = PackedSink.open(tempDir, 4096)) {
+            for (int i = 0; i < 200; i++) {
+                put(sink, "http://example.com/item/" + i, "payload " + i);
+            }
+            DownloadSink.Output failed = sink.open("http://example.com/failed", "failed", 0);
+            failed.write(ascii("never stored"));
+            failed.abort(false);
+            assertTrue(sink.segmentsWritten() > 1, "segments roll at the configured size");
+        }
+
+        try (PackedStore store = PackedStore.open(tempDir)) {
+            assertEquals(200, store.size());
+            assertTrue(store.segmentCount() > 1);
+            for (int i = 0; i < 200; i++) {
+                assertEquals("payload " + i, read(store, "http://example.com/item/" + i));
+            }
+            assertNull(store.lookup("http://example.com/failed"));
+            assertNull(store.lookup("http://example.com/item/200"));
+        }
+        assertFalse(Files.exists(tempDir.resolve(".incoming")));
+    }
+
+    @Test
+    void testLatestRecordWinsAcrossRuns() throws IOException {
+        try (PackedSink sink = PackedSink.open(tempDir, PackedSink.DEFAULT_SEGMENT_BYTES)) {
+            put(sink, "http://example.com/a", "first");
+            put(sink, "http://example.com/b", "other");
+        }
+        try (PackedSink sink = PackedSink.open(tempDir, PackedSink.DEFAULT_SEGMENT_BYTES)) {
+            put(sink, "http://example.com/a", "second");
+            put(sink, "http://example.com/a", "third");
+            assertEquals(4, sink.size(), "earlier runs are kept in the index");
+        }
+
+        try (PackedStore store = PackedStore.open(tempDir)) {
+            assertEquals(2, store.segmentCount(), "every run starts a segment");
+            assertEquals("third", read(store, "http://example.com/a"));
+            assertEquals("other", read(store, "http://example.com/b"));
+        }
+    }
+
+    @Test
+    void testLargeBodiesSpillAndCopyOut() throws IOException {
+        byte[] large = new byte[PackedSink.SPILL_THRESHOLD + 12_345];
+        Arrays.fill(large, (byte) 'x');
+        large[large.length - 1] = 'y';
+        try (PackedSink sink = PackedSink.open(tempDir, 1024)) {
+            DownloadSink.Output output = sink.open("http://example.com/large", "large", 0);
+            for (int offset = 0; offset < large.length; offset += 64 * 1024) {
+                output.write(ByteBuffer.wrap(large, offset, Math.min(64 * 1024, large.length - offset)));
+            }
+            output.complete();
+            put(sink, "http://example.com/small", "after the large one");
+        }
+
+        try (PackedStore store = PackedStore.open(tempDir)) {
+            PackedStore.Location location = store.lookup("http://example.com/large");
+            assertEquals(large.length, location.length());
+            ByteArrayOutputStream copied = new ByteArrayOutputStream();
+            store.copy(location, Channels.newChannel(copied));
+            assertArrayEquals(large, copied.toByteArray());
+            assertEquals("after the large one", read(store, "http://example.com/small"));
+        }
+    }
+
+    @Test
+    void testUnclosedRunIsRecoveredFromSegments() throws IOException {
+        try (PackedSink sink = PackedSink.open(tempDir, PackedSink.DEFAULT_SEGMENT_BYTES)) {
+            put(sink, "http://example.com/indexed", "indexed");
+        }
+        // A run that dies before close: records are in its segment, the index does not cover it
+        PackedSink crashed = PackedSink.open(tempDir, PackedSink.DEFAULT_SEGMENT_BYTES);
+        put(crashed, "http://example.com/a", "alpha");
+        put(crashed, "http://example.com/b", "bravo");
+        Path segment = PackedIndex.segmentPath(tempDir, 1);
+        long complete = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(PackedIndex.RECORD_HEADER_BYTES).putInt(20).putLong(1000).flip());
+            channel.write(ascii("http://example.com/c"));
+        }
+
+        try (PackedStore store = PackedStore.open(tempDir)) {
+            assertEquals(3, store.size());
+            assertEquals("indexed", read(store, "http://example.com/indexed"));
+            assertEquals("alpha", read(store, "http://example.com/a"));
+            assertEquals("bravo", read(store, "http://example.com/b"));
+            assertNull(store.lookup("http://example.com/c"));
+        }
+        assertEquals(complete, Files.size(segment), "torn record is cut off");
+        assertEquals(2, PackedIndex.coveredSegments(tempDir.resolve(PackedIndex.INDEX_FILE)));
+    }
+
+    private static void put(PackedSink sink, String url, String body) throws IOException {
+        DownloadSink.Output output = sink.open(url, "ignored", 0);
+        output.write(ascii(body));
+        output.complete();
+    }
+
+    private static String read(PackedStore store, String url) throws IOException {
+        PackedStore.Location location = store.lookup(url);
+        assertNotNull(location, url);
+        return new String(store.read(location), StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,81 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    @Test
+    void testJitteredExponentialBackoff() {
+        RetryPolicy policy = new RetryPolicy(config(10, 100, 1000));
+        IOException failure = new SocketTimeoutException("Read timed out");
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.retryDelay(1, failure).toMillis() <= 100);
+            assertTrue(policy.retryDelay(3, failure).toMillis() <= 400);
+            // Capped by retryMaxDelayMillis
+            assertTrue(policy.retryDelay(8, failure).toMillis() <= 1000);
+        }
+    }
+
+    @Test
+    void testAttemptsExhausted() {
+        RetryPolicy policy = new RetryPolicy(config(3, 100, 1000));
+
+        assertNotNull(policy.retryDelay(2, new IOException("Connection reset")));
+        assertNull(policy.retryDelay(3, new IOException("Connection reset")));
+    }
+
+    @Test
+    void testOnlyTransientFailuresAreRetried() {
+        RetryPolicy policy = new RetryPolicy(config(3, 100, 1000));
+
+        assertNotNull(policy.retryDelay(1, new HttpStatusException(500, "Internal Server Error", null)));
+        assertNotNull(policy.retryDelay(1, new HttpStatusException(408, "Request Timeout", null)));
+        assertNull(policy.retryDelay(1, new HttpStatusException(404, "Not Found", null)));
+        assertNotNull(policy.retryDelay(1, new IntegrityException("SHA-256 mismatch", false)));
+        assertNull(policy.retryDelay(1, new SinkCapacityException("larger than the in-memory limit")));
+        assertNull(policy.retryDelay(1, new IllegalArgumentException("Illegal character in path")));
+    }
+
+    @Test
+    void testRetryAfterIsHonored() {
+        RetryPolicy policy = new RetryPolicy(config(3, 100, 5000));
+
+        assertEquals(Duration.ofSeconds(2),
+                policy.retryDelay(1, new HttpStatusException(429, "Too Many Requests", Duration.ofSeconds(2))));
+        // Longer than retryMaxDelayMillis: give up rather than retry early
+        assertNull(policy.retryDelay(1, new HttpStatusException(503, "Service Unavailable", Duration.ofSeconds(60))));
+    }
+
+    @Test
+    void testParseRetryAfter() {
+        assertEquals(Duration.ofSeconds(120), RetryPolicy.parseRetryAfter("120"));
+        assertNull(RetryPolicy.parseRetryAfter(null));
+        assertNull(RetryPolicy.parseRetryAfter("soon"));
+        assertNull(RetryPolicy.parseRetryAfter("-5"));
+
+        String inThirtySeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+        Duration delay = RetryPolicy.parseRetryAfter(inThirtySeconds);
+        assertTrue(delay.toSeconds() > 25 && delay.toSeconds() <= 30);
+
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).minusHours(1));
+        assertEquals(Duration.ZERO, RetryPolicy.parseRetryAfter(past));
+    }
+
+    private static DownloadConfig config(int retryAttempts, long baseDelayMillis, long maxDelayMillis) {
+        DownloadConfig config = new DownloadConfig();
+        config.setRetryAttempts(retryAttempts);
+        config.setRetryBaseDelayMillis(baseDelayMillis);
+        config.setRetryMaxDelayMillis(maxDelayMillis);
+        return config;
+    }
+}
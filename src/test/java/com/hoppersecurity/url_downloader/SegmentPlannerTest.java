@@ -0,0 +1,71 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentPlannerTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testSegmentCountFollowsFileSize() {
+        SegmentPlanner planner = new SegmentPlanner(config(8 * MB, 8, MB));
+
+        assertEquals(1, planner.segmentCount(4 * MB), "below the threshold");
+        assertEquals(8, planner.segmentCount(8 * MB));
+        assertEquals(8, planner.segmentCount(1024 * MB), "capped by maxSegmentsPerFile");
+    }
+
+    @Test
+    void testMinSegmentSizeLimitsSplitting() {
+        SegmentPlanner planner = new SegmentPlanner(config(MB, 8, 2 * MB));
+
+        assertEquals(2, planner.segmentCount(5 * MB));
+    }
+
+    @Test
+    void testFastConnectionsUseFewerSegments() {
+        SegmentPlanner planner = new SegmentPlanner(config(MB, 8, MB));
+
+        // 50 MB/s per connection: a 100 MB file needs about 2s per 100 MB, so one extra connection per 2s
+        planner.recordTransfer(50 * MB, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(50 * MB, planner.getBytesPerSecond());
+        assertEquals(1, planner.segmentCount(100 * MB));
+        assertEquals(4, planner.segmentCount(400 * MB));
+
+        // A slow (high-latency) connection pulls the average down and allows more segments
+        for (int i = 0; i < 20; i++) {
+            planner.recordTransfer(MB, TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(8, planner.segmentCount(400 * MB));
+    }
+
+    @Test
+    void testSmallTransfersAreNotMeasured() {
+        SegmentPlanner planner = new SegmentPlanner(config(MB, 8, MB));
+
+        planner.recordTransfer(1024, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(0, planner.getBytesPerSecond());
+    }
+
+    @Test
+    void testEnabledAndConnectionsPerDownload() {
+        DownloadConfig disabled = new DownloadConfig();
+        assertFalse(SegmentPlanner.isEnabled(disabled));
+        assertEquals(1, SegmentPlanner.maxConnectionsPerDownload(disabled));
+
+        DownloadConfig enabled = config(MB, 6, MB);
+        assertTrue(SegmentPlanner.isEnabled(enabled));
+        assertEquals(6, SegmentPlanner.maxConnectionsPerDownload(enabled));
+    }
+
+    private static DownloadConfig config(long thresholdBytes, int maxSegments, long minSegmentBytes) {
+        DownloadConfig config = new DownloadConfig();
+        config.setSegmentThresholdBytes(thresholdBytes);
+        config.setMaxSegmentsPerFile(maxSegments);
+        config.setMinSegmentBytes(minSegmentBytes);
+        return config;
+    }
+}
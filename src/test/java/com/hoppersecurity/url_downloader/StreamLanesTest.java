@@ -0,0 +1,56 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamLanesTest {
+    private static final URI HOST_A = URI.create("https://a.example.com/file");
+    private static final URI HOST_B = URI.create("https://b.example.com/file");
+
+    private final StreamLanes lanes = new StreamLanes(2, 3);
+
+    @Test
+    void testStreamsAreSpreadOverTheConnections() throws Exception {
+        List<StreamLanes.Lane> taken = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            taken.add(lanes.acquire(HOST_A));
+        }
+
+        assertEquals(3, taken.stream().filter(lane -> lane.index() == 0).count());
+        assertEquals(3, taken.stream().filter(lane -> lane.index() == 1).count());
+        assertEquals(6, lanes.openStreams(HOST_A));
+        // Every host has connections of its own
+        assertEquals(0, lanes.openStreams(HOST_B));
+        lanes.acquire(HOST_B).release();
+    }
+
+    @Test
+    void testFullHostWaitsForAFreeStream() throws Exception {
+        List<StreamLanes.Lane> taken = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            taken.add(lanes.acquire(HOST_A));
+        }
+
+        CompletableFuture<StreamLanes.Lane> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lanes.acquire(HOST_A);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone(), "every connection carries its maximum of streams");
+
+        taken.forEach(StreamLanes.Lane::release);
+        StreamLanes.Lane lane = waiting.get(5, TimeUnit.SECONDS);
+        lane.release();
+        assertEquals(0, lanes.openStreams(HOST_A));
+    }
+}
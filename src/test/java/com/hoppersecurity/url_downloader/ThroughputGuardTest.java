@@ -0,0 +1,107 @@
+package com.hoppersecurity.url_downloader;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThroughputGuardTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CountingHandler delegate = new CountingHandler();
+    // At least 1000 bytes/s, averaged over 2-second windows
+    private final ThroughputGuard<Long> guard = new ThroughputGuard<>(delegate, 1000, 2 * SECOND, clock::get);
+
+    @Test
+    void testFastTransferPasses() throws Exception {
+        guard.onResponse(new BasicHttpResponse(200), null);
+
+        for (int i = 0; i < 10; i++) {
+            clock.addAndGet(SECOND / 2);
+            guard.onData(ByteBuffer.allocate(1000));
+        }
+
+        assertEquals(10_000, guard.onComplete());
+    }
+
+    @Test
+    void testSlowWindowAbortsTransfer() throws Exception {
+        guard.onResponse(new BasicHttpResponse(200), null);
+        clock.addAndGet(SECOND);
+        guard.onData(ByteBuffer.allocate(500)); // window still open
+
+        clock.addAndGet(SECOND);
+        SlowTransferException exception = assertThrows(SlowTransferException.class,
+                () -> guard.onData(ByteBuffer.allocate(500)));
+
+        assertEquals(500, exception.getBytesPerSecond());
+        assertEquals(500, delegate.bytes, "the chunk that closed the slow window is not written");
+    }
+
+    @Test
+    void testEachWindowIsJudgedOnItsOwn() throws Exception {
+        guard.onResponse(new BasicHttpResponse(200), null);
+        clock.addAndGet(2 * SECOND);
+        guard.onData(ByteBuffer.allocate(10_000)); // a fast first window
+
+        // A fast start does not buy credit for a stall later on
+        clock.addAndGet(3 * SECOND);
+        assertThrows(SlowTransferException.class, () -> guard.onData(ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    void testPausedTimeIsNotCounted() throws Exception {
+        guard.onResponse(new BasicHttpResponse(200), null);
+        clock.addAndGet(SECOND);
+        guard.onData(ByteBuffer.allocate(1000));
+
+        // Parked for ten seconds by a rate limit, then reading as fast as before
+        clock.addAndGet(10 * SECOND);
+        guard.onPaused(10 * SECOND);
+        clock.addAndGet(SECOND);
+        guard.onData(ByteBuffer.allocate(1000));
+
+        // The next window starts after the pause and is judged on reading time alone
+        clock.addAndGet(2 * SECOND);
+        assertThrows(SlowTransferException.class, () -> guard.onData(ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        DownloadConfig config = new DownloadConfig();
+
+        assertSame(delegate, ThroughputGuard.wrap(delegate, config));
+        config.setMinBytesPerSecond(1024);
+        assertInstanceOf(ThroughputGuard.class, ThroughputGuard.wrap(delegate, config));
+    }
+
+    private static final class CountingHandler implements TransferHandler<Long> {
+        long bytes;
+
+        @Override
+        public void onResponse(HttpResponse response, EntityDetails entity) {
+        }
+
+        @Override
+        public void onData(ByteBuffer data) {
+            bytes += data.remaining();
+            data.position(data.limit());
+        }
+
+        @Override
+        public Long onComplete() {
+            return bytes;
+        }
+
+        @Override
+        public void onFailure(Exception cause) {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+    // A small wheel so that the tests also cover timeouts spanning several revolutions
+    private final TimerWheel timer = new TimerWheel("test-timer", Duration.ofMillis(10), 8);
+
+    @AfterEach
+    void tearDown() {
+        timer.close();
+    }
+
+    @Test
+    void testTimeoutFiresAfterDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long start = System.nanoTime();
+
+        TimerWheel.Timeout timeout = timer.schedule(() -> {
+            firedAt.set(System.nanoTime());
+            fired.countDown();
+        }, Duration.ofMillis(250));
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertTrue(firedAt.get() - start >= TimeUnit.MILLISECONDS.toNanos(250), "fired early");
+        assertFalse(timeout.cancel(), "an expired timeout cannot be cancelled");
+    }
+
+    @Test
+    void testCancelledTimeoutNeverFires() throws InterruptedException {
+        AtomicBoolean fired = new AtomicBoolean();
+
+        TimerWheel.Timeout timeout = timer.schedule(() -> fired.set(true), Duration.ofMillis(50));
+        assertTrue(timeout.cancel());
+        Thread.sleep(200);
+
+        assertFalse(fired.get());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.pendingCount(), "cancelled timeouts are discarded when their bucket comes around");
+    }
+
+    @Test
+    void testOneThreadServesManyTimeouts() throws InterruptedException {
+        int count = 10_000;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+        int threadsBefore = Thread.activeCount();
+
+        for (int i = 0; i < count; i++) {
+            TimerWheel.Timeout timeout = timer.schedule(fired::countDown, Duration.ofMillis(i % 100));
+            if (i % 2 == 1) {
+                timeout.cancel();
+            }
+        }
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(Thread.activeCount() <= threadsBefore, "no thread per timeout");
+    }
+
+    @Test
+    void testOverdueTimeoutFiresOnNextTick() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+
+        timer.schedule(fired::countDown, Duration.ofSeconds(-5));
+
+        assertTrue(fired.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testClosedWheelRejectsTimeouts() {
+        timer.close();
+
+        assertThrows(IllegalStateException.class, () -> timer.schedule(() -> { }, Duration.ZERO));
+    }
+}
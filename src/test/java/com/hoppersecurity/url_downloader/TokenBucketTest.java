@@ -0,0 +1,82 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testFullBucketAllowsOneSecondBurst() {
+        TokenBucket bucket = new TokenBucket(5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.reserve(1, 0));
+        }
+        assertEquals(SECOND / 5, bucket.reserve(1, 0));
+        assertEquals(2 * SECOND / 5, bucket.reserve(1, 0), "waiters queue behind earlier debt");
+    }
+
+    @Test
+    void testRefillsAtConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1000, 0);
+        bucket.reserve(1000, 0);
+
+        assertEquals(SECOND / 2, bucket.reserve(500, 0));
+        assertEquals(0, bucket.reserve(500, 2 * SECOND), "the debt is repaid after a second");
+    }
+
+    @Test
+    void testIdleTimeDoesNotExceedCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 0);
+
+        long hourLater = TimeUnit.HOURS.toNanos(1);
+        assertEquals(0, bucket.reserve(10, hourLater));
+        assertEquals(SECOND / 10, bucket.reserve(1, hourLater));
+    }
+
+    @Test
+    void testOversizedReservationWaitsForTheExcess() {
+        TokenBucket bucket = new TokenBucket(1024, 0);
+
+        assertEquals(SECOND, bucket.reserve(2048, 0), "one second of burst, one second of refill");
+    }
+
+    @Test
+    void testFractionalRateKeepsOneTokenBurst() {
+        TokenBucket bucket = new TokenBucket(0.5, 0);
+
+        assertEquals(0, bucket.reserve(1, 0));
+        assertEquals(2 * SECOND, bucket.reserve(1, 0));
+    }
+
+    @Test
+    void testConcurrentReservationsAreNotLost() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10_000, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    bucket.reserve(1, 0);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 80,000 tokens at 10,000/s are eight seconds of refill, one of which the full bucket covered
+        assertEquals(7 * SECOND + SECOND / 10_000, bucket.reserve(1, 0), "every reservation was applied exactly once");
+    }
+
+    @Test
+    void testRejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1));
+    }
+}
@@ -0,0 +1,213 @@
+package com.hoppersecurity.url_downloader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the path a response body takes from the transport into the target file.
+ *
+ * <p>The network is replaced by an in-memory source that hands out {@code payloadBytes} bytes,
+ * so the numbers isolate copying and system-call overhead:
+ * <ul>
+ *   <li>{@code streamCopy8k} - the original loop: {@code InputStream} to a fresh 8 KB array to a
+ *       {@code FileOutputStream}</li>
+ *   <li>{@code heapChannelWrite} - the current classic transport: one reused heap buffer of
+ *       {@code ioBufferSize} bytes handed to {@code FileChannel.write}</li>
+ *   <li>{@code directChannelWrite} - a direct buffer filled from a {@code ReadableByteChannel},
+ *       which spares the JDK the copy into its temporary direct buffer</li>
+ *   <li>{@code transferFrom} - {@code FileChannel.transferFrom}, the zero-copy ceiling when the
+ *       body is available as a channel</li>
+ * </ul>
+ *
+ * <p>Run it from the project root (see TESTING.md for sample results):
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp "target/test-classes:target/classes:$(cat target/classpath.txt)" org.openjdk.jmh.Main WritePathBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WritePathBenchmark {
+    private static final int LEGACY_BUFFER_SIZE = 8192;
+    private static final int TEMPLATE_SIZE = 1024 * 1024;
+
+    @Param({"4096", "1048576", "1073741824"})
+    private long payloadBytes;
+
+    @Param({"65536"})
+    private int ioBufferSize;
+
+    private byte[] template;
+    private ByteBuffer directTemplate;
+    private ByteBuffer heapChunk;
+    private ByteBuffer directChunk;
+    private Path target;
+
+    @Setup
+    public void setUp() throws IOException {
+        template = new byte[TEMPLATE_SIZE];
+        for (int i = 0; i < template.length; i++) {
+            template[i] = (byte) i;
+        }
+        directTemplate = ByteBuffer.allocateDirect(TEMPLATE_SIZE).put(template).flip();
+        heapChunk = ByteBuffer.allocate(ioBufferSize);
+        directChunk = ByteBuffer.allocateDirect(ioBufferSize);
+        target = Files.createTempFile("write-path-benchmark", ".bin");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long streamCopy8k() throws IOException {
+        long total = 0;
+        try (InputStream in = new SyntheticInputStream(template, payloadBytes);
+             OutputStream out = new FileOutputStream(target.toFile())) {
+            byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+                total += bytesRead;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long heapChannelWrite() throws IOException {
+        long total = 0;
+        try (InputStream in = new SyntheticInputStream(template, payloadBytes);
+             FileChannel out = openTarget()) {
+            int bytesRead;
+            while ((bytesRead = in.read(heapChunk.array(), 0, heapChunk.capacity())) != -1) {
+                heapChunk.clear().limit(bytesRead);
+                while (heapChunk.hasRemaining()) {
+                    total += out.write(heapChunk);
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long directChannelWrite() throws IOException {
+        long total = 0;
+        try (ReadableByteChannel in = new SyntheticChannel(directTemplate, payloadBytes);
+             FileChannel out = openTarget()) {
+            while (in.read(directChunk.clear()) != -1) {
+                directChunk.flip();
+                while (directChunk.hasRemaining()) {
+                    total += out.write(directChunk);
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long transferFrom() throws IOException {
+        long total = 0;
+        try (ReadableByteChannel in = new SyntheticChannel(directTemplate, payloadBytes);
+             FileChannel out = openTarget()) {
+            long transferred;
+            while ((transferred = out.transferFrom(in, total, payloadBytes - total)) > 0) {
+                total += transferred;
+            }
+        }
+        return total;
+    }
+
+    private FileChannel openTarget() throws IOException {
+        return FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** Stands in for a response entity stream by repeating a template. */
+    static final class SyntheticInputStream extends InputStream {
+        private final byte[] template;
+        private long remaining;
+
+        SyntheticInputStream(byte[] template, long length) {
+            this.template = template;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? template[(int) (remaining % template.length)] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(Math.min(length, remaining), template.length);
+            System.arraycopy(template, 0, buffer, offset, count);
+            remaining -= count;
+            return count;
+        }
+    }
+
+    /** Stands in for a socket channel by repeating a direct template buffer. */
+    private static final class SyntheticChannel implements ReadableByteChannel {
+        private final ByteBuffer template;
+        private long remaining;
+        private boolean open = true;
+
+        SyntheticChannel(ByteBuffer template, long length) {
+            this.template = template;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(Math.min(destination.remaining(), remaining), template.capacity());
+            destination.put(destination.position(), template, 0, count);
+            destination.position(destination.position() + count);
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.hoppersecurity.url_downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriterStageTest {
+    private static final int BUFFER_SIZE = 1024;
+
+    @Test
+    void testChunksAreWrittenInOrderBeforeCompleteReturns() throws IOException {
+        MemorySink memory = new MemorySink(1024 * 1024);
+        WriterStage stage = new WriterStage(memory, 2, 64 * 1024, BUFFER_SIZE);
+        byte[] payload = new byte[10_000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+
+        DownloadSink.Output a = stage.open("http://example.com/a", "a", 0);
+        DownloadSink.Output b = stage.open("http://example.com/b", "b", 0);
+        for (int offset = 0; offset < payload.length; offset += 3000) {
+            ByteBuffer chunk = ByteBuffer.wrap(payload, offset, Math.min(3000, payload.length - offset));
+            a.write(chunk);
+            assertFalse(chunk.hasRemaining(), "the caller's buffer is consumed at once");
+            b.write(ByteBuffer.wrap(payload, offset, Math.min(3000, payload.length - offset)));
+        }
+        a.complete();
+        b.abort(false);
+
+        assertArrayEquals(payload, memory.get("a"));
+        assertNull(memory.get("b"));
+        assertEquals(0, stage.getInFlightBytes());
+        stage.close();
+    }
+
+    @Test
+    void testReadersPauseUntilTheWritersCatchUp() throws Exception {
+        CountDownLatch diskStalled = new CountDownLatch(1);
+        DownloadSink stalling = (url, filename, position) -> new DownloadSink.Output() {
+            @Override
+            public void write(ByteBuffer data) {
+                try {
+                    diskStalled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                data.position(data.limit());
+            }
+
+            @Override
+            public void complete() {
+            }
+
+            @Override
+            public void abort(boolean discard) {
+            }
+        };
+        WriterStage stage = new WriterStage(stalling, 1, 4 * BUFFER_SIZE, BUFFER_SIZE);
+        DownloadSink.Output output = stage.open("http://example.com/x", "x", 0);
+        output.write(ByteBuffer.allocate(4 * BUFFER_SIZE));
+        assertFalse(stage.hasCapacity());
+        assertEquals(4 * BUFFER_SIZE, stage.getInFlightBytes());
+
+        // Non-blocking reader: resumed by the writer once there is room
+        CountDownLatch resumed = new CountDownLatch(1);
+        assertFalse(stage.admit(resumed::countDown));
+        // Blocking reader: parked in the meantime
+        AtomicBoolean parked = new AtomicBoolean(true);
+        AtomicLong parkedNanos = new AtomicLong();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            try {
+                parkedNanos.set(stage.awaitCapacity());
+                parked.set(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        reader.join(200);
+        assertTrue(parked.get(), "the reader waits while the disk is stalled");
+
+        diskStalled.countDown();
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        reader.join(5000);
+        assertFalse(parked.get());
+        assertTrue(parkedNanos.get() >= TimeUnit.MILLISECONDS.toNanos(100), "the reader learns how long it was parked");
+        output.complete();
+        assertEquals(2, stage.getPauses());
+        assertEquals(4 * BUFFER_SIZE, stage.getPeakInFlightBytes());
+        assertTrue(stage.getPeakQueuedChunks() >= 3, "three chunks wait behind the stalled one");
+        assertTrue(stage.getPausedTime().toMillis() >= 100);
+        stage.close();
+    }
+
+    @Test
+    void testQueueingNeverBlocksWhenTheRingIsFull() throws Exception {
+        MemorySink memory = new MemorySink(1024 * 1024);
+        CountDownLatch diskStalled = new CountDownLatch(1);
+        DownloadSink stalling = (url, filename, position) -> {
+            DownloadSink.Output delegate = memory.open(url, filename, position);
+            return new DownloadSink.Output() {
+                @Override
+                public void write(ByteBuffer data) throws IOException {
+                    try {
+                        diskStalled.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    delegate.write(data);
+                }
+
+                @Override
+                public void complete() throws IOException {
+                    delegate.complete();
+                }
+
+                @Override
+                public void abort(boolean discard) throws IOException {
+                    delegate.abort(discard);
+                }
+            };
+        };
+        WriterStage stage = new WriterStage(stalling, 1, 4 * BUFFER_SIZE, BUFFER_SIZE);
+        byte[] payload = new byte[1000 * BUFFER_SIZE];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i / BUFFER_SIZE);
+        }
+
+        // Far more chunks than the ring has slots, written the way a reactor thread would: regardless of capacity
+        DownloadSink.Output output = stage.open("http://example.com/x", "x", 0);
+        Thread reader = Thread.ofPlatform().start(() -> {
+            try {
+                for (int offset = 0; offset < payload.length; offset += BUFFER_SIZE) {
+                    output.write(ByteBuffer.wrap(payload, offset, BUFFER_SIZE));
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        reader.join(5000);
+        assertFalse(reader.isAlive(), "the reader was blocked by the full ring");
+        assertFalse(stage.hasCapacity());
+        assertTrue(stage.getQueuedChunks() >= 999, "all but the chunk being written are queued");
+
+        diskStalled.countDown();
+        output.complete();
+        assertArrayEquals(payload, memory.get("x"));
+        assertEquals(0, stage.getQueuedChunks());
+        stage.close();
+    }
+
+    @Test
+    void testWriteFailureReachesTheCaller() throws IOException {
+        MemorySink memory = new MemorySink(2 * BUFFER_SIZE);
+        WriterStage stage = new WriterStage(memory, 1, 64 * 1024, BUFFER_SIZE);
+        DownloadSink.Output output = stage.open("http://example.com/big", "big", 0);
+        output.write(ByteBuffer.allocate(3 * BUFFER_SIZE));
+
+        assertThrows(SinkCapacityException.class, output::complete);
+        assertNull(memory.get("big"));
+        stage.close();
+    }
+}